@@ -0,0 +1,54 @@
+package com.github.libgraviton.messaging.benchmark;
+
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.ParallelConsumer;
+import com.github.libgraviton.messaging.consumer.WorkerPoolConsumer;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how fast the delivering thread hands messages over to parallel consumers. The wrapped consumer only counts
+ * the messages, so the hand-off itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandOffBenchmark {
+
+    private final LongAdder consumed = new LongAdder();
+
+    private final Consumer countingConsumer = (messageId, message) -> consumed.increment();
+
+    private Consumer parallelConsumer;
+
+    private WorkerPoolConsumer workerPoolConsumer;
+
+    @Setup
+    @SuppressWarnings("deprecation")
+    public void setUp() {
+        parallelConsumer = new ParallelConsumer(countingConsumer);
+        workerPoolConsumer = new WorkerPoolConsumer(countingConsumer, 4, 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workerPoolConsumer.close();
+    }
+
+    @Benchmark
+    public void parallelConsumer() throws CannotConsumeMessage {
+        parallelConsumer.consume("1", "message");
+    }
+
+    @Benchmark
+    public void workerPoolConsumer() throws CannotConsumeMessage {
+        workerPoolConsumer.consume("1", "message");
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.libgraviton.messaging.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Creates message payloads of a given size.
+ */
+public final class Payloads {
+
+    private static final String ASCII = "{\"event\":\"document.core.app.update\",\"id\":\"12345\"}";
+
+    private static final String MULTI_BYTE = "{\"ereignis\":\"Änderung\",\"wert\":\"€ 12,50\",\"größe\":\"ĳ\"}";
+
+    private Payloads() {
+    }
+
+    /**
+     * Creates an UTF-8 encoded text payload consisting of ASCII characters only.
+     *
+     * @param size The size in bytes
+     *
+     * @return The payload
+     */
+    public static byte[] ascii(int size) {
+        return repeat(ASCII, size);
+    }
+
+    /**
+     * Creates an UTF-8 encoded text payload containing multi byte characters.
+     *
+     * @param size The approximate size in bytes. The payload may be a few bytes shorter, since multi byte characters
+     *             are never cut.
+     *
+     * @return The payload
+     */
+    public static byte[] multiByte(int size) {
+        return repeat(MULTI_BYTE, size);
+    }
+
+    private static byte[] repeat(String text, int size) {
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.toString().getBytes(StandardCharsets.UTF_8).length < size) {
+            builder.append(text);
+        }
+        String payload = builder.toString();
+        while (payload.getBytes(StandardCharsets.UTF_8).length > size) {
+            payload = payload.substring(0, payload.length() - 1);
+        }
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.github.libgraviton.messaging.benchmark;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates in-memory stubs of queue system interfaces (e.g. RabbitMQ channels or JMS messages). Unlike mocks, the stubs
+ * do not record their invocations, so they add as little time and allocation to the measured hot path as possible.
+ *
+ * Each method returns the answer registered by its name. Methods without an answer do nothing and return the default
+ * value of their return type. Methods returning a boolean return true, so connections and channels are always open.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates a stub which answers each method with the default value of its return type.
+     *
+     * @param type The interface to stub
+     * @param <T> The interface type
+     *
+     * @return The stub
+     */
+    public static <T> T stub(Class<T> type) {
+        return stub(type, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a stub which answers the given methods.
+     *
+     * @param type The interface to stub
+     * @param answers The answers by method name
+     * @param <T> The interface type
+     *
+     * @return The stub
+     */
+    public static <T> T stub(Class<T> type, Map<String, Answer> answers) {
+        Map<String, Answer> methodAnswers = new HashMap<>(answers);
+        Object stub = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Answer answer = methodAnswers.get(method.getName());
+            if (null != answer) {
+                return answer.answer(args);
+            }
+            return defaultValue(proxy, method, args);
+        });
+        return type.cast(stub);
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "stub";
+        }
+        Class<?> returnType = method.getReturnType();
+        if (!returnType.isPrimitive() || void.class == returnType) {
+            return null;
+        }
+        if (boolean.class == returnType) {
+            return true;
+        }
+        if (long.class == returnType) {
+            return 0L;
+        }
+        if (double.class == returnType) {
+            return 0d;
+        }
+        if (float.class == returnType) {
+            return 0f;
+        }
+        if (char.class == returnType) {
+            return (char) 0;
+        }
+        if (byte.class == returnType) {
+            return (byte) 0;
+        }
+        if (short.class == returnType) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Answers a stubbed method.
+     */
+    public interface Answer {
+
+        Object answer(Object[] args) throws Throwable;
+
+    }
+
+}
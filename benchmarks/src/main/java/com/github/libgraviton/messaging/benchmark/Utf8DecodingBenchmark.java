@@ -0,0 +1,57 @@
+package com.github.libgraviton.messaging.benchmark;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the UTF-8 decoding of message bodies, which happens for each message delivered to a plain consumer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Utf8DecodingBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    @Param({"ascii", "multi-byte"})
+    public String content;
+
+    private byte[] body;
+
+    private CharsetDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        body = "ascii".equals(content) ? Payloads.ascii(size) : Payloads.multiByte(size);
+        decoder = StandardCharsets.UTF_8.newDecoder();
+    }
+
+    @Benchmark
+    public String newString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String reusedDecoder() throws CharacterCodingException {
+        CharBuffer chars = decoder.reset().decode(ByteBuffer.wrap(body));
+        return chars.toString();
+    }
+
+    @Benchmark
+    public String messageBodyAsString() throws CannotConsumeMessage {
+        return new BasicMessage("1", body).getBodyAsString();
+    }
+
+}
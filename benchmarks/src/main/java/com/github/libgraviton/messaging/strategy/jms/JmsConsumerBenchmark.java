@@ -0,0 +1,58 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import com.github.libgraviton.messaging.benchmark.Payloads;
+import com.github.libgraviton.messaging.benchmark.Stubs;
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.jms.TextMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of a received JMS message to a consumer, including the tracking of the unacknowledged message
+ * and its automatic acknowledgment.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JmsConsumerBenchmark {
+
+    @Param({"64", "4096"})
+    public int size;
+
+    private TextMessage message;
+
+    private JmsConsumer textConsumer;
+
+    private JmsConsumer messageConsumer;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        String text = new String(Payloads.ascii(size), StandardCharsets.UTF_8);
+        Map<String, Stubs.Answer> answers = new HashMap<>();
+        answers.put("getJMSMessageID", args -> "ID:benchmark-1");
+        answers.put("getText", args -> text);
+        message = Stubs.stub(TextMessage.class, answers);
+        textConsumer = new JmsConsumer((Consumer) (messageId, body) -> blackhole.consume(body));
+        messageConsumer = new JmsConsumer((MessageConsumer) blackhole::consume);
+    }
+
+    @Benchmark
+    public void textConsumer() {
+        textConsumer.onMessage(message);
+    }
+
+    @Benchmark
+    public void messageConsumer() {
+        messageConsumer.onMessage(message);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.benchmark.Stubs;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import java.util.Collections;
+
+/**
+ * Creates connections whose channels are in-memory stubs, which accept every operation without talking to a broker.
+ */
+class InMemoryConnectionFactory extends ConnectionFactory {
+
+    private final Channel channel = Stubs.stub(Channel.class);
+
+    @Override
+    public Connection newConnection() {
+        return Stubs.stub(Connection.class, Collections.singletonMap("createChannel", args -> channel));
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Builds and opens a RabbitMQ connection on an in-memory channel.
+     *
+     * @return The opened connection
+     *
+     * @throws Exception If the connection cannot be opened.
+     */
+    static RabbitMqConnection openConnection() throws Exception {
+        RabbitMqConnection connection = new RabbitMqConnection.Builder()
+                .connectionFactory(new InMemoryConnectionFactory())
+                .exchangeName("benchmark")
+                .queueName("benchmark")
+                .build();
+        connection.open();
+        return connection;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the acknowledgment of consumed messages, each on its own and coalesced into cumulative acks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RabbitMqAckBenchmark {
+
+    private RabbitMqConnection connection;
+
+    private RabbitMqConsumer consumer;
+
+    private AckCoalescer ackCoalescer;
+
+    private long deliveryTag;
+
+    @Setup
+    public void setUp() throws Exception {
+        connection = InMemoryConnectionFactory.openConnection();
+        Consumer noop = (messageId, message) -> { };
+        consumer = new RabbitMqConsumer(connection, noop, true);
+        ackCoalescer = new AckCoalescer(connection.getChannel(), 100, 100, connection.getConnectionName());
+    }
+
+    @TearDown
+    public void tearDown() {
+        ackCoalescer.close();
+        connection.close();
+    }
+
+    @Benchmark
+    public void acknowledge() throws CannotAcknowledgeMessage {
+        consumer.acknowledge(String.valueOf(++deliveryTag));
+    }
+
+    @Benchmark
+    public void coalescedAcknowledge() throws IOException {
+        ackCoalescer.complete(++deliveryTag);
+    }
+
+}
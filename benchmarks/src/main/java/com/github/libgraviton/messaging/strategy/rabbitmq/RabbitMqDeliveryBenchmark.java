@@ -0,0 +1,85 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.benchmark.Payloads;
+import com.github.libgraviton.messaging.consumer.BytesConsumer;
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.MessageProperties;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of a delivered message to the different kinds of consumers. Plain consumers get the body
+ * decoded as UTF-8, bytes consumers get the raw body and message consumers get a message whose body is not accessed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RabbitMqDeliveryBenchmark {
+
+    @Param({"64", "4096"})
+    public int size;
+
+    private RabbitMqConnection connection;
+
+    private byte[] body;
+
+    private Envelope envelope;
+
+    private AMQP.BasicProperties properties;
+
+    private RabbitMqConsumer textConsumer;
+
+    private RabbitMqConsumer bytesConsumer;
+
+    private RabbitMqConsumer messageConsumer;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws Exception {
+        connection = InMemoryConnectionFactory.openConnection();
+        body = Payloads.ascii(size);
+        envelope = new Envelope(1, false, "benchmark", "benchmark");
+        properties = MessageProperties.PERSISTENT_TEXT_PLAIN;
+        textConsumer = new RabbitMqConsumer(
+                connection,
+                (Consumer) (messageId, message) -> blackhole.consume(message)
+        );
+        bytesConsumer = new RabbitMqConsumer(
+                connection,
+                (BytesConsumer) (messageId, message) -> blackhole.consume(message)
+        );
+        messageConsumer = new RabbitMqConsumer(
+                connection,
+                (MessageConsumer) blackhole::consume
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public void textConsumer() throws IOException {
+        textConsumer.handleDelivery("benchmark", envelope, properties, body);
+    }
+
+    @Benchmark
+    public void bytesConsumer() throws IOException {
+        bytesConsumer.handleDelivery("benchmark", envelope, properties, body);
+    }
+
+    @Benchmark
+    public void messageConsumer() throws IOException {
+        messageConsumer.handleDelivery("benchmark", envelope, properties, body);
+    }
+
+}
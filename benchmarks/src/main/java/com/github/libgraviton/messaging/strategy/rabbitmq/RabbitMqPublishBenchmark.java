@@ -0,0 +1,53 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.benchmark.Payloads;
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publishing on an already opened RabbitMQ connection, from {@link RabbitMqConnection#publish(String)} down to
+ * the channel, which does not send anything.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RabbitMqPublishBenchmark {
+
+    @Param({"64", "4096"})
+    public int size;
+
+    private RabbitMqConnection connection;
+
+    private String textMessage;
+
+    private byte[] bytesMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        connection = InMemoryConnectionFactory.openConnection();
+        bytesMessage = Payloads.ascii(size);
+        textMessage = new String(bytesMessage, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public void publishText() throws CannotPublishMessage {
+        connection.publish(textMessage);
+    }
+
+    @Benchmark
+    public void publishBytes() throws CannotPublishMessage {
+        connection.publish(bytesMessage);
+    }
+
+}
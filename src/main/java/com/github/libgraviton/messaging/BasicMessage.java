@@ -0,0 +1,114 @@
+package com.github.libgraviton.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A message whose body and headers are already in memory.
+ */
+public class BasicMessage implements Message {
+
+    private final String id;
+
+    private final byte[] body;
+
+    private final Map<String, Object> headers;
+
+    private final boolean redelivered;
+
+    private final Date timestamp;
+
+    private final String routingKey;
+
+    private String bodyAsString;
+
+    /**
+     * @param id The message id
+     * @param body The message body
+     */
+    public BasicMessage(String id, String body) {
+        this(id, body.getBytes(StandardCharsets.UTF_8));
+        this.bodyAsString = body;
+    }
+
+    /**
+     * @param id The message id
+     * @param body The message body
+     */
+    public BasicMessage(String id, byte[] body) {
+        this(id, body, Collections.emptyMap(), false, null, null);
+    }
+
+    /**
+     * @param id The message id
+     * @param body The message body
+     * @param headers The message headers
+     * @param redelivered Whether the message has been delivered before
+     * @param timestamp The time the message has been published or null if unknown
+     * @param routingKey The routing key of the message or null if unknown
+     */
+    public BasicMessage(
+            String id,
+            byte[] body,
+            Map<String, Object> headers,
+            boolean redelivered,
+            Date timestamp,
+            String routingKey
+    ) {
+        this.id = id;
+        this.body = body;
+        this.headers = Collections.unmodifiableMap(new HashMap<>(headers));
+        this.redelivered = redelivered;
+        this.timestamp = timestamp;
+        this.routingKey = routingKey;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String getBodyAsString() {
+        if (null == bodyAsString) {
+            bodyAsString = new String(body, StandardCharsets.UTF_8);
+        }
+        return bodyAsString;
+    }
+
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public boolean isRedelivered() {
+        return redelivered;
+    }
+
+    @Override
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.github.libgraviton.messaging;
+
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * A message received from a queue. The body and the headers are only read from the underlying broker message as soon as
+ * they are accessed, so consumers which drop a message early do not pay for decoding it.
+ */
+public interface Message {
+
+    String getId();
+
+    /**
+     * Gets the raw message body.
+     *
+     * @return The body
+     *
+     * @throws CannotConsumeMessage If the body cannot be read.
+     */
+    byte[] getBody() throws CannotConsumeMessage;
+
+    /**
+     * Gets the message body decoded as string. Binary bodies are decoded using UTF-8.
+     *
+     * @return The body
+     *
+     * @throws CannotConsumeMessage If the body cannot be read.
+     */
+    String getBodyAsString() throws CannotConsumeMessage;
+
+    /**
+     * Gets a stream on the raw message body.
+     *
+     * @return The body stream
+     *
+     * @throws CannotConsumeMessage If the body cannot be read.
+     */
+    InputStream getBodyAsStream() throws CannotConsumeMessage;
+
+    /**
+     * Gets the headers (AMQP) or properties (JMS) of the message.
+     *
+     * @return The headers, which cannot be modified.
+     *
+     * @throws CannotConsumeMessage If the headers cannot be read.
+     */
+    Map<String, Object> getHeaders() throws CannotConsumeMessage;
+
+    /**
+     * @return true if the message has been delivered before, but was not acknowledged.
+     */
+    boolean isRedelivered();
+
+    /**
+     * @return The time the message has been published or null if the publisher did not set it.
+     */
+    Date getTimestamp();
+
+    /**
+     * @return The routing key (AMQP) or the destination name (JMS) of the message or null if unknown.
+     */
+    String getRoutingKey();
+
+}
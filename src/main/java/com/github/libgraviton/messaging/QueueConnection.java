@@ -1,13 +1,27 @@
 package com.github.libgraviton.messaging;
 
+import com.github.libgraviton.messaging.codec.Codec;
 import com.github.libgraviton.messaging.config.ContextProperties;
 import com.github.libgraviton.messaging.config.PropertyUtil;
 import com.github.libgraviton.messaging.consumer.Consumer;
 import com.github.libgraviton.messaging.exception.*;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics.Gauge;
+import com.github.libgraviton.messaging.spool.PublishSpool;
+import com.github.libgraviton.messaging.spool.SpooledMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a connection to a queue of any queue system.
@@ -16,68 +30,124 @@ abstract public class QueueConnection {
 
     private static final Logger LOG = LoggerFactory.getLogger(QueueConnection.class);
 
+    /**
+     * How often a spooled message may be rejected on its own while the connection is open, before it is dropped.
+     */
+    private static final int MAX_SPOOL_REJECTIONS = 3;
+
     private final int connectionAttempts;
 
     private final double connectionAttemptsWait;
 
+    private final double connectionAttemptsMaxWait;
+
     protected final String queueName;
 
+    protected final MessagingMetrics metrics;
+
+    private final PublishSpool spool;
+
+    private final int spoolBatchSize;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile Thread drainer;
+
+    // Serializes opening the connection by open() and by the drainer.
+    private final ReentrantLock connectLock = new ReentrantLock();
+
+    // Set by close(), so the drainer does not open the connection again until open() is called.
+    private volatile boolean closed = false;
+
+    // The amount of consecutive rejections of the oldest spooled message, which is accessed by the drainer only.
+    private int spoolRejections = 0;
+
     private Consumer consumer;
 
     protected QueueConnection(Builder builder) {
         connectionAttempts = builder.connectionAttempts;
         connectionAttemptsWait = builder.connectionAttemptsWait;
+        connectionAttemptsMaxWait = builder.connectionAttemptsMaxWait;
         queueName = builder.queueName;
+        metrics = builder.metrics;
+        spool = builder.spool;
+        spoolBatchSize = builder.spoolBatchSize;
+        metrics.registerGauge(Gauge.IN_FLIGHT, this::getUnconfirmedCount);
+        metrics.registerGauge(Gauge.UNACKNOWLEDGED, this::getUnacknowledgedCount);
     }
 
     /**
      * Opens the connection. If the connection cannot be establishes, it waits for {@link #connectionAttemptsWait}
-     * seconds and then tries again until {@link #connectionAttempts} is reached.
+     * seconds (or longer with backoff) and then tries again until {@link #connectionAttempts} is reached. Each attempt and the established
+     * connection get recorded by the metrics. If a spool is defined and contains messages, they get published in the
+     * background as soon as the connection is established.
      *
      * @see Builder#connectionAttempts(int)
      * @see Builder#connectionAttemptsWait(double)
+     * @see Builder#connectionAttemptsMaxWait(double)
      *
      * @throws CannotConnectToQueue If connecting to the queue failed.
      */
     public void open() throws CannotConnectToQueue {
         int connectionAttempts = this.connectionAttempts;
+        int attempts = 0;
+        long start = System.nanoTime();
         LOG.info(String.format("Connecting to queue '%s'...", getConnectionName()));
-        while (connectionAttempts != 0 ) {
-            try {
-                openConnection();
-                break;
-            } catch (CannotConnectToQueue e) {
-                LOG.error(String.format("Unable to open to queue '%s': '%s'", getConnectionName(), e.getMessage()));
-                // Last try failed
-                if (1 == connectionAttempts) {
-                    throw e;
+        connectLock.lock();
+        try {
+            while (connectionAttempts != 0 ) {
+                attempts++;
+                try {
+                    connect(attempts, start);
+                    break;
+                } catch (CannotConnectToQueue e) {
+                    // Last try failed
+                    if (1 == connectionAttempts) {
+                        throw e;
+                    }
                 }
-            }
-            LOG.warn(String.format(
-                    "Connection to queue '%s' failed. Retrying in '%s' seconds.",
-                    getConnectionName(),
-                    connectionAttemptsWait
-            ));
-            try {
-                if (connectionAttemptsWait > 0) {
-                    Thread.sleep((long) (connectionAttemptsWait * 1000));
+                long wait = getRetryWait(attempts);
+                LOG.warn(String.format(
+                        "Connection to queue '%s' failed. Retrying in '%s' seconds.",
+                        getConnectionName(),
+                        wait / 1000.0
+                ));
+                try {
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warn(String.format("Thread sleep interrupted: %s", e.getMessage()));
+                }
+                // If we should not try endlessly decrease connectionAttempts, else do nothing to avoid int range overflow
+                if (connectionAttempts > 0) {
+                    connectionAttempts--;
                 }
-            } catch (InterruptedException e) {
-                LOG.warn(String.format("Thread sleep interrupted: %s", e.getMessage()));
             }
-            // If we should not try endlessly decrease connectionAttempts, else do nothing to avoid int range overflow
-            if (connectionAttempts > 0) {
-                connectionAttempts--;
+            closed = false;
+            if (null != spool) {
+                spool.setDraining(true);
             }
+        } finally {
+            connectLock.unlock();
         }
         LOG.info(String.format("Connection to queue '%s' successfully established.", getConnectionName()));
+        if (null != spool && !spool.isEmpty()) {
+            startDrainer();
+        }
     }
 
     /**
-     * Closes the connection
+     * Closes the connection. Stops publishing spooled messages, which are kept in the spool. Messages published
+     * afterwards are spooled as well, but not published before the connection gets opened again.
      */
     public void close() {
         LOG.info(String.format("Closing connection to queue '%s'...", getConnectionName()));
+        closed = true;
+        if (null != spool) {
+            spool.setDraining(false);
+        }
+        stopDrainer();
         consumer = null;
         try {
             closeConnection();
@@ -127,16 +197,31 @@ abstract public class QueueConnection {
      * Publishes a text message on the queue. If the queue has not yet been opened, it will be opened, the message published
      * and then closed again. If the queue has already been opened, it won't be closed after publishing the message.
      *
+     * If a spool is defined, the message is spooled instead of opening the queue and gets published in the background.
+     *
+     * @see Builder#spool(PublishSpool)
+     *
      * @param message The message to publish
      *
      * @throws CannotPublishMessage If the message cannot be published for some reason.
      */
     public void publish(String message) throws CannotPublishMessage {
         LOG.debug(String.format("Publishing text message on queue '%s': '%s", getConnectionName(), message));
+        if (isSpooling()) {
+            spool(Collections.singletonList(SpooledMessage.text(message)));
+            return;
+        }
         boolean wasClosed = false;
         try {
             wasClosed = openIfClosed();
-            publishMessage(message);
+            long start = System.nanoTime();
+            try {
+                publishMessage(message);
+            } catch (CannotPublishMessage e) {
+                metrics.publishFailed(1);
+                throw e;
+            }
+            metrics.messagesPublished(1, System.nanoTime() - start);
         } catch (CannotConnectToQueue e) {
             throw new CannotPublishMessage(message, e);
         } finally {
@@ -151,16 +236,71 @@ abstract public class QueueConnection {
      * Publishes a bytes message on the queue. If the queue has not yet been opened, it will be opened, the message published
      * and then closed again. If the queue has already been opened, it won't be closed after publishing the message.
      *
+     * If a spool is defined, the message is spooled instead of opening the queue and gets published in the background.
+     *
+     * @see Builder#spool(PublishSpool)
+     *
      * @param message The message to publish
      *
      * @throws CannotPublishMessage If the message cannot be published for some reason.
      */
     public void publish(byte[] message) throws CannotPublishMessage {
         LOG.debug(String.format("Publishing bytes message on queue '%s': '%s", getConnectionName(), new String(message)));
+        publish(message, (String) null);
+    }
+
+    /**
+     * Publishes an object encoded by a codec on the queue. The object is encoded straight into a pooled buffer, without
+     * converting it to a string first. The content type of the codec is sent along with the message, if the queue
+     * system supports it. Otherwise, this is the same as publishing the encoded object as bytes message.
+     *
+     * If a spool is defined, the encoded message is spooled instead of opening the queue and gets published in the
+     * background, but without its content type.
+     *
+     * @see #publish(byte[])
+     *
+     * @param message The object to publish
+     * @param codec The codec to encode the object with
+     * @param <T> The type of the object
+     *
+     * @throws CannotPublishMessage If the object cannot be encoded or published.
+     */
+    public <T> void publish(T message, Codec<T> codec) throws CannotPublishMessage {
+        LOG.debug(String.format(
+                "Publishing '%s' message on queue '%s'.",
+                codec.getContentType(),
+                getConnectionName()
+        ));
+        byte[] body;
+        try {
+            body = codec.encode(message);
+        } catch (IOException e) {
+            metrics.publishFailed(1);
+            throw new CannotPublishMessage(String.valueOf(message), e);
+        }
+        publish(body, codec.getContentType());
+    }
+
+    private void publish(byte[] message, String contentType) throws CannotPublishMessage {
+        if (isSpooling()) {
+            spool(Collections.singletonList(new SpooledMessage(message, false)));
+            return;
+        }
         boolean wasClosed = false;
         try {
             wasClosed = openIfClosed();
-            publishMessage(message);
+            long start = System.nanoTime();
+            try {
+                if (null == contentType) {
+                    publishMessage(message);
+                } else {
+                    publishMessage(message, contentType);
+                }
+            } catch (CannotPublishMessage e) {
+                metrics.publishFailed(1);
+                throw e;
+            }
+            metrics.messagesPublished(1, System.nanoTime() - start);
         } catch (CannotConnectToQueue e) {
             throw new CannotPublishMessage(new String(message), e);
         } finally {
@@ -171,6 +311,144 @@ abstract public class QueueConnection {
         LOG.info(String.format("Message successfully published on queue '%s'.", getConnectionName()));
     }
 
+    /**
+     * Publishes a bytes message on the queue without waiting for the queue system to confirm it. The returned future
+     * completes as soon as the queue system confirmed the message, or exceptionally with a {@link CannotPublishMessage}
+     * if the message cannot be published. Note that this method may still block if the queue system limits the amount
+     * of unconfirmed messages. If the queue has not yet been opened, it will be opened and closed again as soon as the
+     * message has been confirmed.
+     *
+     * If a spool is defined, the message is spooled instead of opening the queue and the future completes as soon as
+     * the message has been spooled.
+     *
+     * @param message The message to publish
+     *
+     * @return The future confirmation of the message
+     */
+    public CompletableFuture<Void> publishAsync(byte[] message) {
+        LOG.debug(String.format("Publishing bytes message asynchronously on queue '%s'.", getConnectionName()));
+        if (isSpooling()) {
+            try {
+                spool(Collections.singletonList(new SpooledMessage(message, false)));
+                return CompletableFuture.completedFuture(null);
+            } catch (CannotPublishMessage e) {
+                return failedFuture(e);
+            }
+        }
+        boolean wasClosed = false;
+        CompletableFuture<Void> confirmation;
+        long start;
+        try {
+            wasClosed = openIfClosed();
+            start = System.nanoTime();
+            confirmation = publishMessageAsync(message);
+        } catch (CannotConnectToQueue e) {
+            return failedFuture(new CannotPublishMessage(new String(message), e));
+        } catch (CannotPublishMessage e) {
+            metrics.publishFailed(1);
+            if (wasClosed) {
+                close();
+            }
+            return failedFuture(e);
+        }
+        confirmation.whenComplete((result, e) -> {
+            if (null == e) {
+                metrics.messagesPublished(1, System.nanoTime() - start);
+            } else {
+                metrics.publishFailed(1);
+            }
+        });
+        if (wasClosed) {
+            // Confirmations may be completed by the queue system's I/O thread, which must not close its own connection.
+            confirmation.whenCompleteAsync((result, e) -> close());
+        }
+        return confirmation;
+    }
+
+    /**
+     * Publishes a batch of text messages on the queue. The connection is checked only once for the whole batch. If the
+     * queue has not yet been opened, it will be opened, the messages published and then closed again.
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published for some reason. Note that some of the messages
+     *                              may have been published nevertheless, depending on the queue system.
+     *
+     * @see #publish(String)
+     */
+    public void publishAllText(Collection<String> messages) throws CannotPublishMessage {
+        LOG.debug(String.format("Publishing '%d' text messages on queue '%s'.", messages.size(), getConnectionName()));
+        if (isSpooling()) {
+            List<SpooledMessage> spooledMessages = new ArrayList<>(messages.size());
+            for (String message : messages) {
+                spooledMessages.add(SpooledMessage.text(message));
+            }
+            spool(spooledMessages);
+            return;
+        }
+        boolean wasClosed = false;
+        try {
+            wasClosed = openIfClosed();
+            long start = System.nanoTime();
+            try {
+                publishTextMessages(messages);
+            } catch (CannotPublishMessage e) {
+                metrics.publishFailed(messages.size());
+                throw e;
+            }
+            metrics.messagesPublished(messages.size(), System.nanoTime() - start);
+        } catch (CannotConnectToQueue e) {
+            throw new CannotPublishMessage(describeBatch(messages), e);
+        } finally {
+            if (wasClosed) {
+                close();
+            }
+        }
+        LOG.info(String.format("'%d' messages successfully published on queue '%s'.", messages.size(), getConnectionName()));
+    }
+
+    /**
+     * Publishes a batch of bytes messages on the queue. The connection is checked only once for the whole batch. If the
+     * queue has not yet been opened, it will be opened, the messages published and then closed again.
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published for some reason. Note that some of the messages
+     *                              may have been published nevertheless, depending on the queue system.
+     *
+     * @see #publish(byte[])
+     */
+    public void publishAll(Collection<byte[]> messages) throws CannotPublishMessage {
+        LOG.debug(String.format("Publishing '%d' bytes messages on queue '%s'.", messages.size(), getConnectionName()));
+        if (isSpooling()) {
+            List<SpooledMessage> spooledMessages = new ArrayList<>(messages.size());
+            for (byte[] message : messages) {
+                spooledMessages.add(new SpooledMessage(message, false));
+            }
+            spool(spooledMessages);
+            return;
+        }
+        boolean wasClosed = false;
+        try {
+            wasClosed = openIfClosed();
+            long start = System.nanoTime();
+            try {
+                publishMessages(messages);
+            } catch (CannotPublishMessage e) {
+                metrics.publishFailed(messages.size());
+                throw e;
+            }
+            metrics.messagesPublished(messages.size(), System.nanoTime() - start);
+        } catch (CannotConnectToQueue e) {
+            throw new CannotPublishMessage(describeBatch(messages), e);
+        } finally {
+            if (wasClosed) {
+                close();
+            }
+        }
+        LOG.info(String.format("'%d' messages successfully published on queue '%s'.", messages.size(), getConnectionName()));
+    }
+
     /**
      * Opens the connection if it's currently closed.
      *
@@ -191,6 +469,26 @@ abstract public class QueueConnection {
         return false;
     }
 
+    /**
+     * Gets the amount of published messages which have not been confirmed by the queue system yet. Queue systems which
+     * confirm messages asynchronously should override this.
+     *
+     * @return The amount of messages
+     */
+    public long getUnconfirmedCount() {
+        return 0;
+    }
+
+    /**
+     * Gets the amount of received messages which have not been acknowledged to the queue system yet. Queue systems
+     * which keep track of them should override this.
+     *
+     * @return The amount of messages
+     */
+    public long getUnacknowledgedCount() {
+        return 0;
+    }
+
     /**
      * Gets the connection's name, which is used in log messages.
      *
@@ -239,6 +537,388 @@ abstract public class QueueConnection {
      */
     abstract protected void publishMessage(byte[] message) throws CannotPublishMessage;
 
+    /**
+     * Does the queue system specific logic to publish a bytes message of a given content type on the queue. By
+     * default, the content type is dropped. Queue systems which are able to send it along with the message should
+     * override this.
+     *
+     * @param message The message to publish
+     * @param contentType The MIME type of the message
+     *
+     * @throws CannotPublishMessage If the message cannot be published.
+     */
+    protected void publishMessage(byte[] message, String contentType) throws CannotPublishMessage {
+        publishMessage(message);
+    }
+
+    /**
+     * Does the queue system specific logic to publish a bytes message on the queue without waiting for the queue system
+     * to confirm it. By default, the message gets published synchronously. Queue systems which support asynchronous
+     * confirmations should override this.
+     *
+     * @param message The message to publish
+     *
+     * @return A future which completes as soon as the queue system confirmed the message.
+     *
+     * @throws CannotPublishMessage If the message cannot be published.
+     */
+    protected CompletableFuture<Void> publishMessageAsync(byte[] message) throws CannotPublishMessage {
+        publishMessage(message);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Does the queue system specific logic to publish a batch of text messages on the queue. By default, each message is
+     * published on its own. Queue systems which are able to publish batches more efficiently should override this.
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published.
+     */
+    protected void publishTextMessages(Collection<String> messages) throws CannotPublishMessage {
+        for (String message : messages) {
+            publishMessage(message);
+        }
+    }
+
+    /**
+     * Does the queue system specific logic to publish a batch of bytes messages on the queue. By default, each message
+     * is published on its own. Queue systems which are able to publish batches more efficiently should override this.
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published.
+     */
+    protected void publishMessages(Collection<byte[]> messages) throws CannotPublishMessage {
+        for (byte[] message : messages) {
+            publishMessage(message);
+        }
+    }
+
+    /**
+     * Creates a future which is already completed exceptionally.
+     *
+     * @param e The exception
+     * @param <T> The future's result type
+     *
+     * @return The failed future
+     */
+    protected static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Describes a batch of messages for exception messages, since the messages themselves may be huge.
+     *
+     * @param messages The batch
+     *
+     * @return The batch description
+     */
+    protected static String describeBatch(Collection<?> messages) {
+        return String.format("batch of %d messages", messages.size());
+    }
+
+    /**
+     * Does a single connection attempt and records it by the metrics.
+     *
+     * @param attempts The amount of attempts so far, including this one
+     * @param start The time the first attempt started
+     *
+     * @throws CannotConnectToQueue If the connection cannot be established.
+     */
+    private void connect(int attempts, long start) throws CannotConnectToQueue {
+        long attemptStart = System.nanoTime();
+        try {
+            openConnection();
+        } catch (CannotConnectToQueue e) {
+            metrics.connectionAttempt(System.nanoTime() - attemptStart, false);
+            LOG.error(String.format("Unable to open to queue '%s': '%s'", getConnectionName(), e.getMessage()));
+            throw e;
+        }
+        metrics.connectionAttempt(System.nanoTime() - attemptStart, true);
+        metrics.connectionOpened(attempts, System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the time to wait after a given amount of consecutive failures. If the max. wait exceeds the wait, the wait
+     * doubles with each failure up to the max. wait. A random jitter of up to half of it spreads the retries of
+     * connections which failed at the same time, e.g. due to a restart of the queue system.
+     *
+     * @see Builder#connectionAttemptsWait(double)
+     * @see Builder#connectionAttemptsMaxWait(double)
+     *
+     * @param failures The amount of consecutive failures
+     *
+     * @return The time to wait in milliseconds
+     */
+    protected long getRetryWait(int failures) {
+        if (connectionAttemptsMaxWait <= connectionAttemptsWait) {
+            return (long) (connectionAttemptsWait * 1000);
+        }
+        double wait = Math.min(
+                connectionAttemptsMaxWait,
+                connectionAttemptsWait * Math.pow(2, Math.min(failures - 1, 30))
+        );
+        return (long) ((wait - ThreadLocalRandom.current().nextDouble() * wait / 2) * 1000);
+    }
+
+    /**
+     * Checks whether messages have to be spooled. This is the case as long as the connection is closed and as long as
+     * the spool contains messages, so the order of the messages is kept.
+     *
+     * @return true if messages have to be spooled, otherwise false.
+     */
+    private boolean isSpooling() {
+        return null != spool && (!isOpen() || !spool.isEmpty());
+    }
+
+    /**
+     * Appends messages to the spool and makes sure that the spool gets drained, unless the connection has been closed.
+     *
+     * @param messages The messages
+     *
+     * @throws CannotPublishMessage If a message cannot be spooled.
+     */
+    private void spool(List<SpooledMessage> messages) throws CannotPublishMessage {
+        for (SpooledMessage message : messages) {
+            spool.append(message);
+            // Started right away, since appending the next message may have to wait until the drainer made room.
+            startDrainer();
+        }
+        LOG.info(String.format(
+                "'%d' messages spooled for queue '%s', since it is not available.",
+                messages.size(),
+                getConnectionName()
+        ));
+    }
+
+    private void startDrainer() {
+        if (!closed && draining.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::drainSpool, String.format("spool-drainer-%s", getConnectionName()));
+            thread.setDaemon(true);
+            drainer = thread;
+            thread.start();
+        }
+    }
+
+    private void stopDrainer() {
+        Thread thread = drainer;
+        if (null != thread && Thread.currentThread() != thread) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Publishes the spooled messages in batches, until the spool is empty or the connection gets closed. Opens the
+     * connection if needed, regardless of the max. amount of connection attempts.
+     *
+     * A message which is rejected on its own while the connection stays open, e.g. since it exceeds the max. message
+     * size of the queue system, is retried {@link #MAX_SPOOL_REJECTIONS} times and then dropped, so it does not hold
+     * back the messages spooled after it.
+     */
+    private void drainSpool() {
+        Thread thread = Thread.currentThread();
+        do {
+            try {
+                int attempts = 0;
+                int failures = 0;
+                long start = System.nanoTime();
+                while (!thread.isInterrupted() && !closed && !spool.isEmpty()) {
+                    boolean succeeded;
+                    if (isOpen()) {
+                        succeeded = drainBatch();
+                        attempts = 0;
+                    } else {
+                        if (0 == attempts) {
+                            start = System.nanoTime();
+                        }
+                        succeeded = reconnect(++attempts, start);
+                    }
+                    failures = succeeded ? 0 : failures + 1;
+                    if (failures > 0) {
+                        long wait = getRetryWait(failures);
+                        LOG.warn(String.format(
+                                "Publishing spooled messages on queue '%s' failed. Retrying in '%s' seconds.",
+                                getConnectionName(),
+                                wait / 1000.0
+                        ));
+                        Thread.sleep(wait);
+                    }
+                }
+            } catch (InterruptedException e) {
+                thread.interrupt();
+            } finally {
+                draining.set(false);
+            }
+            // A message may have been spooled right before the flag has been reset, without starting a drainer.
+        } while (!thread.isInterrupted() && !closed && !spool.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Does a single connection attempt for the drainer, unless the connection has been opened or closed in the
+     * meantime.
+     *
+     * @param attempts The amount of attempts so far, including this one
+     * @param start The time the first attempt started
+     *
+     * @return true if the connection is open or must not be opened anymore, otherwise false.
+     *
+     * @throws InterruptedException If the drainer gets interrupted while waiting for a concurrent open().
+     */
+    private boolean reconnect(int attempts, long start) throws InterruptedException {
+        connectLock.lockInterruptibly();
+        try {
+            if (closed || isOpen()) {
+                return true;
+            }
+            connect(attempts, start);
+            if (closed) {
+                // close() has been called while connecting and may have missed the new connection.
+                closeConnection();
+                return true;
+            }
+        } catch (CannotConnectToQueue e) {
+            return false;
+        } catch (CannotCloseConnection e) {
+            LOG.warn(String.format(
+                    "Cannot successfully close queue '%s': '%s'",
+                    getConnectionName(),
+                    e.getCause().getMessage()
+            ));
+            return true;
+        } finally {
+            connectLock.unlock();
+        }
+        spoolRejections = 0;
+        LOG.info(String.format("Connection to queue '%s' successfully established.", getConnectionName()));
+        return true;
+    }
+
+    /**
+     * Publishes the oldest spooled messages and removes them from the spool. Consecutive messages of the same type are
+     * published as a batch.
+     *
+     * @return true if the messages have been published or a rejected message has been dropped, otherwise false.
+     */
+    private boolean drainBatch() {
+        List<SpooledMessage> batch = spool.peek(spoolBatchSize);
+        int from = 0;
+        while (from < batch.size()) {
+            boolean text = batch.get(from).isText();
+            int to = from + 1;
+            while (to < batch.size() && batch.get(to).isText() == text) {
+                to++;
+            }
+            List<SpooledMessage> run = batch.subList(from, to);
+            try {
+                publishSpooled(run, text);
+            } catch (CannotPublishMessage e) {
+                LOG.warn(String.format(
+                        "Cannot publish spooled messages on queue '%s': '%s'",
+                        getConnectionName(),
+                        e.getMessage()
+                ));
+                if (!isOpen()) {
+                    return false;
+                }
+                // The connection is fine, so the run may contain a message which can never be published.
+                return 1 == run.size() ? rejectSpooled(run.get(0), e) : drainSeparately(run);
+            }
+            spool.remove(run.size());
+            spoolRejections = 0;
+            from = to;
+        }
+        LOG.info(String.format(
+                "'%d' spooled messages successfully published on queue '%s'.",
+                batch.size(),
+                getConnectionName()
+        ));
+        return true;
+    }
+
+    /**
+     * Publishes the messages of a failed run one by one, so the messages spooled before a rejected message get
+     * published nevertheless.
+     *
+     * @param run The spooled messages, which are all of the same type.
+     *
+     * @return true if the messages have been published or dropped, otherwise false.
+     */
+    private boolean drainSeparately(List<SpooledMessage> run) {
+        for (SpooledMessage message : run) {
+            try {
+                publishSpooled(Collections.singletonList(message), message.isText());
+            } catch (CannotPublishMessage e) {
+                return isOpen() && rejectSpooled(message, e);
+            }
+            spool.remove(1);
+            spoolRejections = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Counts a rejection of the oldest spooled message and drops it, once it has been rejected too often.
+     *
+     * @param message The oldest spooled message
+     * @param e The rejection
+     *
+     * @return true if the message has been dropped, otherwise false.
+     */
+    private boolean rejectSpooled(SpooledMessage message, CannotPublishMessage e) {
+        if (++spoolRejections < MAX_SPOOL_REJECTIONS) {
+            return false;
+        }
+        LOG.error(String.format(
+                "Dropping spooled message '%s' on queue '%s', since it has been rejected '%d' times: '%s'",
+                message.getBodyAsString(),
+                getConnectionName(),
+                spoolRejections,
+                e.getMessage()
+        ));
+        spool.remove(1);
+        spoolRejections = 0;
+        return true;
+    }
+
+    /**
+     * Publishes spooled messages of the same type as a batch and records it by the metrics.
+     *
+     * @param run The spooled messages
+     * @param text Whether the messages are text messages
+     *
+     * @throws CannotPublishMessage If the messages cannot be published.
+     */
+    private void publishSpooled(List<SpooledMessage> run, boolean text) throws CannotPublishMessage {
+        long start = System.nanoTime();
+        try {
+            if (text) {
+                List<String> messages = new ArrayList<>(run.size());
+                for (SpooledMessage message : run) {
+                    messages.add(message.getBodyAsString());
+                }
+                publishTextMessages(messages);
+            } else {
+                List<byte[]> messages = new ArrayList<>(run.size());
+                for (SpooledMessage message : run) {
+                    messages.add(message.getBody());
+                }
+                publishMessages(messages);
+            }
+        } catch (CannotPublishMessage e) {
+            metrics.publishFailed(run.size());
+            throw e;
+        }
+        metrics.messagesPublished(run.size(), System.nanoTime() - start);
+    }
+
     /**
      * Does the queue specific logic to close the connection.
      *
@@ -262,6 +942,14 @@ abstract public class QueueConnection {
 
         private double connectionAttemptsWait = 1;
 
+        private double connectionAttemptsMaxWait = 0;
+
+        private MessagingMetrics metrics = MessagingMetrics.NOOP;
+
+        private PublishSpool spool = null;
+
+        private int spoolBatchSize = 100;
+
         /**
          * Sets the host where RabbitMQ is accessible.
          *
@@ -348,6 +1036,70 @@ abstract public class QueueConnection {
             return (ConcreteBuilder) this;
         }
 
+        /**
+         * Sets the max. amount of seconds to wait between each connection attempt. If it exceeds the
+         * connectionAttemptsWait, the wait doubles with each failed attempt up to this max. wait, randomly shortened by
+         * up to a half. Default is 0, which always waits for connectionAttemptsWait seconds.
+         *
+         * @see #connectionAttemptsWait(double)
+         *
+         * @param connectionAttemptsMaxWait The max. amount of seconds to wait.
+         *
+         * @return self
+         */
+        public ConcreteBuilder connectionAttemptsMaxWait(double connectionAttemptsMaxWait) {
+            this.connectionAttemptsMaxWait = connectionAttemptsMaxWait;
+            return (ConcreteBuilder) this;
+        }
+
+        /**
+         * Sets the metrics which record the publishments, consumptions, acknowledgments and connection attempts.
+         * Default is {@link MessagingMetrics#NOOP}, which records nothing.
+         *
+         * @param metrics The metrics
+         *
+         * @return self
+         */
+        public ConcreteBuilder metrics(MessagingMetrics metrics) {
+            this.metrics = metrics;
+            return (ConcreteBuilder) this;
+        }
+
+        /**
+         * Sets the spool, which keeps the messages published while the connection is closed. Instead of opening the
+         * connection, publishing appends the messages to the spool and returns immediately. A background thread opens
+         * the connection and publishes the spooled messages in order, regardless of the connection attempts. Default is
+         * no spool, which opens the connection on the publishing thread.
+         *
+         * Use a {@link com.github.libgraviton.messaging.spool.MemorySpool} to bridge short outages in a bounded buffer
+         * or a {@link com.github.libgraviton.messaging.strategy.journal.JournalSpool} to keep the messages across
+         * restarts.
+         *
+         * Note that spooled messages may be published twice, if the connection fails in the middle of a batch.
+         *
+         * @param spool The spool
+         *
+         * @return self
+         */
+        public ConcreteBuilder spool(PublishSpool spool) {
+            this.spool = spool;
+            return (ConcreteBuilder) this;
+        }
+
+        /**
+         * Sets the max. amount of spooled messages published at once. Default is 100.
+         *
+         * @see #spool(PublishSpool)
+         *
+         * @param spoolBatchSize The max. amount of messages
+         *
+         * @return self
+         */
+        public ConcreteBuilder spoolBatchSize(int spoolBatchSize) {
+            this.spoolBatchSize = spoolBatchSize;
+            return (ConcreteBuilder) this;
+        }
+
         /**
          * Applies property values of a given {@link Properties}.
          *
@@ -364,6 +1116,9 @@ abstract public class QueueConnection {
                     .connectionAttempts(PropertyUtil.getIntger(properties, "connection.attempts", connectionAttempts))
                     .connectionAttemptsWait(
                             PropertyUtil.getDouble(properties, "connection.attempts.wait", connectionAttemptsWait)
+                    )
+                    .connectionAttemptsMaxWait(
+                            PropertyUtil.getDouble(properties, "connection.attempts.wait.max", connectionAttemptsMaxWait)
                     );
             return (ConcreteBuilder) this;
         }
@@ -0,0 +1,134 @@
+package com.github.libgraviton.messaging.batch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The frame format of a micro-batch, which packs several logical messages into one physical message. The frame starts
+ * with the amount of parts, followed by each part prefixed by its length. All numbers are big-endian 4 byte integers.
+ *
+ * Publishers mark a micro-batch by the {@link #BATCH_SIZE} header (AMQP) or property (JMS), which holds the amount of
+ * parts. Each part is dispatched to the consumer with an id of its own, which is derived from the id of the physical
+ * message.
+ */
+public final class BatchEnvelope {
+
+    /**
+     * The name of the header or property which marks a micro-batch and holds its amount of parts.
+     */
+    public static final String BATCH_SIZE = "batchSize";
+
+    /**
+     * The amount of bytes a part adds to a micro-batch in addition to its body.
+     */
+    public static final int PART_OVERHEAD = 4;
+
+    /**
+     * The amount of bytes of the frame header.
+     */
+    public static final int HEADER_SIZE = 4;
+
+    private static final char PART_SEPARATOR = '#';
+
+    private BatchEnvelope() {
+    }
+
+    /**
+     * Unpacks the parts of a micro-batch.
+     *
+     * @param frame The physical message body
+     *
+     * @return The parts in the order they have been published
+     *
+     * @throws IOException If the frame is truncated or corrupt.
+     */
+    public static List<byte[]> unpack(byte[] frame) throws IOException {
+        if (frame.length < HEADER_SIZE) {
+            throw new IOException(String.format("Micro-batch of '%d' bytes is truncated.", frame.length));
+        }
+        int count = readInt(frame, 0);
+        if (count < 0 || count > (frame.length - HEADER_SIZE) / PART_OVERHEAD) {
+            throw new IOException(String.format(
+                    "Micro-batch of '%d' bytes cannot hold '%d' parts.",
+                    frame.length,
+                    count
+            ));
+        }
+        List<byte[]> parts = new ArrayList<>(count);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (frame.length - position < PART_OVERHEAD) {
+                throw new IOException(String.format("Part '%d' of micro-batch is truncated.", i));
+            }
+            int length = readInt(frame, position);
+            position += PART_OVERHEAD;
+            if (length < 0 || frame.length - position < length) {
+                throw new IOException(String.format("Part '%d' of micro-batch is truncated.", i));
+            }
+            byte[] part = new byte[length];
+            System.arraycopy(frame, position, part, 0, length);
+            parts.add(part);
+            position += length;
+        }
+        return parts;
+    }
+
+    /**
+     * Gets the id of a part of a micro-batch.
+     *
+     * @param messageId The id of the physical message
+     * @param index The index of the part
+     *
+     * @return The part id
+     */
+    public static String partId(String messageId, int index) {
+        return messageId + PART_SEPARATOR + index;
+    }
+
+    /**
+     * Gets the id of the physical message a part belongs to.
+     *
+     * @param partId The part id
+     *
+     * @return The id of the physical message or null if the id is not a part id.
+     */
+    public static String messageId(String partId) {
+        int separator = partId.lastIndexOf(PART_SEPARATOR);
+        return separator < 0 ? null : partId.substring(0, separator);
+    }
+
+    /**
+     * Gets the index of a part within its micro-batch.
+     *
+     * @param partId The part id
+     *
+     * @return The index or -1 if the id is not a valid part id.
+     */
+    public static int partIndex(String partId) {
+        int separator = partId.lastIndexOf(PART_SEPARATOR);
+        if (separator < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(partId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static void writeInt(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int position) {
+        return (buffer[position] & 0xff) << 24
+                | (buffer[position + 1] & 0xff) << 16
+                | (buffer[position + 2] & 0xff) << 8
+                | buffer[position + 3] & 0xff;
+    }
+
+}
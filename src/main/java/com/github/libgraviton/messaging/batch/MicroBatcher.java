@@ -0,0 +1,234 @@
+package com.github.libgraviton.messaging.batch;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Packs small messages into micro-batches (see {@link BatchEnvelope}), so the per-message overhead of the queue system
+ * is paid once per batch. A batch gets flushed as soon as the next message would exceed the max. batch size, or once
+ * the linger time elapsed since its first message has been added.
+ *
+ * The batch is kept in a buffer of the max. batch size, which is reused for all batches. Only the exact-size frame
+ * handed over to the flusher is allocated per batch.
+ *
+ * If a flush fails, the batch is kept and flushed again with the next message or after the retry wait, which grows
+ * with each consecutive failure. Closing the batcher flushes the pending batch a last time and drops it if this fails.
+ *
+ * Scheduled flushes run on a timer thread of the batcher, so a slow flush does not delay the batches of other
+ * connections. The thread is started with the first batch and stopped as soon as the batcher gets closed.
+ */
+public class MicroBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final int maxBytes;
+
+    private final long linger;
+
+    private final String connectionName;
+
+    private final Flusher flusher;
+
+    private final IntToLongFunction retryWait;
+
+    private final byte[] buffer;
+
+    private int size = BatchEnvelope.HEADER_SIZE;
+
+    private int count = 0;
+
+    private int failures = 0;
+
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param maxBytes The max. size of a batch in bytes, including the frame overhead
+     * @param linger The max. amount of milliseconds a message waits for its batch to be flushed
+     * @param connectionName The connection name, which is used in log messages.
+     * @param flusher Publishes the batches
+     */
+    public MicroBatcher(int maxBytes, long linger, String connectionName, Flusher flusher) {
+        this(maxBytes, linger, connectionName, flusher, failures -> linger);
+    }
+
+    /**
+     * @param maxBytes The max. size of a batch in bytes, including the frame overhead
+     * @param linger The max. amount of milliseconds a message waits for its batch to be flushed
+     * @param connectionName The connection name, which is used in log messages.
+     * @param flusher Publishes the batches
+     * @param retryWait Gets the amount of milliseconds to wait before flushing again after a given amount of
+     *                  consecutive failed scheduled flushes
+     */
+    public MicroBatcher(
+            int maxBytes,
+            long linger,
+            String connectionName,
+            Flusher flusher,
+            IntToLongFunction retryWait
+    ) {
+        this.maxBytes = maxBytes;
+        this.linger = linger;
+        this.connectionName = connectionName;
+        this.flusher = flusher;
+        this.retryWait = retryWait;
+        buffer = new byte[maxBytes];
+    }
+
+    /**
+     * Checks whether a message fits into a batch at all. Bigger messages have to be published on their own, after the
+     * pending batch has been flushed.
+     *
+     * @param length The length of the message in bytes
+     *
+     * @return true if the message can be batched, otherwise false.
+     */
+    public boolean accepts(int length) {
+        return length <= maxBytes - BatchEnvelope.HEADER_SIZE - BatchEnvelope.PART_OVERHEAD;
+    }
+
+    /**
+     * Adds a message to the pending batch. Flushes the pending batch before if the message does not fit into it.
+     *
+     * @param message The message
+     *
+     * @throws CannotPublishMessage If the message does not fit into a batch or the pending batch cannot be flushed. In
+     *                              the latter case, the message has not been added.
+     */
+    public synchronized void add(byte[] message) throws CannotPublishMessage {
+        if (!accepts(message.length)) {
+            throw new CannotPublishMessage(
+                    new String(message),
+                    String.format(
+                            "Message of '%d' bytes exceeds the micro-batch size of '%d' bytes.",
+                            message.length,
+                            maxBytes
+                    )
+            );
+        }
+        if (maxBytes - size < BatchEnvelope.PART_OVERHEAD + message.length) {
+            flush();
+        }
+        BatchEnvelope.writeInt(buffer, size, message.length);
+        System.arraycopy(message, 0, buffer, size + BatchEnvelope.PART_OVERHEAD, message.length);
+        size += BatchEnvelope.PART_OVERHEAD + message.length;
+        count++;
+        if (null == scheduledFlush) {
+            scheduleFlush(linger);
+        }
+    }
+
+    /**
+     * Flushes the pending batch, if there is one.
+     *
+     * @throws CannotPublishMessage If the batch cannot be published. The batch is kept in this case and the next flush
+     *                              is still scheduled.
+     */
+    public synchronized void flush() throws CannotPublishMessage {
+        if (0 == count) {
+            cancelScheduledFlush();
+            return;
+        }
+        BatchEnvelope.writeInt(buffer, 0, count);
+        flusher.flush(Arrays.copyOf(buffer, size), count);
+        cancelScheduledFlush();
+        failures = 0;
+        LOG.debug(String.format("Micro-batch of '%d' messages published on queue '%s'.", count, connectionName));
+        size = BatchEnvelope.HEADER_SIZE;
+        count = 0;
+    }
+
+    /**
+     * Flushes the pending batch and drops it if it cannot be published. Stops the timer thread, which gets started
+     * again if further messages are added.
+     */
+    public synchronized void close() {
+        cancelScheduledFlush();
+        if (null != scheduler) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        failures = 0;
+        try {
+            flush();
+        } catch (CannotPublishMessage e) {
+            LOG.error(String.format(
+                    "Micro-batch of '%d' messages cannot be published on queue '%s' and got dropped: '%s'",
+                    count,
+                    connectionName,
+                    e.getMessage()
+            ));
+            size = BatchEnvelope.HEADER_SIZE;
+            count = 0;
+        }
+    }
+
+    /**
+     * Gets the amount of messages in the pending batch.
+     *
+     * @return The amount of messages
+     */
+    public synchronized int getPendingCount() {
+        return count;
+    }
+
+    private synchronized void scheduledFlush() {
+        scheduledFlush = null;
+        try {
+            flush();
+        } catch (CannotPublishMessage e) {
+            long wait = retryWait.applyAsLong(++failures);
+            LOG.warn(String.format(
+                    "Micro-batch of '%d' messages cannot be published on queue '%s'. Retrying in '%s' seconds: '%s'",
+                    count,
+                    connectionName,
+                    wait / 1000.0,
+                    e.getMessage()
+            ));
+            scheduleFlush(wait);
+        }
+    }
+
+    private void scheduleFlush(long delay) {
+        if (null == scheduler) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, String.format("micro-batcher-%s", connectionName));
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduledFlush = scheduler.schedule(this::scheduledFlush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledFlush() {
+        if (null != scheduledFlush) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Publishes a micro-batch.
+     */
+    public interface Flusher {
+
+        /**
+         * @param batch The framed batch
+         * @param count The amount of messages in the batch
+         *
+         * @throws CannotPublishMessage If the batch cannot be published.
+         */
+        void flush(byte[] batch, int count) throws CannotPublishMessage;
+
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.github.libgraviton.messaging.batch;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the parts of micro-batches which have not been acknowledged yet, so the physical message gets
+ * acknowledged as soon as all of its parts have been acknowledged. Acknowledging a part twice has no effect, even if its
+ * micro-batch has already been completed or removed.
+ */
+public class PendingBatches {
+
+    private final ConcurrentMap<String, BitSet> batches = new ConcurrentHashMap<>();
+
+    /**
+     * Starts tracking the parts of a micro-batch.
+     *
+     * @param messageId The id of the physical message
+     * @param count The amount of parts
+     */
+    public void register(String messageId, int count) {
+        BitSet pending = new BitSet(count);
+        pending.set(0, count);
+        batches.put(messageId, pending);
+    }
+
+    /**
+     * Marks a part as acknowledged.
+     *
+     * @param partId The part id
+     *
+     * @return The id of the physical message if this was its last pending part, otherwise null. If the id is not a part
+     *         id, it is returned as is, since it is the id of a physical message.
+     */
+    public String acknowledge(String partId) {
+        String messageId = BatchEnvelope.messageId(partId);
+        int index = BatchEnvelope.partIndex(partId);
+        if (null == messageId || index < 0) {
+            return partId;
+        }
+        boolean[] completed = new boolean[1];
+        batches.computeIfPresent(messageId, (id, pending) -> {
+            pending.clear(index);
+            completed[0] = pending.isEmpty();
+            return completed[0] ? null : pending;
+        });
+        return completed[0] ? messageId : null;
+    }
+
+    /**
+     * Stops tracking a micro-batch, e.g. because its physical message got acknowledged anyway.
+     *
+     * @param messageId The id of the physical message
+     */
+    public void remove(String messageId) {
+        batches.remove(messageId);
+    }
+
+    /**
+     * @return The amount of micro-batches with pending parts
+     */
+    public int size() {
+        return batches.size();
+    }
+
+}
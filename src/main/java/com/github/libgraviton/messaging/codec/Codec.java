@@ -0,0 +1,77 @@
+package com.github.libgraviton.messaging.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serializes objects to message bodies and back, e.g. with a JSON mapper. The content type of a codec is sent along with
+ * each message it encoded.
+ *
+ * Implementations must be thread safe, since a single instance is used by all publishing and consuming threads.
+ *
+ * @see com.github.libgraviton.messaging.QueueConnection#publish(Object, Codec)
+ * @see com.github.libgraviton.messaging.consumer.TypedConsumer
+ *
+ * @param <T> The type of the objects
+ */
+public interface Codec<T> {
+
+    /**
+     * Gets the MIME type of the encoded objects, e.g. 'application/json'.
+     *
+     * @return The content type
+     */
+    String getContentType();
+
+    /**
+     * Encodes an object.
+     *
+     * @param object The object to encode
+     * @param out The stream to write the encoded object to
+     *
+     * @throws IOException If the object cannot be encoded.
+     */
+    void encode(T object, OutputStream out) throws IOException;
+
+    /**
+     * Decodes an object from a part of a byte array.
+     *
+     * @param data The encoded object
+     * @param offset The offset of the first byte of the encoded object
+     * @param length The amount of bytes of the encoded object
+     *
+     * @return The object
+     *
+     * @throws IOException If the data cannot be decoded.
+     */
+    T decode(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Encodes an object into the pooled buffer of the current thread, so only the returned array is allocated.
+     *
+     * @param object The object to encode
+     *
+     * @return The encoded object
+     *
+     * @throws IOException If the object cannot be encoded.
+     */
+    default byte[] encode(T object) throws IOException {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        encode(object, buffer);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decodes an object.
+     *
+     * @param data The encoded object
+     *
+     * @return The object
+     *
+     * @throws IOException If the data cannot be decoded.
+     */
+    default T decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.github.libgraviton.messaging.codec;
+
+import com.github.libgraviton.messaging.compression.BufferPool;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An output stream writing to the pooled buffer of the current thread. Unlike a
+ * {@link java.io.ByteArrayOutputStream}, it is not synchronized and its buffer is reused by the next encoding on the
+ * same thread, so the buffer must not be used anymore as soon as the next one has been acquired.
+ */
+public class EncodeBuffer extends OutputStream {
+
+    private static final BufferPool BUFFERS = new BufferPool(1024 * 1024);
+
+    private byte[] buffer;
+
+    private int size = 0;
+
+    private EncodeBuffer(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Acquires the empty buffer of the current thread.
+     *
+     * @return The buffer
+     */
+    public static EncodeBuffer acquire() {
+        return new EncodeBuffer(BUFFERS.acquire(0));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, size, len);
+        size += len;
+    }
+
+    /**
+     * @return The amount of bytes written
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the underlying buffer, which holds the written bytes from 0 up to {@link #size()}.
+     *
+     * @return The buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return A copy of the written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.length - size < length) {
+            buffer = BUFFERS.grow(buffer, size + length);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.github.libgraviton.messaging.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes strings with UTF-8.
+ */
+public class StringCodec implements Codec<String> {
+
+    @Override
+    public String getContentType() {
+        return "text/plain; charset=UTF-8";
+    }
+
+    @Override
+    public void encode(String object, OutputStream out) throws IOException {
+        out.write(object.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String decode(byte[] data, int offset, int length) {
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+}
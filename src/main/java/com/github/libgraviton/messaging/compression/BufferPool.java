@@ -0,0 +1,67 @@
+package com.github.libgraviton.messaging.compression;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a scratch buffer per thread, so compressing and decompressing messages does not allocate a new buffer for each
+ * message. Buffers exceeding the max. pooled size are not kept, so a single huge message does not pin its buffer.
+ *
+ * A thread must not use a buffer of the pool anymore as soon as it acquires the next one.
+ */
+public class BufferPool {
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    private final int maxPooledSize;
+
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+    /**
+     * @param maxPooledSize The max. size of a buffer in bytes to keep for the next use
+     */
+    public BufferPool(int maxPooledSize) {
+        this.maxPooledSize = maxPooledSize;
+    }
+
+    /**
+     * Gets the buffer of the current thread. Its content is undefined.
+     *
+     * @param minSize The min. size of the buffer in bytes
+     *
+     * @return The buffer
+     */
+    public byte[] acquire(int minSize) {
+        byte[] buffer = buffers.get();
+        if (null == buffer || buffer.length < minSize) {
+            buffer = new byte[Math.max(minSize, INITIAL_SIZE)];
+            keep(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Replaces the buffer of the current thread by a bigger one, which keeps the content of the current one.
+     *
+     * @param buffer The buffer acquired before
+     * @param minSize The min. size of the new buffer in bytes
+     *
+     * @return The new buffer, which is at least twice as big as the current one unless this exceeds the max. array
+     *         size.
+     */
+    public byte[] grow(byte[] buffer, int minSize) {
+        int size = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minSize, 2L * buffer.length));
+        if (size <= buffer.length) {
+            throw new OutOfMemoryError(String.format("Cannot grow buffer of '%d' bytes.", buffer.length));
+        }
+        byte[] grown = Arrays.copyOf(buffer, size);
+        keep(grown);
+        return grown;
+    }
+
+    private void keep(byte[] buffer) {
+        if (buffer.length <= maxPooledSize) {
+            buffers.set(buffer);
+        }
+    }
+
+}
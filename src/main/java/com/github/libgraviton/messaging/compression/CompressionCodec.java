@@ -0,0 +1,75 @@
+package com.github.libgraviton.messaging.compression;
+
+import java.io.IOException;
+
+/**
+ * Compresses and decompresses message bodies. The encoding of a codec is sent along with each compressed message, so
+ * consumers can look up the codec to decompress it with {@link CompressionCodecs#forEncoding(String)}.
+ *
+ * Besides the built-in {@link DeflateCodec} and {@link GzipCodec}, further codecs can be provided as a service by
+ * listing them in 'META-INF/services/com.github.libgraviton.messaging.compression.CompressionCodec'.
+ *
+ * Implementations must be thread safe, since a single instance is used by all publishing and consuming threads.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Gets the name of the encoding, which identifies the codec on the wire, e.g. 'gzip'.
+     *
+     * @return The encoding
+     */
+    String getEncoding();
+
+    /**
+     * Compresses a part of a byte array.
+     *
+     * @param data The data to compress
+     * @param offset The offset of the first byte to compress
+     * @param length The amount of bytes to compress
+     *
+     * @return The compressed data
+     *
+     * @throws IOException If the data cannot be compressed.
+     */
+    byte[] compress(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Decompresses a part of a byte array.
+     *
+     * @param data The data to decompress
+     * @param offset The offset of the first byte to decompress
+     * @param length The amount of bytes to decompress
+     *
+     * @return The decompressed data
+     *
+     * @throws IOException If the data is corrupt or has not been compressed by this codec.
+     */
+    byte[] decompress(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Compresses a byte array.
+     *
+     * @param data The data to compress
+     *
+     * @return The compressed data
+     *
+     * @throws IOException If the data cannot be compressed.
+     */
+    default byte[] compress(byte[] data) throws IOException {
+        return compress(data, 0, data.length);
+    }
+
+    /**
+     * Decompresses a byte array.
+     *
+     * @param data The data to decompress
+     *
+     * @return The decompressed data
+     *
+     * @throws IOException If the data is corrupt or has not been compressed by this codec.
+     */
+    default byte[] decompress(byte[] data) throws IOException {
+        return decompress(data, 0, data.length);
+    }
+
+}
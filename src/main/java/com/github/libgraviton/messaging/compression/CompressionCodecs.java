@@ -0,0 +1,49 @@
+package com.github.libgraviton.messaging.compression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Looks up compression codecs by their encoding. Consists of the built-in codecs and the codecs provided as a service,
+ * see {@link CompressionCodec}. A provided codec replaces a built-in codec of the same encoding.
+ */
+public class CompressionCodecs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompressionCodecs.class);
+
+    private static final Map<String, CompressionCodec> CODECS = load();
+
+    /**
+     * Gets the codec of an encoding. The encoding is case insensitive.
+     *
+     * @param encoding The encoding, which may be null.
+     *
+     * @return The codec or null if no codec is known for the encoding.
+     */
+    public static CompressionCodec forEncoding(String encoding) {
+        return null == encoding ? null : CODECS.get(encoding.toLowerCase(Locale.ROOT));
+    }
+
+    private static Map<String, CompressionCodec> load() {
+        Map<String, CompressionCodec> codecs = new HashMap<>();
+        codecs.put(DeflateCodec.ENCODING, new DeflateCodec());
+        codecs.put(GzipCodec.ENCODING, new GzipCodec());
+        try {
+            for (CompressionCodec codec : ServiceLoader.load(CompressionCodec.class)) {
+                codecs.put(codec.getEncoding().toLowerCase(Locale.ROOT), codec);
+                LOG.debug(String.format("Loaded compression codec '%s'.", codec.getEncoding()));
+            }
+        } catch (ServiceConfigurationError e) {
+            LOG.warn(String.format("Cannot load compression codecs: '%s'", e.getMessage()));
+        }
+        return Collections.unmodifiableMap(codecs);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.github.libgraviton.messaging.compression;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compresses messages to the zlib format, which is the 'deflate' content encoding of HTTP.
+ */
+public class DeflateCodec extends ZlibCodec {
+
+    public static final String ENCODING = "deflate";
+
+    /**
+     * Creates a codec using the default compression level.
+     */
+    public DeflateCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level The compression level from 0 (none) to 9 (best), where 1 is the fastest.
+     */
+    public DeflateCodec(int level) {
+        super(level, false, 0, 0);
+    }
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.github.libgraviton.messaging.compression;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Compresses messages to the gzip format (RFC 1952), which is the 'gzip' content encoding of HTTP. Only the first
+ * member of the gzip data gets decompressed.
+ */
+public class GzipCodec extends ZlibCodec {
+
+    public static final String ENCODING = "gzip";
+
+    private static final int HEADER_SIZE = 10;
+
+    private static final int TRAILER_SIZE = 8;
+
+    private static final int MAGIC = 0x8b1f;
+
+    private static final int FHCRC = 2;
+
+    private static final int FEXTRA = 4;
+
+    private static final int FNAME = 8;
+
+    private static final int FCOMMENT = 16;
+
+    /**
+     * Creates a codec using the default compression level.
+     */
+    public GzipCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level The compression level from 0 (none) to 9 (best), where 1 is the fastest.
+     */
+    public GzipCodec(int level) {
+        super(level, true, HEADER_SIZE, TRAILER_SIZE);
+    }
+
+    @Override
+    public String getEncoding() {
+        return ENCODING;
+    }
+
+    @Override
+    void writeHeader(byte[] buffer) {
+        writeShort(buffer, 0, MAGIC);
+        buffer[2] = Deflater.DEFLATED;
+        // No flags, no modification time, no extra flags
+        for (int i = 3; i < 9; i++) {
+            buffer[i] = 0;
+        }
+        // Unknown operating system
+        buffer[9] = (byte) 0xff;
+    }
+
+    @Override
+    void writeTrailer(byte[] buffer, int position, byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        writeInt(buffer, position, crc.getValue());
+        writeInt(buffer, position + 4, length);
+    }
+
+    @Override
+    int readHeader(byte[] data, int offset, int length) throws ZipException {
+        int end = offset + length;
+        if (length < HEADER_SIZE + TRAILER_SIZE || MAGIC != readShort(data, offset)) {
+            throw new ZipException("Not in gzip format.");
+        }
+        if (Deflater.DEFLATED != data[offset + 2]) {
+            throw new ZipException(String.format("Unsupported gzip compression method '%d'.", data[offset + 2]));
+        }
+        int flags = data[offset + 3] & 0xff;
+        int position = offset + HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            position += 2 + (position + 2 <= end ? readShort(data, position) : 0);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(data, position, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(data, position, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        if (position > end - TRAILER_SIZE) {
+            throw new ZipException("Unexpected end of gzip header.");
+        }
+        return position;
+    }
+
+    @Override
+    long sizeHint(byte[] data, int offset, int length) {
+        return readInt(data, offset + length - 4);
+    }
+
+    @Override
+    void verifyTrailer(byte[] data, int offset, int length, byte[] output, int outputLength) throws ZipException {
+        if (length < TRAILER_SIZE) {
+            throw new ZipException("Unexpected end of gzip trailer.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(output, 0, outputLength);
+        if (crc.getValue() != readInt(data, offset) || (outputLength & 0xffffffffL) != readInt(data, offset + 4)) {
+            throw new ZipException("Corrupt gzip data: checksum or size mismatch.");
+        }
+    }
+
+    private static int skipZeroTerminated(byte[] data, int position, int end) {
+        while (position < end && 0 != data[position]) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static int readShort(byte[] data, int position) {
+        return (data[position] & 0xff) | (data[position + 1] & 0xff) << 8;
+    }
+
+    private static long readInt(byte[] data, int position) {
+        return (readShort(data, position) | (long) readShort(data, position + 2) << 16) & 0xffffffffL;
+    }
+
+    private static void writeShort(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) value;
+        buffer[position + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeInt(byte[] buffer, int position, long value) {
+        writeShort(buffer, position, (int) value);
+        writeShort(buffer, position + 2, (int) (value >> 16));
+    }
+
+}
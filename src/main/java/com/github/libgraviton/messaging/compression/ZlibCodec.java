@@ -0,0 +1,180 @@
+package com.github.libgraviton.messaging.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Base class of the codecs based on the zlib implementation of {@link Deflater} and {@link Inflater}.
+ *
+ * Since each deflater and inflater holds native memory of its own, they are pooled and reused instead of being created
+ * per message. The data is compressed and decompressed into a pooled buffer of the current thread, so the only
+ * allocation per message is the result array of the exact size.
+ *
+ * Subclasses may frame the deflate stream with a header and a trailer of a fixed size.
+ */
+abstract class ZlibCodec implements CompressionCodec {
+
+    private static final BufferPool BUFFERS = new BufferPool(1024 * 1024);
+
+    // Deflate cannot compress better than about 1:1032, so a bigger size hint is not trustworthy.
+    private static final int MAX_RATIO = 1032;
+
+    private final int level;
+
+    private final boolean nowrap;
+
+    private final int headerSize;
+
+    private final int trailerSize;
+
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param level The compression level from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nowrap Whether to omit the zlib header and checksum
+     * @param headerSize The size of the header written before the deflate stream
+     * @param trailerSize The size of the trailer written after the deflate stream
+     */
+    ZlibCodec(int level, boolean nowrap, int headerSize, int trailerSize) {
+        if ((level < 0 || level > 9) && Deflater.DEFAULT_COMPRESSION != level) {
+            throw new IllegalArgumentException(String.format("Invalid compression level '%d'.", level));
+        }
+        this.level = level;
+        this.nowrap = nowrap;
+        this.headerSize = headerSize;
+        this.trailerSize = trailerSize;
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) throws IOException {
+        Deflater deflater = deflaters.poll();
+        if (null == deflater) {
+            deflater = new Deflater(level, nowrap);
+        }
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            byte[] buffer = BUFFERS.acquire(headerSize + length / 2 + trailerSize + 64);
+            writeHeader(buffer);
+            int position = headerSize;
+            while (!deflater.finished()) {
+                if (position == buffer.length) {
+                    buffer = BUFFERS.grow(buffer, 0);
+                }
+                position += deflater.deflate(buffer, position, buffer.length - position);
+            }
+            if (buffer.length - position < trailerSize) {
+                buffer = BUFFERS.grow(buffer, position + trailerSize);
+            }
+            writeTrailer(buffer, position, data, offset, length);
+            return Arrays.copyOf(buffer, position + trailerSize);
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        int start = readHeader(data, offset, length);
+        Inflater inflater = inflaters.poll();
+        if (null == inflater) {
+            inflater = new Inflater(nowrap);
+        }
+        try {
+            inflater.setInput(data, start, offset + length - start);
+            long size = Math.min(sizeHint(data, offset, length), (long) length * MAX_RATIO);
+            byte[] buffer = BUFFERS.acquire((int) Math.min(size, 1 << 30));
+            int position = 0;
+            while (!inflater.finished()) {
+                if (position == buffer.length) {
+                    buffer = BUFFERS.grow(buffer, 0);
+                }
+                int inflated = inflater.inflate(buffer, position, buffer.length - position);
+                if (0 == inflated && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException(String.format("Unexpected end of '%s' data.", getEncoding()));
+                }
+                position += inflated;
+            }
+            int remaining = inflater.getRemaining();
+            verifyTrailer(data, offset + length - remaining, remaining, buffer, position);
+            return Arrays.copyOf(buffer, position);
+        } catch (DataFormatException e) {
+            throw new ZipException(String.format("Invalid '%s' data: %s", getEncoding(), e.getMessage()));
+        } finally {
+            inflater.reset();
+            inflaters.offer(inflater);
+        }
+    }
+
+    /**
+     * Writes the header in front of the deflate stream.
+     *
+     * @param buffer The buffer to write the header to, starting at 0
+     */
+    void writeHeader(byte[] buffer) {
+    }
+
+    /**
+     * Writes the trailer after the deflate stream.
+     *
+     * @param buffer The buffer to write the trailer to
+     * @param position The position right after the deflate stream
+     * @param data The uncompressed data
+     * @param offset The offset of the uncompressed data
+     * @param length The amount of uncompressed bytes
+     */
+    void writeTrailer(byte[] buffer, int position, byte[] data, int offset, int length) {
+    }
+
+    /**
+     * Reads the header in front of the deflate stream.
+     *
+     * @param data The compressed data
+     * @param offset The offset of the compressed data
+     * @param length The amount of compressed bytes
+     *
+     * @return The offset of the deflate stream
+     *
+     * @throws ZipException If the header is invalid.
+     */
+    int readHeader(byte[] data, int offset, int length) throws ZipException {
+        return offset;
+    }
+
+    /**
+     * Estimates the size of the decompressed data, which is used as initial buffer size.
+     *
+     * @param data The compressed data
+     * @param offset The offset of the compressed data
+     * @param length The amount of compressed bytes
+     *
+     * @return The estimated size
+     */
+    long sizeHint(byte[] data, int offset, int length) {
+        return 4L * length;
+    }
+
+    /**
+     * Verifies the trailer after the deflate stream against the decompressed data.
+     *
+     * @param data The compressed data
+     * @param offset The offset of the trailer
+     * @param length The amount of bytes after the deflate stream
+     * @param output The decompressed data
+     * @param outputLength The amount of decompressed bytes
+     *
+     * @throws ZipException If the trailer is invalid or does not match.
+     */
+    void verifyTrailer(byte[] data, int offset, int length, byte[] output, int outputLength) throws ZipException {
+    }
+
+}
@@ -46,4 +46,21 @@ public class PropertyUtil {
         return Double.valueOf(properties.getProperty(propertyName, Double.toString(defaultValue)));
     }
 
+    /**
+     * Gets a property as an enum constant. The property's value is case insensitive.
+     *
+     * @param properties The property set
+     * @param propertyName The property's name
+     * @param defaultValue A default value to be returned in case of the desired property not being set.
+     * @param <E> The enum type
+     *
+     * @return The property's value or the default value
+     */
+    public static <E extends Enum<E>> E getEnum(Properties properties, String propertyName, E defaultValue) {
+        return Enum.valueOf(
+                defaultValue.getDeclaringClass(),
+                properties.getProperty(propertyName, defaultValue.name()).toUpperCase()
+        );
+    }
+
 }
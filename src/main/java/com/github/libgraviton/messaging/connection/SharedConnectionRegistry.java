@@ -0,0 +1,107 @@
+package com.github.libgraviton.messaging.connection;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Shares physical connections between several queue connections. Each connection is identified by a key (e.g. host,
+ * port, virtual host and user) and counts its references. The connection is opened with the first reference and closed
+ * as soon as the last reference is released.
+ *
+ * If the current connection of a key is no longer alive, the next acquirer gets a new connection. Queue connections
+ * still referencing the old one keep it until they release it.
+ *
+ * @param <K> The key type
+ * @param <C> The connection type
+ */
+public class SharedConnectionRegistry<K, C> {
+
+    private final Predicate<C> alive;
+
+    private final Map<K, C> connections = new HashMap<>();
+
+    private final Map<C, Integer> references = new IdentityHashMap<>();
+
+    /**
+     * @param alive Checks whether a connection can still be used.
+     */
+    public SharedConnectionRegistry(Predicate<C> alive) {
+        this.alive = alive;
+    }
+
+    /**
+     * Acquires a reference to the connection of a given key. Opens the connection if there is none or it is no longer
+     * alive.
+     *
+     * @param key The connection key
+     * @param opener Opens a new connection
+     * @param <E> The exception type thrown by the opener
+     *
+     * @return The shared connection
+     *
+     * @throws E If a new connection cannot be opened.
+     */
+    public synchronized <E extends Exception> C acquire(K key, Opener<C, E> opener) throws E {
+        C connection = connections.get(key);
+        if (null == connection || !alive.test(connection)) {
+            connection = opener.open();
+            connections.put(key, connection);
+        }
+        references.merge(connection, 1, Integer::sum);
+        return connection;
+    }
+
+    /**
+     * Releases a reference to a connection. Closes the connection if it was the last reference.
+     *
+     * @param key The connection key
+     * @param connection The connection which has been acquired before
+     * @param closer Closes the connection
+     * @param <E> The exception type thrown by the closer
+     *
+     * @throws E If the connection cannot be closed.
+     */
+    public <E extends Exception> void release(K key, C connection, Closer<C, E> closer) throws E {
+        synchronized (this) {
+            Integer count = references.get(connection);
+            if (null == count) {
+                return;
+            }
+            if (count > 1) {
+                references.put(connection, count - 1);
+                return;
+            }
+            references.remove(connection);
+            if (connections.get(key) == connection) {
+                connections.remove(key);
+            }
+        }
+        closer.close(connection);
+    }
+
+    /**
+     * Gets the amount of references to a connection.
+     *
+     * @param connection The connection
+     *
+     * @return The amount of references, 0 if the connection is unknown.
+     */
+    public synchronized int getReferences(C connection) {
+        return references.getOrDefault(connection, 0);
+    }
+
+    public interface Opener<C, E extends Exception> {
+
+        C open() throws E;
+
+    }
+
+    public interface Closer<C, E extends Exception> {
+
+        void close(C connection) throws E;
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A consumer which receives the raw message body. Binary messages are handed over as they got delivered by the message
+ * broker, without being decoded to a string. Text messages get encoded with UTF-8.
+ */
+public interface BytesConsumer extends MessageConsumer {
+
+    void consume(String messageId, byte[] message) throws CannotConsumeMessage;
+
+    @Override
+    default void consume(Message message) throws CannotConsumeMessage {
+        consume(message.getId(), message.getBody());
+    }
+
+    @Override
+    default void consume(String messageId, String message) throws CannotConsumeMessage {
+        consume(messageId, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.dedup.DeduplicationCache;
+import com.github.libgraviton.messaging.dedup.DeduplicationKey;
+import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skips messages which have already been processed, e.g. because they got redelivered after the connection to the
+ * message broker has been recovered. Duplicates are recognized by a {@link DeduplicationKey} and get acknowledged
+ * without being passed to the wrapped consumer, so their body is not decoded at all.
+ *
+ * A message is only remembered as processed as soon as the wrapped consumer processed it without failing or, if the
+ * wrapped consumer is an {@link AcknowledgingConsumer}, as soon as it acknowledged the message. Messages which are
+ * redelivered while they are still being processed are not recognized as duplicates.
+ *
+ * Messages are acknowledged as soon as the wrapped consumer processed them. Messages the wrapped consumer failed to
+ * process are not acknowledged, but the failure is passed on, so the connection settles the message, e.g. by retrying
+ * or quarantining it (see the retry settings of the connection builders).
+ */
+public class DeduplicatingConsumer implements AcknowledgingConsumer, MessageConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeduplicatingConsumer.class);
+
+    private final Consumer consumer;
+
+    private final DeduplicationKey key;
+
+    private final DeduplicationCache cache;
+
+    // The keys of the messages the wrapped consumer has not acknowledged yet.
+    private final Map<String, String> pendingKeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private MessageAcknowledger acknowledger;
+
+    /**
+     * @param consumer The consumer processing the messages
+     * @param key Derives the key a message is recognized by
+     * @param cache Remembers the keys of the processed messages
+     */
+    public DeduplicatingConsumer(Consumer consumer, DeduplicationKey key, DeduplicationCache cache) {
+        this.consumer = consumer;
+        this.key = key;
+        this.cache = cache;
+    }
+
+    @Override
+    public void setAcknowledger(MessageAcknowledger acknowledger) {
+        this.acknowledger = acknowledger;
+        if (consumer instanceof AcknowledgingConsumer) {
+            ((AcknowledgingConsumer) consumer).setAcknowledger(this::acknowledgeProcessed);
+        }
+    }
+
+    /**
+     * Passes the message to the wrapped consumer, unless it is a duplicate.
+     *
+     * @param message The message
+     *
+     * @throws CannotConsumeMessage If the key of the message cannot be derived or the wrapped consumer failed, in which
+     *                              case the message is not acknowledged.
+     */
+    @Override
+    public void consume(Message message) throws CannotConsumeMessage {
+        String messageKey = key.of(message);
+        if (null != messageKey && cache.contains(messageKey)) {
+            skipped.incrementAndGet();
+            LOG.info(String.format("Skipped duplicate message '%s' with key '%s'.", message.getId(), messageKey));
+            acknowledge(message.getId());
+            return;
+        }
+
+        if (consumer instanceof AcknowledgingConsumer) {
+            if (null != messageKey) {
+                pendingKeys.put(message.getId(), messageKey);
+            }
+            try {
+                deliver(message);
+            } catch (CannotConsumeMessage | RuntimeException e) {
+                pendingKeys.remove(message.getId());
+                throw e;
+            }
+            return;
+        }
+
+        deliver(message);
+        if (null != messageKey) {
+            cache.add(messageKey);
+        }
+        acknowledge(message.getId());
+    }
+
+    /**
+     * Gets the amount of duplicates which have been skipped.
+     *
+     * @return The amount of duplicates
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    private void deliver(Message message) throws CannotConsumeMessage {
+        if (consumer instanceof MessageConsumer) {
+            ((MessageConsumer) consumer).consume(message);
+        } else {
+            consumer.consume(message.getId(), message.getBodyAsString());
+        }
+    }
+
+    private void acknowledgeProcessed(String messageId) throws CannotAcknowledgeMessage {
+        String messageKey = pendingKeys.remove(messageId);
+        if (null != messageKey) {
+            cache.add(messageKey);
+        }
+        acknowledger.acknowledge(messageId);
+    }
+
+    private void acknowledge(String messageId) {
+        if (null == acknowledger) {
+            return;
+        }
+        try {
+            acknowledger.acknowledge(messageId);
+        } catch (CannotAcknowledgeMessage e) {
+            LOG.error(e.getMessage());
+        }
+    }
+
+}
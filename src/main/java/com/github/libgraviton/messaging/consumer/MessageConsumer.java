@@ -0,0 +1,20 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+
+/**
+ * A consumer which receives the whole {@link Message}, including its headers and delivery information. The message body
+ * is only read and decoded as soon as the consumer accesses it.
+ */
+public interface MessageConsumer extends Consumer {
+
+    void consume(Message message) throws CannotConsumeMessage;
+
+    @Override
+    default void consume(String messageId, String message) throws CannotConsumeMessage {
+        consume(new BasicMessage(messageId, message));
+    }
+
+}
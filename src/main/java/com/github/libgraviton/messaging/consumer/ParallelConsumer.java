@@ -4,6 +4,12 @@ import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Consumes each message on a new thread.
+ *
+ * @deprecated Creates an unbounded amount of threads under load. Use {@link WorkerPoolConsumer} instead.
+ */
+@Deprecated
 public class ParallelConsumer implements Consumer {
 
     private static final Logger LOG = LoggerFactory.getLogger(ParallelConsumer.class);
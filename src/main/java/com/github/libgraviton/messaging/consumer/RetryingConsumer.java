@@ -0,0 +1,172 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Retries messages the wrapped consumer failed to process due to a transient error, e.g. a timeout of a downstream
+ * service. The wait between the attempts doubles with each attempt up to a max. wait, and a random jitter shortens it by
+ * up to a half, so consumers which failed at the same time do not retry at the same time.
+ *
+ * The retries block the thread delivering the messages, so they are meant for short outages. Once all attempts failed,
+ * the last failure is passed on, so the connection can retry the message later or quarantine it (see the retry
+ * settings of the connection builders).
+ *
+ * Use {@link #of(Consumer, int, double, double)} to create instances, so acknowledging consumers stay acknowledging.
+ */
+public class RetryingConsumer implements MessageConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryingConsumer.class);
+
+    private final Consumer consumer;
+
+    private final int attempts;
+
+    private final double wait;
+
+    private final double maxWait;
+
+    private final Predicate<CannotConsumeMessage> transientFailure;
+
+    private RetryingConsumer(
+            Consumer consumer,
+            int attempts,
+            double wait,
+            double maxWait,
+            Predicate<CannotConsumeMessage> transientFailure
+    ) {
+        this.consumer = consumer;
+        this.attempts = attempts;
+        this.wait = wait;
+        this.maxWait = maxWait;
+        this.transientFailure = transientFailure;
+    }
+
+    /**
+     * Creates a consumer which retries all failures.
+     *
+     * @param consumer The consumer processing the messages
+     * @param attempts The max. amount of attempts per message, including the first one
+     * @param wait The amount of seconds to wait before the first retry
+     * @param maxWait The max. amount of seconds to wait between two attempts
+     *
+     * @return The consumer, which is an {@link AcknowledgingConsumer} if the given consumer is one.
+     */
+    public static RetryingConsumer of(Consumer consumer, int attempts, double wait, double maxWait) {
+        return of(consumer, attempts, wait, maxWait, failure -> true);
+    }
+
+    /**
+     * Creates a consumer which retries transient failures only.
+     *
+     * @param consumer The consumer processing the messages
+     * @param attempts The max. amount of attempts per message, including the first one
+     * @param wait The amount of seconds to wait before the first retry
+     * @param maxWait The max. amount of seconds to wait between two attempts
+     * @param transientFailure Decides whether a failure is transient, e.g. by its cause.
+     *
+     * @return The consumer, which is an {@link AcknowledgingConsumer} if the given consumer is one.
+     */
+    public static RetryingConsumer of(
+            Consumer consumer,
+            int attempts,
+            double wait,
+            double maxWait,
+            Predicate<CannotConsumeMessage> transientFailure
+    ) {
+        return consumer instanceof AcknowledgingConsumer
+                ? new Acknowledging(consumer, attempts, wait, maxWait, transientFailure)
+                : new RetryingConsumer(consumer, attempts, wait, maxWait, transientFailure);
+    }
+
+    /**
+     * Passes the message to the wrapped consumer and retries it as long as it fails transiently.
+     *
+     * @param message The message
+     *
+     * @throws CannotConsumeMessage If the last attempt failed, the failure is not transient or the thread got
+     *                              interrupted while waiting for the next attempt.
+     */
+    @Override
+    public void consume(Message message) throws CannotConsumeMessage {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                deliver(message);
+                return;
+            } catch (CannotConsumeMessage e) {
+                if (attempt >= attempts || !transientFailure.test(e)) {
+                    throw e;
+                }
+                long retryWait = getRetryWait(attempt);
+                LOG.warn(String.format(
+                        "Consumer '%s' failed on message '%s' (attempt %d of %d). Retrying in '%s' seconds: '%s'",
+                        consumer,
+                        message.getId(),
+                        attempt,
+                        attempts,
+                        retryWait / 1000.0,
+                        e.getMessage()
+                ));
+                try {
+                    Thread.sleep(retryWait);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(interrupted);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void deliver(Message message) throws CannotConsumeMessage {
+        if (consumer instanceof MessageConsumer) {
+            ((MessageConsumer) consumer).consume(message);
+        } else {
+            consumer.consume(message.getId(), message.getBodyAsString());
+        }
+    }
+
+    /**
+     * Gets the time to wait after a given amount of failed attempts.
+     *
+     * @param failures The amount of failed attempts
+     *
+     * @return The time to wait in milliseconds
+     */
+    private long getRetryWait(int failures) {
+        double retryWait = Math.min(maxWait, wait * Math.pow(2, Math.min(failures - 1, 30)));
+        return (long) ((retryWait - ThreadLocalRandom.current().nextDouble() * retryWait / 2) * 1000);
+    }
+
+    /**
+     * Passes the acknowledger on to the wrapped {@link AcknowledgingConsumer}.
+     */
+    private static class Acknowledging extends RetryingConsumer implements AcknowledgingConsumer {
+
+        private final AcknowledgingConsumer consumer;
+
+        Acknowledging(
+                Consumer consumer,
+                int attempts,
+                double wait,
+                double maxWait,
+                Predicate<CannotConsumeMessage> transientFailure
+        ) {
+            super(consumer, attempts, wait, maxWait, transientFailure);
+            this.consumer = (AcknowledgingConsumer) consumer;
+        }
+
+        @Override
+        public void setAcknowledger(MessageAcknowledger acknowledger) {
+            consumer.setAcknowledger(acknowledger);
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.codec.Codec;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+
+import java.io.IOException;
+
+/**
+ * A consumer which receives the message body decoded by a {@link Codec}. The codec decodes the raw body as it got
+ * delivered by the message broker, without decoding it to a string first.
+ *
+ * @param <T> The type of the decoded messages
+ */
+public interface TypedConsumer<T> extends MessageConsumer {
+
+    /**
+     * Gets the codec to decode the message bodies with.
+     *
+     * @return The codec
+     */
+    Codec<T> getCodec();
+
+    void consume(String messageId, T message) throws CannotConsumeMessage;
+
+    @Override
+    default void consume(Message message) throws CannotConsumeMessage {
+        byte[] body = message.getBody();
+        T decoded;
+        try {
+            decoded = getCodec().decode(body, 0, body.length);
+        } catch (IOException e) {
+            throw new CannotConsumeMessage(message.getId(), null, e);
+        }
+        consume(message.getId(), decoded);
+    }
+
+}
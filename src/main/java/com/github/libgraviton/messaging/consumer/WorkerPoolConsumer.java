@@ -0,0 +1,228 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consumes messages in parallel on a bounded pool of worker threads. The amount of messages being processed or waiting
+ * for a free worker is limited to the pool size plus the queue capacity. As soon as this limit is reached,
+ * {@link #consume(String, String)} blocks the thread delivering the messages until a worker got free. Combined with a
+ * prefetch limit of the queue, this keeps the broker from delivering further messages while the pool is saturated.
+ *
+ * Messages get acknowledged as soon as the wrapped consumer processed them, not when they are handed over to a worker.
+ * If the wrapped consumer is an {@link AcknowledgingConsumer}, it has to acknowledge the messages itself.
+ *
+ * Messages are handed over to the wrapped consumer in the form it consumes them. If it is not a
+ * {@link MessageConsumer}, the message body gets decoded on the worker thread.
+ */
+public class WorkerPoolConsumer implements AcknowledgingConsumer, BytesConsumer, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerPoolConsumer.class);
+
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final Consumer consumer;
+
+    private final ExecutorService executor;
+
+    private final Semaphore slots;
+
+    private final int maxMessages;
+
+    private MessageAcknowledger acknowledger;
+
+    /**
+     * Creates a consumer using a pool of platform threads.
+     *
+     * @param consumer The consumer processing the messages
+     * @param poolSize The amount of worker threads
+     * @param queueCapacity The max. amount of messages waiting for a free worker
+     */
+    public WorkerPoolConsumer(Consumer consumer, int poolSize, int queueCapacity) {
+        this(consumer, createThreadPool(poolSize), poolSize + queueCapacity);
+    }
+
+    /**
+     * Creates a consumer using a given executor. The executor will be shut down as soon as the consumer gets closed.
+     *
+     * @param consumer The consumer processing the messages
+     * @param executor The executor running the workers
+     * @param maxMessages The max. amount of messages being processed or waiting for a free worker at the same time
+     */
+    public WorkerPoolConsumer(Consumer consumer, ExecutorService executor, int maxMessages) {
+        this.consumer = consumer;
+        this.executor = executor;
+        this.slots = new Semaphore(maxMessages);
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Creates a consumer running each message on its own virtual thread, if the runtime supports virtual threads (Java
+     * 21 or newer). Otherwise, a pool of platform threads with a pool size of the max. concurrency is used.
+     *
+     * @param consumer The consumer processing the messages
+     * @param maxConcurrency The max. amount of messages being processed at the same time
+     *
+     * @return The consumer
+     */
+    public static WorkerPoolConsumer withVirtualThreads(Consumer consumer, int maxConcurrency) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            return new WorkerPoolConsumer(consumer, executor, maxConcurrency);
+        } catch (ReflectiveOperationException e) {
+            LOG.info("Virtual threads are not supported by this runtime. Using platform threads instead.");
+            return new WorkerPoolConsumer(consumer, maxConcurrency, 0);
+        }
+    }
+
+    @Override
+    public void setAcknowledger(MessageAcknowledger acknowledger) {
+        this.acknowledger = acknowledger;
+        if (consumer instanceof AcknowledgingConsumer) {
+            ((AcknowledgingConsumer) consumer).setAcknowledger(acknowledger);
+        }
+    }
+
+    /**
+     * Hands the message over to a worker. Blocks as long as the pool is saturated.
+     *
+     * @param messageId The message id
+     * @param message The message
+     *
+     * @throws CannotConsumeMessage If the thread got interrupted while waiting for a free worker.
+     */
+    @Override
+    public void consume(String messageId, String message) throws CannotConsumeMessage {
+        submit(messageId, message, () -> consumer.consume(messageId, message));
+    }
+
+    /**
+     * Hands the binary message over to a worker. Blocks as long as the pool is saturated.
+     *
+     * @param messageId The message id
+     * @param message The message
+     *
+     * @throws CannotConsumeMessage If the thread got interrupted while waiting for a free worker.
+     */
+    @Override
+    public void consume(String messageId, byte[] message) throws CannotConsumeMessage {
+        consume(new BasicMessage(messageId, message));
+    }
+
+    /**
+     * Hands the message over to a worker. Blocks as long as the pool is saturated.
+     *
+     * @param message The message
+     *
+     * @throws CannotConsumeMessage If the thread got interrupted while waiting for a free worker.
+     */
+    @Override
+    public void consume(Message message) throws CannotConsumeMessage {
+        submit(message.getId(), null, () -> {
+            if (consumer instanceof MessageConsumer) {
+                ((MessageConsumer) consumer).consume(message);
+            } else {
+                consumer.consume(message.getId(), message.getBodyAsString());
+            }
+        });
+    }
+
+    /**
+     * Gets the amount of messages which are currently processed or waiting for a free worker.
+     *
+     * @return The amount of messages
+     */
+    public int getPendingCount() {
+        return maxMessages - slots.availablePermits();
+    }
+
+    /**
+     * Stops accepting messages and waits until all pending messages have been processed.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOG.warn(String.format("Consumer '%s' did not terminate within 30 seconds.", consumer));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(String messageId, String description, Task task) throws CannotConsumeMessage {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotConsumeMessage(messageId, description, e);
+        }
+        try {
+            executor.execute(() -> run(messageId, task));
+        } catch (RuntimeException e) {
+            slots.release();
+            throw new CannotConsumeMessage(messageId, description, e);
+        }
+    }
+
+    private void run(String messageId, Task task) {
+        try {
+            task.run();
+        } catch (CannotConsumeMessage e) {
+            LOG.warn(String.format("Consumer '%s' failed: '%s'", consumer, e.getMessage()));
+        } catch (RuntimeException e) {
+            LOG.error(String.format("Consumer '%s' failed unexpectedly.", consumer), e);
+        } finally {
+            if (!(consumer instanceof AcknowledgingConsumer) && null != acknowledger) {
+                try {
+                    acknowledger.acknowledge(messageId);
+                } catch (CannotAcknowledgeMessage e) {
+                    LOG.error(e.getMessage());
+                }
+            }
+            slots.release();
+        }
+    }
+
+    private static ExecutorService createThreadPool(int poolSize) {
+        int poolNumber = POOL_NUMBER.incrementAndGet();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> new Thread(
+                runnable,
+                String.format("worker-pool-consumer-%d-%d", poolNumber, threadNumber.incrementAndGet())
+        );
+        // The queue is bounded by the slots, so it does not need to be bounded itself.
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory
+        );
+    }
+
+    private interface Task {
+
+        void run() throws CannotConsumeMessage;
+
+    }
+
+}
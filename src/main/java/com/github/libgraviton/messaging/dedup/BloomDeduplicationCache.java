@@ -0,0 +1,123 @@
+package com.github.libgraviton.messaging.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Remembers keys in two rotating Bloom filters, which need a few bits per key only, whatever the size of the keys. New
+ * keys are added to the current filter. As soon as it holds the configured amount of keys, it replaces the previous
+ * filter and a new filter gets started. So the cache remembers at least the last {@code entries} keys and at most twice
+ * as many.
+ *
+ * Bloom filters have false positives: with the configured probability, a key which has never been added is reported as
+ * known. A consumer using this cache skips such messages as duplicates, so choose the probability accordingly.
+ */
+public class BloomDeduplicationCache implements DeduplicationCache {
+
+    private final int entries;
+
+    private final int bits;
+
+    private final int hashes;
+
+    private long[] current;
+
+    private long[] previous;
+
+    private int count = 0;
+
+    /**
+     * @param entries The amount of keys per filter
+     * @param falsePositiveRate The probability of false positives of each filter, e.g. 0.0001
+     */
+    public BloomDeduplicationCache(int entries, double falsePositiveRate) {
+        if (entries <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot create Bloom filter for '%d' entries with a false positive rate of '%s'.",
+                    entries,
+                    falsePositiveRate
+            ));
+        }
+        this.entries = entries;
+        // The optimal filter size and amount of hash functions for the given false positive rate.
+        double ln2 = Math.log(2);
+        bits = (int) Math.min(Integer.MAX_VALUE, Math.ceil(-entries * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        hashes = Math.max(1, (int) Math.round((double) bits / entries * ln2));
+        current = new long[(bits + 63) / 64];
+        previous = new long[current.length];
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        long hash = hash(key);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    @Override
+    public synchronized void add(String key) {
+        long hash = hash(key);
+        if (contains(current, hash)) {
+            return;
+        }
+        if (count >= entries) {
+            long[] recycled = previous;
+            previous = current;
+            Arrays.fill(recycled, 0L);
+            current = recycled;
+            count = 0;
+        }
+        // Double hashing derives all bit positions from the two halves of a single 64 bit hash.
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, bits);
+            current[bit >>> 6] |= 1L << bit;
+        }
+        count++;
+    }
+
+    /**
+     * Gets the amount of bits of each filter.
+     *
+     * @return The amount of bits
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Gets the amount of hash functions.
+     *
+     * @return The amount of hash functions
+     */
+    public int getHashes() {
+        return hashes;
+    }
+
+    private boolean contains(long[] filter, long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, bits);
+            if (0 == (filter[bit >>> 6] & 1L << bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 64 bit FNV-1a, followed by the MurmurHash3 finalizer to spread the bits of short keys.
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
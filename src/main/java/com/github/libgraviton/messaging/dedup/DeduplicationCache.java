@@ -0,0 +1,25 @@
+package com.github.libgraviton.messaging.dedup;
+
+/**
+ * Remembers the keys of processed messages, so redelivered duplicates can be recognized. Implementations are bounded,
+ * which means that they eventually forget old keys.
+ */
+public interface DeduplicationCache {
+
+    /**
+     * Checks whether a key has been added before and has not been forgotten yet.
+     *
+     * @param key The key
+     *
+     * @return true if the key is known, otherwise false.
+     */
+    boolean contains(String key);
+
+    /**
+     * Adds a key.
+     *
+     * @param key The key
+     */
+    void add(String key);
+
+}
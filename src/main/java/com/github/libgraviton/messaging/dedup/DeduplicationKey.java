@@ -0,0 +1,71 @@
+package com.github.libgraviton.messaging.dedup;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Derives the key a message is recognized by when it gets redelivered.
+ *
+ * Note that RabbitMQ assigns a new delivery tag, and thus a new message id, to each delivery of a message. For RabbitMQ,
+ * use a header set by the publisher or the content hash instead.
+ */
+public interface DeduplicationKey {
+
+    /**
+     * Gets the key of a message.
+     *
+     * @param message The message
+     *
+     * @return The key or null if the message has no key, in which case it is never considered a duplicate.
+     *
+     * @throws CannotConsumeMessage If the parts of the message the key is derived from cannot be read.
+     */
+    String of(Message message) throws CannotConsumeMessage;
+
+    /**
+     * Uses the message id, e.g. the JMS message id, which stays the same for redeliveries.
+     *
+     * @return The key
+     */
+    static DeduplicationKey messageId() {
+        return Message::getId;
+    }
+
+    /**
+     * Uses the value of a header (AMQP) or property (JMS) set by the publisher, e.g. a business key.
+     *
+     * @param name The name of the header
+     *
+     * @return The key
+     */
+    static DeduplicationKey header(String name) {
+        return message -> {
+            Object value = message.getHeaders().get(name);
+            return null == value ? null : value.toString();
+        };
+    }
+
+    /**
+     * Uses the SHA-256 hash of the raw message body. The body is read, but not decoded.
+     *
+     * @return The key
+     */
+    static DeduplicationKey contentHash() {
+        ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256.
+                throw new IllegalStateException(e);
+            }
+        });
+        return message -> Base64.getEncoder().withoutPadding().encodeToString(
+                digests.get().digest(message.getBody())
+        );
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.github.libgraviton.messaging.dedup;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers up to a max. amount of keys for a max. time. As soon as the cache is full, the least recently added key
+ * gets forgotten. Keys are exact, so there are no false positives.
+ */
+public class LruDeduplicationCache implements DeduplicationCache {
+
+    private final int maxEntries;
+
+    private final long ttl;
+
+    private final LongSupplier clock;
+
+    // Insertion ordered, so the eldest entry is also the first to expire.
+    private final LinkedHashMap<String, Long> entries;
+
+    /**
+     * @param maxEntries The max. amount of keys to remember
+     * @param ttl The max. amount of milliseconds to remember a key. 0 remembers keys until they get evicted.
+     */
+    public LruDeduplicationCache(int maxEntries, long ttl) {
+        this(maxEntries, ttl, System::currentTimeMillis);
+    }
+
+    LruDeduplicationCache(int maxEntries, long ttl, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.clock = clock;
+        entries = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > LruDeduplicationCache.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        expire();
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public synchronized void add(String key) {
+        expire();
+        // Re-inserting moves the key to the end of the eviction order.
+        entries.remove(key);
+        entries.put(key, clock.getAsLong());
+    }
+
+    /**
+     * Gets the amount of remembered keys.
+     *
+     * @return The amount of keys
+     */
+    public synchronized int size() {
+        expire();
+        return entries.size();
+    }
+
+    private void expire() {
+        if (ttl <= 0) {
+            return;
+        }
+        long expired = clock.getAsLong() - ttl;
+        Iterator<Long> addedAt = entries.values().iterator();
+        while (addedAt.hasNext() && addedAt.next() <= expired) {
+            addedAt.remove();
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.github.libgraviton.messaging.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts the measurements of a queue connection in memory, without depending on any metrics system. The counters are
+ * {@link LongAdder}s, so recording does not lock, even if many threads publish and consume at the same time. Latencies
+ * are summed up, which allows to calculate their mean over any interval by sampling the total and the count.
+ *
+ * Each queue connection registers its own gauges, so use one instance per queue connection.
+ */
+public class CountingMessagingMetrics implements MessagingMetrics {
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder publishDuration = new LongAdder();
+
+    private final LongAdder publishFailures = new LongAdder();
+
+    private final LongAdder consumed = new LongAdder();
+
+    private final LongAdder consumeDuration = new LongAdder();
+
+    private final LongAdder consumeFailures = new LongAdder();
+
+    private final LongAdder acknowledged = new LongAdder();
+
+    private final LongAdder acknowledgeDuration = new LongAdder();
+
+    private final LongAdder connectionAttempts = new LongAdder();
+
+    private final LongAdder failedConnectionAttempts = new LongAdder();
+
+    private final LongAdder connections = new LongAdder();
+
+    private final LongAdder connectDuration = new LongAdder();
+
+    private final Map<Gauge, LongSupplier> gauges = new EnumMap<>(Gauge.class);
+
+    @Override
+    public void messagesPublished(int count, long duration) {
+        published.add(count);
+        publishDuration.add(duration);
+    }
+
+    @Override
+    public void publishFailed(int count) {
+        publishFailures.add(count);
+    }
+
+    @Override
+    public void messageConsumed(long duration) {
+        consumed.increment();
+        consumeDuration.add(duration);
+    }
+
+    @Override
+    public void consumeFailed(long duration) {
+        consumeFailures.increment();
+        consumeDuration.add(duration);
+    }
+
+    @Override
+    public void messageAcknowledged(long duration) {
+        acknowledged.increment();
+        acknowledgeDuration.add(duration);
+    }
+
+    @Override
+    public void connectionAttempt(long duration, boolean successful) {
+        connectionAttempts.increment();
+        if (!successful) {
+            failedConnectionAttempts.increment();
+        }
+    }
+
+    @Override
+    public void connectionOpened(int attempts, long duration) {
+        connections.increment();
+        connectDuration.add(duration);
+    }
+
+    @Override
+    public synchronized void registerGauge(Gauge gauge, LongSupplier value) {
+        gauges.put(gauge, value);
+    }
+
+    /**
+     * @return The amount of successfully published messages
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * @return The total duration of all successful publishments in nanoseconds
+     */
+    public long getPublishDuration() {
+        return publishDuration.sum();
+    }
+
+    /**
+     * @return The amount of messages which cannot be published
+     */
+    public long getPublishFailureCount() {
+        return publishFailures.sum();
+    }
+
+    /**
+     * @return The amount of successfully consumed messages
+     */
+    public long getConsumedCount() {
+        return consumed.sum();
+    }
+
+    /**
+     * @return The total duration of all consumer calls in nanoseconds, including the failed ones
+     */
+    public long getConsumeDuration() {
+        return consumeDuration.sum();
+    }
+
+    /**
+     * @return The amount of messages whose consumer failed
+     */
+    public long getConsumeFailureCount() {
+        return consumeFailures.sum();
+    }
+
+    /**
+     * @return The amount of acknowledged messages
+     */
+    public long getAcknowledgedCount() {
+        return acknowledged.sum();
+    }
+
+    /**
+     * @return The total duration of all acknowledgments in nanoseconds
+     */
+    public long getAcknowledgeDuration() {
+        return acknowledgeDuration.sum();
+    }
+
+    /**
+     * @return The amount of attempts to connect to the queue
+     */
+    public long getConnectionAttemptCount() {
+        return connectionAttempts.sum();
+    }
+
+    /**
+     * @return The amount of failed attempts to connect to the queue
+     */
+    public long getFailedConnectionAttemptCount() {
+        return failedConnectionAttempts.sum();
+    }
+
+    /**
+     * @return The amount of established connections
+     */
+    public long getConnectionCount() {
+        return connections.sum();
+    }
+
+    /**
+     * @return The total duration until the connections got established in nanoseconds
+     */
+    public long getConnectDuration() {
+        return connectDuration.sum();
+    }
+
+    /**
+     * Reads the current value of a gauge.
+     *
+     * @param gauge The gauge
+     *
+     * @return The current value or 0 if the gauge has not been registered.
+     */
+    public long getGauge(Gauge gauge) {
+        LongSupplier value;
+        synchronized (this) {
+            value = gauges.get(gauge);
+        }
+        return null == value ? 0 : value.getAsLong();
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.github.libgraviton.messaging.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Receives the measurements of a queue connection. Implement this in order to report them to the metrics system of your
+ * choice. All methods do nothing by default, so an implementation only needs to override the measurements it is
+ * interested in.
+ *
+ * The methods are called on the hot path of publishing and consuming, often by several threads at the same time.
+ * Implementations must therefore be thread safe and should neither block nor lock (e.g. use {@link
+ * java.util.concurrent.atomic.LongAdder}). All durations are passed in nanoseconds.
+ *
+ * @see CountingMessagingMetrics
+ */
+public interface MessagingMetrics {
+
+    /**
+     * Does not record anything. This is the default of each queue connection.
+     */
+    MessagingMetrics NOOP = new MessagingMetrics() {};
+
+    /**
+     * Records successfully published messages. For asynchronous publishing, the duration lasts until the queue system
+     * confirmed the message.
+     *
+     * @param count The amount of messages
+     * @param duration The duration of the publishment in nanoseconds
+     */
+    default void messagesPublished(int count, long duration) {
+    }
+
+    /**
+     * Records messages which cannot be published.
+     *
+     * @param count The amount of messages
+     */
+    default void publishFailed(int count) {
+    }
+
+    /**
+     * Records a message which has been consumed successfully.
+     *
+     * @param duration The duration of the consumer call in nanoseconds
+     */
+    default void messageConsumed(long duration) {
+    }
+
+    /**
+     * Records a message whose consumer failed.
+     *
+     * @param duration The duration of the consumer call in nanoseconds
+     */
+    default void consumeFailed(long duration) {
+    }
+
+    /**
+     * Records a message acknowledgment.
+     *
+     * @param duration The duration of the acknowledgment in nanoseconds
+     */
+    default void messageAcknowledged(long duration) {
+    }
+
+    /**
+     * Records a single attempt to connect to the queue.
+     *
+     * @param duration The duration of the attempt in nanoseconds
+     * @param successful Whether the connection has been established
+     */
+    default void connectionAttempt(long duration, boolean successful) {
+    }
+
+    /**
+     * Records an established connection.
+     *
+     * @param attempts The amount of attempts it took to connect
+     * @param duration The duration until the connection got established in nanoseconds, including the waits between the
+     *                 attempts.
+     */
+    default void connectionOpened(int attempts, long duration) {
+    }
+
+    /**
+     * Registers a gauge, whose current value can be read at any time. This is called once, as soon as the queue
+     * connection gets built.
+     *
+     * @param gauge The gauge
+     * @param value Supplies the current value of the gauge
+     */
+    default void registerGauge(Gauge gauge, LongSupplier value) {
+    }
+
+    /**
+     * The gauges of a queue connection.
+     */
+    enum Gauge {
+
+        /**
+         * The amount of published messages which have not been confirmed by the queue system yet.
+         */
+        IN_FLIGHT,
+
+        /**
+         * The amount of received messages which have not been acknowledged to the queue system yet.
+         */
+        UNACKNOWLEDGED
+
+    }
+
+}
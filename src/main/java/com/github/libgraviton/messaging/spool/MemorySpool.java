@@ -0,0 +1,267 @@
+package com.github.libgraviton.messaging.spool;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link PublishSpool} which keeps the messages in a ring buffer of a fixed amount of bytes, either on the heap or in
+ * direct memory outside of it. Each message takes its body size plus a header of 5 bytes. Since the messages are lost as
+ * soon as the process terminates, this spool is meant to bridge short outages of the queue system.
+ *
+ * What happens if a message does not fit anymore is defined by the {@link OverflowPolicy}.
+ */
+public class MemorySpool implements PublishSpool {
+
+    private static final int HEADER_SIZE = 5;
+
+    // Marks the unused rest of the buffer, if a record did not fit at its end.
+    private static final int WRAP = -1;
+
+    private final ByteBuffer buffer;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private int head = 0;
+
+    private int tail = 0;
+
+    // Sequence number of the message at the head and of the first message of the last peek
+    private long headSequence = 0;
+
+    private long peekSequence = 0;
+
+    private volatile long count = 0;
+
+    private boolean draining = true;
+
+    /**
+     * Creates a spool on the heap.
+     *
+     * @param capacity The capacity in bytes
+     * @param overflowPolicy What happens if a message does not fit anymore
+     */
+    public MemorySpool(int capacity, OverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, false);
+    }
+
+    /**
+     * @param capacity The capacity in bytes
+     * @param overflowPolicy What happens if a message does not fit anymore
+     * @param direct Whether to keep the messages in direct memory outside of the heap, which keeps large amounts of
+     *               spooled messages away from the garbage collector.
+     */
+    public MemorySpool(int capacity, OverflowPolicy overflowPolicy, boolean direct) {
+        buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Appends a message. If the spool is full, the overflow policy applies.
+     *
+     * @param message The message
+     *
+     * @throws CannotPublishMessage If the message exceeds the capacity, if the spool is full and the policy is
+     *                              {@link OverflowPolicy#FAIL_FAST}, if the spool is full and not drained or if the
+     *                              thread gets interrupted while blocking.
+     */
+    @Override
+    public void append(SpooledMessage message) throws CannotPublishMessage {
+        byte[] body = message.getBody();
+        int size = HEADER_SIZE + body.length;
+        if (size > buffer.capacity()) {
+            throw new CannotPublishMessage(
+                    message.getBodyAsString(),
+                    String.format(
+                            "Message size of '%d' bytes exceeds the spool capacity of '%d' bytes.",
+                            body.length,
+                            buffer.capacity() - HEADER_SIZE
+                    )
+            );
+        }
+        lock.lock();
+        try {
+            int position;
+            while (-1 == (position = reserve(size))) {
+                switch (overflowPolicy) {
+                    case DROP_OLDEST:
+                        removeHead();
+                        dropped.increment();
+                        break;
+                    case FAIL_FAST:
+                        throw new CannotPublishMessage(message.getBodyAsString(), "Spool is full.");
+                    default:
+                        if (!draining) {
+                            throw new CannotPublishMessage(
+                                    message.getBodyAsString(),
+                                    "Spool is full and not drained."
+                            );
+                        }
+                        try {
+                            notFull.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new CannotPublishMessage(message.getBodyAsString(), e);
+                        }
+                }
+            }
+            buffer.putInt(position, body.length);
+            buffer.put(position + 4, message.isText() ? (byte) 1 : (byte) 0);
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + HEADER_SIZE);
+            view.put(body);
+            count++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<SpooledMessage> peek(int maxMessages) {
+        lock.lock();
+        try {
+            List<SpooledMessage> messages = new ArrayList<>((int) Math.min(maxMessages, count));
+            int position = head;
+            for (long i = 0; i < count && messages.size() < maxMessages; i++) {
+                position = wrap(position);
+                int length = buffer.getInt(position);
+                byte[] body = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(position + HEADER_SIZE);
+                view.get(body);
+                messages.add(new SpooledMessage(body, 1 == buffer.get(position + 4)));
+                position += HEADER_SIZE + length;
+            }
+            peekSequence = headSequence;
+            return messages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the next messages of the last peek. Messages which have been dropped in the meantime are not removed
+     * twice.
+     *
+     * @param count The amount of messages to remove
+     */
+    @Override
+    public void remove(int count) {
+        lock.lock();
+        try {
+            long sequence = peekSequence + count;
+            while (headSequence < sequence && this.count > 0) {
+                removeHead();
+            }
+            peekSequence = sequence;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return 0 == count;
+    }
+
+    /**
+     * Wakes up the threads waiting for free space, if the messages are not drained anymore, so they fail instead of
+     * waiting forever.
+     *
+     * @param draining Whether the messages get drained
+     */
+    @Override
+    public void setDraining(boolean draining) {
+        lock.lock();
+        try {
+            this.draining = draining;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The amount of spooled messages
+     */
+    public long getMessageCount() {
+        return count;
+    }
+
+    /**
+     * @return The amount of messages dropped due to {@link OverflowPolicy#DROP_OLDEST}
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Reserves space for a record at the tail. Wraps around to the start of the buffer, if the record does not fit at
+     * its end.
+     *
+     * @param size The record size
+     *
+     * @return The position of the record or -1 if it does not fit.
+     */
+    private int reserve(int size) {
+        if (0 == count) {
+            head = 0;
+            tail = size;
+            return 0;
+        }
+        int position = tail;
+        if (tail > head) {
+            // The free space is at the end and, after wrapping around, before the head.
+            if (tail + size <= buffer.capacity()) {
+                tail += size;
+                return position;
+            }
+            if (size > head) {
+                return -1;
+            }
+            if (tail + 4 <= buffer.capacity()) {
+                buffer.putInt(tail, WRAP);
+            }
+            tail = size;
+            return 0;
+        }
+        // The free space is between the tail and the head.
+        if (tail + size > head) {
+            return -1;
+        }
+        tail += size;
+        return position;
+    }
+
+    private void removeHead() {
+        int position = wrap(head);
+        head = position + HEADER_SIZE + buffer.getInt(position);
+        headSequence++;
+        count--;
+    }
+
+    /**
+     * Gets the position of the record at a given position, which is the start of the buffer if the record has been
+     * wrapped around.
+     *
+     * @param position The position
+     *
+     * @return The position of the record
+     */
+    private int wrap(int position) {
+        return position + HEADER_SIZE > buffer.capacity() || WRAP == buffer.getInt(position) ? 0 : position;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.github.libgraviton.messaging.spool;
+
+/**
+ * Defines what happens if a message is appended to a full {@link MemorySpool}.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Blocks the publishing thread until enough messages have been published. Fails like {@link #FAIL_FAST} while the
+     * spool is not drained, e.g. since the connection has been closed.
+     */
+    BLOCK,
+
+    /**
+     * Drops the oldest messages until the new message fits.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Rejects the new message, so publishing fails.
+     */
+    FAIL_FAST
+
+}
@@ -0,0 +1,60 @@
+package com.github.libgraviton.messaging.spool;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+
+import java.util.List;
+
+/**
+ * Keeps messages published while a queue connection is closed, until they can be published on the queue. Messages are
+ * appended by the publishing threads and removed in the same order by a single drainer thread, once they have been
+ * published.
+ *
+ * Implementations must therefore support concurrent appends, while peeking and removing is never done concurrently.
+ *
+ * @see com.github.libgraviton.messaging.QueueConnection.Builder#spool(PublishSpool)
+ */
+public interface PublishSpool {
+
+    /**
+     * Appends a message.
+     *
+     * @param message The message
+     *
+     * @throws CannotPublishMessage If the message cannot be kept.
+     */
+    void append(SpooledMessage message) throws CannotPublishMessage;
+
+    /**
+     * Gets the oldest messages without removing them.
+     *
+     * @param maxMessages The max. amount of messages to get
+     *
+     * @return The messages in the order they have been appended, which is empty if the spool is empty.
+     */
+    List<SpooledMessage> peek(int maxMessages);
+
+    /**
+     * Removes the oldest messages, which have been peeked before.
+     *
+     * @param count The amount of messages to remove
+     */
+    void remove(int count);
+
+    /**
+     * Checks whether the spool contains any messages. This is called before each publishment, so it must be cheap.
+     *
+     * @return true if there are no messages, otherwise false.
+     */
+    boolean isEmpty();
+
+    /**
+     * Tells the spool whether its messages get drained. While they do not, e.g. since the connection has been closed,
+     * appending to a full spool must not wait for free space, since nobody makes room. Spools which never wait may
+     * ignore this, which is the default.
+     *
+     * @param draining Whether the messages get drained
+     */
+    default void setDraining(boolean draining) {
+    }
+
+}
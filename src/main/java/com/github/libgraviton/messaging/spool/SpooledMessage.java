@@ -0,0 +1,47 @@
+package com.github.libgraviton.messaging.spool;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message kept by a {@link PublishSpool}. Text messages are kept UTF-8 encoded, so they can be published as text
+ * messages again.
+ */
+public class SpooledMessage {
+
+    private final byte[] body;
+
+    private final boolean text;
+
+    /**
+     * @param body The message body
+     * @param text Whether the message has been published as text message
+     */
+    public SpooledMessage(byte[] body, boolean text) {
+        this.body = body;
+        this.text = text;
+    }
+
+    /**
+     * Creates a spooled text message.
+     *
+     * @param message The message
+     *
+     * @return The spooled message
+     */
+    public static SpooledMessage text(String message) {
+        return new SpooledMessage(message.getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    public boolean isText() {
+        return text;
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Routes messages to the queues bound to it, following the AMQP exchange types:
+ *
+ * - direct: The routing key of the message equals the binding key.
+ * - topic: The binding key is a pattern of dot separated words, where '*' matches exactly one word and '#' matches zero
+ *   or more words.
+ * - fanout: Every bound queue gets the message, regardless of the routing key.
+ */
+class Exchange {
+
+    static final String DIRECT = "direct";
+
+    static final String TOPIC = "topic";
+
+    static final String FANOUT = "fanout";
+
+    private final String type;
+
+    private final CopyOnWriteArrayList<Binding> bindings = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param type The exchange type
+     *
+     * @throws IllegalArgumentException If the exchange type is not supported.
+     */
+    Exchange(String type) {
+        if (!DIRECT.equals(type) && !TOPIC.equals(type) && !FANOUT.equals(type)) {
+            throw new IllegalArgumentException(String.format("Exchange type '%s' is not supported.", type));
+        }
+        this.type = type;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    /**
+     * Binds a queue to the exchange. Binding the same queue with the same key twice has no effect.
+     *
+     * @param queue The queue
+     * @param bindingKey The binding key
+     */
+    void bind(InMemoryQueue queue, String bindingKey) {
+        bindings.addIfAbsent(new Binding(queue, null == bindingKey ? "" : bindingKey));
+    }
+
+    /**
+     * Removes all bindings of a queue.
+     *
+     * @param queue The queue
+     */
+    void unbind(InMemoryQueue queue) {
+        bindings.removeIf(binding -> binding.queue == queue);
+    }
+
+    /**
+     * Routes a message to all matching queues. A queue matched by several bindings gets the message only once. The
+     * message is either added to all matching queues or, if one of them is full, to none of them, so publishing it
+     * again does not duplicate it.
+     *
+     * @param routingKey The routing key
+     * @param envelope The message
+     *
+     * @return false if a matching queue is full, otherwise true. Messages which do not match any queue get dropped.
+     */
+    boolean publish(String routingKey, InMemoryEnvelope envelope) {
+        String key = null == routingKey ? "" : routingKey;
+        String[] words = TOPIC.equals(type) ? key.split("\\.", -1) : null;
+        List<InMemoryQueue> reserved = new ArrayList<>();
+        for (Binding binding : bindings) {
+            if (!matches(binding, key, words) || reserved.contains(binding.queue)) {
+                continue;
+            }
+            if (!binding.queue.reserve()) {
+                for (InMemoryQueue queue : reserved) {
+                    queue.release();
+                }
+                return false;
+            }
+            reserved.add(binding.queue);
+        }
+        for (InMemoryQueue queue : reserved) {
+            queue.add(envelope);
+        }
+        return true;
+    }
+
+    private boolean matches(Binding binding, String routingKey, String[] words) {
+        switch (type) {
+            case FANOUT:
+                return true;
+            case TOPIC:
+                return matchesTopic(binding.pattern, 0, words, 0);
+            default:
+                return binding.key.equals(routingKey);
+        }
+    }
+
+    private static boolean matchesTopic(String[] pattern, int p, String[] words, int w) {
+        if (p == pattern.length) {
+            return w == words.length;
+        }
+        if ("#".equals(pattern[p])) {
+            for (int i = w; i <= words.length; i++) {
+                if (matchesTopic(pattern, p + 1, words, i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (w == words.length) {
+            return false;
+        }
+        return ("*".equals(pattern[p]) || pattern[p].equals(words[w])) && matchesTopic(pattern, p + 1, words, w + 1);
+    }
+
+    private static class Binding {
+
+        private final InMemoryQueue queue;
+
+        private final String key;
+
+        private final String[] pattern;
+
+        Binding(InMemoryQueue queue, String key) {
+            this.queue = queue;
+            this.key = key;
+            this.pattern = key.split("\\.", -1);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Binding && ((Binding) other).queue == queue && ((Binding) other).key.equals(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(queue) + key.hashCode();
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the queues and exchanges of in-memory connections. All connections using the same broker name share the same
+ * queues and exchanges within the current process, like clients of the same message broker.
+ *
+ * Use a broker name of its own (e.g. per test) to isolate connections from all other ones.
+ */
+public class InMemoryBroker {
+
+    private static final ConcurrentMap<String, InMemoryBroker> BROKERS = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, InMemoryQueue> queues = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Exchange> exchanges = new ConcurrentHashMap<>();
+
+    private final AtomicLong messageIds = new AtomicLong();
+
+    private InMemoryBroker() {
+    }
+
+    /**
+     * Gets the broker of a given name. The broker is created if it does not exist yet.
+     *
+     * @param name The broker name
+     *
+     * @return The broker
+     */
+    public static InMemoryBroker getBroker(String name) {
+        return BROKERS.computeIfAbsent(name, key -> new InMemoryBroker());
+    }
+
+    /**
+     * Gets the amount of messages of a queue, which are ready to be delivered.
+     *
+     * @param queueName The queue name
+     *
+     * @return The amount of messages or 0 if the queue does not exist.
+     */
+    public int getMessageCount(String queueName) {
+        InMemoryQueue queue = queues.get(queueName);
+        return null == queue ? 0 : queue.getMessageCount();
+    }
+
+    /**
+     * Deletes all queues and exchanges including their messages. Connections which are still open keep the queues they
+     * are connected to.
+     */
+    public void reset() {
+        queues.clear();
+        exchanges.clear();
+    }
+
+    /**
+     * Declares a queue, if it does not exist yet.
+     *
+     * @param name The queue name
+     * @param capacity The capacity of the queue, if it gets created.
+     *
+     * @return The queue
+     */
+    InMemoryQueue declareQueue(String name, int capacity) {
+        return queues.computeIfAbsent(name, key -> new InMemoryQueue(key, capacity));
+    }
+
+    /**
+     * Deletes a queue and removes it from all exchanges.
+     *
+     * @param queue The queue
+     */
+    void deleteQueue(InMemoryQueue queue) {
+        queues.remove(queue.getName(), queue);
+        for (Exchange exchange : exchanges.values()) {
+            exchange.unbind(queue);
+        }
+    }
+
+    /**
+     * Declares an exchange, if it does not exist yet.
+     *
+     * @param name The exchange name
+     * @param type The exchange type
+     *
+     * @return The exchange
+     *
+     * @throws IllegalArgumentException If the exchange type is not supported or the exchange already exists with
+     *                                  another type.
+     */
+    Exchange declareExchange(String name, String type) {
+        Exchange exchange = exchanges.computeIfAbsent(name, key -> new Exchange(type));
+        if (!exchange.getType().equals(type)) {
+            throw new IllegalArgumentException(String.format(
+                    "Exchange '%s' has already been declared with type '%s'.",
+                    name,
+                    exchange.getType()
+            ));
+        }
+        return exchange;
+    }
+
+    /**
+     * Routes a message. Without an exchange, the message is routed to the queue named by the routing key.
+     *
+     * @param exchangeName The exchange name or null for the default exchange
+     * @param routingKey The routing key
+     * @param envelope The message
+     *
+     * @return false if a matching queue is full, otherwise true. Messages which do not match any queue get dropped.
+     */
+    boolean publish(String exchangeName, String routingKey, InMemoryEnvelope envelope) {
+        if (null == exchangeName) {
+            InMemoryQueue queue = queues.get(routingKey);
+            return null == queue || queue.offer(envelope);
+        }
+        Exchange exchange = exchanges.get(exchangeName);
+        return null == exchange || exchange.publish(routingKey, envelope);
+    }
+
+    /**
+     * Generates a message id, which is unique within this broker.
+     *
+     * @return The message id
+     */
+    String nextMessageId() {
+        return Long.toString(messageIds.incrementAndGet());
+    }
+
+}
@@ -0,0 +1,313 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import com.github.libgraviton.messaging.QueueConnection;
+import com.github.libgraviton.messaging.config.PropertyUtil;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.exception.CannotCloseConnection;
+import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Represents a connection to a queue of an {@link InMemoryBroker}. The messages never leave the current process, which
+ * makes this strategy suitable for unit tests, benchmarks and single process deployments. Note that the messages are
+ * lost as soon as the process terminates.
+ *
+ * Queues and exchanges behave like their RabbitMQ counterparts: the queue is declared as soon as the connection gets
+ * opened, so messages published before a consumer is registered are kept. If an exchange is defined, the queue gets
+ * bound to it with the routing key and messages are published on the exchange. Otherwise, messages are published
+ * directly on the queue.
+ */
+public class InMemoryConnection extends QueueConnection {
+
+    private static final String TEMPORARY_QUEUE_PREFIX = "inmemory.gen-";
+
+    private final InMemoryBroker broker;
+
+    private final int queueCapacity;
+
+    private final int prefetchCount;
+
+    private final String exchangeName;
+
+    private final String exchangeType;
+
+    private final String routingKey;
+
+    private String queueName;
+
+    private volatile InMemoryQueue queue;
+
+    private volatile InMemoryConsumer inMemoryConsumer;
+
+    private InMemoryConnection(Builder builder) {
+        super(builder);
+        broker = InMemoryBroker.getBroker(builder.brokerName);
+        queueCapacity = builder.queueCapacity;
+        prefetchCount = builder.prefetchCount;
+        exchangeName = builder.exchangeName;
+        exchangeType = builder.exchangeType;
+        routingKey = builder.routingKey;
+        queueName = super.queueName;
+    }
+
+    @Override
+    public String getConnectionName() {
+        return String.format(
+                "%s - %s",
+                null == exchangeName ? "default-exchange" : exchangeName,
+                null == queueName ? "temporary-queue" : queueName
+        );
+    }
+
+    @Override
+    public boolean isOpen() {
+        return null != queue;
+    }
+
+    /**
+     * Declares the queue and, if defined, the exchange and binds the queue to it. If no queue name is defined, a
+     * temporary queue is declared, which gets deleted as soon as the connection is closed.
+     *
+     * @throws CannotConnectToQueue If the exchange has already been declared with another type.
+     */
+    @Override
+    protected void openConnection() throws CannotConnectToQueue {
+        String name = null == queueName ? TEMPORARY_QUEUE_PREFIX + UUID.randomUUID() : queueName;
+        InMemoryQueue declaredQueue = broker.declareQueue(name, queueCapacity);
+        if (null != exchangeName) {
+            try {
+                broker.declareExchange(exchangeName, exchangeType).bind(declaredQueue, routingKey);
+            } catch (IllegalArgumentException e) {
+                throw new CannotConnectToQueue(name, e);
+            }
+        }
+        queueName = name;
+        queue = declaredQueue;
+    }
+
+    /**
+     * Starts delivering the messages of the queue to the consumer. If the consumer implements
+     * {@link AcknowledgingConsumer}, messages are kept until the consumer acknowledges them. Otherwise, each message
+     * gets acknowledged as soon as the consumer returns.
+     *
+     * @see Builder#prefetchCount(int)
+     *
+     * @param consumer The consumer to register.
+     */
+    @Override
+    protected void registerConsumer(Consumer consumer) throws CannotRegisterConsumer {
+        InMemoryConsumer inMemoryConsumer = new InMemoryConsumer(queue, consumer, prefetchCount, metrics);
+        if (consumer instanceof AcknowledgingConsumer) {
+            ((AcknowledgingConsumer) consumer).setAcknowledger(inMemoryConsumer);
+        }
+        this.inMemoryConsumer = inMemoryConsumer;
+        inMemoryConsumer.start();
+    }
+
+    /**
+     * Publishes a text message. Note that this method uses UTF-8 encoding only.
+     *
+     * @param message The message to publish
+     *
+     * @throws CannotPublishMessage If a queue the message is routed to is full.
+     */
+    @Override
+    protected void publishMessage(String message) throws CannotPublishMessage {
+        publishMessage(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Publishes a bytes message. The message is not copied, so it must not be modified after publishing. Messages which
+     * cannot be routed to any queue get dropped.
+     *
+     * @param message The message to publish
+     *
+     * @throws CannotPublishMessage If a queue the message is routed to is full.
+     */
+    @Override
+    protected void publishMessage(byte[] message) throws CannotPublishMessage {
+        publish(message, Collections.emptyMap());
+    }
+
+    /**
+     * Publishes a bytes message, which carries the content type in its 'contentType' header.
+     *
+     * @param message The message to publish
+     * @param contentType The MIME type of the message
+     *
+     * @throws CannotPublishMessage If a queue the message is routed to is full.
+     */
+    @Override
+    protected void publishMessage(byte[] message, String contentType) throws CannotPublishMessage {
+        publish(message, Collections.singletonMap("contentType", contentType));
+    }
+
+    private void publish(byte[] message, Map<String, Object> headers) throws CannotPublishMessage {
+        String key = null == exchangeName ? queueName : routingKey;
+        InMemoryEnvelope envelope = new InMemoryEnvelope(
+                broker.nextMessageId(),
+                message,
+                headers,
+                key,
+                System.currentTimeMillis(),
+                false
+        );
+        if (!broker.publish(exchangeName, key, envelope)) {
+            throw new CannotPublishMessage(
+                    new String(message, StandardCharsets.UTF_8),
+                    String.format("Queue capacity of '%d' messages exceeded.", queueCapacity)
+            );
+        }
+    }
+
+    /**
+     * Stops the consumer and puts its unacknowledged messages back into the queue. A temporary queue gets deleted
+     * including its messages.
+     */
+    @Override
+    protected void closeConnection() throws CannotCloseConnection {
+        InMemoryQueue queue = this.queue;
+        if (null != inMemoryConsumer) {
+            inMemoryConsumer.stop();
+            inMemoryConsumer = null;
+        }
+        if (null != queue && queue.getName().startsWith(TEMPORARY_QUEUE_PREFIX)) {
+            broker.deleteQueue(queue);
+            queueName = null;
+        }
+        this.queue = null;
+    }
+
+    /**
+     * Gets the amount of delivered messages which have not been acknowledged yet.
+     *
+     * @return The amount of messages
+     */
+    @Override
+    public long getUnacknowledgedCount() {
+        InMemoryConsumer inMemoryConsumer = this.inMemoryConsumer;
+        return null == inMemoryConsumer ? 0 : inMemoryConsumer.getUnacknowledgedCount();
+    }
+
+    /**
+     * Builder class for creating in-memory connections.
+     */
+    public static class Builder extends QueueConnection.Builder<Builder> {
+
+        private String brokerName = "default";
+
+        private int queueCapacity = 10000;
+
+        private int prefetchCount = 0;
+
+        private String exchangeName = null;
+
+        private String exchangeType = Exchange.DIRECT;
+
+        private String routingKey = null;
+
+        /**
+         * Sets the name of the broker. Connections with the same broker name share their queues and exchanges.
+         * Default is 'default'.
+         *
+         * @param brokerName The broker name
+         *
+         * @return self
+         */
+        public Builder brokerName(String brokerName) {
+            this.brokerName = brokerName;
+            return this;
+        }
+
+        /**
+         * Sets the max. amount of messages the queue keeps, including the unacknowledged ones. Publishing fails as soon
+         * as the queue is full. Default is 10000. Only applies if the queue does not exist yet.
+         *
+         * @param queueCapacity The queue capacity
+         *
+         * @return self
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the max. amount of unacknowledged messages delivered to the consumer. Default is 0, which means no
+         * limit.
+         *
+         * @param prefetchCount The max. amount of unacknowledged messages
+         *
+         * @return self
+         */
+        public Builder prefetchCount(int prefetchCount) {
+            this.prefetchCount = prefetchCount;
+            return this;
+        }
+
+        /**
+         * Sets the exchange name. Default is no exchange, which publishes directly on the queue.
+         *
+         * @param exchangeName The exchange name
+         *
+         * @return self
+         */
+        public Builder exchangeName(String exchangeName) {
+            this.exchangeName = exchangeName;
+            return this;
+        }
+
+        /**
+         * Defines the type of the exchange, which is one of 'direct', 'topic' or 'fanout'. Default is 'direct'. Only
+         * applies if an exchange is specified.
+         *
+         * @see #exchangeName(String)
+         *
+         * @param exchangeType The exchange's type
+         *
+         * @return self
+         */
+        public Builder exchangeType(String exchangeType) {
+            this.exchangeType = exchangeType;
+            return this;
+        }
+
+        /**
+         * Sets the routing key, which is used to publish messages and to bind the queue to the exchange.
+         *
+         * @param routingKey The routing key
+         *
+         * @return self
+         */
+        public Builder routingKey(String routingKey) {
+            this.routingKey = routingKey;
+            return this;
+        }
+
+        @Override
+        public Builder applyProperties(Properties properties) {
+            return super.applyProperties(properties)
+                    .brokerName(properties.getProperty("broker.name", brokerName))
+                    .queueCapacity(PropertyUtil.getIntger(properties, "queue.capacity", queueCapacity))
+                    .prefetchCount(PropertyUtil.getIntger(properties, "queue.prefetch", prefetchCount))
+                    .exchangeName(properties.getProperty("exchange.name", exchangeName))
+                    .exchangeType(properties.getProperty("exchange.type", exchangeType))
+                    .routingKey(properties.getProperty("routingkey", routingKey));
+        }
+
+        @Override
+        public InMemoryConnection build() {
+            return new InMemoryConnection(this);
+        }
+
+    }
+
+}
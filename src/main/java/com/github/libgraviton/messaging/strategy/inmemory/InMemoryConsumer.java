@@ -0,0 +1,189 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the messages of an in-memory queue to a {@link Consumer} on a thread of its own, like the delivery thread of
+ * a broker client. The thread parks as long as no message is ready and gets unparked as soon as a message is published.
+ *
+ * Delivered messages are kept until they are acknowledged. If the wrapped consumer is not an
+ * {@link AcknowledgingConsumer}, each message gets acknowledged as soon as the consumer returns, even if it failed. As
+ * soon as the consumer is stopped, all unacknowledged messages are put back into the queue and get redelivered.
+ */
+class InMemoryConsumer implements MessageAcknowledger, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryConsumer.class);
+
+    // Safety net only, since publishers unpark the idle consumers.
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final InMemoryQueue queue;
+
+    private final Consumer consumer;
+
+    private final int prefetchCount;
+
+    private final MessagingMetrics metrics;
+
+    private final Map<String, InMemoryEnvelope> unacknowledged = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    private volatile boolean idle = false;
+
+    private Thread thread;
+
+    /**
+     * @param queue The queue to consume from
+     * @param consumer The consumer to deliver the messages to
+     * @param prefetchCount The max. amount of unacknowledged messages or 0 for no limit
+     * @param metrics Records the consumptions and acknowledgments
+     */
+    InMemoryConsumer(InMemoryQueue queue, Consumer consumer, int prefetchCount, MessagingMetrics metrics) {
+        this.queue = queue;
+        this.consumer = consumer;
+        this.prefetchCount = prefetchCount;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts delivering messages.
+     */
+    void start() {
+        thread = new Thread(this, String.format("inmemory-consumer-%s", queue.getName()));
+        thread.setDaemon(true);
+        queue.addConsumer(this);
+        thread.start();
+    }
+
+    /**
+     * Stops delivering messages, waits until the current delivery is done and puts all unacknowledged messages back into
+     * the queue.
+     */
+    void stop() {
+        running = false;
+        queue.removeConsumer(this);
+        if (null != thread && Thread.currentThread() != thread) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Iterator<InMemoryEnvelope> envelopes = unacknowledged.values().iterator();
+        while (envelopes.hasNext()) {
+            InMemoryEnvelope envelope = envelopes.next();
+            envelopes.remove();
+            queue.requeue(envelope);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            InMemoryEnvelope envelope = isPrefetchExhausted() ? null : queue.poll();
+            if (null == envelope) {
+                awaitMessages();
+            } else {
+                deliver(envelope);
+            }
+        }
+    }
+
+    @Override
+    public void acknowledge(String messageId) throws CannotAcknowledgeMessage {
+        long start = System.nanoTime();
+        if (null == unacknowledged.remove(messageId)) {
+            throw new CannotAcknowledgeMessage(
+                    this,
+                    messageId,
+                    String.format("Message with id '%s' is unknown or has already been acknowledged.", messageId)
+            );
+        }
+        queue.release();
+        metrics.messageAcknowledged(System.nanoTime() - start);
+        if (prefetchCount > 0) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Unparks the delivery thread, if it is waiting for messages.
+     */
+    void wakeUp() {
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Gets the amount of delivered messages which have not been acknowledged yet.
+     *
+     * @return The amount of messages
+     */
+    int getUnacknowledgedCount() {
+        return unacknowledged.size();
+    }
+
+    private void awaitMessages() {
+        idle = true;
+        // Check again, since a publisher may have missed the idle flag.
+        if (running && (isPrefetchExhausted() || queue.isEmpty())) {
+            LockSupport.parkNanos(this, IDLE_WAIT);
+        }
+        idle = false;
+    }
+
+    private boolean isPrefetchExhausted() {
+        return prefetchCount > 0 && unacknowledged.size() >= prefetchCount;
+    }
+
+    private void deliver(InMemoryEnvelope envelope) {
+        String messageId = envelope.getId();
+        unacknowledged.put(messageId, envelope);
+        long start = System.nanoTime();
+        boolean consumed = false;
+        try {
+            if (consumer instanceof MessageConsumer) {
+                ((MessageConsumer) consumer).consume(envelope.toMessage());
+            } else {
+                consumer.consume(messageId, new String(envelope.getBody(), StandardCharsets.UTF_8));
+            }
+            consumed = true;
+        } catch (CannotConsumeMessage e) {
+            LOG.warn(String.format("Consumer '%s' failed: '%s'", consumer, e.getMessage()));
+        } catch (RuntimeException e) {
+            LOG.error(String.format("Consumer '%s' failed unexpectedly.", consumer), e);
+        } finally {
+            if (consumed) {
+                metrics.messageConsumed(System.nanoTime() - start);
+            } else {
+                metrics.consumeFailed(System.nanoTime() - start);
+            }
+            if (!(consumer instanceof AcknowledgingConsumer)) {
+                try {
+                    acknowledge(messageId);
+                } catch (CannotAcknowledgeMessage e) {
+                    LOG.error(e.getMessage());
+                }
+            }
+        }
+    }
+
+}
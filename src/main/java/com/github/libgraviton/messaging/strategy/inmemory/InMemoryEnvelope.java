@@ -0,0 +1,73 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.Message;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * A message on its way through the in-memory broker. Envelopes are immutable, so the same envelope can be routed to
+ * several queues. Note that the body is not copied, so it must not be modified after publishing.
+ */
+class InMemoryEnvelope {
+
+    private final String id;
+
+    private final byte[] body;
+
+    private final Map<String, Object> headers;
+
+    private final String routingKey;
+
+    private final long timestamp;
+
+    private final boolean redelivered;
+
+    InMemoryEnvelope(String id, byte[] body, String routingKey, long timestamp) {
+        this(id, body, Collections.emptyMap(), routingKey, timestamp, false);
+    }
+
+    InMemoryEnvelope(
+            String id,
+            byte[] body,
+            Map<String, Object> headers,
+            String routingKey,
+            long timestamp,
+            boolean redelivered
+    ) {
+        this.id = id;
+        this.body = body;
+        this.headers = headers;
+        this.routingKey = routingKey;
+        this.timestamp = timestamp;
+        this.redelivered = redelivered;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    boolean isRedelivered() {
+        return redelivered;
+    }
+
+    /**
+     * Marks the envelope as redelivered.
+     *
+     * @return A copy of the envelope, which is marked as redelivered
+     */
+    InMemoryEnvelope redeliver() {
+        return redelivered ? this : new InMemoryEnvelope(id, body, headers, routingKey, timestamp, true);
+    }
+
+    Message toMessage() {
+        return new BasicMessage(id, body, headers, redelivered, new Date(timestamp), routingKey);
+    }
+
+}
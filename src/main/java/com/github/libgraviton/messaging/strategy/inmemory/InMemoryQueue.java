@@ -0,0 +1,137 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded queue of the in-memory broker, which does not lock on publishing or consuming. The messages are kept in a
+ * lock-free linked queue, while the bound is enforced by a counter which is reserved with compare-and-set.
+ *
+ * The capacity covers both the messages which are ready and the ones which have been delivered but not acknowledged
+ * yet. Therefore, requeueing an unacknowledged message never exceeds the capacity.
+ */
+class InMemoryQueue {
+
+    private final String name;
+
+    private final int capacity;
+
+    private final Queue<InMemoryEnvelope> ready = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final List<InMemoryConsumer> consumers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param name The queue name
+     * @param capacity The max. amount of ready and unacknowledged messages
+     */
+    InMemoryQueue(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a message, if the queue is not full.
+     *
+     * @param envelope The message
+     *
+     * @return true if the message has been added, false if the queue is full.
+     */
+    boolean offer(InMemoryEnvelope envelope) {
+        if (!reserve()) {
+            return false;
+        }
+        add(envelope);
+        return true;
+    }
+
+    /**
+     * Reserves the capacity for a message, if the queue is not full. The reserved capacity has to be either used by
+     * {@link #add(InMemoryEnvelope)} or given back by {@link #release()}.
+     *
+     * @return true if the capacity has been reserved, false if the queue is full.
+     */
+    boolean reserve() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Adds a message whose capacity has already been reserved.
+     *
+     * @param envelope The message
+     */
+    void add(InMemoryEnvelope envelope) {
+        ready.offer(envelope);
+        wakeUpConsumers();
+    }
+
+    /**
+     * Takes the next ready message. The message still counts towards the capacity until it gets released.
+     *
+     * @return The message or null if no message is ready.
+     */
+    InMemoryEnvelope poll() {
+        return ready.poll();
+    }
+
+    /**
+     * Puts a delivered but unacknowledged message back, so it gets delivered again. The message is added to the end of
+     * the queue.
+     *
+     * @param envelope The message
+     */
+    void requeue(InMemoryEnvelope envelope) {
+        ready.offer(envelope.redeliver());
+        wakeUpConsumers();
+    }
+
+    /**
+     * Releases the capacity of an acknowledged message or an unused reservation.
+     */
+    void release() {
+        size.decrementAndGet();
+    }
+
+    boolean isEmpty() {
+        return ready.isEmpty();
+    }
+
+    /**
+     * Gets the amount of messages which are ready to be delivered. Note that this traverses the whole queue.
+     *
+     * @return The amount of messages
+     */
+    int getMessageCount() {
+        return ready.size();
+    }
+
+    void addConsumer(InMemoryConsumer consumer) {
+        consumers.add(consumer);
+    }
+
+    void removeConsumer(InMemoryConsumer consumer) {
+        consumers.remove(consumer);
+    }
+
+    private void wakeUpConsumers() {
+        for (InMemoryConsumer consumer : consumers) {
+            consumer.wakeUp();
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import javax.jms.Session;
+
+/**
+ * Defines how consumed messages get acknowledged to the JMS provider.
+ */
+public enum AcknowledgeMode {
+
+    /**
+     * Each message gets acknowledged on its own as soon as it has been consumed or the {@link
+     * com.github.libgraviton.messaging.consumer.AcknowledgingConsumer} acknowledged it.
+     */
+    CLIENT(false, Session.CLIENT_ACKNOWLEDGE),
+
+    /**
+     * The session acknowledges messages lazily once they have been consumed. This saves round trips to the broker, but
+     * messages may be delivered more than once if the connection fails.
+     */
+    DUPS_OK(false, Session.DUPS_OK_ACKNOWLEDGE),
+
+    /**
+     * Consumed messages get acknowledged by committing the session every few messages or milliseconds. Messages which
+     * have not been committed yet get redelivered if the connection fails.
+     */
+    TRANSACTED(true, Session.SESSION_TRANSACTED);
+
+    private final boolean transacted;
+
+    private final int sessionMode;
+
+    AcknowledgeMode(boolean transacted, int sessionMode) {
+        this.transacted = transacted;
+        this.sessionMode = sessionMode;
+    }
+
+    boolean isTransacted() {
+        return transacted;
+    }
+
+    int getSessionMode() {
+        return sessionMode;
+    }
+
+}
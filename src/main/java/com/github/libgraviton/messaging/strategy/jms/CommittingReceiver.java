@@ -0,0 +1,175 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.function.LongSupplier;
+
+/**
+ * Receives the messages of a transacted consumer session on a thread of its own and commits the session as soon as a
+ * given amount of messages has been consumed or the oldest uncommitted message is older than the commit interval.
+ *
+ * Since a JMS session must only be used by one thread at a time, messages are received synchronously instead of being
+ * dispatched to a {@link MessageListener} by the provider. Thus, the receiving thread can wait for the next message only
+ * until the commit interval elapses and commit the session itself, even if no further message arrives. Messages which
+ * are still uncommitted get committed by the receiving thread as soon as it has been stopped.
+ */
+class CommittingReceiver implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommittingReceiver.class);
+
+    // Safety net only, since closing the consumer wakes up the receiving thread.
+    private static final long IDLE_WAIT = 1000;
+
+    private final Session session;
+
+    private final MessageConsumer consumer;
+
+    private final MessageListener listener;
+
+    private final int batchSize;
+
+    private final long interval;
+
+    private final LongSupplier clock;
+
+    private volatile boolean running = true;
+
+    private Thread thread;
+
+    private int uncommitted = 0;
+
+    private long firstUncommittedAt;
+
+    /**
+     * @param session The transacted session
+     * @param consumer The consumer receiving the messages of the session
+     * @param listener The listener consuming the messages
+     * @param batchSize The amount of messages which triggers a commit
+     * @param interval The max. amount of milliseconds a consumed message waits for its commit
+     */
+    CommittingReceiver(
+            Session session,
+            MessageConsumer consumer,
+            MessageListener listener,
+            int batchSize,
+            long interval
+    ) {
+        this(session, consumer, listener, batchSize, interval, System::currentTimeMillis);
+    }
+
+    CommittingReceiver(
+            Session session,
+            MessageConsumer consumer,
+            MessageListener listener,
+            int batchSize,
+            long interval,
+            LongSupplier clock
+    ) {
+        this.session = session;
+        this.consumer = consumer;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.interval = interval;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts receiving messages.
+     *
+     * @param name The name of the receiving thread
+     */
+    void start(String name) {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops receiving messages by closing the consumer and waits until the receiving thread committed the consumed
+     * messages.
+     */
+    void stop() {
+        running = false;
+        try {
+            consumer.close();
+        } catch (JMSException e) {
+            LOG.warn("Cannot close the consumer of a transacted session.", e);
+        }
+        if (null == thread) {
+            return;
+        }
+        if (Thread.currentThread() == thread) {
+            // Stopped by the listener, so the session cannot be in use.
+            commit();
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                receive();
+            }
+        } catch (JMSException e) {
+            if (running) {
+                // The connection failed, so its exception listener re-creates the sessions.
+                LOG.error("Cannot receive messages on transacted session.", e);
+            }
+        } finally {
+            commit();
+        }
+    }
+
+    /**
+     * Waits for the next message until the commit interval of the oldest uncommitted message elapses, passes it to the
+     * listener and commits the session if the batch is full or the interval elapsed.
+     *
+     * @throws JMSException If no message can be received.
+     */
+    void receive() throws JMSException {
+        long timeout = 0 == uncommitted ? IDLE_WAIT : firstUncommittedAt + interval - clock.getAsLong();
+        // A timeout of 0 waits forever.
+        Message message = consumer.receive(Math.max(1, timeout));
+        long now = clock.getAsLong();
+        if (null != message) {
+            listener.onMessage(message);
+            if (0 == uncommitted++) {
+                firstUncommittedAt = now;
+            }
+        }
+        if (uncommitted >= batchSize || uncommitted > 0 && now - firstUncommittedAt >= interval) {
+            commit();
+        }
+    }
+
+    /**
+     * Commits the consumed messages, if there are any.
+     */
+    private void commit() {
+        if (0 == uncommitted) {
+            return;
+        }
+        try {
+            session.commit();
+            LOG.debug(String.format("Committed %d consumed message(s).", uncommitted));
+        } catch (JMSException e) {
+            // The transaction is rolled back, so the messages get redelivered.
+            LOG.error(String.format("Cannot commit %d consumed message(s).", uncommitted), e);
+        } finally {
+            uncommitted = 0;
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.Message;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the received messages which have not been acknowledged yet. The table is safe to be used by several
+ * sessions concurrently and does not lock on the hot path. Besides the table, the messages are queued in the order they
+ * have been received, so the oldest ones can be evicted without scanning the table. Acknowledged and redelivered
+ * messages are not removed from that queue right away, but skipped as soon as they reach its head.
+ *
+ * Messages which have not been acknowledged within the timeout are considered stale and get evicted. If the table
+ * exceeds its max. size, the oldest messages get evicted as well. An evicted message can no longer be acknowledged by
+ * its id. It will be redelivered by the broker once its session gets recovered, unless a later message of the same
+ * session got acknowledged, since a JMS client acknowledgment covers all messages consumed by the session.
+ */
+class InFlightMessages {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InFlightMessages.class);
+
+    private final Map<String, InFlightMessage> messages = new ConcurrentHashMap<>();
+
+    // In the order the messages have been received, including the ones which are no longer in the table.
+    private final Queue<InFlightMessage> received = new ConcurrentLinkedQueue<>();
+
+    private final int maxSize;
+
+    private final long timeout;
+
+    private final LongSupplier clock;
+
+    private final AtomicInteger putsSincePurge = new AtomicInteger();
+
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param maxSize The max. amount of messages to keep track of
+     * @param timeout The amount of milliseconds after which a message is considered stale. 0 disables the timeout.
+     */
+    InFlightMessages(int maxSize, long timeout) {
+        this(maxSize, timeout, System::currentTimeMillis);
+    }
+
+    InFlightMessages(int maxSize, long timeout, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a received message. Evicts the oldest messages as long as they are stale or the table is full.
+     *
+     * @param messageId The message id
+     * @param message The message
+     */
+    void put(String messageId, Message message) {
+        long now = clock.getAsLong();
+        InFlightMessage inFlightMessage = new InFlightMessage(messageId, message, now);
+        // A redelivered message is the newest one, even if its id is still known.
+        messages.put(messageId, inFlightMessage);
+        received.add(inFlightMessage);
+
+        InFlightMessage oldest;
+        while (null != (oldest = received.peek())) {
+            if (!isTracked(oldest)) {
+                received.remove(oldest);
+                continue;
+            }
+            boolean stale = timeout > 0 && now - oldest.receivedAt >= timeout;
+            if (!stale && messages.size() <= maxSize) {
+                break;
+            }
+            // Another thread may have evicted or acknowledged the message in the meantime.
+            if (received.remove(oldest) && messages.remove(oldest.messageId, oldest)) {
+                evicted.increment();
+                LOG.warn(String.format(
+                        "Evicted message '%s' since %s.",
+                        oldest.messageId,
+                        stale
+                                ? "it has not been acknowledged within " + timeout + " ms"
+                                : "the max. amount of " + maxSize + " unacknowledged messages has been exceeded"
+                ));
+            }
+        }
+
+        // Messages acknowledged behind an older one do not reach the head of the queue, so they get purged from time
+        // to time. Since this happens every maxSize puts, the queue does not grow beyond twice the table size.
+        int puts = putsSincePurge.incrementAndGet();
+        if (puts >= maxSize && putsSincePurge.compareAndSet(puts, 0)) {
+            received.removeIf(queued -> !isTracked(queued));
+        }
+    }
+
+    /**
+     * Removes a message in order to acknowledge it.
+     *
+     * @param messageId The message id
+     *
+     * @return The message or null if it is unknown or has been evicted.
+     */
+    Message remove(String messageId) {
+        InFlightMessage inFlightMessage = messages.remove(messageId);
+        return null == inFlightMessage ? null : inFlightMessage.message;
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    private boolean isTracked(InFlightMessage inFlightMessage) {
+        return messages.get(inFlightMessage.messageId) == inFlightMessage;
+    }
+
+    private static class InFlightMessage {
+
+        private final String messageId;
+
+        private final Message message;
+
+        private final long receivedAt;
+
+        InFlightMessage(String messageId, Message message, long receivedAt) {
+            this.messageId = messageId;
+            this.message = message;
+            this.receivedAt = receivedAt;
+        }
+
+    }
+
+}
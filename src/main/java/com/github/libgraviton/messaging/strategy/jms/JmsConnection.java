@@ -1,12 +1,27 @@
 package com.github.libgraviton.messaging.strategy.jms;
 
 import com.github.libgraviton.messaging.QueueConnection;
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.batch.MicroBatcher;
+import com.github.libgraviton.messaging.compression.CompressionCodec;
+import com.github.libgraviton.messaging.compression.CompressionCodecs;
+import com.github.libgraviton.messaging.config.PropertyUtil;
+import com.github.libgraviton.messaging.connection.SharedConnectionRegistry;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
 import com.github.libgraviton.messaging.exception.*;
 
 import javax.jms.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a connection to a queue of a JMS compatible queue system. In case of a queue com.github.libgraviton.messaging.exception, the connection
@@ -14,16 +29,69 @@ import java.util.Properties;
  */
 public class JmsConnection extends QueueConnection {
 
+    private static final SharedConnectionRegistry<List<Object>, Connection> SHARED_CONNECTIONS =
+            new SharedConnectionRegistry<>(JmsConnection::isAlive);
+
     private final ConnectionFactory connectionFactory;
 
     private final String messageSelector;
 
+    private final Semaphore asyncPublishWindow;
+
+    private final double asyncPublishTimeout;
+
+    private final boolean sharedConnection;
+
+    private final List<Object> sharedConnectionKey;
+
+    private final boolean disableMessageId;
+
+    private final boolean disableMessageTimestamp;
+
+    private final boolean persistent;
+
+    private final int consumerSessions;
+
+    private final List<Session> additionalSessions = new ArrayList<>();
+
+    private final int maxInFlightMessages;
+
+    private final double inFlightTimeout;
+
+    private final AcknowledgeMode acknowledgeMode;
+
+    private final int commitBatchSize;
+
+    private final double commitInterval;
+
+    private final CompressionCodec compressionCodec;
+
+    private final int compressionThreshold;
+
+    private final List<CommittingReceiver> committingReceivers = new ArrayList<>();
+
+    private final MicroBatcher microBatcher;
+
+    private final int retryAttempts;
+
     private Connection connection;
 
     private Session session;
 
     private Queue queue;
 
+    private MessageProducer producer;
+
+    private JmsConsumer jmsConsumer;
+
+    private Session batchSession;
+
+    private MessageProducer batchProducer;
+
+    private Session microBatchSession;
+
+    private MessageProducer microBatchProducer;
+
     /**
      * Creates a JMS queue connection.
      *
@@ -33,6 +101,31 @@ public class JmsConnection extends QueueConnection {
         super(builder);
         connectionFactory = builder.connectionFactory;
         messageSelector = builder.messageSelector;
+        asyncPublishWindow = new Semaphore(builder.asyncPublishWindow);
+        asyncPublishTimeout = builder.asyncPublishTimeout;
+        sharedConnection = builder.sharedConnection;
+        sharedConnectionKey = builder.sharedConnectionKey();
+        disableMessageId = builder.disableMessageId;
+        disableMessageTimestamp = builder.disableMessageTimestamp;
+        persistent = builder.persistent;
+        consumerSessions = builder.consumerSessions;
+        maxInFlightMessages = builder.maxInFlightMessages;
+        inFlightTimeout = builder.inFlightTimeout;
+        acknowledgeMode = builder.acknowledgeMode;
+        commitBatchSize = builder.commitBatchSize;
+        commitInterval = builder.commitInterval;
+        compressionCodec = builder.compressionCodec;
+        compressionThreshold = builder.compressionThreshold;
+        microBatcher = builder.microBatchSize > 0
+                ? new MicroBatcher(
+                        builder.microBatchSize,
+                        (long) (builder.microBatchLinger * 1000),
+                        getConnectionName(),
+                        this::publishMicroBatch,
+                        this::getRetryWait
+                )
+                : null;
+        retryAttempts = builder.retryAttempts;
     }
 
     @Override
@@ -64,24 +157,122 @@ public class JmsConnection extends QueueConnection {
     }
 
     /**
-     * Opens the connection by creating a new {@link Connection}, {@link Session} and {@link Queue}.
+     * Gets the amount of consumed messages which have not been acknowledged yet.
+     *
+     * @return The amount of messages or 0 if no consumer is registered.
+     */
+    public int getInFlightCount() {
+        return null == jmsConsumer ? 0 : jmsConsumer.getInFlightCount();
+    }
+
+    @Override
+    public long getUnacknowledgedCount() {
+        return getInFlightCount();
+    }
+
+    /**
+     * Gets the amount of consumed messages which have been evicted from the table of unacknowledged messages, since they
+     * were not acknowledged in time or the table was full.
+     *
+     * @see Builder#maxInFlightMessages(int)
+     * @see Builder#inFlightTimeout(double)
+     *
+     * @return The amount of messages or 0 if no consumer is registered.
+     */
+    public long getEvictedCount() {
+        return null == jmsConsumer ? 0 : jmsConsumer.getEvictedCount();
+    }
+
+    /**
+     * Opens the connection by creating a new {@link Connection}, {@link Session} and {@link Queue}. If the connection
+     * is shared, the {@link Session} and {@link Queue} get created on the shared {@link Connection}.
+     *
+     * @see Builder#sharedConnection(boolean)
      *
      * @throws CannotConnectToQueue If the connection cannot be established
      */
     @Override
     protected void openConnection() throws CannotConnectToQueue {
         try {
-            connection = connectionFactory.createConnection();
+            connection = sharedConnection
+                    ? SHARED_CONNECTIONS.acquire(sharedConnectionKey, this::createSharedConnection)
+                    : connectionFactory.createConnection();
             session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE); // AutoAck is done by JmsConsumer
             queue = session.createQueue(queueName);
-            connection.setExceptionListener(new RecoveringExceptionListener(this));
+            setExceptionListener(new RecoveringExceptionListener(this));
         } catch (JMSException e) {
+            if (sharedConnection && null != connection) {
+                // Do not keep a reference to the shared connection, since open() will acquire it again.
+                try {
+                    releaseConnection();
+                } catch (JMSException releaseException) {
+                    e.addSuppressed(releaseException);
+                }
+                connection = null;
+            }
             throw new CannotConnectToQueue(queueName, e);
         }
     }
 
+    private Connection createSharedConnection() throws JMSException {
+        Connection connection = connectionFactory.createConnection();
+        connection.setExceptionListener(new SharedExceptionListener());
+        return connection;
+    }
+
+    private void setExceptionListener(ExceptionListener listener) throws JMSException {
+        if (sharedConnection) {
+            ((SharedExceptionListener) connection.getExceptionListener()).register(this, listener);
+        } else {
+            connection.setExceptionListener(listener);
+        }
+    }
+
     /**
-     * Registers a {@link MessageConsumer} with {@link MessageListener}.
+     * Closes the connection or, if it is shared, releases the reference to it.
+     *
+     * @throws JMSException If the connection cannot be closed.
+     */
+    private void releaseConnection() throws JMSException {
+        if (sharedConnection) {
+            ExceptionListener listener = connection.getExceptionListener();
+            if (listener instanceof SharedExceptionListener) {
+                ((SharedExceptionListener) listener).unregister(this);
+            }
+            SHARED_CONNECTIONS.release(sharedConnectionKey, connection, Connection::close);
+        } else {
+            connection.close();
+        }
+    }
+
+    private static boolean isAlive(Connection connection) {
+        try {
+            ExceptionListener listener = connection.getExceptionListener();
+            return listener instanceof SharedExceptionListener && !((SharedExceptionListener) listener).hasFailed();
+        } catch (JMSException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Registers a {@link MessageConsumer} with {@link MessageListener}. Since JMS delivers the messages of a session
+     * serially, a {@link MessageConsumer} is registered on each of the configured consumer sessions. All of them
+     * dispatch to the same consumer, which thus has to be thread safe if more than one session is configured. The
+     * additional sessions get closed and re-created together with the connection.
+     *
+     * Unless the {@link AcknowledgeMode#CLIENT} mode is used, messages are consumed on dedicated sessions of the given
+     * mode, so publishing on this connection is not affected. In these modes, the sessions acknowledge the messages, so
+     * acknowledgments of an {@link AcknowledgingConsumer} have no effect. In the {@link AcknowledgeMode#TRANSACTED}
+     * mode, each session is received from by a thread of its own instead of a {@link MessageListener}, so the session
+     * can be committed once the commit interval elapsed, even if no further message arrives.
+     *
+     * If retries are enabled in the {@link AcknowledgeMode#CLIENT} mode, the listeners recover their session as soon as
+     * the consumer failed to process a message, so it gets redelivered. This does not apply to an
+     * {@link AcknowledgingConsumer}.
+     *
+     * @see Builder#consumerSessions(int)
+     * @see Builder#acknowledgeMode(AcknowledgeMode)
+     * @see Builder#retryAttempts(int)
      *
      * @param consumer The consumer to register. All messages will be acknowledged automatically. Except if the consumer
      *                 implements {@link AcknowledgingConsumer}.
@@ -90,24 +281,70 @@ public class JmsConnection extends QueueConnection {
      */
     @Override
     protected void registerConsumer(Consumer consumer) throws CannotRegisterConsumer {
-        MessageListener jmsConsumer = new JmsConsumer(consumer);
-        MessageConsumer messageConsumer;
+        jmsConsumer = new JmsConsumer(
+                consumer,
+                new InFlightMessages(maxInFlightMessages, (long) (inFlightTimeout * 1000)),
+                metrics,
+                retryAttempts,
+                queueName + JmsConsumer.QUARANTINE_SUFFIX
+        );
+        if (consumer instanceof AcknowledgingConsumer) {
+            ((AcknowledgingConsumer) consumer).setAcknowledger(jmsConsumer);
+        }
         try {
-            connection.setExceptionListener(new ReRegisteringExceptionListener(this, consumer));
-            if (null != messageSelector) {
-                messageConsumer = session.createConsumer(queue, messageSelector);
-            } else {
-                messageConsumer = session.createConsumer(queue);
+            setExceptionListener(new ReRegisteringExceptionListener(this, consumer));
+            for (int i = 0; i < consumerSessions; i++) {
+                Session consumerSession = session;
+                if (i > 0 || AcknowledgeMode.CLIENT != acknowledgeMode) {
+                    consumerSession = connection.createSession(
+                            acknowledgeMode.isTransacted(),
+                            acknowledgeMode.getSessionMode()
+                    );
+                    additionalSessions.add(consumerSession);
+                }
+                MessageConsumer messageConsumer = createMessageConsumer(consumerSession);
+                if (acknowledgeMode.isTransacted()) {
+                    committingReceivers.add(new CommittingReceiver(
+                            consumerSession,
+                            messageConsumer,
+                            jmsConsumer,
+                            commitBatchSize,
+                            (long) (commitInterval * 1000)
+                    ));
+                } else {
+                    messageConsumer.setMessageListener(createListener(consumerSession));
+                }
             }
-            messageConsumer.setMessageListener(jmsConsumer);
             connection.start();
+            for (int i = 0; i < committingReceivers.size(); i++) {
+                committingReceivers.get(i).start(String.format("jms-consumer-%s-%d", queueName, i));
+            }
         } catch (JMSException e) {
             throw new CannotRegisterConsumer(consumer, e);
         }
     }
 
+    private MessageListener createListener(Session consumerSession) {
+        if (AcknowledgeMode.CLIENT == acknowledgeMode && retryAttempts > 0) {
+            return message -> jmsConsumer.onMessage(message, consumerSession);
+        }
+        return jmsConsumer;
+    }
+
+    private MessageConsumer createMessageConsumer(Session session) throws JMSException {
+        if (null != messageSelector) {
+            return session.createConsumer(queue, messageSelector);
+        }
+        return session.createConsumer(queue);
+    }
+
     /**
-     * Publishes a {@link TextMessage}. Note that every message is considered UTF-8 encoded.
+     * Publishes a {@link TextMessage}. Note that every message is considered UTF-8 encoded. If the message reaches the
+     * compression threshold, it gets published as compressed {@link BytesMessage} instead. If micro-batching is
+     * enabled, messages which fit into a micro-batch are added to the pending micro-batch.
+     *
+     * @see Builder#compressionCodec(CompressionCodec)
+     * @see Builder#microBatchSize(int)
      *
      * @param message The message to publish
      *
@@ -115,20 +352,58 @@ public class JmsConnection extends QueueConnection {
      */
     @Override
     protected void publishMessage(String message) throws CannotPublishMessage {
+        if (null != microBatcher) {
+            publishMessage(message.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
         try {
-            MessageProducer producer = session.createProducer(queue);
-            TextMessage textMessage = session.createTextMessage(message);
-            producer.send(textMessage);
+            MessageProducer producer = getProducer();
+            producer.send(createTextMessage(session, message));
         } catch (JMSException e) {
             throw new CannotPublishMessage(message, e);
         }
     }
 
+    /**
+     * Publishes a {@link BytesMessage}. If micro-batching is enabled, messages which fit into a micro-batch are added
+     * to the pending micro-batch instead, which gets published as soon as it is full or the linger time elapsed.
+     *
+     * @see Builder#microBatchSize(int)
+     *
+     * @param message The message to publish
+     *
+     * @throws CannotPublishMessage If the message cannot be published.
+     */
     @Override
     protected void publishMessage(byte[] message) throws CannotPublishMessage {
+        if (null != microBatcher && microBatcher.accepts(message.length)) {
+            microBatcher.add(message);
+            return;
+        }
+        flushMicroBatch();
+        try {
+            MessageProducer producer = getProducer();
+            producer.send(createBytesMessage(session, message));
+        } catch (JMSException e) {
+            throw new CannotPublishMessage(new String(message), e);
+        }
+    }
+
+    /**
+     * Publishes a {@link BytesMessage}, which carries the content type in the {@link JmsMessage#CONTENT_TYPE} property.
+     *
+     * @param message The message to publish
+     * @param contentType The MIME type of the message
+     *
+     * @throws CannotPublishMessage If the message cannot be published.
+     */
+    @Override
+    protected void publishMessage(byte[] message, String contentType) throws CannotPublishMessage {
+        flushMicroBatch();
         try {
-            MessageProducer producer = session.createProducer(queue);
-            BytesMessage bytesMessage = session.createBytesMessage();
+            MessageProducer producer = getProducer();
+            BytesMessage bytesMessage = createBytesMessage(session, message);
+            bytesMessage.setStringProperty(JmsMessage.CONTENT_TYPE, contentType);
             producer.send(bytesMessage);
         } catch (JMSException e) {
             throw new CannotPublishMessage(new String(message), e);
@@ -136,34 +411,337 @@ public class JmsConnection extends QueueConnection {
     }
 
     /**
-     * Closes the connection by closing the {@link Session} and {@link Connection}.
+     * Publishes a {@link BytesMessage} using the JMS 2.0 asynchronous send. The returned future completes as soon as the
+     * JMS provider reports the completion of the send. The amount of pending sends is limited by the async publish
+     * window, so this method blocks as long as the window is exhausted. The message is never added to a micro-batch,
+     * but the pending micro-batch gets published before.
+     *
+     * @see Builder#asyncPublishWindow(int)
+     *
+     * @param message The message to publish
+     *
+     * @return The future confirmation of the message
+     *
+     * @throws CannotPublishMessage If no slot got free in the async publish window or the message cannot be published.
+     */
+    @Override
+    protected CompletableFuture<Void> publishMessageAsync(byte[] message) throws CannotPublishMessage {
+        flushMicroBatch();
+        try {
+            if (!asyncPublishWindow.tryAcquire((long) (asyncPublishTimeout * 1000), TimeUnit.MILLISECONDS)) {
+                throw new CannotPublishMessage(
+                        new String(message),
+                        String.format("No send completion received within '%s' seconds.", asyncPublishTimeout)
+                );
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotPublishMessage(new String(message), e);
+        }
+        PublishCompletion completion = new PublishCompletion(asyncPublishWindow, message);
+        try {
+            MessageProducer producer = getProducer();
+            producer.send(createBytesMessage(session, message), completion);
+        } catch (JMSException | RuntimeException e) {
+            asyncPublishWindow.release();
+            throw new CannotPublishMessage(new String(message), e);
+        }
+        return completion.confirmation;
+    }
+
+    /**
+     * Publishes a batch of {@link TextMessage}s within a single transaction.
+     *
+     * @see #publishMessages(Collection)
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published. In this case, none of them is published.
+     */
+    @Override
+    protected void publishTextMessages(Collection<String> messages) throws CannotPublishMessage {
+        if (null != microBatcher) {
+            for (String message : messages) {
+                publishMessage(message);
+            }
+            return;
+        }
+        publishTransacted(messages, this::createTextMessage);
+    }
+
+    /**
+     * Publishes a batch of {@link BytesMessage}s within a single transaction. The transacted session is opened with the
+     * first batch and kept until the connection gets closed, so each batch costs exactly one commit.
+     *
+     * If micro-batching is enabled, the messages get added to micro-batches instead, like single messages.
+     *
+     * @see #publishMessage(byte[])
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published. In this case, none of them is published.
+     */
+    @Override
+    protected void publishMessages(Collection<byte[]> messages) throws CannotPublishMessage {
+        if (null != microBatcher) {
+            for (byte[] message : messages) {
+                publishMessage(message);
+            }
+            return;
+        }
+        publishTransacted(messages, this::createBytesMessage);
+    }
+
+    private Message createTextMessage(Session session, String message) throws JMSException {
+        // A string is never longer in UTF-8 than in characters, so shorter strings are not even encoded.
+        if (null != compressionCodec && message.length() >= compressionThreshold) {
+            return createBytesMessage(session, message.getBytes(StandardCharsets.UTF_8));
+        }
+        return session.createTextMessage(message);
+    }
+
+    /**
+     * Creates a {@link BytesMessage}. Messages reaching the compression threshold get compressed and carry the
+     * encoding of the compression codec in the {@link JmsMessage#CONTENT_ENCODING} property.
+     *
+     * @param session The session to create the message with
+     * @param message The message body
+     *
+     * @return The JMS message
+     *
+     * @throws JMSException If the message cannot be created or compressed.
+     */
+    private BytesMessage createBytesMessage(Session session, byte[] message) throws JMSException {
+        BytesMessage bytesMessage = session.createBytesMessage();
+        if (null == compressionCodec || message.length < compressionThreshold) {
+            bytesMessage.writeBytes(message);
+            return bytesMessage;
+        }
+        try {
+            bytesMessage.writeBytes(compressionCodec.compress(message));
+        } catch (IOException e) {
+            JMSException jmsException = new JMSException(
+                    String.format("Cannot compress message: '%s'", e.getMessage())
+            );
+            jmsException.setLinkedException(e);
+            throw jmsException;
+        }
+        bytesMessage.setStringProperty(JmsMessage.CONTENT_ENCODING, compressionCodec.getEncoding());
+        return bytesMessage;
+    }
+
+    /**
+     * Publishes a micro-batch as {@link BytesMessage}, which carries its amount of messages in the
+     * {@link BatchEnvelope#BATCH_SIZE} property. Since micro-batches may be published by the linger timer, they are
+     * published on a session of their own, which is only used by the micro-batcher.
+     *
+     * @param batch The framed micro-batch
+     * @param count The amount of messages in the micro-batch
+     *
+     * @throws CannotPublishMessage If the connection is closed or the micro-batch cannot be published.
+     */
+    private void publishMicroBatch(byte[] batch, int count) throws CannotPublishMessage {
+        String description = String.format("micro-batch of %d messages", count);
+        Connection connection = this.connection;
+        if (null == connection) {
+            throw new CannotPublishMessage(description, "The connection is closed.");
+        }
+        try {
+            if (null == microBatchSession) {
+                microBatchSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                microBatchProducer = createProducer(microBatchSession);
+            }
+            BytesMessage bytesMessage = createBytesMessage(microBatchSession, batch);
+            bytesMessage.setIntProperty(BatchEnvelope.BATCH_SIZE, count);
+            microBatchProducer.send(bytesMessage);
+        } catch (JMSException e) {
+            throw new CannotPublishMessage(description, e);
+        }
+    }
+
+    private void flushMicroBatch() throws CannotPublishMessage {
+        if (null != microBatcher) {
+            microBatcher.flush();
+        }
+    }
+
+    private <T> void publishTransacted(Collection<T> messages, MessageCreator<T> creator) throws CannotPublishMessage {
+        try {
+            if (null == batchSession) {
+                batchSession = connection.createSession(true, Session.SESSION_TRANSACTED);
+                batchProducer = createProducer(batchSession);
+            }
+        } catch (JMSException e) {
+            throw new CannotPublishMessage(describeBatch(messages), e);
+        }
+        try {
+            for (T message : messages) {
+                batchProducer.send(creator.create(batchSession, message));
+            }
+            batchSession.commit();
+        } catch (JMSException e) {
+            try {
+                batchSession.rollback();
+            } catch (JMSException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            throw new CannotPublishMessage(describeBatch(messages), e);
+        }
+    }
+
+    /**
+     * Gets the producer of the queue. The producer is created with the first message and kept until the connection gets
+     * closed, so each message costs exactly one send.
+     *
+     * @return The producer
+     *
+     * @throws JMSException If the producer cannot be created.
+     */
+    private MessageProducer getProducer() throws JMSException {
+        if (null == producer) {
+            producer = createProducer(session);
+        }
+        return producer;
+    }
+
+    private MessageProducer createProducer(Session session) throws JMSException {
+        MessageProducer producer = session.createProducer(queue);
+        producer.setDisableMessageID(disableMessageId);
+        producer.setDisableMessageTimestamp(disableMessageTimestamp);
+        producer.setDeliveryMode(persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+        return producer;
+    }
+
+    /**
+     * Closes the connection by closing the {@link Session} and {@link Connection}. The pending micro-batch gets
+     * published before. The consumers of transacted sessions get closed and their consumed messages get committed by
+     * their receiving threads before. A shared {@link Connection} is only
+     * closed if no other queue connection uses it anymore.
      *
      * @throws CannotCloseConnection If the connection cannot be closed.
      */
     @Override
     protected void closeConnection() throws CannotCloseConnection {
+        if (null != microBatcher) {
+            microBatcher.close();
+        }
         try {
+            if (microBatchSession != null) {
+                microBatchSession.close();
+            }
+            if (batchSession != null) {
+                batchSession.close();
+            }
+            // Stopping closes the consumers first, so nothing gets consumed after the commit.
+            for (CommittingReceiver committingReceiver : committingReceivers) {
+                committingReceiver.stop();
+            }
+            for (Session additionalSession : additionalSessions) {
+                additionalSession.close();
+            }
             if (session != null) {
                 session.close();
             }
             if (connection != null) {
-                connection.close();
+                releaseConnection();
             }
         } catch (JMSException e) {
             throw new CannotCloseConnection(queueName, e);
         } finally {
+            batchSession = null;
+            batchProducer = null;
+            microBatchSession = null;
+            microBatchProducer = null;
+            additionalSessions.clear();
+            committingReceivers.clear();
+            producer = null;
             session = null;
             connection = null;
             queue = null;
         }
     }
 
+    /**
+     * Completes the confirmation of an asynchronously sent message and frees its slot in the async publish window.
+     */
+    private static class PublishCompletion implements CompletionListener {
+
+        private final CompletableFuture<Void> confirmation = new CompletableFuture<>();
+
+        private final Semaphore window;
+
+        private final byte[] message;
+
+        PublishCompletion(Semaphore window, byte[] message) {
+            this.window = window;
+            this.message = message;
+        }
+
+        @Override
+        public void onCompletion(Message jmsMessage) {
+            window.release();
+            confirmation.complete(null);
+        }
+
+        @Override
+        public void onException(Message jmsMessage, Exception e) {
+            window.release();
+            confirmation.completeExceptionally(new CannotPublishMessage(new String(message), e));
+        }
+
+    }
+
+    /**
+     * Creates a JMS message of a given payload.
+     *
+     * @param <T> The payload type
+     */
+    private interface MessageCreator<T> {
+
+        Message create(Session session, T message) throws JMSException;
+
+    }
+
     public static class Builder<JmsBuilder extends Builder> extends QueueConnection.Builder<JmsBuilder> {
 
         protected ConnectionFactory connectionFactory;
 
         protected String messageSelector;
 
+        protected int asyncPublishWindow = 1000;
+
+        protected double asyncPublishTimeout = 10;
+
+        protected boolean sharedConnection = false;
+
+        protected boolean disableMessageId = false;
+
+        protected boolean disableMessageTimestamp = false;
+
+        protected boolean persistent = true;
+
+        protected int consumerSessions = 1;
+
+        protected int maxInFlightMessages = 10000;
+
+        protected double inFlightTimeout = 600;
+
+        protected AcknowledgeMode acknowledgeMode = AcknowledgeMode.CLIENT;
+
+        protected int commitBatchSize = 100;
+
+        protected double commitInterval = 1;
+
+        protected CompressionCodec compressionCodec = null;
+
+        protected int compressionThreshold = 1024;
+
+        protected int microBatchSize = 0;
+
+        protected double microBatchLinger = 0.005;
+
+        protected int retryAttempts = 0;
+
         /**
          * Apply defaults
          */
@@ -197,10 +775,336 @@ public class JmsConnection extends QueueConnection {
             return (JmsBuilder) this;
         }
 
+        /**
+         * Defines the max. amount of asynchronously sent messages the JMS provider has not yet completed. Default is
+         * 1000. Asynchronous publishing blocks as long as this limit is reached.
+         *
+         * @see QueueConnection#publishAsync(byte[])
+         *
+         * @param asyncPublishWindow The max. amount of pending asynchronous sends
+         *
+         * @return self
+         */
+        public JmsBuilder asyncPublishWindow(int asyncPublishWindow) {
+            this.asyncPublishWindow = asyncPublishWindow;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Sets the amount of seconds an asynchronous publisher waits for a free slot in the async publish window before
+         * it gives up. Default is 10.
+         *
+         * @see #asyncPublishWindow(int)
+         *
+         * @param asyncPublishTimeout The amount of seconds to wait
+         *
+         * @return self
+         */
+        public JmsBuilder asyncPublishTimeout(double asyncPublishTimeout) {
+            this.asyncPublishTimeout = asyncPublishTimeout;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines whether the physical connection should be shared with other JMS connections. Default is false. If
+         * enabled, all shared JMS connections with the same connection factory and user use the same physical connection
+         * and only create their own sessions on it. The physical connection is closed as soon as the last of them has
+         * been closed.
+         *
+         * @param sharedConnection Whether the physical connection should be shared
+         *
+         * @return self
+         */
+        public JmsBuilder sharedConnection(boolean sharedConnection) {
+            this.sharedConnection = sharedConnection;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines whether the JMS provider should skip generating message ids for published messages. Default is
+         * false. Note that consumers need the message id to acknowledge messages.
+         *
+         * @see MessageProducer#setDisableMessageID(boolean)
+         *
+         * @param disableMessageId Whether message ids should be disabled
+         *
+         * @return self
+         */
+        public JmsBuilder disableMessageId(boolean disableMessageId) {
+            this.disableMessageId = disableMessageId;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines whether the JMS provider should skip setting the timestamp of published messages. Default is false.
+         *
+         * @see MessageProducer#setDisableMessageTimestamp(boolean)
+         *
+         * @param disableMessageTimestamp Whether message timestamps should be disabled
+         *
+         * @return self
+         */
+        public JmsBuilder disableMessageTimestamp(boolean disableMessageTimestamp) {
+            this.disableMessageTimestamp = disableMessageTimestamp;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines whether published messages should be persistent. Default is true. Non-persistent messages are faster
+         * to publish, but get lost if the broker goes down.
+         *
+         * @see DeliveryMode
+         *
+         * @param persistent Whether messages should be persistent
+         *
+         * @return self
+         */
+        public JmsBuilder persistent(boolean persistent) {
+            this.persistent = persistent;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the amount of sessions messages are consumed on concurrently. Default is 1. Since JMS delivers the
+         * messages of a session serially, more sessions allow a consumer to use more threads. The consumer has to be
+         * thread safe if more than one session is configured.
+         *
+         * @param consumerSessions The amount of consumer sessions
+         *
+         * @return self
+         */
+        public JmsBuilder consumerSessions(int consumerSessions) {
+            this.consumerSessions = consumerSessions;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the max. amount of consumed messages which are kept for acknowledgment. Default is 10000. If more
+         * messages have not been acknowledged yet, the oldest ones are evicted and cannot be acknowledged anymore.
+         *
+         * @param maxInFlightMessages The max. amount of unacknowledged messages
+         *
+         * @return self
+         */
+        public JmsBuilder maxInFlightMessages(int maxInFlightMessages) {
+            this.maxInFlightMessages = maxInFlightMessages;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Sets the amount of seconds after which a consumed message which has not been acknowledged is evicted. Default
+         * is 600. 0 disables the eviction of stale messages.
+         *
+         * @see #maxInFlightMessages(int)
+         *
+         * @param inFlightTimeout The amount of seconds
+         *
+         * @return self
+         */
+        public JmsBuilder inFlightTimeout(double inFlightTimeout) {
+            this.inFlightTimeout = inFlightTimeout;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines how consumed messages get acknowledged. Default is {@link AcknowledgeMode#CLIENT}, which acknowledges
+         * each message on its own. The other modes save round trips to the broker, but messages may be delivered more
+         * than once, so they should only be used by idempotent consumers.
+         *
+         * @see #commitBatchSize(int)
+         *
+         * @param acknowledgeMode The acknowledge mode
+         *
+         * @return self
+         */
+        public JmsBuilder acknowledgeMode(AcknowledgeMode acknowledgeMode) {
+            this.acknowledgeMode = acknowledgeMode;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the amount of consumed messages after which a transacted consumer session gets committed. Default is
+         * 100. Only applies to the {@link AcknowledgeMode#TRANSACTED} mode.
+         *
+         * @see #commitInterval(double)
+         *
+         * @param commitBatchSize The amount of messages per commit
+         *
+         * @return self
+         */
+        public JmsBuilder commitBatchSize(int commitBatchSize) {
+            this.commitBatchSize = commitBatchSize;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Sets the amount of seconds after which a transacted consumer session gets committed, even if the batch is not
+         * full yet. Default is 1. The interval starts as soon as the oldest uncommitted message has been consumed. Only
+         * applies to the {@link AcknowledgeMode#TRANSACTED} mode.
+         *
+         * @see #commitBatchSize(int)
+         *
+         * @param commitInterval The amount of seconds
+         *
+         * @return self
+         */
+        public JmsBuilder commitInterval(double commitInterval) {
+            this.commitInterval = commitInterval;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the codec to compress published messages with. Default is null, which disables compression.
+         * Compressed messages are always published as {@link BytesMessage} and carry the encoding of the codec in the
+         * '{@value JmsMessage#CONTENT_ENCODING}' property. Consumers decompress messages of all known encodings
+         * transparently, regardless of this setting.
+         *
+         * @see #compressionThreshold(int)
+         * @see CompressionCodecs
+         *
+         * @param compressionCodec The compression codec
+         *
+         * @return self
+         */
+        public JmsBuilder compressionCodec(CompressionCodec compressionCodec) {
+            this.compressionCodec = compressionCodec;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the codec to compress published messages with by its encoding, e.g. 'gzip' or 'deflate'.
+         *
+         * @see #compressionCodec(CompressionCodec)
+         *
+         * @param encoding The encoding or null to disable compression
+         *
+         * @return self
+         *
+         * @throws IllegalArgumentException If no codec is known for the encoding.
+         */
+        public JmsBuilder compression(String encoding) {
+            CompressionCodec compressionCodec = CompressionCodecs.forEncoding(encoding);
+            if (null != encoding && null == compressionCodec) {
+                throw new IllegalArgumentException(String.format("Unknown compression encoding '%s'.", encoding));
+            }
+            return compressionCodec(compressionCodec);
+        }
+
+        /**
+         * Sets the min. size in bytes of a message to get compressed. Default is 1024, since compressing small messages
+         * costs more than it saves. Text messages are measured in characters.
+         *
+         * @param compressionThreshold The min. message size in bytes
+         *
+         * @return self
+         */
+        public JmsBuilder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the max. size in bytes of a micro-batch. Default is 0, which disables micro-batching. If enabled,
+         * published messages are packed into micro-batches, which are published as one {@link BytesMessage} each, so
+         * the per-message overhead of the JMS provider is paid once per micro-batch. A micro-batch gets published as
+         * soon as the next message does not fit into it anymore or the linger time elapsed. Messages which do not fit
+         * into an empty micro-batch, asynchronously published messages and messages with a content type are published
+         * on their own.
+         *
+         * Consumers of this library unpack micro-batches transparently. Note that publishing returns as soon as the
+         * message has been added to the micro-batch and that the pending micro-batch gets dropped if it cannot be
+         * published when the connection gets closed. Text messages which are too large for a micro-batch are published
+         * as {@link BytesMessage}.
+         *
+         * @see #microBatchLinger(double)
+         *
+         * @param microBatchSize The max. size of a micro-batch in bytes
+         *
+         * @return self
+         */
+        public JmsBuilder microBatchSize(int microBatchSize) {
+            this.microBatchSize = microBatchSize;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Sets the max. amount of seconds a message waits in a micro-batch which does not get full. Default is 0.005.
+         *
+         * @see #microBatchSize(int)
+         *
+         * @param microBatchLinger The amount of seconds to wait
+         *
+         * @return self
+         */
+        public JmsBuilder microBatchLinger(double microBatchLinger) {
+            this.microBatchLinger = microBatchLinger;
+            return (JmsBuilder) this;
+        }
+
+        /**
+         * Defines the max. amount of attempts to process a message. Default is 0, which disables retries. If enabled,
+         * the session gets recovered as soon as the consumer fails to process a message (by throwing
+         * {@code CannotConsumeMessage}), so the JMS provider redelivers it. The delay between the attempts is up to the
+         * redelivery policy of the provider. Once the JMSXDeliveryCount reaches the max. attempts, a failed message
+         * gets moved to the quarantine queue {@code <queue>.quarantine}.
+         *
+         * Only applies to the {@link AcknowledgeMode#CLIENT} mode. Since recovering a session redelivers and
+         * acknowledging a message acknowledges all of its unacknowledged messages, failed messages of an
+         * {@link AcknowledgingConsumer} are neither retried nor quarantined, but left to the consumer. Parts of
+         * micro-batches are not retried.
+         *
+         * @param retryAttempts The max. amount of attempts per message
+         *
+         * @return self
+         */
+        public JmsBuilder retryAttempts(int retryAttempts) {
+            this.retryAttempts = retryAttempts;
+            return (JmsBuilder) this;
+        }
+
+        List<Object> sharedConnectionKey() {
+            return Arrays.asList(connectionFactory, user);
+        }
+
         @Override
         public JmsBuilder applyProperties(Properties properties) {
             super.applyProperties(properties)
-                    .messageSelector(properties.getProperty("message.selector", messageSelector));
+                    .messageSelector(properties.getProperty("message.selector", messageSelector))
+                    .asyncPublishWindow(
+                            PropertyUtil.getIntger(properties, "publish.async.window", asyncPublishWindow)
+                    )
+                    .asyncPublishTimeout(
+                            PropertyUtil.getDouble(properties, "publish.async.timeout", asyncPublishTimeout)
+                    )
+                    .sharedConnection(PropertyUtil.getBoolean(properties, "connection.shared", sharedConnection))
+                    .disableMessageId(
+                            PropertyUtil.getBoolean(properties, "producer.disable.message.id", disableMessageId)
+                    )
+                    .disableMessageTimestamp(PropertyUtil.getBoolean(
+                            properties,
+                            "producer.disable.message.timestamp",
+                            disableMessageTimestamp
+                    ))
+                    .persistent(PropertyUtil.getBoolean(properties, "producer.persistent", persistent))
+                    .consumerSessions(PropertyUtil.getIntger(properties, "consumer.sessions", consumerSessions))
+                    .maxInFlightMessages(
+                            PropertyUtil.getIntger(properties, "consumer.inflight.max", maxInFlightMessages)
+                    )
+                    .inFlightTimeout(PropertyUtil.getDouble(properties, "consumer.inflight.timeout", inFlightTimeout))
+                    .acknowledgeMode(PropertyUtil.getEnum(properties, "consumer.ack.mode", acknowledgeMode))
+                    .commitBatchSize(PropertyUtil.getIntger(properties, "consumer.commit.size", commitBatchSize))
+                    .commitInterval(PropertyUtil.getDouble(properties, "consumer.commit.interval", commitInterval))
+                    .compressionThreshold(
+                            PropertyUtil.getIntger(properties, "compression.threshold", compressionThreshold)
+                    )
+                    .microBatchSize(PropertyUtil.getIntger(properties, "microbatch.size", microBatchSize))
+                    .microBatchLinger(PropertyUtil.getDouble(properties, "microbatch.linger", microBatchLinger))
+                    .retryAttempts(PropertyUtil.getIntger(properties, "retry.attempts", retryAttempts));
+            // Looking up the codec again would replace a codec which has been set directly.
+            String compression = properties.getProperty("compression.codec");
+            if (null != compression) {
+                compression(compression);
+            }
             return (JmsBuilder) this;
         }
 
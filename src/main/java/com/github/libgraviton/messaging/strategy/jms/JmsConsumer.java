@@ -1,15 +1,21 @@
 package com.github.libgraviton.messaging.strategy.jms;
 
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.batch.PendingBatches;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
 import com.github.libgraviton.messaging.MessageAcknowledger;
 import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
 import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.jms.*;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.List;
 
 /**
  * Wraps an instance of {@link Consumer} in order to consume from a JMS based queue.
@@ -18,48 +24,154 @@ import java.util.HashMap;
  * {@link Consumer#consume(String, String)} terminated. Except if the wrapped {@link Consumer} is an
  * {@link AcknowledgingConsumer}, it will do the JMS acknowledgment as soon as it receives the acknowledgment from the
  * wrapped consumer.
+ *
+ * If the wrapped {@link Consumer} is a {@link MessageConsumer}, it receives a {@link JmsMessage}, whose body and
+ * properties are only read as soon as the consumer accesses them.
+ *
+ * Micro-batches (see {@link BatchEnvelope}) get unpacked and each of their parts is passed to the wrapped consumer on
+ * its own, with a part id derived from the JMS message id. The JMS message gets acknowledged as soon as all of its parts
+ * have been acknowledged.
+ *
+ * If retries are enabled and the session of a message is known, a message the wrapped consumer failed to process is not
+ * acknowledged. Instead, the session gets recovered, so the JMS provider redelivers the message. Once its
+ * JMSXDeliveryCount reaches the max. attempts, the message gets moved to the quarantine queue. Failed messages of an
+ * {@link AcknowledgingConsumer} are neither retried nor quarantined, since both would acknowledge or redeliver all
+ * messages of the session, including the ones the wrapped consumer is still processing. Settling them is up to the
+ * wrapped consumer.
  */
 class JmsConsumer implements MessageListener, MessageAcknowledger {
 
+    /**
+     * The suffix of the name of the queue messages get moved to after their last attempt.
+     */
+    static final String QUARANTINE_SUFFIX = ".quarantine";
+
+    private static final String DELIVERY_COUNT = "JMSXDeliveryCount";
+
     private static final Logger LOG = LoggerFactory.getLogger(JmsConsumer.class);
 
     private Consumer consumer;
 
-    private HashMap<String, Message> messages;
+    private InFlightMessages messages;
+
+    private MessagingMetrics metrics;
+
+    private final PendingBatches pendingBatches = new PendingBatches();
+
+    private final int retryAttempts;
+
+    private final String quarantineQueue;
 
     JmsConsumer(Consumer consumer) {
+        this(consumer, new InFlightMessages(Integer.MAX_VALUE, 0));
+    }
+
+    JmsConsumer(Consumer consumer, InFlightMessages messages) {
+        this(consumer, messages, MessagingMetrics.NOOP);
+    }
+
+    /**
+     * @param consumer The consumer to wrap
+     * @param messages The table of unacknowledged messages, which is shared by all sessions calling onMessage().
+     * @param metrics Records the consumptions and acknowledgments
+     */
+    JmsConsumer(Consumer consumer, InFlightMessages messages, MessagingMetrics metrics) {
+        this(consumer, messages, metrics, 0, null);
+    }
+
+    /**
+     * @param consumer The consumer to wrap
+     * @param messages The table of unacknowledged messages, which is shared by all sessions calling onMessage().
+     * @param metrics Records the consumptions and acknowledgments
+     * @param retryAttempts The max. amount of attempts per message or 0 to disable retries
+     * @param quarantineQueue The name of the queue messages get moved to after their last attempt
+     */
+    JmsConsumer(
+            Consumer consumer,
+            InFlightMessages messages,
+            MessagingMetrics metrics,
+            int retryAttempts,
+            String quarantineQueue
+    ) {
         this.consumer = consumer;
-        // onMessage() can be called by several threads.
-        messages = new HashMap<>();
+        this.messages = messages;
+        this.metrics = metrics;
+        this.retryAttempts = retryAttempts;
+        this.quarantineQueue = quarantineQueue;
     }
 
     @Override
     public void onMessage(Message jmsMessage) {
+        onMessage(jmsMessage, null);
+    }
+
+    /**
+     * Passes a message to the wrapped consumer.
+     *
+     * @param jmsMessage The message
+     * @param session The session the message has been delivered on or null if unknown, in which case failed messages
+     *                are not retried.
+     */
+    void onMessage(Message jmsMessage, Session session) {
         LOG.debug(String.format("Received message of type '%s' from queue.", jmsMessage.getClass().getName()));
-        String message;
         String messageId = null;
+        long start = System.nanoTime();
+        boolean consumed = false;
+        boolean batch = false;
+        boolean settled = false;
         try {
             messageId = jmsMessage.getJMSMessageID();
-            messages.put(messageId, jmsMessage);
-            if (jmsMessage instanceof TextMessage) {
-                message = ((TextMessage) jmsMessage).getText();
-            } else if (jmsMessage instanceof BytesMessage) {
-                message = extractBody((BytesMessage) jmsMessage);
-            } else {
+            if (!(jmsMessage instanceof TextMessage || jmsMessage instanceof BytesMessage)) {
                 LOG.warn(String.format(
                     "Message of type '%s' cannot be handled and got ignored.",
                     jmsMessage.getClass().getName()
                 ));
+                // No consumer will ever see this message, so do not keep track of it.
+                jmsMessage.acknowledge();
+                messageId = null;
+                return;
+            }
+            messages.put(messageId, jmsMessage);
+            if (jmsMessage instanceof BytesMessage && jmsMessage.propertyExists(BatchEnvelope.BATCH_SIZE)) {
+                List<byte[]> parts;
+                try {
+                    parts = BatchEnvelope.unpack(JmsMessage.readBody((BytesMessage) jmsMessage));
+                } catch (IOException e) {
+                    LOG.error(String.format("Micro-batch '%s' cannot be unpacked and got dropped.", messageId), e);
+                    messages.remove(messageId);
+                    jmsMessage.acknowledge();
+                    messageId = null;
+                    return;
+                }
+                batch = true;
+                consumeBatch(messageId, jmsMessage, parts);
                 return;
             }
-            consumer.consume(jmsMessage.getJMSMessageID(), message);
-        } catch (JMSException | CannotConsumeMessage e) {
+            if (consumer instanceof MessageConsumer) {
+                ((MessageConsumer) consumer).consume(new JmsMessage(jmsMessage));
+            } else if (jmsMessage instanceof TextMessage) {
+                consumer.consume(messageId, ((TextMessage) jmsMessage).getText());
+            } else {
+                consumer.consume(messageId, extractBody((BytesMessage) jmsMessage));
+            }
+            consumed = true;
+        } catch (CannotConsumeMessage e) {
+            if (null != session && retryAttempts > 0 && !(consumer instanceof AcknowledgingConsumer)) {
+                settled = retry(messageId, jmsMessage, session, e);
+            } else {
+                LOG.error("Could not process feedback message.", e);
+            }
+        } catch (JMSException e) {
             LOG.error("Could not process feedback message.", e);
         } catch (Exception e) {
             // Catch com.github.libgraviton.messaging.exception to avoid endless loop because the message will trigger 'onMessage' again and again.
             LOG.error("Unexpected error occurred while processing queue feedback message.", e);
         } finally {
-            if (!(consumer instanceof AcknowledgingConsumer)) {
+            // The parts of a micro-batch are recorded on their own.
+            if (null != messageId && !batch) {
+                recordConsumption(start, consumed);
+            }
+            if (null != messageId && !settled && !(consumer instanceof AcknowledgingConsumer)) {
                 try {
                     acknowledge(messageId);
                 } catch (CannotAcknowledgeMessage cam) {
@@ -69,28 +181,159 @@ class JmsConsumer implements MessageListener, MessageAcknowledger {
         }
     }
 
+    /**
+     * Moves a message the wrapped consumer failed to process to the quarantine queue if this was its last attempt.
+     * Otherwise, the session gets recovered, so the message gets redelivered. Must not be used for an
+     * {@link AcknowledgingConsumer}, since acknowledging or recovering the session would settle its other in-flight
+     * messages as well.
+     *
+     * @param messageId The id of the JMS message
+     * @param jmsMessage The JMS message
+     * @param session The session the message has been delivered on
+     * @param failure Why the consumer failed
+     *
+     * @return true if the message has been settled, otherwise false.
+     */
+    private boolean retry(String messageId, Message jmsMessage, Session session, CannotConsumeMessage failure) {
+        try {
+            // JMSXDeliveryCount is optional before JMS 2.0.
+            int attempt = jmsMessage.propertyExists(DELIVERY_COUNT)
+                    ? jmsMessage.getIntProperty(DELIVERY_COUNT)
+                    : jmsMessage.getJMSRedelivered() ? 2 : 1;
+            if (attempt >= retryAttempts) {
+                LOG.error(String.format(
+                        "Message '%s' failed %d times and got quarantined on queue '%s': '%s'",
+                        messageId,
+                        attempt,
+                        quarantineQueue,
+                        failure.getMessage()
+                ));
+                MessageProducer quarantine = session.createProducer(session.createQueue(quarantineQueue));
+                try {
+                    quarantine.send(jmsMessage);
+                } finally {
+                    quarantine.close();
+                }
+                messages.remove(messageId);
+                jmsMessage.acknowledge();
+                return true;
+            }
+            LOG.warn(String.format(
+                    "Message '%s' failed (attempt %d of %d) and gets redelivered: '%s'",
+                    messageId,
+                    attempt,
+                    retryAttempts,
+                    failure.getMessage()
+            ));
+            messages.remove(messageId);
+            session.recover();
+            return true;
+        } catch (JMSException e) {
+            LOG.error(String.format("Message '%s' cannot be retried.", messageId), e);
+            return false;
+        }
+    }
+
+    /**
+     * Passes each part of a micro-batch to the wrapped consumer. A part which cannot be consumed does not keep the other
+     * parts from being consumed.
+     *
+     * @param messageId The id of the JMS message
+     * @param jmsMessage The JMS message
+     * @param parts The unpacked parts
+     *
+     * @throws JMSException If the properties of the JMS message cannot be read.
+     */
+    private void consumeBatch(String messageId, Message jmsMessage, List<byte[]> parts) throws JMSException {
+        LOG.debug(String.format("Received micro-batch '%s' of %d messages from queue.", messageId, parts.size()));
+        JmsMessage envelope = consumer instanceof MessageConsumer ? new JmsMessage(jmsMessage) : null;
+        if (consumer instanceof AcknowledgingConsumer) {
+            pendingBatches.register(messageId, parts.size());
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            String partId = BatchEnvelope.partId(messageId, i);
+            long start = System.nanoTime();
+            boolean consumed = false;
+            try {
+                if (null != envelope) {
+                    ((MessageConsumer) consumer).consume(new BasicMessage(
+                            partId,
+                            parts.get(i),
+                            envelope.getHeaders(),
+                            envelope.isRedelivered(),
+                            envelope.getTimestamp(),
+                            envelope.getRoutingKey()
+                    ));
+                } else {
+                    consumer.consume(partId, new String(parts.get(i), StandardCharsets.UTF_8));
+                }
+                consumed = true;
+            } catch (CannotConsumeMessage e) {
+                LOG.error("Could not process feedback message.", e);
+            } finally {
+                recordConsumption(start, consumed);
+            }
+        }
+    }
+
+    /**
+     * Acknowledges a message. Parts of a micro-batch are only acknowledged as soon as all parts of the micro-batch have
+     * been acknowledged.
+     *
+     * @param messageId The message id
+     *
+     * @throws CannotAcknowledgeMessage If the message is unknown or cannot be acknowledged.
+     */
     @Override
     public void acknowledge(String messageId) throws CannotAcknowledgeMessage {
-        Message jmsMessage = messages.get(messageId);
+        String jmsMessageId = pendingBatches.acknowledge(messageId);
+        if (null == jmsMessageId) {
+            return;
+        }
+        Message jmsMessage = messages.remove(jmsMessageId);
         if (null == jmsMessage) {
             throw new CannotAcknowledgeMessage(
                 this,
                 messageId,
-                String.format("Message with id '%s' is unknown.", messageId)
+                String.format("Message with id '%s' is unknown or has been evicted.", messageId)
             );
         }
+        long start = System.nanoTime();
         try {
             jmsMessage.acknowledge();
         } catch (JMSException e) {
             throw new CannotAcknowledgeMessage(this, messageId, e);
-        } finally {
-            messages.remove(messageId);
+        }
+        metrics.messageAcknowledged(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the amount of received messages which have not been acknowledged yet.
+     *
+     * @return The amount of messages
+     */
+    int getInFlightCount() {
+        return messages.size();
+    }
+
+    /**
+     * Gets the amount of messages which have been evicted, since they were not acknowledged in time.
+     *
+     * @return The amount of messages
+     */
+    long getEvictedCount() {
+        return messages.getEvictedCount();
+    }
+
+    private void recordConsumption(long start, boolean consumed) {
+        if (consumed) {
+            metrics.messageConsumed(System.nanoTime() - start);
+        } else {
+            metrics.consumeFailed(System.nanoTime() - start);
         }
     }
 
     String extractBody(BytesMessage message) throws JMSException {
-        byte[] messageBytes = new byte[(int) message.getBodyLength()];
-        message.readBytes(messageBytes);
-        return new String(messageBytes, StandardCharsets.UTF_8);
+        return new String(JmsMessage.readBody(message), StandardCharsets.UTF_8);
     }
 }
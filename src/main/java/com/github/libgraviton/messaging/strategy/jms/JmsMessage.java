@@ -0,0 +1,190 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.compression.BufferPool;
+import com.github.libgraviton.messaging.compression.CompressionCodec;
+import com.github.libgraviton.messaging.compression.CompressionCodecs;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A message received from a JMS queue. Only text and bytes messages are supported. The body and the properties are only
+ * read from the JMS message as soon as they are accessed.
+ *
+ * Bytes messages whose {@link #CONTENT_ENCODING} property is the encoding of a known {@link CompressionCodec} get
+ * decompressed as soon as their body is read.
+ */
+class JmsMessage implements Message {
+
+    /**
+     * The name of the JMS property which holds the encoding of a compressed message.
+     */
+    static final String CONTENT_ENCODING = "contentEncoding";
+
+    /**
+     * The name of the JMS property which holds the MIME type of a message published with a codec.
+     */
+    static final String CONTENT_TYPE = "contentType";
+
+    // The compressed body is only needed until it has been decompressed.
+    private static final BufferPool COMPRESSED_BODIES = new BufferPool(1024 * 1024);
+
+    private final javax.jms.Message jmsMessage;
+
+    private final String id;
+
+    private final boolean redelivered;
+
+    private final Date timestamp;
+
+    private final String routingKey;
+
+    private byte[] body;
+
+    private String bodyAsString;
+
+    private Map<String, Object> headers;
+
+    JmsMessage(javax.jms.Message jmsMessage) throws JMSException {
+        this.jmsMessage = jmsMessage;
+        id = jmsMessage.getJMSMessageID();
+        redelivered = jmsMessage.getJMSRedelivered();
+        // A timestamp of 0 means that the producer disabled timestamps.
+        timestamp = 0 == jmsMessage.getJMSTimestamp() ? null : new Date(jmsMessage.getJMSTimestamp());
+        routingKey = destinationName(jmsMessage.getJMSDestination());
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public byte[] getBody() throws CannotConsumeMessage {
+        if (null == body) {
+            try {
+                body = jmsMessage instanceof BytesMessage
+                        ? readBody((BytesMessage) jmsMessage)
+                        : getBodyAsString().getBytes(StandardCharsets.UTF_8);
+            } catch (JMSException e) {
+                throw new CannotConsumeMessage(id, null, e);
+            }
+        }
+        return body;
+    }
+
+    @Override
+    public String getBodyAsString() throws CannotConsumeMessage {
+        if (null == bodyAsString) {
+            try {
+                bodyAsString = jmsMessage instanceof TextMessage
+                        ? ((TextMessage) jmsMessage).getText()
+                        : new String(getBody(), StandardCharsets.UTF_8);
+            } catch (JMSException e) {
+                throw new CannotConsumeMessage(id, null, e);
+            }
+        }
+        return bodyAsString;
+    }
+
+    @Override
+    public InputStream getBodyAsStream() throws CannotConsumeMessage {
+        return new ByteArrayInputStream(getBody());
+    }
+
+    /**
+     * Gets the JMS properties of the message.
+     *
+     * @return The properties
+     *
+     * @throws CannotConsumeMessage If the properties cannot be read.
+     */
+    @Override
+    public Map<String, Object> getHeaders() throws CannotConsumeMessage {
+        if (null == headers) {
+            Map<String, Object> properties = new HashMap<>();
+            try {
+                Enumeration<?> names = jmsMessage.getPropertyNames();
+                while (names.hasMoreElements()) {
+                    String name = (String) names.nextElement();
+                    properties.put(name, jmsMessage.getObjectProperty(name));
+                }
+            } catch (JMSException e) {
+                throw new CannotConsumeMessage(id, null, e);
+            }
+            headers = Collections.unmodifiableMap(properties);
+        }
+        return headers;
+    }
+
+    @Override
+    public boolean isRedelivered() {
+        return redelivered;
+    }
+
+    @Override
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Reads the body of a bytes message and decompresses it, if it is compressed.
+     *
+     * @param message The bytes message
+     *
+     * @return The body
+     *
+     * @throws JMSException If the body cannot be read or decompressed.
+     */
+    static byte[] readBody(BytesMessage message) throws JMSException {
+        int length = (int) message.getBodyLength();
+        CompressionCodec codec = CompressionCodecs.forEncoding(message.getStringProperty(CONTENT_ENCODING));
+        if (null == codec) {
+            byte[] messageBytes = new byte[length];
+            message.readBytes(messageBytes);
+            return messageBytes;
+        }
+        byte[] compressed = COMPRESSED_BODIES.acquire(length);
+        message.readBytes(compressed, length);
+        try {
+            return codec.decompress(compressed, 0, length);
+        } catch (IOException e) {
+            JMSException jmsException = new JMSException(
+                    String.format("Cannot decompress '%s' message: '%s'", codec.getEncoding(), e.getMessage())
+            );
+            jmsException.setLinkedException(e);
+            throw jmsException;
+        }
+    }
+
+    private static String destinationName(Destination destination) throws JMSException {
+        if (destination instanceof Queue) {
+            return ((Queue) destination).getQueueName();
+        }
+        if (destination instanceof Topic) {
+            return ((Topic) destination).getTopicName();
+        }
+        return null == destination ? null : destination.toString();
+    }
+
+}
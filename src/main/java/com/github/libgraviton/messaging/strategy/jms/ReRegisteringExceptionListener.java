@@ -7,6 +7,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.jms.JMSException;
 
+/**
+ * Recovers the connection and registers the consumer again. This re-creates all consumer sessions of the connection.
+ */
 class ReRegisteringExceptionListener extends RecoveringExceptionListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReRegisteringExceptionListener.class);
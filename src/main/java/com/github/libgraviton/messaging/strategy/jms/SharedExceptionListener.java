@@ -0,0 +1,41 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exception listener of a shared JMS connection. Since a JMS connection accepts only one exception listener, this
+ * listener forwards exceptions to the listeners of all queue connections using the shared connection. Moreover, it
+ * remembers that the connection failed, so it won't be handed out to further queue connections.
+ */
+class SharedExceptionListener implements ExceptionListener {
+
+    private final Map<JmsConnection, ExceptionListener> listeners = new ConcurrentHashMap<>();
+
+    private volatile boolean failed = false;
+
+    void register(JmsConnection connection, ExceptionListener listener) {
+        listeners.put(connection, listener);
+    }
+
+    void unregister(JmsConnection connection) {
+        listeners.remove(connection);
+    }
+
+    boolean hasFailed() {
+        return failed;
+    }
+
+    @Override
+    public void onException(JMSException e) {
+        failed = true;
+        // The listeners will most likely unregister themselves while recovering their queue connection.
+        for (ExceptionListener listener : new ArrayList<>(listeners.values())) {
+            listener.onException(e);
+        }
+    }
+
+}
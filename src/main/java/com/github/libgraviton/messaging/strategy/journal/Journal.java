@@ -0,0 +1,337 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An append-only queue persisted in a directory of memory-mapped segment files. Records are addressed by their journal
+ * offset, which is the sum of the sizes of all records before them. Since a new segment starts at the end offset of the
+ * previous one, the segment files are named by their base offset and the segment of an offset is found by a floor
+ * lookup.
+ *
+ * Appending is serialized, reading is not: a record becomes visible to readers as soon as the end offset has been
+ * updated, which happens after the record has been written completely.
+ *
+ * The directory is locked as long as the journal is open, so a second process fails to open it.
+ */
+class Journal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Journal.class);
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final long retention;
+
+    private final boolean sync;
+
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    private final OffsetFile offsets;
+
+    private final ConcurrentNavigableMap<Long, Segment> segments;
+
+    private final AtomicReference<JournalConsumer> consumer = new AtomicReference<>();
+
+    private Segment active;
+
+    private volatile long endOffset;
+
+    private volatile long committedOffset;
+
+    private volatile boolean open = true;
+
+    private Journal(
+            Path directory,
+            int segmentSize,
+            long retention,
+            boolean sync,
+            FileChannel lockChannel,
+            FileLock lock,
+            ConcurrentNavigableMap<Long, Segment> segments,
+            OffsetFile offsets
+    ) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retention = retention;
+        this.sync = sync;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        this.segments = segments;
+        this.offsets = offsets;
+        active = segments.lastEntry().getValue();
+        endOffset = active.getEndOffset();
+        committedOffset = offsets.getCommitted();
+    }
+
+    /**
+     * Opens the journal in a given directory, which is created if it does not exist yet. The end of the records is
+     * recovered from the last segment file, so records torn by a crash are dropped.
+     *
+     * @param directory The journal directory
+     * @param segmentSize The size of each segment file in bytes
+     * @param retention The time in milliseconds fully consumed segment files are kept
+     * @param sync Whether each append and commit is written to the storage device before returning
+     *
+     * @return The journal
+     *
+     * @throws IOException If the journal cannot be opened or is already in use.
+     */
+    static Journal open(Path directory, int segmentSize, long retention, boolean sync) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(
+                directory.resolve("journal.lock"),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE
+        );
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Locked within the current process
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        if (null == lock) {
+            lockChannel.close();
+            throw new IOException(String.format("Journal '%s' is already in use.", directory));
+        }
+
+        try {
+            ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(baseOffset, Segment.open(file, baseOffset));
+                }
+            }
+            long firstOffset = segments.isEmpty() ? 0 : segments.firstKey();
+            OffsetFile offsets = OffsetFile.open(directory.resolve("consumer.offset"), firstOffset);
+            if (segments.isEmpty()) {
+                long baseOffset = offsets.getCommitted();
+                segments.put(baseOffset, Segment.create(segmentFile(directory, baseOffset), baseOffset, segmentSize));
+            }
+            Journal journal = new Journal(
+                    directory,
+                    segmentSize,
+                    retention,
+                    sync,
+                    lockChannel,
+                    lock,
+                    segments,
+                    offsets
+            );
+            journal.deleteExpiredSegments();
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The max. body size of a record.
+     */
+    int getMaxRecordSize() {
+        return segmentSize - Segment.HEADER_SIZE;
+    }
+
+    /**
+     * Appends a record. Rolls over to a new segment file, if the record does not fit into the current one.
+     *
+     * @param body The record body, which must not exceed the max. record size.
+     * @param timestamp The time the record has been published
+     *
+     * @throws IOException If a new segment file cannot be created.
+     */
+    void append(byte[] body, long timestamp) throws IOException {
+        synchronized (this) {
+            if (!active.fits(body.length)) {
+                roll();
+            }
+            endOffset = active.append(body, timestamp);
+            if (sync) {
+                active.force();
+            }
+        }
+        JournalConsumer consumer = this.consumer.get();
+        if (null != consumer) {
+            consumer.wakeUp();
+        }
+    }
+
+    /**
+     * @return The offset right after the last record, which is the offset of the next record to be appended.
+     */
+    long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Reads the record at a given offset.
+     *
+     * @param offset The offset of the record, which must be below the end offset.
+     *
+     * @return The record
+     */
+    Segment.Record read(long offset) {
+        return segments.floorEntry(offset).getValue().read(offset);
+    }
+
+    /**
+     * Gets the offset of the record following the record at a given offset.
+     *
+     * @param offset The offset of the record, which must be below the end offset.
+     *
+     * @return The offset of the next record
+     */
+    long next(long offset) {
+        return segments.floorEntry(offset).getValue().nextOffset(offset);
+    }
+
+    long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    long getDeliveredOffset() {
+        return offsets.getDelivered();
+    }
+
+    /**
+     * Marks all records below a given offset as delivered.
+     *
+     * @param offset The offset
+     */
+    void delivered(long offset) {
+        offsets.setDelivered(offset);
+    }
+
+    /**
+     * Marks all records below a given offset as acknowledged. Deletes the segment files which have been fully consumed
+     * and exceeded the retention.
+     *
+     * @param offset The offset
+     */
+    synchronized void commit(long offset) {
+        if (offset <= committedOffset) {
+            return;
+        }
+        offsets.setCommitted(offset);
+        committedOffset = offset;
+        if (sync) {
+            offsets.force();
+        }
+        Segment first = segments.firstEntry().getValue();
+        if (first != active && first.getEndOffset() <= offset) {
+            deleteExpiredSegments();
+        }
+    }
+
+    /**
+     * Attaches the consumer, which gets woken up as soon as records are appended.
+     *
+     * @param consumer The consumer
+     *
+     * @return false if another consumer is attached already, otherwise true.
+     */
+    boolean attach(JournalConsumer consumer) {
+        return this.consumer.compareAndSet(null, consumer);
+    }
+
+    /**
+     * Detaches a consumer.
+     *
+     * @param consumer The consumer
+     */
+    void detach(JournalConsumer consumer) {
+        this.consumer.compareAndSet(consumer, null);
+    }
+
+    /**
+     * Writes all records and offsets to the storage device and unlocks the journal directory.
+     *
+     * @throws IOException If the directory cannot be unlocked.
+     */
+    synchronized void close() throws IOException {
+        open = false;
+        active.force();
+        offsets.force();
+        try {
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        long baseOffset = active.getEndOffset();
+        Segment segment = Segment.create(segmentFile(directory, baseOffset), baseOffset, segmentSize);
+        segments.put(baseOffset, segment);
+        active = segment;
+        deleteExpiredSegments();
+    }
+
+    /**
+     * Deletes all segment files, except the active one, whose records have been committed and which have not been
+     * appended to within the retention. The mapped memory is released by the garbage collector.
+     */
+    private synchronized void deleteExpiredSegments() {
+        long committed = committedOffset;
+        long expiry = System.currentTimeMillis() - retention;
+        Iterator<Map.Entry<Long, Segment>> entries = segments.entrySet().iterator();
+        while (entries.hasNext()) {
+            Segment segment = entries.next().getValue();
+            if (segment == active || segment.getEndOffset() > committed) {
+                return;
+            }
+            if (segment.getLastTimestamp() > expiry) {
+                return;
+            }
+            try {
+                entries.remove();
+                segment.delete();
+                LOG.debug(String.format("Deleted segment file '%s'.", segment.getFile()));
+            } catch (IOException e) {
+                LOG.warn(String.format("Cannot delete segment file '%s': '%s'", segment.getFile(), e.getMessage()));
+                return;
+            }
+        }
+    }
+
+    private static Path segmentFile(Path directory, long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+}
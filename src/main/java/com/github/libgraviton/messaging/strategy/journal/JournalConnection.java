@@ -0,0 +1,292 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import com.github.libgraviton.messaging.QueueConnection;
+import com.github.libgraviton.messaging.config.PropertyUtil;
+import com.github.libgraviton.messaging.connection.SharedConnectionRegistry;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.exception.CannotBuildConnection;
+import com.github.libgraviton.messaging.exception.CannotCloseConnection;
+import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Represents a connection to a queue persisted in a local journal, which consists of append-only, memory-mapped segment
+ * files. No message broker is needed and the messages survive restarts of the process, which makes this strategy
+ * suitable for edge deployments.
+ *
+ * Each queue is a directory of its own within the journal directory. All connections of the current process to the
+ * same queue share the journal, but only one of them may register a consumer. The consumer position is persisted as
+ * well, so unacknowledged messages get redelivered after a restart.
+ */
+public class JournalConnection extends QueueConnection {
+
+    private static final SharedConnectionRegistry<Path, Journal> JOURNALS =
+            new SharedConnectionRegistry<>(Journal::isOpen);
+
+    private final Path queueDirectory;
+
+    private final int segmentSize;
+
+    private final long retention;
+
+    private final boolean sync;
+
+    private final int prefetchCount;
+
+    private volatile Journal journal;
+
+    private volatile JournalConsumer journalConsumer;
+
+    private JournalConnection(Builder builder) throws CannotBuildConnection {
+        super(builder);
+        if (null == queueName) {
+            throw new CannotBuildConnection(getClass(), "A queue name is required, since it names the journal.");
+        }
+        if (builder.segmentSize <= Segment.HEADER_SIZE) {
+            throw new CannotBuildConnection(
+                    getClass(),
+                    String.format("Segment size of '%d' bytes is too small.", builder.segmentSize)
+            );
+        }
+        queueDirectory = Paths.get(builder.directory, queueName).toAbsolutePath().normalize();
+        segmentSize = builder.segmentSize;
+        retention = (long) (builder.retention * 1000);
+        sync = builder.sync;
+        prefetchCount = builder.prefetchCount;
+    }
+
+    @Override
+    public String getConnectionName() {
+        return queueDirectory.toString();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return null != journal;
+    }
+
+    /**
+     * Opens the journal of the queue. Creates the journal directory if it does not exist yet.
+     *
+     * @throws CannotConnectToQueue If the journal cannot be opened, e.g. since another process uses it.
+     */
+    @Override
+    protected void openConnection() throws CannotConnectToQueue {
+        try {
+            journal = JOURNALS.acquire(
+                    queueDirectory,
+                    () -> Journal.open(queueDirectory, segmentSize, retention, sync)
+            );
+        } catch (IOException e) {
+            throw new CannotConnectToQueue(queueName, e);
+        }
+    }
+
+    /**
+     * Starts delivering the messages of the journal to the consumer, beginning with the oldest unacknowledged one. If
+     * the consumer implements {@link AcknowledgingConsumer}, the consumer position only moves beyond a message as soon
+     * as it has been acknowledged. Otherwise, each message gets acknowledged as soon as the consumer returns.
+     *
+     * @see Builder#prefetchCount(int)
+     *
+     * @param consumer The consumer to register.
+     *
+     * @throws CannotRegisterConsumer If another connection already consumes the journal.
+     */
+    @Override
+    protected void registerConsumer(Consumer consumer) throws CannotRegisterConsumer {
+        JournalConsumer journalConsumer = new JournalConsumer(journal, queueName, consumer, prefetchCount, metrics);
+        if (!journal.attach(journalConsumer)) {
+            throw new CannotRegisterConsumer(
+                    consumer,
+                    String.format("Journal '%s' already has a consumer.", queueDirectory)
+            );
+        }
+        if (consumer instanceof AcknowledgingConsumer) {
+            ((AcknowledgingConsumer) consumer).setAcknowledger(journalConsumer);
+        }
+        this.journalConsumer = journalConsumer;
+        journalConsumer.start();
+    }
+
+    /**
+     * Publishes a text message. Note that this method uses UTF-8 encoding only.
+     *
+     * @param message The message to publish
+     *
+     * @throws CannotPublishMessage If the message cannot be appended to the journal.
+     */
+    @Override
+    protected void publishMessage(String message) throws CannotPublishMessage {
+        publishMessage(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Publishes a bytes message by appending it to the journal.
+     *
+     * @param message The message to publish
+     *
+     * @throws CannotPublishMessage If the message exceeds the segment size or a new segment file cannot be created.
+     */
+    @Override
+    protected void publishMessage(byte[] message) throws CannotPublishMessage {
+        if (message.length > journal.getMaxRecordSize()) {
+            throw new CannotPublishMessage(
+                    new String(message, StandardCharsets.UTF_8),
+                    String.format(
+                            "Message size of '%d' bytes exceeds the max. size of '%d' bytes.",
+                            message.length,
+                            journal.getMaxRecordSize()
+                    )
+            );
+        }
+        try {
+            journal.append(message, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new CannotPublishMessage(new String(message, StandardCharsets.UTF_8), e);
+        }
+    }
+
+    /**
+     * Stops the consumer and releases the journal. The journal gets closed as soon as the last connection of the current
+     * process has released it. Unacknowledged messages get redelivered to the next consumer.
+     *
+     * @throws CannotCloseConnection If the journal cannot be closed.
+     */
+    @Override
+    protected void closeConnection() throws CannotCloseConnection {
+        Journal journal = this.journal;
+        JournalConsumer journalConsumer = this.journalConsumer;
+        if (null != journalConsumer) {
+            journalConsumer.stop();
+            journal.detach(journalConsumer);
+            this.journalConsumer = null;
+        }
+        this.journal = null;
+        if (null != journal) {
+            try {
+                JOURNALS.release(queueDirectory, journal, Journal::close);
+            } catch (IOException e) {
+                throw new CannotCloseConnection(queueName, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of delivered messages which have not been acknowledged yet.
+     *
+     * @return The amount of messages
+     */
+    @Override
+    public long getUnacknowledgedCount() {
+        JournalConsumer journalConsumer = this.journalConsumer;
+        return null == journalConsumer ? 0 : journalConsumer.getUnacknowledgedCount();
+    }
+
+    /**
+     * Builder class for creating journal connections.
+     */
+    public static class Builder extends QueueConnection.Builder<Builder> {
+
+        private String directory = "journal";
+
+        private int segmentSize = 64 * 1024 * 1024;
+
+        private double retention = 0;
+
+        private boolean sync = false;
+
+        private int prefetchCount = 0;
+
+        /**
+         * Sets the journal directory, which contains a directory per queue. Default is 'journal', relative to the
+         * working directory.
+         *
+         * @param directory The journal directory
+         *
+         * @return self
+         */
+        public Builder directory(String directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the size of each segment file in bytes, which limits the size of a single message as well. Default is
+         * 64 MB. Only applies to segment files created from now on.
+         *
+         * @param segmentSize The segment size in bytes
+         *
+         * @return self
+         */
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the time segment files are kept after all of their messages have been acknowledged, measured from the
+         * last message appended to them. Default is 0, which deletes them as soon as possible.
+         *
+         * @param retention The retention in seconds
+         *
+         * @return self
+         */
+        public Builder retention(double retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * Defines whether each published message and each acknowledgment is written to the storage device before
+         * returning. Default is false, which leaves it to the operating system and survives crashes of the process,
+         * but not of the host.
+         *
+         * @param sync Whether to sync each write
+         *
+         * @return self
+         */
+        public Builder sync(boolean sync) {
+            this.sync = sync;
+            return this;
+        }
+
+        /**
+         * Sets the max. amount of unacknowledged messages delivered to the consumer. Default is 0, which means no
+         * limit.
+         *
+         * @param prefetchCount The max. amount of unacknowledged messages
+         *
+         * @return self
+         */
+        public Builder prefetchCount(int prefetchCount) {
+            this.prefetchCount = prefetchCount;
+            return this;
+        }
+
+        @Override
+        public Builder applyProperties(Properties properties) {
+            return super.applyProperties(properties)
+                    .directory(properties.getProperty("journal.directory", directory))
+                    .segmentSize(PropertyUtil.getIntger(properties, "journal.segment.size", segmentSize))
+                    .retention(PropertyUtil.getDouble(properties, "journal.retention", retention))
+                    .sync(PropertyUtil.getBoolean(properties, "journal.sync", sync))
+                    .prefetchCount(PropertyUtil.getIntger(properties, "queue.prefetch", prefetchCount));
+        }
+
+        @Override
+        public JournalConnection build() throws CannotBuildConnection {
+            return new JournalConnection(this);
+        }
+
+    }
+
+}
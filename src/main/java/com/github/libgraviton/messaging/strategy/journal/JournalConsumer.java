@@ -0,0 +1,224 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the records of a journal to a {@link Consumer} on a thread of its own. The thread parks as long as no record
+ * is ready and gets unparked as soon as a record is appended.
+ *
+ * The message id is the journal offset of the record. Acknowledging a message commits the offset of the oldest
+ * unacknowledged message, so messages may be acknowledged in any order, but the committed offset only moves beyond a
+ * message as soon as it and all messages before it have been acknowledged. If the wrapped consumer is not an
+ * {@link AcknowledgingConsumer}, each message gets acknowledged as soon as the consumer returns, even if it failed.
+ */
+class JournalConsumer implements MessageAcknowledger, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalConsumer.class);
+
+    // Safety net only, since publishers unpark the idle consumer.
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Journal journal;
+
+    private final String queueName;
+
+    private final Consumer consumer;
+
+    private final int prefetchCount;
+
+    private final MessagingMetrics metrics;
+
+    private final long redeliveredOffset;
+
+    private final NavigableSet<Long> unacknowledged = new ConcurrentSkipListSet<>();
+
+    private volatile long position;
+
+    private volatile boolean running = true;
+
+    private volatile boolean idle = false;
+
+    private Thread thread;
+
+    /**
+     * @param journal The journal to consume from
+     * @param queueName The name of the queue, used as routing key of the messages
+     * @param consumer The consumer to deliver the messages to
+     * @param prefetchCount The max. amount of unacknowledged messages or 0 for no limit
+     * @param metrics Records the consumptions and acknowledgments
+     */
+    JournalConsumer(
+            Journal journal,
+            String queueName,
+            Consumer consumer,
+            int prefetchCount,
+            MessagingMetrics metrics
+    ) {
+        this.journal = journal;
+        this.queueName = queueName;
+        this.consumer = consumer;
+        this.prefetchCount = prefetchCount;
+        this.metrics = metrics;
+        position = journal.getCommittedOffset();
+        redeliveredOffset = journal.getDeliveredOffset();
+    }
+
+    /**
+     * Starts delivering messages, beginning with the oldest one which has not been acknowledged yet.
+     */
+    void start() {
+        thread = new Thread(this, String.format("journal-consumer-%s", queueName));
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops delivering messages and waits until the current delivery is done. Unacknowledged messages get redelivered
+     * by the next consumer of the journal.
+     */
+    void stop() {
+        running = false;
+        if (null != thread && Thread.currentThread() != thread) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (isPrefetchExhausted() || position >= journal.getEndOffset()) {
+                awaitMessages();
+            } else {
+                deliver(journal.read(position));
+            }
+        }
+    }
+
+    @Override
+    public void acknowledge(String messageId) throws CannotAcknowledgeMessage {
+        long start = System.nanoTime();
+        Long offset;
+        try {
+            offset = Long.valueOf(messageId);
+        } catch (NumberFormatException e) {
+            offset = null;
+        }
+        if (null == offset || !unacknowledged.remove(offset)) {
+            throw new CannotAcknowledgeMessage(
+                    this,
+                    messageId,
+                    String.format("Message with id '%s' is unknown or has already been acknowledged.", messageId)
+            );
+        }
+        // The position has to be read before the oldest unacknowledged offset, since a message delivered in between
+        // has an offset at or beyond the position read.
+        long committed = position;
+        Long oldest = unacknowledged.ceiling(0L);
+        if (null != oldest) {
+            committed = Math.min(committed, oldest);
+        }
+        journal.commit(committed);
+        metrics.messageAcknowledged(System.nanoTime() - start);
+        if (prefetchCount > 0) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Unparks the delivery thread, if it is waiting for messages.
+     */
+    void wakeUp() {
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Gets the amount of delivered messages which have not been acknowledged yet.
+     *
+     * @return The amount of messages
+     */
+    int getUnacknowledgedCount() {
+        return unacknowledged.size();
+    }
+
+    private void awaitMessages() {
+        idle = true;
+        // Check again, since a publisher may have missed the idle flag.
+        if (running && (isPrefetchExhausted() || position >= journal.getEndOffset())) {
+            LockSupport.parkNanos(this, IDLE_WAIT);
+        }
+        idle = false;
+    }
+
+    private boolean isPrefetchExhausted() {
+        return prefetchCount > 0 && unacknowledged.size() >= prefetchCount;
+    }
+
+    private void deliver(Segment.Record record) {
+        String messageId = Long.toString(record.getOffset());
+        unacknowledged.add(record.getOffset());
+        position = record.getNextOffset();
+        if (position > redeliveredOffset) {
+            journal.delivered(position);
+        }
+
+        long start = System.nanoTime();
+        boolean consumed = false;
+        try {
+            if (consumer instanceof MessageConsumer) {
+                ((MessageConsumer) consumer).consume(new BasicMessage(
+                        messageId,
+                        record.getBody(),
+                        Collections.emptyMap(),
+                        record.getOffset() < redeliveredOffset,
+                        new Date(record.getTimestamp()),
+                        queueName
+                ));
+            } else {
+                consumer.consume(messageId, new String(record.getBody(), StandardCharsets.UTF_8));
+            }
+            consumed = true;
+        } catch (CannotConsumeMessage e) {
+            LOG.warn(String.format("Consumer '%s' failed: '%s'", consumer, e.getMessage()));
+        } catch (RuntimeException e) {
+            LOG.error(String.format("Consumer '%s' failed unexpectedly.", consumer), e);
+        } finally {
+            if (consumed) {
+                metrics.messageConsumed(System.nanoTime() - start);
+            } else {
+                metrics.consumeFailed(System.nanoTime() - start);
+            }
+            if (!(consumer instanceof AcknowledgingConsumer)) {
+                try {
+                    acknowledge(messageId);
+                } catch (CannotAcknowledgeMessage e) {
+                    LOG.error(e.getMessage());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.github.libgraviton.messaging.spool.PublishSpool;
+import com.github.libgraviton.messaging.spool.SpooledMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link PublishSpool} persisted in a journal directory, so spooled messages survive restarts of the process and get
+ * published as soon as a connection using the spool is open again. Each spooled message is a record of the journal,
+ * prefixed by a byte which tells whether it is a text message.
+ *
+ * The spool locks its directory as long as it is open. Use a directory of its own per queue connection.
+ */
+public class JournalSpool implements PublishSpool, Closeable {
+
+    private static final byte BYTES = 0;
+
+    private static final byte TEXT = 1;
+
+    private final Journal journal;
+
+    private JournalSpool(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Opens the spool in a given directory, which is created if it does not exist yet.
+     *
+     * @param directory The spool directory
+     *
+     * @return The spool
+     *
+     * @throws IOException If the spool cannot be opened, e.g. since another process uses it.
+     */
+    public static JournalSpool open(Path directory) throws IOException {
+        return open(directory, 16 * 1024 * 1024, false);
+    }
+
+    /**
+     * Opens the spool in a given directory, which is created if it does not exist yet.
+     *
+     * @param directory The spool directory
+     * @param segmentSize The size of each segment file in bytes, which limits the size of a single message as well.
+     * @param sync Whether each spooled message is written to the storage device before returning
+     *
+     * @return The spool
+     *
+     * @throws IOException If the spool cannot be opened, e.g. since another process uses it.
+     */
+    public static JournalSpool open(Path directory, int segmentSize, boolean sync) throws IOException {
+        return new JournalSpool(Journal.open(directory.toAbsolutePath().normalize(), segmentSize, 0, sync));
+    }
+
+    @Override
+    public void append(SpooledMessage message) throws CannotPublishMessage {
+        byte[] body = message.getBody();
+        if (body.length + 1 > journal.getMaxRecordSize()) {
+            throw new CannotPublishMessage(
+                    message.getBodyAsString(),
+                    String.format(
+                            "Message size of '%d' bytes exceeds the max. size of '%d' bytes.",
+                            body.length,
+                            journal.getMaxRecordSize() - 1
+                    )
+            );
+        }
+        byte[] record = new byte[body.length + 1];
+        record[0] = message.isText() ? TEXT : BYTES;
+        System.arraycopy(body, 0, record, 1, body.length);
+        try {
+            journal.append(record, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new CannotPublishMessage(message.getBodyAsString(), e);
+        }
+    }
+
+    @Override
+    public List<SpooledMessage> peek(int maxMessages) {
+        List<SpooledMessage> messages = new ArrayList<>();
+        long offset = journal.getCommittedOffset();
+        long end = journal.getEndOffset();
+        while (messages.size() < maxMessages && offset < end) {
+            Segment.Record record = journal.read(offset);
+            byte[] body = record.getBody();
+            messages.add(new SpooledMessage(Arrays.copyOfRange(body, 1, body.length), TEXT == body[0]));
+            offset = record.getNextOffset();
+        }
+        return messages;
+    }
+
+    @Override
+    public void remove(int count) {
+        long offset = journal.getCommittedOffset();
+        long end = journal.getEndOffset();
+        for (int i = 0; i < count && offset < end; i++) {
+            offset = journal.next(offset);
+        }
+        journal.commit(offset);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return journal.getCommittedOffset() >= journal.getEndOffset();
+    }
+
+    /**
+     * Writes all spooled messages to the storage device and unlocks the spool directory. Messages which have not been
+     * published yet are kept for the next time the spool is opened.
+     *
+     * @throws IOException If the directory cannot be unlocked.
+     */
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+}
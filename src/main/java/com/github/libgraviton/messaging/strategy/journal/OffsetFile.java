@@ -0,0 +1,76 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Persists the consumer position of a journal in a small memory-mapped file, which holds two offsets:
+ *
+ * - committed: All records below this offset have been acknowledged and are never delivered again.
+ * - delivered: All records below this offset have been delivered at least once. Records between the committed and the
+ *   delivered offset get redelivered after a restart, marked as redelivered.
+ */
+class OffsetFile {
+
+    private static final int SIZE = 16;
+
+    private final MappedByteBuffer buffer;
+
+    private OffsetFile(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens the offset file. A new file starts at the given offset.
+     *
+     * @param file The offset file
+     * @param initialOffset The offset to start with, if the file does not exist yet.
+     *
+     * @return The offset file
+     *
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    static OffsetFile open(Path file, long initialOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            boolean created = channel.size() < SIZE;
+            OffsetFile offsetFile = new OffsetFile(channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE));
+            if (created) {
+                offsetFile.setCommitted(initialOffset);
+                offsetFile.setDelivered(initialOffset);
+            }
+            return offsetFile;
+        }
+    }
+
+    long getCommitted() {
+        return buffer.getLong(0);
+    }
+
+    void setCommitted(long offset) {
+        buffer.putLong(0, offset);
+    }
+
+    long getDelivered() {
+        return buffer.getLong(8);
+    }
+
+    void setDelivered(long offset) {
+        buffer.putLong(8, offset);
+    }
+
+    /**
+     * Writes the offsets to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+}
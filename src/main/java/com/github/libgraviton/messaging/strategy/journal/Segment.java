@@ -0,0 +1,255 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped segment file of a journal. The file is preallocated with the segment size and records are appended
+ * to it sequentially. Each record consists of a header and the message body:
+ *
+ * | length + 1 (int) | CRC32 of timestamp and body (int) | timestamp (long) | body (length bytes) |
+ *
+ * The unused rest of the file is zeroed, so a length field of 0 marks the end of the records. The field holds the body
+ * length plus one, so a record with an empty body cannot be taken for the end. A record whose checksum does not match
+ * has been torn by a crash and marks the end as well.
+ */
+class Segment {
+
+    static final int HEADER_SIZE = 16;
+
+    private final Path file;
+
+    private final long baseOffset;
+
+    private final MappedByteBuffer buffer;
+
+    private int end = 0;
+
+    private long lastTimestamp = 0;
+
+    private Segment(Path file, long baseOffset, MappedByteBuffer buffer) {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a new, empty segment file.
+     *
+     * @param file The segment file
+     * @param baseOffset The journal offset of the segment's first record
+     * @param size The size of the segment file in bytes
+     *
+     * @return The segment
+     *
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    static Segment create(Path file, long baseOffset, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            return new Segment(file, baseOffset, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * Opens an existing segment file and recovers the end of its records.
+     *
+     * @param file The segment file
+     * @param baseOffset The journal offset of the segment's first record
+     *
+     * @return The segment
+     *
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    static Segment open(Path file, long baseOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(file, baseOffset, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.recover();
+            return segment;
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * @return The journal offset right after the last record of this segment
+     */
+    long getEndOffset() {
+        return baseOffset + end;
+    }
+
+    /**
+     * @return The timestamp of the last record or 0 if the segment is empty.
+     */
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Checks whether a record with a given body size still fits into the segment.
+     *
+     * @param bodySize The body size in bytes
+     *
+     * @return true if it fits, otherwise false.
+     */
+    boolean fits(int bodySize) {
+        return (long) end + HEADER_SIZE + bodySize <= buffer.capacity();
+    }
+
+    /**
+     * Appends a record right into the mapped file. The caller has to make sure that the record fits and that only one
+     * thread appends at a time.
+     *
+     * @param body The message body
+     * @param timestamp The time the message has been published
+     *
+     * @return The journal offset right after the record
+     */
+    long append(byte[] body, long timestamp) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(end + 4);
+        view.putInt(checksum(timestamp, body));
+        view.putLong(timestamp);
+        view.put(body);
+        // The length is written last, so a torn record is never taken for a complete one with a zero checksum.
+        buffer.putInt(end, body.length + 1);
+        end += HEADER_SIZE + body.length;
+        lastTimestamp = timestamp;
+        return getEndOffset();
+    }
+
+    /**
+     * Reads the record at a given journal offset.
+     *
+     * @param offset The journal offset of the record, which must be below the end offset.
+     *
+     * @return The record
+     */
+    Record read(long offset) {
+        int position = (int) (offset - baseOffset);
+        int length = getLength(position);
+        long timestamp = buffer.getLong(position + 8);
+        byte[] body = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + HEADER_SIZE);
+        view.get(body);
+        return new Record(offset, offset + HEADER_SIZE + length, body, timestamp);
+    }
+
+    /**
+     * Gets the offset of the record following the record at a given offset, without reading its body.
+     *
+     * @param offset The journal offset of the record, which must be below the end offset.
+     *
+     * @return The offset of the next record
+     */
+    long nextOffset(long offset) {
+        return offset + HEADER_SIZE + getLength((int) (offset - baseOffset));
+    }
+
+    /**
+     * Writes the appended records to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    private void recover() {
+        while (end + HEADER_SIZE <= buffer.capacity()) {
+            int length = getLength(end);
+            if (length < 0 || (long) end + HEADER_SIZE + length > buffer.capacity()) {
+                return;
+            }
+            Record record = read(baseOffset + end);
+            if (checksum(record.getTimestamp(), record.getBody()) != buffer.getInt(end + 4)) {
+                return;
+            }
+            end += HEADER_SIZE + length;
+            lastTimestamp = record.getTimestamp();
+        }
+    }
+
+    /**
+     * Gets the body length of the record at a given position.
+     *
+     * @param position The position of the record in the segment file
+     *
+     * @return The body length or -1 if there is no record at the position.
+     */
+    private int getLength(int position) {
+        return buffer.getInt(position) - 1;
+    }
+
+    private static int checksum(long timestamp, byte[] body) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 8; i++) {
+            crc.update((int) (timestamp >>> (56 - 8 * i)));
+        }
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Deletes the segment file.
+     *
+     * @throws IOException If the file cannot be deleted.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * A record read from a segment.
+     */
+    static class Record {
+
+        private final long offset;
+
+        private final long nextOffset;
+
+        private final byte[] body;
+
+        private final long timestamp;
+
+        Record(long offset, long nextOffset, byte[] body, long timestamp) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.body = body;
+            this.timestamp = timestamp;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getNextOffset() {
+            return nextOffset;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the acknowledgments of a consumer channel into cumulative acks. Since delivery tags of a channel are
+ * increasing, a single basicAck(tag, multiple=true) acknowledges all messages up to the given tag. Messages may complete
+ * out of order (e.g. if they are processed by several workers), so only the contiguous prefix of completed delivery
+ * tags can be acknowledged. The completed tags behind the prefix are kept in a bitset, which is only shifted once the
+ * prefix advanced by a whole word.
+ *
+ * The prefix gets acknowledged as soon as it grew by the batch size since the last ack, or once the batch wait elapsed.
+ * Note that a message which never gets completed holds back the acks of all messages delivered after it. To bound the
+ * size of the bitset, messages which are delivered more than {@link #MAX_WINDOW} tags after such a message get
+ * acknowledged one by one.
+ */
+class AckCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AckCoalescer.class);
+
+    private static final int WORD = Long.SIZE;
+
+    static final int MAX_WINDOW = 1 << 16;
+
+    private final Channel channel;
+
+    private final int batchSize;
+
+    private final long batchWait;
+
+    private final String connectionName;
+
+    // Bit i stands for delivery tag windowStart + 1 + i.
+    private BitSet completed = new BitSet();
+
+    private long windowStart = 0;
+
+    private long completedPrefix = 0;
+
+    // The tags beyond the window, which have been acknowledged on their own.
+    private final NavigableSet<Long> acknowledgedDirectly = new TreeSet<>();
+
+    private long acknowledged = 0;
+
+    // Created with the first scheduled flush, so a slow ack on one channel does not delay the flushes of others.
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param channel The channel the messages got delivered on
+     * @param batchSize The amount of completed messages which triggers an ack
+     * @param batchWait The max. amount of milliseconds a completed message waits for its ack
+     * @param connectionName The connection name, which is used in log messages.
+     */
+    AckCoalescer(Channel channel, int batchSize, long batchWait, String connectionName) {
+        this.channel = channel;
+        this.batchSize = batchSize;
+        this.batchWait = batchWait;
+        this.connectionName = connectionName;
+    }
+
+    /**
+     * Marks a message as completed. Acknowledges the contiguous prefix of completed messages if the batch is full.
+     *
+     * @param deliveryTag The delivery tag of the message
+     *
+     * @throws IOException If the ack cannot be sent.
+     */
+    synchronized void complete(long deliveryTag) throws IOException {
+        if (deliveryTag <= completedPrefix || acknowledgedDirectly.contains(deliveryTag)) {
+            return;
+        }
+        long index = deliveryTag - windowStart - 1;
+        if (index >= MAX_WINDOW) {
+            channel.basicAck(deliveryTag, false);
+            acknowledgedDirectly.add(deliveryTag);
+            LOG.debug(String.format(
+                    "Reported basicAck to message queue for delivery tag '%d' beyond the ack window.",
+                    deliveryTag
+            ));
+            return;
+        }
+        completed.set((int) index);
+        long previousPrefix = completedPrefix;
+        advancePrefix();
+        if (completedPrefix == previousPrefix) {
+            return;
+        }
+        if (completedPrefix - acknowledged >= batchSize) {
+            flush();
+        } else if (null == scheduledFlush) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Acknowledges the contiguous prefix of completed messages, if it has not been acknowledged yet.
+     *
+     * @throws IOException If the ack cannot be sent.
+     */
+    synchronized void flush() throws IOException {
+        cancelScheduledFlush();
+        if (completedPrefix <= acknowledged) {
+            return;
+        }
+        // The cumulative ack must name a tag which has not been acknowledged on its own.
+        long tag = completedPrefix;
+        while (tag > acknowledged && acknowledgedDirectly.contains(tag)) {
+            tag--;
+        }
+        if (tag > acknowledged) {
+            channel.basicAck(tag, true);
+            LOG.debug(String.format("Reported basicAck to message queue up to delivery tag '%d'.", tag));
+        }
+        acknowledged = completedPrefix;
+        acknowledgedDirectly.headSet(completedPrefix, true).clear();
+    }
+
+    /**
+     * Acknowledges the pending messages if the channel is still open and shuts down the scheduler of the timed flushes.
+     */
+    synchronized void close() {
+        cancelScheduledFlush();
+        if (null != scheduler) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException | ShutdownSignalException e) {
+            LOG.warn(String.format("Cannot acknowledge pending messages on queue '%s'.", connectionName), e);
+        }
+    }
+
+    /**
+     * Gets the amount of completed messages which have not been acknowledged yet, including the ones held back by
+     * messages which are still in progress.
+     *
+     * @return The amount of messages
+     */
+    synchronized long getPendingCount() {
+        long behindPrefix = completed.cardinality() - (completedPrefix - windowStart);
+        long acknowledgedInWindow = acknowledgedDirectly.headSet(windowStart + MAX_WINDOW, true).size();
+        return completedPrefix - acknowledged + behindPrefix - acknowledgedInWindow;
+    }
+
+    /**
+     * Advances the contiguous prefix over the completed tags. Shifts the window once the prefix advanced by a whole word,
+     * so the bitset is not copied on every completion, and moves the directly acknowledged tags which fall into the
+     * shifted window into the bitset.
+     */
+    private void advancePrefix() {
+        int prefixEnd = completed.nextClearBit((int) (completedPrefix - windowStart));
+        completedPrefix = windowStart + prefixEnd;
+        while (prefixEnd >= WORD) {
+            int shift = prefixEnd - prefixEnd % WORD;
+            completed = completed.get(shift, Math.max(shift, completed.length()));
+            windowStart += shift;
+            for (long tag : acknowledgedDirectly.subSet(windowStart, false, windowStart + MAX_WINDOW, true)) {
+                completed.set((int) (tag - windowStart - 1));
+            }
+            prefixEnd = completed.nextClearBit(prefixEnd - shift);
+            completedPrefix = windowStart + prefixEnd;
+        }
+    }
+
+    private synchronized void scheduledFlush() {
+        scheduledFlush = null;
+        try {
+            flush();
+        } catch (IOException | ShutdownSignalException e) {
+            LOG.error(String.format("Cannot acknowledge messages on queue '%s'.", connectionName), e);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (null == scheduler) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, String.format("rabbitmq-ack-coalescer-%s", connectionName));
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduledFlush = scheduler.schedule(this::scheduledFlush, batchWait, TimeUnit.MILLISECONDS);
+    }
+
+        private void cancelScheduledFlush() {
+        if (null != scheduledFlush) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A pool of channels used to publish messages. Since a channel must not be used by several threads concurrently, each
+ * publisher borrows a channel exclusively and gives it back as soon as the message has been handed over to it. All
+ * channels share the same connection, so publishing scales with the amount of channels without opening further TCP
+ * connections.
+ *
+ * If a borrowed channel has been closed in the meantime (e.g. due to a channel exception), it gets replaced by a new
+ * one, as long as the pool is allowed to create channels.
+ */
+class PublishChannelPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublishChannelPool.class);
+
+    private final List<PublishChannel> channels;
+
+    private final BlockingQueue<PublishChannel> idle;
+
+    private final PublishChannelFactory factory;
+
+    /**
+     * @param channels The initial channels
+     * @param factory Creates replacements for closed channels. Null if closed channels should not be replaced.
+     */
+    PublishChannelPool(List<PublishChannel> channels, PublishChannelFactory factory) {
+        this.channels = new CopyOnWriteArrayList<>(channels);
+        this.idle = new ArrayBlockingQueue<>(channels.size(), false, channels);
+        this.factory = factory;
+    }
+
+    /**
+     * Borrows a channel. Blocks as long as all channels are in use.
+     *
+     * @return The channel, which has to be given back after publishing.
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting.
+     * @throws IOException If a closed channel cannot be replaced.
+     */
+    PublishChannel borrow() throws InterruptedException, IOException {
+        PublishChannel channel = idle.take();
+        if (null == factory || channel.getChannel().isOpen()) {
+            return channel;
+        }
+        LOG.warn("Publish channel has been closed. Replacing it...");
+        PublishChannel replacement;
+        try {
+            replacement = factory.create();
+        } catch (IOException e) {
+            idle.offer(channel);
+            throw e;
+        }
+        channels.remove(channel);
+        channels.add(replacement);
+        return replacement;
+    }
+
+    /**
+     * Gives a borrowed channel back to the pool.
+     *
+     * @param channel The borrowed channel
+     */
+    void giveBack(PublishChannel channel) {
+        idle.offer(channel);
+    }
+
+    /**
+     * Gets all channels of the pool, whether they are currently borrowed or not.
+     *
+     * @return The channels
+     */
+    List<PublishChannel> getChannels() {
+        return channels;
+    }
+
+    /**
+     * Publish channel including its confirm tracker.
+     */
+    static class PublishChannel {
+
+        private final Channel channel;
+
+        private final PublisherConfirms confirms;
+
+        /**
+         * @param channel The channel
+         * @param confirms The channel's confirm tracker or null if the channel is not in confirm mode.
+         */
+        PublishChannel(Channel channel, PublisherConfirms confirms) {
+            this.channel = channel;
+            this.confirms = confirms;
+        }
+
+        Channel getChannel() {
+            return channel;
+        }
+
+        PublisherConfirms getConfirms() {
+            return confirms;
+        }
+
+    }
+
+    interface PublishChannelFactory {
+
+        PublishChannel create() throws IOException;
+
+    }
+
+}
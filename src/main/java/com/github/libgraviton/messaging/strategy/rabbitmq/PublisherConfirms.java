@@ -0,0 +1,148 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the messages published on a channel in confirm mode. Each published message is registered with its
+ * publish sequence number and gets resolved as soon as the broker acks or nacks it. Since the broker may confirm
+ * several messages at once (multiple=true), the outstanding sequence numbers are kept sorted.
+ *
+ * The amount of unconfirmed messages is limited by a window. If the window is exhausted, publishers have to wait until
+ * the broker confirmed some of the outstanding messages.
+ */
+class PublisherConfirms implements ConfirmListener, ShutdownListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublisherConfirms.class);
+
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> unconfirmed = new ConcurrentSkipListMap<>();
+
+    private final Semaphore window;
+
+    private final long timeout;
+
+    private final String connectionName;
+
+    /**
+     * @param connectionName The connection name, which is used in log messages.
+     * @param windowSize The max. amount of unconfirmed messages.
+     * @param timeout The max. amount of milliseconds to wait for a free slot in the window.
+     */
+    PublisherConfirms(String connectionName, int windowSize, long timeout) {
+        this.connectionName = connectionName;
+        this.window = new Semaphore(windowSize);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Reserves a slot in the window of unconfirmed messages. Blocks if the window is exhausted.
+     *
+     * @return true if a slot has been reserved, false if no slot got free within the timeout.
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting.
+     */
+    boolean reserve() throws InterruptedException {
+        return window.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a published message. A slot must have been reserved before.
+     *
+     * @see #reserve()
+     *
+     * @param sequenceNumber The publish sequence number of the message
+     *
+     * @return A future which completes as soon as the broker confirmed the message.
+     */
+    CompletableFuture<Void> register(long sequenceNumber) {
+        CompletableFuture<Void> confirmation = new CompletableFuture<>();
+        unconfirmed.put(sequenceNumber, confirmation);
+        return confirmation;
+    }
+
+    /**
+     * Releases a reserved slot of a message which could not be published.
+     *
+     * @param sequenceNumber The publish sequence number of the message or -1 if it has not been registered yet.
+     */
+    void cancel(long sequenceNumber) {
+        if (sequenceNumber < 0 || null != unconfirmed.remove(sequenceNumber)) {
+            window.release();
+        }
+    }
+
+    int getUnconfirmedCount() {
+        return unconfirmed.size();
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        resolve(deliveryTag, multiple, null);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        LOG.error(String.format(
+                "Broker rejected message(s) up to sequence number '%d' on queue '%s'.",
+                deliveryTag,
+                connectionName
+        ));
+        resolve(deliveryTag, multiple, "The message has been nacked by the broker.");
+    }
+
+    /**
+     * Fails all outstanding messages, since their confirms will never arrive once the channel is gone.
+     *
+     * @param cause The shutdown cause
+     */
+    @Override
+    public void shutdownCompleted(ShutdownSignalException cause) {
+        if (!unconfirmed.isEmpty()) {
+            LOG.warn(String.format(
+                    "Channel to queue '%s' closed with '%d' unconfirmed message(s).",
+                    connectionName,
+                    unconfirmed.size()
+            ));
+        }
+        resolve(Long.MAX_VALUE, true, "The channel has been closed before the message got confirmed.");
+    }
+
+    private void resolve(long deliveryTag, boolean multiple, String failure) {
+        if (!multiple) {
+            complete(deliveryTag, unconfirmed.remove(deliveryTag), failure);
+            return;
+        }
+        for (Map.Entry<Long, CompletableFuture<Void>> entry : unconfirmed.headMap(deliveryTag, true).entrySet()) {
+            // Another thread may have resolved the same message in the meantime, so only complete what we removed.
+            if (unconfirmed.remove(entry.getKey(), entry.getValue())) {
+                complete(entry.getKey(), entry.getValue(), failure);
+            }
+        }
+    }
+
+    private void complete(long sequenceNumber, CompletableFuture<Void> confirmation, String failure) {
+        if (null == confirmation) {
+            return;
+        }
+        window.release();
+        if (null == failure) {
+            confirmation.complete(null);
+        } else {
+            confirmation.completeExceptionally(
+                    new CannotPublishMessage(String.format("#%d", sequenceNumber), failure)
+            );
+        }
+    }
+
+}
@@ -1,20 +1,34 @@
 package com.github.libgraviton.messaging.strategy.rabbitmq;
 
 import com.github.libgraviton.messaging.QueueConnection;
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.batch.MicroBatcher;
+import com.github.libgraviton.messaging.compression.CompressionCodec;
+import com.github.libgraviton.messaging.compression.CompressionCodecs;
 import com.github.libgraviton.messaging.config.PropertyUtil;
+import com.github.libgraviton.messaging.connection.SharedConnectionRegistry;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
 import com.github.libgraviton.messaging.exception.CannotCloseConnection;
 import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
 import com.github.libgraviton.messaging.exception.CannotPublishMessage;
 import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+import com.github.libgraviton.messaging.strategy.rabbitmq.PublishChannelPool.PublishChannel;
 import com.rabbitmq.client.*;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Represents a connection to a RabbitMQ queue. In case of an com.github.libgraviton.messaging.exception on the queue or the channel, the connection will
@@ -22,10 +36,11 @@ import java.util.concurrent.TimeoutException;
  */
 public class RabbitMqConnection extends QueueConnection {
 
-    private static final Map<String, Object> QUEUE_ARGS = null;
-
     private static final String queueAutoRecoveryEnv = "QUEUE_AUTORECOVERY";
 
+    private static final SharedConnectionRegistry<String, Connection> SHARED_CONNECTIONS =
+            new SharedConnectionRegistry<>(Connection::isOpen);
+
     private final boolean queueDurable;
 
     private final boolean queueExclusive;
@@ -42,12 +57,48 @@ public class RabbitMqConnection extends QueueConnection {
 
     private final ConnectionFactory connectionFactory;
 
+    private final boolean publisherConfirms;
+
+    private final int publisherConfirmsWindow;
+
+    private final double publisherConfirmsTimeout;
+
+    private final int publishChannels;
+
+    private final boolean sharedConnection;
+
+    private final String sharedConnectionKey;
+
+    private final int prefetchCount;
+
+    private final int prefetchSize;
+
+    private final int ackBatchSize;
+
+    private final double ackBatchWait;
+
+    private final CompressionCodec compressionCodec;
+
+    private final int compressionThreshold;
+
+    private final AMQP.BasicProperties compressedProperties;
+
+    private final MicroBatcher microBatcher;
+
+    private final RetryQueues retryQueues;
+
     private String queueName;
 
     private Connection connection;
 
     private Channel channel;
 
+    private PublishChannelPool publishChannelPool;
+
+    private AckCoalescer ackCoalescer;
+
+    private RabbitMqConsumer rabbitMqConsumer;
+
     private RabbitMqConnection(Builder builder) {
         super(builder);
         queueDurable = builder.queueDurable;
@@ -58,7 +109,37 @@ public class RabbitMqConnection extends QueueConnection {
         exchangeType = builder.exchangeType;
         routingKey = builder.routingKey;
         connectionFactory = builder.connectionFactory;
+        publisherConfirms = builder.publisherConfirms;
+        publisherConfirmsWindow = builder.publisherConfirmsWindow;
+        publisherConfirmsTimeout = builder.publisherConfirmsTimeout;
+        publishChannels = builder.publishChannels;
+        sharedConnection = builder.sharedConnection;
+        sharedConnectionKey = builder.sharedConnectionKey();
+        prefetchCount = builder.prefetchCount;
+        prefetchSize = builder.prefetchSize;
+        ackBatchSize = builder.ackBatchSize;
+        ackBatchWait = builder.ackBatchWait;
+        compressionCodec = builder.compressionCodec;
+        compressionThreshold = builder.compressionThreshold;
+        compressedProperties = null == compressionCodec
+                ? null
+                : MessageProperties.PERSISTENT_TEXT_PLAIN.builder()
+                        .contentEncoding(compressionCodec.getEncoding())
+                        .build();
         queueName = super.queueName;
+        microBatcher = builder.microBatchSize > 0
+                ? new MicroBatcher(
+                        builder.microBatchSize,
+                        (long) (builder.microBatchLinger * 1000),
+                        getConnectionName(),
+                        this::publishMicroBatch,
+                        this::getRetryWait
+                )
+                : null;
+        // Temporary queues get their name from the broker, so they cannot be dead-lettered to named retry queues.
+        retryQueues = builder.retryAttempts > 0 && null != queueName
+                ? new RetryQueues(queueName, builder.retryAttempts, (long) (builder.retryDelay * 1000))
+                : null;
     }
 
     @Override
@@ -82,17 +163,43 @@ public class RabbitMqConnection extends QueueConnection {
 
     /**
      * Opens the connection. If no exchangeName is defined, it will bind to the default exchangeName
-     * of RabbitMQ. But note that you need to define an exchangeName in order to publish messages.
+     * of RabbitMQ. But note that you need to define an exchangeName in order to publish messages. If more than one
+     * publish channel is configured, the publish channels get opened as well. If publisher confirms are enabled, the
+     * publish channels are put into confirm mode. If the connection is shared, only the channels are opened on the
+     * shared connection. If retries are enabled, the retry queue and the quarantine queue get declared as well.
      *
      * @see Builder#exchangeName(String)
+     * @see Builder#sharedConnection(boolean)
+     * @see Builder#publishChannels(int)
+     * @see Builder#publisherConfirms(boolean)
+     * @see Builder#retryAttempts(int)
      *
      * @throws CannotConnectToQueue If the connection cannot be established
      */
     @Override
     protected void openConnection() throws CannotConnectToQueue {
+        connection = sharedConnection
+                ? SHARED_CONNECTIONS.acquire(sharedConnectionKey, this::newConnection)
+                : newConnection();
         try {
-            connection = connectionFactory.newConnection();
             channel = connection.createChannel();
+            if (publishChannels > 1) {
+                List<PublishChannel> channels = new ArrayList<>(publishChannels);
+                for (int i = 0; i < publishChannels; i++) {
+                    channels.add(createPublishChannel(connection.createChannel()));
+                }
+                Connection publishConnection = connection;
+                publishChannelPool = new PublishChannelPool(
+                        channels,
+                        () -> createPublishChannel(publishConnection.createChannel())
+                );
+            } else {
+                // The consumer's channel is used for publishing as well
+                publishChannelPool = new PublishChannelPool(
+                        Collections.singletonList(createPublishChannel(channel)),
+                        null
+                );
+            }
             // If defined, use specific queue and declare it, otherwise use random / temporary queue
             if (null != queueName) {
                 channel.queueDeclare(
@@ -100,8 +207,11 @@ public class RabbitMqConnection extends QueueConnection {
                         queueDurable,
                         queueExclusive,
                         queueAutoDelete,
-                        QUEUE_ARGS
+                        null == retryQueues ? null : retryQueues.getQueueArguments()
                 );
+                if (null != retryQueues) {
+                    retryQueues.declare(channel, queueDurable);
+                }
             } else {
                 queueName = channel.queueDeclare().getQueue();
             }
@@ -110,27 +220,97 @@ public class RabbitMqConnection extends QueueConnection {
                 channel.exchangeDeclare(exchangeName, exchangeType, exchangeDurable);
                 channel.queueBind(queueName, exchangeName, routingKey);
             }
+        } catch (IOException e) {
+            if (sharedConnection) {
+                // Do not keep a reference to the shared connection, since open() will acquire it again.
+                try {
+                    releaseConnection();
+                } catch (IOException releaseException) {
+                    e.addSuppressed(releaseException);
+                }
+                connection = null;
+            }
+            throw new CannotConnectToQueue(queueName, e);
+        }
+    }
+
+    private Connection newConnection() throws CannotConnectToQueue {
+        try {
+            return connectionFactory.newConnection();
         } catch (IOException | TimeoutException e) {
             throw new CannotConnectToQueue(queueName, e);
         }
     }
 
+    /**
+     * Closes the connection or, if it is shared, releases the reference to it.
+     *
+     * @throws IOException If the connection cannot be closed.
+     */
+    private void releaseConnection() throws IOException {
+        if (null == connection) {
+            return;
+        }
+        if (sharedConnection) {
+            SHARED_CONNECTIONS.release(sharedConnectionKey, connection, RabbitMqConnection::closeIfOpen);
+        } else {
+            closeIfOpen(connection);
+        }
+    }
+
+    private static void closeIfOpen(Connection connection) throws IOException {
+        if (connection.isOpen()) {
+            connection.close();
+        }
+    }
+
     /**
      * Registers a consumer. If the consumer implements {@link AcknowledgingConsumer}, the autoAck flag is set to false,
      * otherwise it's set to true.
      *
+     * If a prefetch limit is defined, it gets applied to the channel before. Since the broker ignores the prefetch limit
+     * for auto acknowledged deliveries, the autoAck flag is set to false in this case as well and each message gets
+     * acknowledged as soon as the consumer returns.
+     *
+     * If an ack batch size greater than 1 is defined, the acks of the consumer get coalesced into cumulative acks. With
+     * a prefetch limit, the batch size is capped at half of the prefetch count, so the broker never stalls waiting for
+     * acks which are held back.
+     *
+     * If retries are enabled, messages are acknowledged manually as well, so messages the consumer failed to process
+     * can be rejected. Acks do not get coalesced in this case, since a cumulative ack must not cover rejected messages.
+     *
+     * @see Builder#prefetchCount(int)
+     * @see Builder#ackBatchSize(int)
+     * @see Builder#retryAttempts(int)
+     *
      * @param consumer The consumer to register.
      *
      * @throws CannotRegisterConsumer If the consumer cannot be registerd.
      */
     @Override
     protected void registerConsumer(Consumer consumer) throws CannotRegisterConsumer {
-        RabbitMqConsumer rabbitMqConsumer = new RabbitMqConsumer(this, consumer);
-        boolean autoAck = !(consumer instanceof AcknowledgingConsumer);
-        if (!autoAck) {
+        boolean prefetch = prefetchCount > 0 || prefetchSize > 0;
+        boolean acknowledging = consumer instanceof AcknowledgingConsumer;
+        boolean retries = null != retryQueues;
+        boolean autoAck = !acknowledging && !prefetch && !retries;
+        int batchSize = prefetchCount > 0 ? Math.min(ackBatchSize, Math.max(1, prefetchCount / 2)) : ackBatchSize;
+        ackCoalescer = !autoAck && !retries && batchSize > 1
+                ? new AckCoalescer(channel, batchSize, (long) (ackBatchWait * 1000), getConnectionName())
+                : null;
+        rabbitMqConsumer = new RabbitMqConsumer(
+                this,
+                consumer,
+                (prefetch || retries) && !acknowledging,
+                ackCoalescer,
+                metrics
+        );
+        if (acknowledging) {
             ((AcknowledgingConsumer) consumer).setAcknowledger(rabbitMqConsumer);
         }
         try {
+            if (prefetch) {
+                channel.basicQos(prefetchSize, prefetchCount, false);
+            }
             channel.basicConsume(queueName, autoAck, rabbitMqConsumer);
         } catch (IOException e) {
             throw new CannotRegisterConsumer(consumer, e);
@@ -150,7 +330,13 @@ public class RabbitMqConnection extends QueueConnection {
     }
 
     /**
-     * Publishes a bytes message on the queue.
+     * Publishes a bytes message on the queue. If publisher confirms are enabled, this method does not wait for the
+     * broker's confirm, but it blocks as long as the window of unconfirmed messages is exhausted.
+     *
+     * If micro-batching is enabled, messages which fit into a micro-batch are added to the pending micro-batch instead,
+     * which gets published as soon as it is full or the linger time elapsed.
+     *
+     * @see Builder#microBatchSize(int)
      *
      * @param message The message to publish
      *
@@ -158,44 +344,446 @@ public class RabbitMqConnection extends QueueConnection {
      */
     @Override
     protected void publishMessage(byte[] message) throws CannotPublishMessage {
+        if (null != microBatcher && microBatcher.accepts(message.length)) {
+            microBatcher.add(message);
+        } else {
+            publishMessageAsync(message);
+        }
+    }
+
+    /**
+     * Publishes a bytes message on the queue, which carries the content type in its AMQP properties.
+     *
+     * @param message The message to publish
+     * @param contentType The MIME type of the message
+     *
+     * @throws CannotPublishMessage If the message cannot be published.
+     */
+    @Override
+    protected void publishMessage(byte[] message, String contentType) throws CannotPublishMessage {
+        flushMicroBatch();
+        PublishChannel publishChannel = borrowPublishChannel(() -> new String(message));
         try {
-            channel.basicPublish(
-                    exchangeName,
-                    routingKey,
-                    MessageProperties.PERSISTENT_TEXT_PLAIN,
-                    message
+            publish(publishChannel, message, contentType, null);
+        } finally {
+            publishChannelPool.giveBack(publishChannel);
+        }
+    }
+
+    /**
+     * Publishes a bytes message on the queue. If publisher confirms are enabled, the returned future completes as soon
+     * as the broker confirmed the message. Otherwise, it completes as soon as the message has been handed over to a
+     * channel. The message is never added to a micro-batch, but the pending micro-batch gets published before.
+     *
+     * @see Builder#publisherConfirms(boolean)
+     *
+     * @param message The message to publish
+     *
+     * @return The future confirmation of the message
+     *
+     * @throws CannotPublishMessage If the message cannot be published.
+     */
+    @Override
+    protected CompletableFuture<Void> publishMessageAsync(byte[] message) throws CannotPublishMessage {
+        flushMicroBatch();
+        PublishChannel publishChannel = borrowPublishChannel(() -> new String(message));
+        try {
+            return publish(publishChannel, message, null, null);
+        } finally {
+            publishChannelPool.giveBack(publishChannel);
+        }
+    }
+
+    /**
+     * Publishes a batch of text messages on the queue. Note that this method uses UTF-8 encoding only.
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published.
+     */
+    @Override
+    protected void publishTextMessages(Collection<String> messages) throws CannotPublishMessage {
+        List<byte[]> bytesMessages = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            bytesMessages.add(message.getBytes(StandardCharsets.UTF_8));
+        }
+        publishMessages(bytesMessages);
+    }
+
+    /**
+     * Publishes a batch of bytes messages on the queue. The whole batch is published on the same channel. If publisher
+     * confirms are enabled, all messages get published first and then it waits once until the broker confirmed the
+     * whole batch.
+     *
+     * If micro-batching is enabled, the messages get added to micro-batches instead, like single messages.
+     *
+     * @see #publishMessage(byte[])
+     *
+     * @param messages The messages to publish
+     *
+     * @throws CannotPublishMessage If the messages cannot be published or the broker did not confirm all of them.
+     */
+    @Override
+    protected void publishMessages(Collection<byte[]> messages) throws CannotPublishMessage {
+        if (null != microBatcher) {
+            for (byte[] message : messages) {
+                publishMessage(message);
+            }
+            return;
+        }
+        CompletableFuture<?>[] confirmations = new CompletableFuture<?>[messages.size()];
+        PublishChannel publishChannel = borrowPublishChannel(() -> describeBatch(messages));
+        try {
+            int i = 0;
+            for (byte[] message : messages) {
+                confirmations[i++] = publish(publishChannel, message, null, null);
+            }
+        } finally {
+            publishChannelPool.giveBack(publishChannel);
+        }
+        awaitConfirmation(CompletableFuture.allOf(confirmations), () -> describeBatch(messages));
+    }
+
+    /**
+     * Publishes a micro-batch, which carries its amount of messages in the {@link BatchEnvelope#BATCH_SIZE} header.
+     *
+     * @param batch The framed micro-batch
+     * @param count The amount of messages in the micro-batch
+     *
+     * @throws CannotPublishMessage If the connection is closed or the micro-batch cannot be published.
+     */
+    private void publishMicroBatch(byte[] batch, int count) throws CannotPublishMessage {
+        Supplier<String> description = () -> String.format("micro-batch of %d messages", count);
+        PublishChannelPool publishChannelPool = this.publishChannelPool;
+        if (null == publishChannelPool) {
+            throw new CannotPublishMessage(description.get(), "The connection is closed.");
+        }
+        PublishChannel publishChannel = borrowPublishChannel(description);
+        try {
+            Map<String, Object> headers = Collections.singletonMap(BatchEnvelope.BATCH_SIZE, count);
+            publish(publishChannel, batch, null, headers);
+        } finally {
+            publishChannelPool.giveBack(publishChannel);
+        }
+    }
+
+    /**
+     * Moves a message the consumer failed to process too often to the quarantine queue. The message is published on a
+     * publish channel, since the consumer's channel may be in use by a publisher at the same time. If publisher
+     * confirms are enabled, it waits until the broker confirmed the quarantined message, so the delivered message must
+     * not be acknowledged before this method returned.
+     *
+     * @param properties The AMQP properties of the message
+     * @param body The body of the message as it got delivered
+     * @param reason Why the message is quarantined
+     *
+     * @throws IOException If the message cannot be published or the broker did not confirm it.
+     */
+    void quarantine(AMQP.BasicProperties properties, byte[] body, String reason) throws IOException {
+        String description = String.format("quarantined message of %d bytes", body.length);
+        PublishChannelPool publishChannelPool = this.publishChannelPool;
+        if (null == publishChannelPool || null == retryQueues) {
+            throw new CannotPublishMessage(description, "The connection is closed.");
+        }
+        PublishChannel publishChannel = borrowPublishChannel(() -> description);
+        CompletableFuture<Void> confirmation;
+        try {
+            confirmation = publish(
+                    publishChannel,
+                    () -> description,
+                    channel -> retryQueues.quarantine(channel, properties, body, reason)
             );
+        } finally {
+            publishChannelPool.giveBack(publishChannel);
+        }
+        awaitConfirmation(confirmation, () -> description);
+    }
+
+    /**
+     * Gets the retry queues of the consumed queue.
+     *
+     * @return The retry queues or null if retries are disabled.
+     */
+    RetryQueues getRetryQueues() {
+        return retryQueues;
+    }
+
+    private void flushMicroBatch() throws CannotPublishMessage {
+        if (null != microBatcher) {
+            microBatcher.flush();
+        }
+    }
+
+    private PublishChannel createPublishChannel(Channel channel) throws IOException {
+        if (!publisherConfirms) {
+            return new PublishChannel(channel, null);
+        }
+        channel.confirmSelect();
+        PublisherConfirms confirms = new PublisherConfirms(
+                getConnectionName(),
+                publisherConfirmsWindow,
+                (long) (publisherConfirmsTimeout * 1000)
+        );
+        channel.addConfirmListener(confirms);
+        channel.addShutdownListener(confirms);
+        return new PublishChannel(channel, confirms);
+    }
+
+    /**
+     * Borrows a channel from the publish channel pool. Blocks as long as all publish channels are in use.
+     *
+     * @param mqMessage Describes the message which should be published, used for exception messages only. Only
+     *                  evaluated if no channel can be borrowed.
+     *
+     * @return The channel, which has to be given back after publishing.
+     *
+     * @throws CannotPublishMessage If no channel can be borrowed.
+     */
+    private PublishChannel borrowPublishChannel(Supplier<String> mqMessage) throws CannotPublishMessage {
+        try {
+            return publishChannelPool.borrow();
         } catch (IOException e) {
-            throw new CannotPublishMessage(new String(message), e);
+            throw new CannotPublishMessage(mqMessage.get(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotPublishMessage(mqMessage.get(), e);
+        }
+    }
+
+    /**
+     * Publishes a message on a borrowed channel. If the channel is in confirm mode, the message gets registered for
+     * confirmation.
+     *
+     * @param publishChannel The borrowed channel
+     * @param message The message to publish
+     * @param contentType The MIME type of the message or null for plain text
+     * @param headers The AMQP headers of the message or null if it has none
+     *
+     * @return A future which completes as soon as the broker confirmed the message. If the channel is not in confirm
+     *         mode, the future is already completed.
+     *
+     * @throws CannotPublishMessage If no slot got free in the window of unconfirmed messages or the message cannot be
+     *                              published.
+     */
+    private CompletableFuture<Void> publish(
+            PublishChannel publishChannel,
+            byte[] message,
+            String contentType,
+            Map<String, Object> headers
+    ) throws CannotPublishMessage {
+        return publish(
+                publishChannel,
+                () -> new String(message),
+                channel -> basicPublish(channel, message, contentType, headers)
+        );
+    }
+
+    /**
+     * Performs a publication on a borrowed channel. If the channel is in confirm mode, the published message gets
+     * registered for confirmation.
+     *
+     * @param publishChannel The borrowed channel
+     * @param mqMessage Describes the message which gets published, used for exception messages only. Only evaluated
+     *                  if publishing fails.
+     * @param publication Publishes exactly one message on the channel
+     *
+     * @return A future which completes as soon as the broker confirmed the message. If the channel is not in confirm
+     *         mode, the future is already completed.
+     *
+     * @throws CannotPublishMessage If no slot got free in the window of unconfirmed messages or the message cannot be
+     *                              published.
+     */
+    private CompletableFuture<Void> publish(
+            PublishChannel publishChannel,
+            Supplier<String> mqMessage,
+            Publication publication
+    ) throws CannotPublishMessage {
+        Channel channel = publishChannel.getChannel();
+        PublisherConfirms confirms = publishChannel.getConfirms();
+        if (null == confirms) {
+            try {
+                publication.publish(channel);
+            } catch (IOException | RuntimeException e) {
+                throw new CannotPublishMessage(mqMessage.get(), e);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            if (!confirms.reserve()) {
+                throw new CannotPublishMessage(
+                        mqMessage.get(),
+                        String.format("No publisher confirm received within '%s' seconds.", publisherConfirmsTimeout)
+                );
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotPublishMessage(mqMessage.get(), e);
         }
+        // The channel is borrowed exclusively, so the sequence number cannot change until the message is published.
+        long sequenceNumber = channel.getNextPublishSeqNo();
+        CompletableFuture<Void> confirmation = confirms.register(sequenceNumber);
+        try {
+            publication.publish(channel);
+        } catch (IOException | RuntimeException e) {
+            // E.g. an AlreadyClosedException, after which the channel may never report a confirm or a shutdown.
+            confirms.cancel(sequenceNumber);
+            throw new CannotPublishMessage(mqMessage.get(), e);
+        }
+        return confirmation;
     }
 
     /**
-     * Closes the channel and the connection if they are open.
+     * Waits until the broker confirmed published messages, but at most for the publisher confirms timeout.
+     *
+     * @see Builder#publisherConfirmsTimeout(double)
+     *
+     * @param confirmation The future confirmation of the messages
+     * @param mqMessage Describes the published messages, used for exception messages only.
+     *
+     * @throws CannotPublishMessage If the broker rejected the messages or did not confirm them in time.
+     */
+    private void awaitConfirmation(CompletableFuture<?> confirmation, Supplier<String> mqMessage)
+            throws CannotPublishMessage {
+        try {
+            confirmation.get((long) (publisherConfirmsTimeout * 1000), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new CannotPublishMessage(mqMessage.get(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new CannotPublishMessage(
+                    mqMessage.get(),
+                    String.format("No publisher confirm received within '%s' seconds.", publisherConfirmsTimeout)
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotPublishMessage(mqMessage.get(), e);
+        }
+    }
+
+    /**
+     * Publishes a message on a channel. Messages reaching the compression threshold get compressed and carry the
+     * encoding of the compression codec as content encoding.
+     *
+     * @see Builder#compressionCodec(CompressionCodec)
+     *
+     * @param channel The channel
+     * @param message The message to publish
+     * @param contentType The MIME type of the message or null for plain text
+     * @param headers The AMQP headers of the message or null if it has none
+     *
+     * @throws IOException If the message cannot be compressed or published.
+     */
+    private void basicPublish(Channel channel, byte[] message, String contentType, Map<String, Object> headers)
+            throws IOException {
+        boolean compress = null != compressionCodec && message.length >= compressionThreshold;
+        AMQP.BasicProperties properties = compress ? compressedProperties : MessageProperties.PERSISTENT_TEXT_PLAIN;
+        if (null != contentType || null != headers) {
+            AMQP.BasicProperties.Builder builder = properties.builder();
+            if (null != contentType) {
+                builder.contentType(contentType);
+            }
+            if (null != headers) {
+                builder.headers(headers);
+            }
+            properties = builder.build();
+        }
+        channel.basicPublish(
+                exchangeName,
+                routingKey,
+                properties,
+                compress ? compressionCodec.compress(message) : message
+        );
+    }
+
+    /**
+     * Closes the channels and the connection if they are open. The pending micro-batch gets published and coalesced
+     * acks which are still pending get sent before. A shared connection is only closed if no other queue connection
+     * uses it anymore.
      *
      * @throws CannotCloseConnection If the channel and / or connection cannot be closed.
      */
     @Override
     protected void closeConnection() throws CannotCloseConnection {
+        if (null != microBatcher) {
+            microBatcher.close();
+        }
         try {
+            if (ackCoalescer != null) {
+                ackCoalescer.close();
+            }
+            if (publishChannelPool != null) {
+                for (PublishChannel publishChannel : publishChannelPool.getChannels()) {
+                    if (publishChannel.getChannel() != channel && publishChannel.getChannel().isOpen()) {
+                        publishChannel.getChannel().close();
+                    }
+                }
+            }
             if (channel != null && channel.isOpen()) {
                 channel.close();
             }
-            if (connection != null && connection.isOpen()) {
-                connection.close();
-            }
+            releaseConnection();
         } catch (IOException | TimeoutException e) {
             throw new CannotCloseConnection(queueName, e);
         } finally {
             connection = null;
             channel = null;
+            publishChannelPool = null;
+            ackCoalescer = null;
+            rabbitMqConsumer = null;
+        }
+    }
+
+    /**
+     * Gets the amount of published messages which have not been confirmed by the broker yet. This is always 0 if
+     * publisher confirms are disabled.
+     *
+     * @see Builder#publisherConfirms(boolean)
+     *
+     * @return The amount of messages
+     */
+    @Override
+    public long getUnconfirmedCount() {
+        PublishChannelPool publishChannelPool = this.publishChannelPool;
+        if (null == publishChannelPool) {
+            return 0;
+        }
+        long count = 0;
+        for (PublishChannel publishChannel : publishChannelPool.getChannels()) {
+            if (null != publishChannel.getConfirms()) {
+                count += publishChannel.getConfirms().getUnconfirmedCount();
+            }
         }
+        return count;
+    }
+
+    /**
+     * Gets the amount of delivered messages which have not been acknowledged to the broker yet, including the acks
+     * which are held back to be coalesced. Messages which are acknowledged automatically are not counted.
+     *
+     * @see Builder#ackBatchSize(int)
+     *
+     * @return The amount of messages
+     */
+    @Override
+    public long getUnacknowledgedCount() {
+        RabbitMqConsumer rabbitMqConsumer = this.rabbitMqConsumer;
+        AckCoalescer ackCoalescer = this.ackCoalescer;
+        return (null == rabbitMqConsumer ? 0 : rabbitMqConsumer.getUnacknowledgedCount())
+                + (null == ackCoalescer ? 0 : ackCoalescer.getPendingCount());
     }
 
     Channel getChannel() {
         return channel;
     }
 
+    /**
+     * Publishes a message on a channel.
+     */
+    private interface Publication {
+
+        void publish(Channel channel) throws IOException;
+
+    }
+
     /**
      * Builder class for creating RabbitMQ connections.
      */
@@ -221,6 +809,36 @@ public class RabbitMqConnection extends QueueConnection {
 
         private String virtualHost = "/";
 
+        private boolean publisherConfirms = false;
+
+        private int publisherConfirmsWindow = 1000;
+
+        private double publisherConfirmsTimeout = 10;
+
+        private int publishChannels = 1;
+
+        private boolean sharedConnection = false;
+
+        private int prefetchCount = 0;
+
+        private int prefetchSize = 0;
+
+        private int ackBatchSize = 1;
+
+        private double ackBatchWait = 0.1;
+
+        private CompressionCodec compressionCodec = null;
+
+        private int compressionThreshold = 1024;
+
+        private int microBatchSize = 0;
+
+        private double microBatchLinger = 0.005;
+
+        private int retryAttempts = 0;
+
+        private double retryDelay = 5;
+
         private ConnectionFactory connectionFactory;
 
         /**
@@ -351,6 +969,271 @@ public class RabbitMqConnection extends QueueConnection {
             return this;
         }
 
+        /**
+         * Defines whether the channel should be put into confirm mode. Default is false. If enabled, each published
+         * message is tracked until the broker confirmed it.
+         *
+         * @param publisherConfirms Whether publisher confirms should be enabled
+         *
+         * @return self
+         */
+        public Builder publisherConfirms(boolean publisherConfirms) {
+            this.publisherConfirms = publisherConfirms;
+            return this;
+        }
+
+        /**
+         * Defines the max. amount of published but not yet confirmed messages. Default is 1000. Publishing blocks as
+         * long as this limit is reached. Only applies if publisher confirms are enabled.
+         *
+         * @see #publisherConfirms(boolean)
+         *
+         * @param publisherConfirmsWindow The max. amount of unconfirmed messages
+         *
+         * @return self
+         */
+        public Builder publisherConfirmsWindow(int publisherConfirmsWindow) {
+            this.publisherConfirmsWindow = publisherConfirmsWindow;
+            return this;
+        }
+
+        /**
+         * Sets the amount of seconds a publisher waits for a free slot in the window of unconfirmed messages before it
+         * gives up. Default is 10. Only applies if publisher confirms are enabled.
+         *
+         * @see #publisherConfirms(boolean)
+         *
+         * @param publisherConfirmsTimeout The amount of seconds to wait
+         *
+         * @return self
+         */
+        public Builder publisherConfirmsTimeout(double publisherConfirmsTimeout) {
+            this.publisherConfirmsTimeout = publisherConfirmsTimeout;
+            return this;
+        }
+
+        /**
+         * Defines the amount of channels used to publish messages. Default is 1, which means that messages are
+         * published on the same channel the consumer uses. Each channel is used by one publishing thread at a time, so
+         * more channels allow more threads to publish concurrently on the same connection. Note that the window of
+         * unconfirmed messages applies to each publish channel.
+         *
+         * @see #publisherConfirmsWindow(int)
+         *
+         * @param publishChannels The amount of publish channels
+         *
+         * @return self
+         */
+        public Builder publishChannels(int publishChannels) {
+            this.publishChannels = publishChannels;
+            return this;
+        }
+
+        /**
+         * Defines whether the physical connection should be shared with other RabbitMQ connections. Default is false.
+         * If enabled, all shared RabbitMQ connections with the same host, port, virtual host and user use the same
+         * physical connection and only open their own channels on it. The physical connection is closed as soon as the
+         * last of them has been closed.
+         *
+         * @param sharedConnection Whether the physical connection should be shared
+         *
+         * @return self
+         */
+        public Builder sharedConnection(boolean sharedConnection) {
+            this.sharedConnection = sharedConnection;
+            return this;
+        }
+
+        /**
+         * Defines the max. amount of unacknowledged messages the broker delivers to the consumer. Default is 0, which
+         * means unlimited. If defined, consumers which do not acknowledge messages themselves get each message
+         * acknowledged as soon as they processed it, so there are never more than this amount of messages in memory.
+         *
+         * @param prefetchCount The max. amount of unacknowledged messages
+         *
+         * @return self
+         */
+        public Builder prefetchCount(int prefetchCount) {
+            this.prefetchCount = prefetchCount;
+            return this;
+        }
+
+        /**
+         * Defines the max. amount of bytes of unacknowledged messages the broker delivers to the consumer. Default is 0,
+         * which means unlimited. Note that RabbitMQ does not implement this limit yet.
+         *
+         * @see #prefetchCount(int)
+         *
+         * @param prefetchSize The max. amount of bytes of unacknowledged messages
+         *
+         * @return self
+         */
+        public Builder prefetchSize(int prefetchSize) {
+            this.prefetchSize = prefetchSize;
+            return this;
+        }
+
+        /**
+         * Defines the amount of completed messages which get acknowledged together with a single cumulative ack.
+         * Default is 1, which means that each message is acknowledged on its own. Since a cumulative ack covers all
+         * messages up to a delivery tag, messages completed out of order are held back until all messages delivered
+         * before them completed. Only applies to manually acknowledged messages.
+         *
+         * @see #ackBatchWait(double)
+         * @see #prefetchCount(int)
+         *
+         * @param ackBatchSize The amount of messages per ack
+         *
+         * @return self
+         */
+        public Builder ackBatchSize(int ackBatchSize) {
+            this.ackBatchSize = ackBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the max. amount of seconds a completed message waits for its ack if the batch does not get full.
+         * Default is 0.1.
+         *
+         * @see #ackBatchSize(int)
+         *
+         * @param ackBatchWait The amount of seconds to wait
+         *
+         * @return self
+         */
+        public Builder ackBatchWait(double ackBatchWait) {
+            this.ackBatchWait = ackBatchWait;
+            return this;
+        }
+
+        /**
+         * Defines the codec to compress published messages with. Default is null, which disables compression. The
+         * encoding of the codec is sent as content encoding of each compressed message. Consumers decompress messages
+         * of all known encodings transparently, regardless of this setting.
+         *
+         * @see #compressionThreshold(int)
+         * @see CompressionCodecs
+         *
+         * @param compressionCodec The compression codec
+         *
+         * @return self
+         */
+        public Builder compressionCodec(CompressionCodec compressionCodec) {
+            this.compressionCodec = compressionCodec;
+            return this;
+        }
+
+        /**
+         * Defines the codec to compress published messages with by its encoding, e.g. 'gzip' or 'deflate'.
+         *
+         * @see #compressionCodec(CompressionCodec)
+         *
+         * @param encoding The encoding or null to disable compression
+         *
+         * @return self
+         *
+         * @throws IllegalArgumentException If no codec is known for the encoding.
+         */
+        public Builder compression(String encoding) {
+            CompressionCodec compressionCodec = CompressionCodecs.forEncoding(encoding);
+            if (null != encoding && null == compressionCodec) {
+                throw new IllegalArgumentException(String.format("Unknown compression encoding '%s'.", encoding));
+            }
+            return compressionCodec(compressionCodec);
+        }
+
+        /**
+         * Sets the min. size in bytes of a message to get compressed. Default is 1024, since compressing small messages
+         * costs more than it saves.
+         *
+         * @param compressionThreshold The min. message size in bytes
+         *
+         * @return self
+         */
+        public Builder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * Defines the max. size in bytes of a micro-batch. Default is 0, which disables micro-batching. If enabled,
+         * published messages are packed into micro-batches, which are published as one AMQP message each, so the
+         * per-message overhead of the broker is paid once per micro-batch. A micro-batch gets published as soon as the
+         * next message does not fit into it anymore or the linger time elapsed. Messages which do not fit into an empty
+         * micro-batch, asynchronously published messages and messages with a content type are published on their own.
+         *
+         * Consumers of this library unpack micro-batches transparently. Note that publishing returns as soon as the
+         * message has been added to the micro-batch, so publisher confirms only cover whole micro-batches, and that the
+         * pending micro-batch gets dropped if it cannot be published when the connection gets closed.
+         *
+         * @see #microBatchLinger(double)
+         *
+         * @param microBatchSize The max. size of a micro-batch in bytes
+         *
+         * @return self
+         */
+        public Builder microBatchSize(int microBatchSize) {
+            this.microBatchSize = microBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the max. amount of seconds a message waits in a micro-batch which does not get full. Default is 0.005.
+         *
+         * @see #microBatchSize(int)
+         *
+         * @param microBatchLinger The amount of seconds to wait
+         *
+         * @return self
+         */
+        public Builder microBatchLinger(double microBatchLinger) {
+            this.microBatchLinger = microBatchLinger;
+            return this;
+        }
+
+        /**
+         * Defines the max. amount of attempts to process a message. Default is 0, which disables retries. If enabled,
+         * messages the consumer fails to process (by throwing {@code CannotConsumeMessage}) get rejected and
+         * dead-lettered to the retry queue {@code <queue>.retry}, from where they return to the queue after the retry
+         * delay. The broker counts the attempts in the x-death header. After the last attempt, the message gets moved
+         * to the quarantine queue {@code <queue>.quarantine}, together with the reason in the x-quarantine-reason
+         * header.
+         *
+         * Messages are acknowledged manually if retries are enabled, so the ack batch size does not apply. Parts of
+         * micro-batches are not retried. Only applies to named queues. Note that the broker refuses to re-declare an
+         * existing queue with different arguments, so enabling retries on an existing queue requires a new queue or a
+         * policy which defines the dead-letter routing.
+         *
+         * @see #retryDelay(double)
+         *
+         * @param retryAttempts The max. amount of attempts per message
+         *
+         * @return self
+         */
+        public Builder retryAttempts(int retryAttempts) {
+            this.retryAttempts = retryAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the amount of seconds a rejected message waits in the retry queue before it gets delivered again.
+         * Default is 5. If 0, rejected messages are dead-lettered straight back to the queue.
+         *
+         * @see #retryAttempts(int)
+         *
+         * @param retryDelay The amount of seconds to wait
+         *
+         * @return self
+         */
+        public Builder retryDelay(double retryDelay) {
+            this.retryDelay = retryDelay;
+            return this;
+        }
+
+        private String sharedConnectionKey() {
+            return String.format("%s@%s:%d%s", user, host, port, virtualHost);
+        }
+
         Builder connectionFactory(ConnectionFactory connectionFactory) {
             this.connectionFactory = connectionFactory;
             return this;
@@ -358,7 +1241,7 @@ public class RabbitMqConnection extends QueueConnection {
 
         @Override
         public Builder applyProperties(Properties properties) {
-            return super.applyProperties(properties)
+            super.applyProperties(properties)
                     .autoRecovery(PropertyUtil.getBoolean(properties, "queue.autorecovery", autoRecovery))
                     .queueDurable(PropertyUtil.getBoolean(properties, "queue.durable", queueDurable))
                     .queueExclusive(PropertyUtil.getBoolean(properties, "queue.exclusive", queueExclusive))
@@ -367,7 +1250,33 @@ public class RabbitMqConnection extends QueueConnection {
                     .exchangeType(properties.getProperty("exchange.type", exchangeType))
                     .exchangeDurable(PropertyUtil.getBoolean(properties, "exchange.durable", exchangeDurable))
                     .routingKey(properties.getProperty("routingkey", routingKey))
-                    .virtualHost(properties.getProperty("virtualhost", virtualHost));
+                    .virtualHost(properties.getProperty("virtualhost", virtualHost))
+                    .publisherConfirms(PropertyUtil.getBoolean(properties, "publisher.confirms", publisherConfirms))
+                    .publisherConfirmsWindow(
+                            PropertyUtil.getIntger(properties, "publisher.confirms.window", publisherConfirmsWindow)
+                    )
+                    .publisherConfirmsTimeout(
+                            PropertyUtil.getDouble(properties, "publisher.confirms.timeout", publisherConfirmsTimeout)
+                    )
+                    .publishChannels(PropertyUtil.getIntger(properties, "publish.channels", publishChannels))
+                    .sharedConnection(PropertyUtil.getBoolean(properties, "connection.shared", sharedConnection))
+                    .prefetchCount(PropertyUtil.getIntger(properties, "queue.prefetch", prefetchCount))
+                    .prefetchSize(PropertyUtil.getIntger(properties, "queue.prefetch.size", prefetchSize))
+                    .ackBatchSize(PropertyUtil.getIntger(properties, "ack.batch.size", ackBatchSize))
+                    .ackBatchWait(PropertyUtil.getDouble(properties, "ack.batch.wait", ackBatchWait))
+                    .compressionThreshold(
+                            PropertyUtil.getIntger(properties, "compression.threshold", compressionThreshold)
+                    )
+                    .microBatchSize(PropertyUtil.getIntger(properties, "microbatch.size", microBatchSize))
+                    .microBatchLinger(PropertyUtil.getDouble(properties, "microbatch.linger", microBatchLinger))
+                    .retryAttempts(PropertyUtil.getIntger(properties, "retry.attempts", retryAttempts))
+                    .retryDelay(PropertyUtil.getDouble(properties, "retry.delay", retryDelay));
+            // Looking up the codec again would replace a codec which has been set directly.
+            String compression = properties.getProperty("compression.codec");
+            if (null != compression) {
+                compression(compression);
+            }
+            return this;
         }
 
         @Override
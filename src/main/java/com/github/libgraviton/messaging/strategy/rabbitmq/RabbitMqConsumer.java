@@ -1,16 +1,27 @@
 package com.github.libgraviton.messaging.strategy.rabbitmq;
 
 import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.batch.PendingBatches;
+import com.github.libgraviton.messaging.compression.CompressionCodec;
+import com.github.libgraviton.messaging.compression.CompressionCodecs;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
 import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
 import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
 import com.rabbitmq.client.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Wraps an instance of {@link Consumer} in order to consume from an AMQP RabbitMQ queue. Moreover, this consumer does
@@ -18,6 +29,22 @@ import java.nio.charset.StandardCharsets;
  *
  * If the wrapped {@link Consumer} is an {@link AcknowledgingConsumer}, this class will receive the acknowledgment and
  * do the basicAck on the queue.
+ *
+ * If the wrapped {@link Consumer} is a {@link MessageConsumer}, it receives a {@link RabbitMqMessage}, whose body is only
+ * decoded as soon as the consumer accesses it.
+ *
+ * Messages whose content encoding is the encoding of a known {@link CompressionCodec} get decompressed before they are
+ * passed to the wrapped consumer. Messages which cannot be decompressed are dropped, since no consumer could handle them.
+ *
+ * Micro-batches (see {@link BatchEnvelope}) get unpacked and each of their parts is passed to the wrapped consumer on
+ * its own, with a part id derived from the delivery tag. The delivery gets acknowledged as soon as all of its parts have
+ * been acknowledged.
+ *
+ * If retries are enabled on the connection, messages the wrapped consumer fails to process get rejected, so the broker
+ * dead-letters them to the retry queue, or moved to the quarantine queue after the last attempt (see
+ * {@link RetryQueues}). Otherwise, the failure is passed on to the channel. A message which has already been
+ * acknowledged before the consumer failed is neither rejected nor quarantined, since the broker would close the channel
+ * for a delivery tag it does not know anymore.
  */
 class RabbitMqConsumer extends DefaultConsumer implements MessageAcknowledger {
 
@@ -29,10 +56,57 @@ class RabbitMqConsumer extends DefaultConsumer implements MessageAcknowledger {
 
     private Consumer consumer;
 
+    private final boolean ackAfterConsume;
+
+    private final AckCoalescer ackCoalescer;
+
+    private final MessagingMetrics metrics;
+
+    private final LongAdder unacknowledged = new LongAdder();
+
+    private final PendingBatches pendingBatches = new PendingBatches();
+
+    // Whether the delivery tags are tracked until they are settled, which is required by retries only.
+    private final boolean tracksSettlement;
+
+    private final Set<Long> unsettled = ConcurrentHashMap.newKeySet();
+
     RabbitMqConsumer(RabbitMqConnection connection, Consumer consumer) {
+        this(connection, consumer, false);
+    }
+
+    /**
+     * @param connection The connection
+     * @param consumer The consumer to wrap
+     * @param ackAfterConsume Whether each message should get acknowledged as soon as the wrapped consumer returns. This
+     *                        is required to limit the prefetch of consumers which do not acknowledge messages
+     *                        themselves.
+     */
+    RabbitMqConsumer(RabbitMqConnection connection, Consumer consumer, boolean ackAfterConsume) {
+        this(connection, consumer, ackAfterConsume, null, MessagingMetrics.NOOP);
+    }
+
+    /**
+     * @param connection The connection
+     * @param consumer The consumer to wrap
+     * @param ackAfterConsume Whether each message should get acknowledged as soon as the wrapped consumer returns.
+     * @param ackCoalescer Coalesces the acks into cumulative acks or null if each message should be acked on its own.
+     * @param metrics Records the consumptions and acknowledgments
+     */
+    RabbitMqConsumer(
+            RabbitMqConnection connection,
+            Consumer consumer,
+            boolean ackAfterConsume,
+            AckCoalescer ackCoalescer,
+            MessagingMetrics metrics
+    ) {
         super(connection.getChannel());
         this.consumer = consumer;
         this.connection = connection;
+        this.ackAfterConsume = ackAfterConsume;
+        this.ackCoalescer = ackCoalescer;
+        this.metrics = metrics;
+        tracksSettlement = null != connection.getRetryQueues() && isAcknowledged();
     }
 
     RabbitMqConsumer(RabbitMqConnection connection, AcknowledgingConsumer consumer) {
@@ -45,14 +119,204 @@ class RabbitMqConsumer extends DefaultConsumer implements MessageAcknowledger {
             String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body
     ) throws IOException {
         long deliveryTag = envelope.getDeliveryTag();
-        String message = new String(body, StandardCharsets.UTF_8);
-        LOG.info(String.format(
-                "Message '%d' received on queue '%s': '%s'",
+        if (isAcknowledged()) {
+            unacknowledged.increment();
+        }
+        if (tracksSettlement) {
+            unsettled.add(deliveryTag);
+        }
+        long start = System.nanoTime();
+        boolean consumed = false;
+        boolean dropped = false;
+        boolean batch = false;
+        boolean settled = false;
+        byte[] delivered = body;
+        try {
+            CompressionCodec codec = CompressionCodecs.forEncoding(
+                    null == properties ? null : properties.getContentEncoding()
+            );
+            if (null != codec) {
+                try {
+                    body = codec.decompress(body);
+                } catch (IOException e) {
+                    LOG.error(String.format(
+                            "Message '%d' on queue '%s' cannot be decompressed and got dropped: '%s'",
+                            deliveryTag,
+                            connection.getConnectionName(),
+                            e.getMessage()
+                    ));
+                    dropped = true;
+                    return;
+                }
+            }
+            if (isBatch(properties)) {
+                List<byte[]> parts;
+                try {
+                    parts = BatchEnvelope.unpack(body);
+                } catch (IOException e) {
+                    LOG.error(String.format(
+                            "Micro-batch '%d' on queue '%s' cannot be unpacked and got dropped: '%s'",
+                            deliveryTag,
+                            connection.getConnectionName(),
+                            e.getMessage()
+                    ));
+                    dropped = true;
+                    return;
+                }
+                batch = true;
+                consumeBatch(envelope, properties, parts);
+                return;
+            }
+            if (consumer instanceof MessageConsumer) {
+                LOG.info(String.format(
+                        "Message '%d' received on queue '%s': %d bytes",
+                        deliveryTag,
+                        connection.getConnectionName(),
+                        body.length
+                ));
+                ((MessageConsumer) consumer).consume(new RabbitMqMessage(envelope, properties, body));
+            } else {
+                String message = new String(body, StandardCharsets.UTF_8);
+                LOG.info(String.format(
+                        "Message '%d' received on queue '%s': '%s'",
+                        deliveryTag,
+                        connection.getConnectionName(),
+                        message
+                ));
+                consumer.consume(String.valueOf(deliveryTag), message);
+            }
+            consumed = true;
+        } catch (CannotConsumeMessage e) {
+            RetryQueues retryQueues = connection.getRetryQueues();
+            if (null == retryQueues || !isAcknowledged()) {
+                throw e;
+            }
+            settled = true;
+            retry(deliveryTag, properties, delivered, retryQueues, e);
+        } finally {
+            // The parts of a micro-batch are recorded on their own.
+            if (!batch) {
+                recordConsumption(start, consumed);
+            }
+            // Same semantics as auto acknowledgment: the message is gone, whether the consumer succeeded or not.
+            if (!settled && (ackAfterConsume || dropped && isAcknowledged())) {
+                ack(deliveryTag);
+            }
+        }
+    }
+
+    /**
+     * Rejects a message the wrapped consumer failed to process, so it gets delivered again after the retry delay, or
+     * moves it to the quarantine queue if this was its last attempt.
+     *
+     * @param deliveryTag The delivery tag of the message
+     * @param properties The AMQP properties of the message
+     * @param body The body of the message as it got delivered
+     * @param retryQueues The retry queues
+     * @param failure Why the consumer failed
+     *
+     * @throws IOException If the message can neither be rejected nor quarantined.
+     */
+    private void retry(
+            long deliveryTag,
+            AMQP.BasicProperties properties,
+            byte[] body,
+            RetryQueues retryQueues,
+            CannotConsumeMessage failure
+    ) throws IOException {
+        if (!unsettled.remove(deliveryTag)) {
+            LOG.warn(String.format(
+                    "Message '%d' on queue '%s' failed after it has been acknowledged and cannot be retried: '%s'",
+                    deliveryTag,
+                    connection.getConnectionName(),
+                    failure.getMessage()
+            ));
+            return;
+        }
+        long attempt = retryQueues.getPreviousAttempts(properties) + 1;
+        if (attempt >= retryQueues.getMaxAttempts()) {
+            LOG.error(String.format(
+                    "Message '%d' on queue '%s' failed %d times and got quarantined: '%s'",
+                    deliveryTag,
+                    connection.getConnectionName(),
+                    attempt,
+                    failure.getMessage()
+            ));
+            try {
+                connection.quarantine(properties, body, failure.getMessage());
+            } catch (IOException e) {
+                // Not acknowledged, so the broker delivers the message again once the channel is recovered.
+                unsettled.add(deliveryTag);
+                throw e;
+            }
+            // Only acknowledged once the broker confirmed the quarantined copy, so the message cannot get lost.
+            basicAck(deliveryTag);
+            return;
+        }
+        LOG.warn(String.format(
+                "Message '%d' on queue '%s' failed (attempt %d of %d) and gets retried: '%s'",
                 deliveryTag,
                 connection.getConnectionName(),
-                message
+                attempt,
+                retryQueues.getMaxAttempts(),
+                failure.getMessage()
+        ));
+        getChannel().basicReject(deliveryTag, false);
+        unacknowledged.decrement();
+    }
+
+    /**
+     * Passes each part of a micro-batch to the wrapped consumer. A part which cannot be consumed does not keep the other
+     * parts from being consumed.
+     *
+     * @param envelope The envelope of the micro-batch
+     * @param properties The AMQP properties of the micro-batch
+     * @param parts The unpacked parts
+     */
+    private void consumeBatch(Envelope envelope, AMQP.BasicProperties properties, List<byte[]> parts) {
+        String messageId = String.valueOf(envelope.getDeliveryTag());
+        LOG.info(String.format(
+                "Micro-batch '%s' of %d messages received on queue '%s'.",
+                messageId,
+                parts.size(),
+                connection.getConnectionName()
         ));
-        consumer.consume(String.valueOf(deliveryTag), message);
+        if (consumer instanceof AcknowledgingConsumer) {
+            pendingBatches.register(messageId, parts.size());
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            String partId = BatchEnvelope.partId(messageId, i);
+            long start = System.nanoTime();
+            boolean consumed = false;
+            try {
+                if (consumer instanceof MessageConsumer) {
+                    ((MessageConsumer) consumer).consume(
+                            new RabbitMqMessage(partId, envelope, properties, parts.get(i))
+                    );
+                } else {
+                    consumer.consume(partId, new String(parts.get(i), StandardCharsets.UTF_8));
+                }
+                consumed = true;
+            } catch (CannotConsumeMessage e) {
+                LOG.warn(String.format("Consumer '%s' failed: '%s'", consumer, e.getMessage()));
+            } finally {
+                recordConsumption(start, consumed);
+            }
+        }
+    }
+
+    private static boolean isBatch(AMQP.BasicProperties properties) {
+        return null != properties
+                && null != properties.getHeaders()
+                && properties.getHeaders().containsKey(BatchEnvelope.BATCH_SIZE);
+    }
+
+    private void recordConsumption(long start, boolean consumed) {
+        if (consumed) {
+            metrics.messageConsumed(System.nanoTime() - start);
+        } else {
+            metrics.consumeFailed(System.nanoTime() - start);
+        }
     }
 
     @Override
@@ -73,16 +337,71 @@ class RabbitMqConsumer extends DefaultConsumer implements MessageAcknowledger {
         }
     }
 
+    /**
+     * Acknowledges a message. Parts of a micro-batch are only acknowledged as soon as all parts of the micro-batch have
+     * been acknowledged.
+     *
+     * @param messageId The message id
+     *
+     * @throws CannotAcknowledgeMessage If the message cannot be acknowledged.
+     */
     @Override
     public void acknowledge(String messageId) throws CannotAcknowledgeMessage {
+        String deliveryTag = pendingBatches.acknowledge(messageId);
+        if (null == deliveryTag) {
+            return;
+        }
         try {
-            getChannel().basicAck(Long.parseLong(messageId), ACK_PREV_MESSAGES);
-            LOG.debug(String.format("Reported basicAck to message queue with delivery tag '%s'.", messageId));
+            ack(Long.parseLong(deliveryTag));
+        } catch (NumberFormatException e) {
+            throw new CannotAcknowledgeMessage(
+                    this,
+                    messageId,
+                    String.format("Message id '%s' is not a delivery tag.", messageId)
+            );
         } catch (IOException e) {
             throw new CannotAcknowledgeMessage(this, messageId, e);
         }
     }
 
+    private void ack(long deliveryTag) throws IOException {
+        if (tracksSettlement && !unsettled.remove(deliveryTag)) {
+            LOG.warn(String.format(
+                    "Message '%d' on queue '%s' has already been settled. Skipping acknowledgment...",
+                    deliveryTag,
+                    connection.getConnectionName()
+            ));
+            return;
+        }
+        basicAck(deliveryTag);
+    }
+
+    private void basicAck(long deliveryTag) throws IOException {
+        long start = System.nanoTime();
+        if (null != ackCoalescer) {
+            ackCoalescer.complete(deliveryTag);
+        } else {
+            getChannel().basicAck(deliveryTag, ACK_PREV_MESSAGES);
+            LOG.debug(String.format("Reported basicAck to message queue with delivery tag '%d'.", deliveryTag));
+        }
+        unacknowledged.decrement();
+        metrics.messageAcknowledged(System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the amount of delivered messages which have not been acknowledged by the consumer yet. Messages which are
+     * acknowledged automatically by the broker are not counted.
+     *
+     * @return The amount of messages
+     */
+    long getUnacknowledgedCount() {
+        return unacknowledged.sum();
+    }
+
+    private boolean isAcknowledged() {
+        return ackAfterConsume || consumer instanceof AcknowledgingConsumer;
+    }
+
     Consumer getConsumer() {
         return consumer;
     }
@@ -0,0 +1,167 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.Message;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.LongString;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message delivered by RabbitMQ. The body is only decoded and the headers are only converted as soon as they are
+ * accessed.
+ */
+class RabbitMqMessage implements Message {
+
+    private final String id;
+
+    private final Envelope envelope;
+
+    private final AMQP.BasicProperties properties;
+
+    private final byte[] body;
+
+    private String bodyAsString;
+
+    private Map<String, Object> headers;
+
+    RabbitMqMessage(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+        this(String.valueOf(envelope.getDeliveryTag()), envelope, properties, body);
+    }
+
+    /**
+     * @param id The message id, e.g. the id of a part of a micro-batch
+     * @param envelope The envelope of the delivery
+     * @param properties The AMQP properties
+     * @param body The message body
+     */
+    RabbitMqMessage(String id, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+        this.id = id;
+        this.envelope = envelope;
+        this.properties = properties;
+        this.body = body;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Decodes the body using the charset parameter of the content type, e.g. {@code text/plain; charset=ISO-8859-1}, if
+     * it is a known charset. Otherwise, UTF-8 is used. The content encoding is not considered, since it names a
+     * transfer encoding like gzip.
+     *
+     * @return The body
+     */
+    @Override
+    public String getBodyAsString() {
+        if (null == bodyAsString) {
+            bodyAsString = new String(body, charset());
+        }
+        return bodyAsString;
+    }
+
+    @Override
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(body);
+    }
+
+    /**
+     * Gets the AMQP headers. String values, which the client delivers as {@link LongString}, are converted to strings.
+     *
+     * @return The headers
+     */
+    @Override
+    public Map<String, Object> getHeaders() {
+        if (null == headers) {
+            headers = null == properties || null == properties.getHeaders()
+                    ? Collections.emptyMap()
+                    : Collections.unmodifiableMap(convertTable(properties.getHeaders()));
+        }
+        return headers;
+    }
+
+    @Override
+    public boolean isRedelivered() {
+        return envelope.isRedeliver();
+    }
+
+    @Override
+    public Date getTimestamp() {
+        return null == properties ? null : properties.getTimestamp();
+    }
+
+    @Override
+    public String getRoutingKey() {
+        return envelope.getRoutingKey();
+    }
+
+    private Charset charset() {
+        String contentType = null == properties ? null : properties.getContentType();
+        if (null == contentType) {
+            return StandardCharsets.UTF_8;
+        }
+        String[] parameters = contentType.split(";");
+        for (int i = 1; i < parameters.length; i++) {
+            String[] parameter = parameters[i].split("=", 2);
+            if (2 != parameter.length || !"charset".equalsIgnoreCase(parameter[0].trim())) {
+                continue;
+            }
+            String charset = parameter[1].trim();
+            if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                charset = charset.substring(1, charset.length() - 1);
+            }
+            try {
+                if (Charset.isSupported(charset)) {
+                    return Charset.forName(charset);
+                }
+            } catch (IllegalArgumentException e) {
+                // Illegal charset name
+            }
+            break;
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static Map<String, Object> convertTable(Map<String, Object> table) {
+        Map<String, Object> converted = new HashMap<>();
+        for (Map.Entry<String, Object> entry : table.entrySet()) {
+            converted.put(entry.getKey(), convertValue(entry.getValue()));
+        }
+        return converted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object convertValue(Object value) {
+        if (value instanceof LongString) {
+            return value.toString();
+        }
+        if (value instanceof Map) {
+            return convertTable((Map<String, Object>) value);
+        }
+        if (value instanceof List) {
+            List<Object> converted = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                converted.add(convertValue(element));
+            }
+            return converted;
+        }
+        return value;
+    }
+
+}
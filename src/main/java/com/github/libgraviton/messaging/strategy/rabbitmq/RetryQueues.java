@@ -0,0 +1,148 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The queues which delay and quarantine messages a consumer failed to process. The consumed queue dead-letters rejected
+ * messages to the retry queue, whose messages expire after the retry delay and get dead-lettered back to the consumed
+ * queue. Without a retry delay, rejected messages are dead-lettered back to the consumed queue right away.
+ *
+ * The broker counts the rejections of a message in its x-death header, so the consumer knows how often a message has
+ * been attempted. Once the max. attempts are reached, the message is moved to the quarantine queue, where it waits for
+ * manual inspection.
+ */
+class RetryQueues {
+
+    static final String RETRY_SUFFIX = ".retry";
+
+    static final String QUARANTINE_SUFFIX = ".quarantine";
+
+    /**
+     * The name of the header which tells why a message has been quarantined.
+     */
+    static final String QUARANTINE_REASON = "x-quarantine-reason";
+
+    private static final String DEFAULT_EXCHANGE = "";
+
+    private final String queueName;
+
+    private final int maxAttempts;
+
+    private final long delay;
+
+    /**
+     * @param queueName The name of the consumed queue
+     * @param maxAttempts The max. amount of attempts to process a message
+     * @param delay The amount of milliseconds to wait before a rejected message is delivered again
+     */
+    RetryQueues(String queueName, int maxAttempts, long delay) {
+        this.queueName = queueName;
+        this.maxAttempts = maxAttempts;
+        this.delay = delay;
+    }
+
+    /**
+     * Gets the arguments of the consumed queue, which route rejected messages to the retry queue.
+     *
+     * @return The queue arguments
+     */
+    Map<String, Object> getQueueArguments() {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("x-dead-letter-exchange", DEFAULT_EXCHANGE);
+        arguments.put("x-dead-letter-routing-key", delay > 0 ? getRetryQueueName() : queueName);
+        return arguments;
+    }
+
+    /**
+     * Declares the retry queue and the quarantine queue.
+     *
+     * @param channel The channel
+     * @param durable Whether the queues survive a restart of the broker
+     *
+     * @throws IOException If the queues cannot be declared.
+     */
+    void declare(Channel channel, boolean durable) throws IOException {
+        if (delay > 0) {
+            Map<String, Object> arguments = new HashMap<>();
+            arguments.put("x-message-ttl", delay);
+            arguments.put("x-dead-letter-exchange", DEFAULT_EXCHANGE);
+            arguments.put("x-dead-letter-routing-key", queueName);
+            channel.queueDeclare(getRetryQueueName(), durable, false, false, arguments);
+        }
+        channel.queueDeclare(getQuarantineQueueName(), durable, false, false, null);
+    }
+
+    /**
+     * Gets how often a message has been attempted before, according to the rejections from the consumed queue recorded
+     * in its x-death header.
+     *
+     * @param properties The AMQP properties of the message
+     *
+     * @return The amount of previous attempts
+     */
+    long getPreviousAttempts(AMQP.BasicProperties properties) {
+        if (null == properties || null == properties.getHeaders()) {
+            return 0;
+        }
+        Object deaths = properties.getHeaders().get("x-death");
+        if (!(deaths instanceof List)) {
+            return 0;
+        }
+        for (Object death : (List<?>) deaths) {
+            if (!(death instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> entry = (Map<?, ?>) death;
+            if (queueName.equals(String.valueOf(entry.get("queue")))
+                    && "rejected".equals(String.valueOf(entry.get("reason")))
+                    && entry.get("count") instanceof Number) {
+                return ((Number) entry.get("count")).longValue();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Publishes a message on the quarantine queue. The message keeps its properties and its body as it got delivered.
+     *
+     * @param channel The channel
+     * @param properties The AMQP properties of the message
+     * @param body The body of the message as it got delivered
+     * @param reason Why the message is quarantined
+     *
+     * @throws IOException If the message cannot be published.
+     */
+    void quarantine(Channel channel, AMQP.BasicProperties properties, byte[] body, String reason) throws IOException {
+        AMQP.BasicProperties original = null == properties ? new AMQP.BasicProperties() : properties;
+        Map<String, Object> headers = new HashMap<>();
+        if (null != original.getHeaders()) {
+            headers.putAll(original.getHeaders());
+        }
+        headers.put(QUARANTINE_REASON, String.valueOf(reason));
+        channel.basicPublish(
+                DEFAULT_EXCHANGE,
+                getQuarantineQueueName(),
+                original.builder().headers(headers).build(),
+                body
+        );
+    }
+
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    String getRetryQueueName() {
+        return queueName + RETRY_SUFFIX;
+    }
+
+    String getQuarantineQueueName() {
+        return queueName + QUARANTINE_SUFFIX;
+    }
+
+}
@@ -29,7 +29,7 @@ public class QueueConnectionBuilderTest {
     @Test
     public void testPrefixedProperties() {
         builder.applyProperties(properties, "context.");
-        verify(properties, times(7)).getProperty(matches("^context\\..*$"));
+        verify(properties, times(8)).getProperty(matches("^context\\..*$"));
     }
 
 }
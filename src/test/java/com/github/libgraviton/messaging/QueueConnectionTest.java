@@ -1,15 +1,35 @@
 package com.github.libgraviton.messaging;
 
+import com.github.libgraviton.messaging.codec.Codec;
+import com.github.libgraviton.messaging.codec.StringCodec;
 import com.github.libgraviton.messaging.consumer.Consumer;
 import com.github.libgraviton.messaging.exception.CannotCloseConnection;
 import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
 import com.github.libgraviton.messaging.exception.CannotPublishMessage;
 import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
 import com.github.libgraviton.messaging.mocks.MockedQueueConnection;
+import com.github.libgraviton.messaging.spool.MemorySpool;
+import com.github.libgraviton.messaging.spool.OverflowPolicy;
+import com.github.libgraviton.messaging.strategy.journal.JournalSpool;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -19,6 +39,9 @@ public class QueueConnectionTest {
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private QueueConnection connection;
 
     @Before
@@ -60,6 +83,47 @@ public class QueueConnectionTest {
         verify(connection, times(5)).openConnection();
     }
 
+    @Test
+    public void testOpenConnectionMetrics() throws Exception {
+        MessagingMetrics metrics = mock(MessagingMetrics.class);
+        connection = new MockedQueueConnection.Builder()
+                .connectionAttempts(3)
+                .connectionAttemptsWait(0)
+                .metrics(metrics)
+                .build();
+        connection = spy(connection);
+        doThrow(new CannotConnectToQueue("gugus", null)).doNothing().when(connection).openConnection();
+
+        connection.open();
+
+        verify(metrics).connectionAttempt(anyLong(), eq(false));
+        verify(metrics).connectionAttempt(anyLong(), eq(true));
+        verify(metrics).connectionOpened(eq(2), anyLong());
+    }
+
+    @Test
+    public void testOpenConnectionBackoff() throws Exception {
+        connection = new MockedQueueConnection.Builder()
+                .connectionAttempts(5)
+                .connectionAttemptsWait(0.02)
+                .connectionAttemptsMaxWait(1)
+                .build();
+        connection = spy(connection);
+        doThrow(new CannotConnectToQueue("gugus", null)).when(connection).openConnection();
+
+        long start = System.nanoTime();
+        try {
+            connection.open();
+            fail("Opening the connection should have failed.");
+        } catch (CannotConnectToQueue e) {
+            // expected
+        }
+
+        // Waits at least 10 + 20 + 40 + 80 ms, since the jitter takes up to half of each doubled wait.
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+        verify(connection, times(5)).openConnection();
+    }
+
     @Test
     public void testOpenIfClosed() throws Exception {
         connection.open();
@@ -138,6 +202,265 @@ public class QueueConnectionTest {
         connection.publish(bytesMessage);
     }
 
+    @Test
+    public void testPublishWithCodec() throws Exception {
+        connection.publish("gugus", new StringCodec());
+        verify(connection).publishMessage("gugus".getBytes("UTF-8"), "text/plain; charset=UTF-8");
+        verify(connection).publishMessage("gugus".getBytes("UTF-8"));
+        assertFalse(connection.isOpen());
+    }
+
+    @Test
+    public void testPublishWithCodecFailed() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        Codec<String> codec = spy(new StringCodec());
+        doThrow(new IOException()).when(codec).encode(anyString(), any(OutputStream.class));
+        try {
+            connection.publish("gugus", codec);
+        } finally {
+            verify(connection, never()).openConnection();
+        }
+    }
+
+    @Test
+    public void testPublishAsync() throws Exception {
+        byte[] bytesMessage = new byte[]{1,2,3,4};
+        doReturn(true).when(connection).isOpen();
+
+        CompletableFuture<Void> confirmation = connection.publishAsync(bytesMessage);
+
+        verify(connection).publishMessage(bytesMessage);
+        assertTrue(confirmation.isDone());
+        assertFalse(confirmation.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPublishAsyncFailed() throws Exception {
+        byte[] bytesMessage = new byte[]{1,2,3,4};
+        doThrow(new CannotPublishMessage(new String(bytesMessage), new Exception()))
+                .when(connection).publishMessage(bytesMessage);
+
+        CompletableFuture<Void> confirmation = connection.publishAsync(bytesMessage);
+
+        assertTrue(confirmation.isCompletedExceptionally());
+        verify(connection).close();
+    }
+
+    @Test
+    public void testPublishMetrics() throws Exception {
+        MessagingMetrics metrics = mock(MessagingMetrics.class);
+        connection = spy(new MockedQueueConnection.Builder().metrics(metrics).build());
+        doThrow(new CannotPublishMessage("gaga", new Exception())).when(connection).publishMessage("gaga");
+
+        connection.publish("gugus");
+        connection.publishAllText(Arrays.asList("gugus", "gugus"));
+        try {
+            connection.publish("gaga");
+            fail("Publishing should have failed.");
+        } catch (CannotPublishMessage e) {
+            // expected
+        }
+
+        verify(metrics).messagesPublished(eq(1), anyLong());
+        verify(metrics).messagesPublished(eq(2), anyLong());
+        verify(metrics).publishFailed(1);
+        verify(metrics).registerGauge(eq(MessagingMetrics.Gauge.IN_FLIGHT), any(LongSupplier.class));
+        verify(metrics).registerGauge(eq(MessagingMetrics.Gauge.UNACKNOWLEDGED), any(LongSupplier.class));
+    }
+
+    @Test
+    public void testPublishAll() throws Exception {
+        List<byte[]> messages = Arrays.asList(new byte[]{1, 2}, new byte[]{3, 4});
+        connection.publishAll(messages);
+
+        verify(connection).publishMessages(messages);
+        verify(connection).publishMessage(messages.get(0));
+        verify(connection).publishMessage(messages.get(1));
+        verify(connection, times(1)).open();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    public void testPublishAllText() throws Exception {
+        List<String> messages = Arrays.asList("gugus", "gaga");
+        connection.publishAllText(messages);
+
+        verify(connection).publishTextMessages(messages);
+        verify(connection).publishMessage("gugus");
+        verify(connection).publishMessage("gaga");
+        verify(connection, times(1)).open();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    public void testPublishAllFailed() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        doThrow(new CannotPublishMessage("gugus", new Exception()))
+                .when(connection).publishMessages(anyCollectionOf(byte[].class));
+        connection.publishAll(Arrays.asList(new byte[]{1, 2}, new byte[]{3, 4}));
+    }
+
+    @Test
+    public void testSpoolWhileClosed() throws Exception {
+        AtomicBoolean open = new AtomicBoolean(false);
+        BlockingQueue<String> published = new LinkedBlockingQueue<>();
+        try (JournalSpool spool = JournalSpool.open(folder.getRoot().toPath())) {
+            connection = spy(new MockedQueueConnection.Builder().connectionAttemptsWait(0.01).spool(spool).build());
+            doAnswer(invocation -> open.get()).when(connection).isOpen();
+            doThrow(new CannotConnectToQueue("gugus", null))
+                    .doAnswer(invocation -> {
+                        open.set(true);
+                        return null;
+                    })
+                    .when(connection).openConnection();
+            doAnswer(invocation -> published.add((String) invocation.getArguments()[0]))
+                    .when(connection).publishMessage(anyString());
+            doThrow(new CannotPublishMessage("gugus", new Exception()))
+                    .doAnswer(invocation -> {
+                        for (Object message : (Collection<?>) invocation.getArguments()[0]) {
+                            published.add((String) message);
+                        }
+                        return null;
+                    })
+                    .when(connection).publishTextMessages(anyCollectionOf(String.class));
+            doAnswer(invocation -> {
+                for (Object message : (Collection<?>) invocation.getArguments()[0]) {
+                    published.add(new String((byte[]) message));
+                }
+                return null;
+            }).when(connection).publishMessages(anyCollectionOf(byte[].class));
+
+            // Returns immediately, although the connection cannot be opened.
+            connection.publish("first");
+            connection.publish("second".getBytes());
+            connection.publishAllText(Arrays.asList("third", "fourth"));
+
+            assertEquals("first", published.poll(5, TimeUnit.SECONDS));
+            assertEquals("second", published.poll(5, TimeUnit.SECONDS));
+            assertEquals("third", published.poll(5, TimeUnit.SECONDS));
+            assertEquals("fourth", published.poll(5, TimeUnit.SECONDS));
+            connection.publish("fifth");
+            assertEquals("fifth", published.poll(5, TimeUnit.SECONDS));
+            verify(connection, times(2)).openConnection();
+            verify(connection, never()).open();
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testDropRejectedSpooledMessage() throws Exception {
+        AtomicBoolean open = new AtomicBoolean(false);
+        BlockingQueue<String> published = new LinkedBlockingQueue<>();
+        try (JournalSpool spool = JournalSpool.open(folder.getRoot().toPath())) {
+            connection = spy(new MockedQueueConnection.Builder().connectionAttemptsWait(0.01).spool(spool).build());
+            doAnswer(invocation -> open.get()).when(connection).isOpen();
+            doAnswer(invocation -> {
+                open.set(true);
+                return null;
+            }).when(connection).openConnection();
+            doAnswer(invocation -> {
+                Collection<?> messages = (Collection<?>) invocation.getArguments()[0];
+                if (messages.contains("poison")) {
+                    throw new CannotPublishMessage("poison", "Message too large.");
+                }
+                for (Object message : messages) {
+                    published.add((String) message);
+                }
+                return null;
+            }).when(connection).publishTextMessages(anyCollectionOf(String.class));
+            connection.publishAllText(Arrays.asList("first", "poison", "second"));
+
+            // The connection stays open, so the rejected message is dropped instead of holding back the others.
+            assertEquals("first", published.poll(5, TimeUnit.SECONDS));
+            assertEquals("second", published.poll(5, TimeUnit.SECONDS));
+            connection.publish("third");
+            assertEquals("third", published.poll(5, TimeUnit.SECONDS));
+            verify(connection, times(3)).publishTextMessages(Collections.singletonList("poison"));
+
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testSpoolMoreThanBlockingSpoolCapacity() throws Exception {
+        AtomicBoolean open = new AtomicBoolean(false);
+        BlockingQueue<String> published = new LinkedBlockingQueue<>();
+        connection = spy(new MockedQueueConnection.Builder()
+                .connectionAttemptsWait(0.01)
+                .spool(new MemorySpool(32, OverflowPolicy.BLOCK))
+                .spoolBatchSize(1)
+                .build());
+        doAnswer(invocation -> open.get()).when(connection).isOpen();
+        doAnswer(invocation -> {
+            open.set(true);
+            return null;
+        }).when(connection).openConnection();
+        doAnswer(invocation -> published.addAll((Collection<String>) invocation.getArguments()[0]))
+                .when(connection).publishTextMessages(anyCollectionOf(String.class));
+
+        // The spooled messages take 42 bytes, which exceeds the capacity, so the drainer has to run while appending.
+        CompletableFuture<Void> publishing = CompletableFuture.runAsync(() -> {
+            try {
+                connection.publishAllText(Arrays.asList("first", "second", "third", "fourth"));
+            } catch (CannotPublishMessage e) {
+                throw new RuntimeException(e);
+            }
+        });
+        publishing.get(5, TimeUnit.SECONDS);
+
+        assertEquals("first", published.poll(5, TimeUnit.SECONDS));
+        assertEquals("second", published.poll(5, TimeUnit.SECONDS));
+        assertEquals("third", published.poll(5, TimeUnit.SECONDS));
+        assertEquals("fourth", published.poll(5, TimeUnit.SECONDS));
+        connection.close();
+    }
+
+    @Test
+    public void testDoNotBlockAfterClose() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        connection = spy(new MockedQueueConnection.Builder().spool(new MemorySpool(20, OverflowPolicy.BLOCK)).build());
+        connection.close();
+
+        // Nothing drains the spool until the connection gets opened again, so the second message must not wait.
+        connection.publish("first".getBytes());
+        connection.publish("second".getBytes());
+    }
+
+    @Test
+    public void testDoNotDrainAfterClose() throws Exception {
+        AtomicBoolean open = new AtomicBoolean(false);
+        BlockingQueue<String> published = new LinkedBlockingQueue<>();
+        try (JournalSpool spool = JournalSpool.open(folder.getRoot().toPath())) {
+            connection = spy(new MockedQueueConnection.Builder().connectionAttemptsWait(0.01).spool(spool).build());
+            doAnswer(invocation -> open.get()).when(connection).isOpen();
+            doAnswer(invocation -> {
+                open.set(true);
+                return null;
+            }).when(connection).openConnection();
+            doAnswer(invocation -> {
+                open.set(false);
+                return null;
+            }).when(connection).closeConnection();
+            doAnswer(invocation -> published.addAll((Collection<String>) invocation.getArguments()[0]))
+                    .when(connection).publishTextMessages(anyCollectionOf(String.class));
+            connection.open();
+            connection.close();
+
+            connection.publish("first");
+            assertNull(published.poll(200, TimeUnit.MILLISECONDS));
+            verify(connection, times(1)).openConnection();
+
+            connection.open();
+            assertEquals("first", published.poll(5, TimeUnit.SECONDS));
+
+            connection.close();
+        }
+    }
+
     @Test
     public void testRegisterConsumer() throws Exception{
         Consumer consumer = mock(Consumer.class);
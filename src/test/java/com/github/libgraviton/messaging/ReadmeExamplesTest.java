@@ -1,14 +1,37 @@
 package com.github.libgraviton.messaging;
 
+import com.github.libgraviton.messaging.codec.Codec;
+import com.github.libgraviton.messaging.codec.StringCodec;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.BytesConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.DeduplicatingConsumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.consumer.RetryingConsumer;
+import com.github.libgraviton.messaging.consumer.TypedConsumer;
+import com.github.libgraviton.messaging.consumer.WorkerPoolConsumer;
+import com.github.libgraviton.messaging.dedup.DeduplicationKey;
+import com.github.libgraviton.messaging.dedup.LruDeduplicationCache;
 import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
 import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
 import com.github.libgraviton.messaging.exception.CannotPublishMessage;
 import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+import com.github.libgraviton.messaging.metrics.CountingMessagingMetrics;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
+import com.github.libgraviton.messaging.mocks.MockedQueueConnection;
+import com.github.libgraviton.messaging.spool.MemorySpool;
+import com.github.libgraviton.messaging.spool.OverflowPolicy;
+import com.github.libgraviton.messaging.spool.PublishSpool;
+import com.github.libgraviton.messaging.strategy.journal.JournalSpool;
 import com.github.libgraviton.messaging.strategy.rabbitmq.RabbitMqConnection;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
@@ -20,11 +43,14 @@ import static org.junit.Assert.*;
  */
 public class ReadmeExamplesTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     QueueConnection connection;
 
     @Before
     public void setUp() throws Exception {
-        connection = mock(QueueConnection.class, CALLS_REAL_METHODS);
+        connection = spy(new MockedQueueConnection.Builder().build());
         doNothing().when(connection).publishMessage(anyString());
         doNothing().when(connection).registerConsumer(any(Consumer.class));
     }
@@ -41,6 +67,34 @@ public class ReadmeExamplesTest {
         }
     }
 
+    @Test
+    public void testPublishBatchExample() {
+        // QueueConnection connection = new RabbitMqConnection.Builder().queueName("your-queue").build();
+
+        List<String> messages = Arrays.asList("first message", "second message");
+
+        try {
+            connection.publishAllText(messages);
+        } catch (CannotPublishMessage e) {
+            // Batch publishment failed for some reason.
+            fail(String.format("An exception occurred: '%s'", e.getClass().getName()));
+        }
+    }
+
+    @Test
+    public void testPublishAsyncExample() throws Exception {
+        doNothing().when(connection).publishMessage(any(byte[].class));
+
+        // QueueConnection connection = new RabbitMqConnection.Builder().queueName("your-queue").build();
+
+        connection.publishAsync("the message".getBytes(StandardCharsets.UTF_8)).whenComplete((result, e) -> {
+            if (null != e) {
+                // Message publishment failed for some reason.
+                System.out.println(String.format("An exception occurred: '%s'", e.getClass().getName()));
+            }
+        }).get();
+    }
+
     @Test
     public void testConsumeExample() {
         Consumer consumer = new Consumer() {
@@ -96,4 +150,162 @@ public class ReadmeExamplesTest {
         }
     }
 
+    @Test
+    public void testBytesConsumeExample() {
+        Consumer consumer = new BytesConsumer() {
+
+            @Override
+            public void consume(String messageId, byte[] message) throws CannotConsumeMessage {
+                System.out.println(String.format("Received message with id '%s': %d bytes", messageId, message.length));
+            }
+
+        };
+
+        try {
+            connection.consume(consumer);
+        } catch (CannotRegisterConsumer e) {
+            fail(String.format("An exception occurred: '%s'", e.getClass().getName()));
+        }
+    }
+
+    @Test
+    public void testMessageConsumeExample() {
+        Consumer consumer = new MessageConsumer() {
+
+            @Override
+            public void consume(Message message) throws CannotConsumeMessage {
+                if (message.isRedelivered() || !"order".equals(message.getHeaders().get("type"))) {
+                    return;
+                }
+                System.out.println(String.format("Received order '%s': '%s'", message.getId(), message.getBodyAsString()));
+            }
+
+        };
+
+        try {
+            connection.consume(consumer);
+        } catch (CannotRegisterConsumer e) {
+            fail(String.format("An exception occurred: '%s'", e.getClass().getName()));
+        }
+    }
+
+    @Test
+    public void testWorkerPoolConsumeExample() {
+        Consumer consumer = mock(Consumer.class);
+
+        // 4 worker threads, up to 16 messages waiting for a free worker
+        WorkerPoolConsumer workerPoolConsumer = new WorkerPoolConsumer(consumer, 4, 16);
+
+        try {
+            connection.consume(workerPoolConsumer);
+        } catch (CannotRegisterConsumer e) {
+            // Consumer registration failed for some reason.
+            fail(String.format("An exception occurred: '%s'", e.getClass().getName()));
+        }
+
+        // Waits until all pending messages have been processed
+        workerPoolConsumer.close();
+    }
+
+    @Test
+    public void testDeduplicatingConsumeExample() {
+        Consumer consumer = mock(Consumer.class);
+
+        DeduplicatingConsumer deduplicatingConsumer = new DeduplicatingConsumer(
+                consumer,
+                // JMS message ids stay the same for redeliveries. Use a header or the content hash for RabbitMQ.
+                DeduplicationKey.messageId(),
+                // Remembers up to 10000 messages for 1 hour
+                new LruDeduplicationCache(10000, 3600000)
+        );
+
+        try {
+            connection.consume(deduplicatingConsumer);
+        } catch (CannotRegisterConsumer e) {
+            // Consumer registration failed for some reason.
+            fail(String.format("An exception occurred: '%s'", e.getClass().getName()));
+        }
+    }
+
+    @Test
+    public void testRetryingConsumeExample() {
+        Consumer consumer = mock(Consumer.class);
+
+        // 3 attempts, waiting 0.5 seconds before the first retry and at most 5 seconds
+        RetryingConsumer retryingConsumer = RetryingConsumer.of(consumer, 3, 0.5, 5);
+
+        assertNotNull(retryingConsumer);
+    }
+
+    @Test
+    public void testTypedMessagesExample() throws Exception {
+        // Codec<Order> codec = new OrderCodec();
+        Codec<String> codec = new StringCodec();
+        connection.publish("order", codec);
+
+        connection.consume(new TypedConsumer<String>() {
+
+            @Override
+            public Codec<String> getCodec() {
+                return codec;
+            }
+
+            @Override
+            public void consume(String messageId, String order) throws CannotConsumeMessage {
+                System.out.println(String.format("Received order '%s': '%s'", messageId, order));
+            }
+
+        });
+        verify(connection).publishMessage("order".getBytes(StandardCharsets.UTF_8), codec.getContentType());
+    }
+
+    @Test
+    public void testMetricsExample() throws Exception {
+        CountingMessagingMetrics metrics = new CountingMessagingMetrics();
+        // QueueConnection connection = new RabbitMqConnection.Builder().queueName("your-queue").metrics(metrics).build();
+        connection = new MockedQueueConnection.Builder().queueName("your-queue").metrics(metrics).build();
+
+        connection.publish("the message");
+
+        System.out.println(String.format(
+                "Published %d messages in %d ns, %d failed. %d messages are unacknowledged.",
+                metrics.getPublishedCount(),
+                metrics.getPublishDuration(),
+                metrics.getPublishFailureCount(),
+                metrics.getGauge(MessagingMetrics.Gauge.UNACKNOWLEDGED)
+        ));
+        assertEquals(1, metrics.getPublishedCount());
+    }
+
+    @Test
+    public void testSpoolExample() throws Exception {
+        // JournalSpool spool = JournalSpool.open(Paths.get("/var/spool/your-app/your-queue"));
+        JournalSpool spool = JournalSpool.open(folder.getRoot().toPath());
+        // QueueConnection connection = new RabbitMqConnection.Builder().queueName("your-queue").spool(spool).build();
+        connection = new MockedQueueConnection.Builder().queueName("your-queue").spool(spool).build();
+
+        // Returns immediately, even if the queue is not available.
+        connection.publish("the message");
+        assertFalse(spool.isEmpty());
+
+        connection.close();
+        spool.close();
+    }
+
+    @Test
+    public void testMemorySpoolExample() throws Exception {
+        PublishSpool spool = new MemorySpool(64 * 1024 * 1024, OverflowPolicy.DROP_OLDEST, true);
+        // QueueConnection connection = new RabbitMqConnection.Builder()
+        connection = new MockedQueueConnection.Builder()
+                .queueName("your-queue")
+                .spool(spool)
+                .connectionAttemptsWait(0.5)
+                .connectionAttemptsMaxWait(30)
+                .build();
+
+        connection.publish("the message");
+        assertFalse(spool.isEmpty());
+        connection.close();
+    }
+
 }
@@ -0,0 +1,140 @@
+package com.github.libgraviton.messaging.batch;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MicroBatcherTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private MicroBatcher.Flusher flusher;
+
+    private MicroBatcher microBatcher;
+
+    @Before
+    public void setUp() {
+        flusher = mock(MicroBatcher.Flusher.class);
+        // Room for two messages of 4 bytes
+        microBatcher = new MicroBatcher(24, 10000, "queue", flusher);
+    }
+
+    @Test
+    public void testFlushFullBatch() throws Exception {
+        microBatcher.add(bytes("abcd"));
+        microBatcher.add(bytes("efgh"));
+        verify(flusher, never()).flush(any(byte[].class), anyInt());
+        assertEquals(2, microBatcher.getPendingCount());
+
+        microBatcher.add(bytes("ijkl"));
+
+        ArgumentCaptor<byte[]> batch = ArgumentCaptor.forClass(byte[].class);
+        verify(flusher).flush(batch.capture(), eq(2));
+        List<byte[]> parts = BatchEnvelope.unpack(batch.getValue());
+        assertEquals(2, parts.size());
+        assertArrayEquals(bytes("abcd"), parts.get(0));
+        assertArrayEquals(bytes("efgh"), parts.get(1));
+        assertEquals(1, microBatcher.getPendingCount());
+    }
+
+    @Test
+    public void testFlushAfterLinger() throws Exception {
+        microBatcher = new MicroBatcher(24, 10, "queue", flusher);
+        microBatcher.add(bytes("abcd"));
+
+        verify(flusher, timeout(1000)).flush(any(byte[].class), eq(1));
+        assertEquals(0, microBatcher.getPendingCount());
+    }
+
+    @Test
+    public void testKeepBatchIfFlushFails() throws Exception {
+        doThrow(new CannotPublishMessage("batch", "gugus")).when(flusher).flush(any(byte[].class), anyInt());
+        microBatcher.add(bytes("abcd"));
+
+        try {
+            microBatcher.flush();
+            fail("Flushing should have failed.");
+        } catch (CannotPublishMessage e) {
+            // expected
+        }
+        assertEquals(1, microBatcher.getPendingCount());
+
+        microBatcher.close();
+        assertEquals(0, microBatcher.getPendingCount());
+    }
+
+    @Test
+    public void testBackOffScheduledFlush() throws Exception {
+        doThrow(new CannotPublishMessage("batch", "gugus"))
+                .doThrow(new CannotPublishMessage("batch", "gugus"))
+                .doNothing()
+                .when(flusher).flush(any(byte[].class), anyInt());
+        List<Integer> failures = new CopyOnWriteArrayList<>();
+        microBatcher = new MicroBatcher(24, 10, "queue", flusher, failureCount -> {
+            failures.add(failureCount);
+            return 10L * failureCount;
+        });
+        microBatcher.add(bytes("abcd"));
+
+        verify(flusher, timeout(1000).times(3)).flush(any(byte[].class), eq(1));
+        assertEquals(Arrays.asList(1, 2), failures);
+        assertEquals(0, microBatcher.getPendingCount());
+        microBatcher.close();
+    }
+
+    @Test
+    public void testRejectTooLargeMessage() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        assertTrue(microBatcher.accepts(16));
+        assertFalse(microBatcher.accepts(17));
+        microBatcher.add(new byte[17]);
+    }
+
+    @Test
+    public void testUnpackCorruptBatch() throws Exception {
+        thrown.expect(IOException.class);
+
+        BatchEnvelope.unpack(new byte[]{0, 0, 0, 1, 0, 0, 0, 5, 1});
+    }
+
+    @Test
+    public void testPartIds() {
+        String partId = BatchEnvelope.partId("ID:1", 3);
+
+        assertEquals("ID:1", BatchEnvelope.messageId(partId));
+        assertEquals(3, BatchEnvelope.partIndex(partId));
+        assertNull(BatchEnvelope.messageId("ID:1"));
+        assertEquals(-1, BatchEnvelope.partIndex("ID:1"));
+    }
+
+    @Test
+    public void testPendingBatches() {
+        PendingBatches pendingBatches = new PendingBatches();
+        pendingBatches.register("1", 2);
+
+        assertNull(pendingBatches.acknowledge("1#1"));
+        assertNull(pendingBatches.acknowledge("1#1"));
+        assertEquals("1", pendingBatches.acknowledge("1#0"));
+        assertEquals(0, pendingBatches.size());
+        assertEquals("2", pendingBatches.acknowledge("2"));
+    }
+
+    private static byte[] bytes(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
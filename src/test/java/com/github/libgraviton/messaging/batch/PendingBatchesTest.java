@@ -0,0 +1,48 @@
+package com.github.libgraviton.messaging.batch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PendingBatchesTest {
+
+    private PendingBatches pendingBatches;
+
+    @Before
+    public void setUp() {
+        pendingBatches = new PendingBatches();
+        pendingBatches.register("1", 2);
+    }
+
+    @Test
+    public void testAcknowledgeLastPart() {
+        assertNull(pendingBatches.acknowledge("1#1"));
+        assertNull(pendingBatches.acknowledge("1#1"));
+        assertEquals("1", pendingBatches.acknowledge("1#0"));
+        assertEquals(0, pendingBatches.size());
+    }
+
+    @Test
+    public void testAcknowledgeCompletedBatchTwice() {
+        pendingBatches.acknowledge("1#0");
+        pendingBatches.acknowledge("1#1");
+
+        assertNull(pendingBatches.acknowledge("1#0"));
+    }
+
+    @Test
+    public void testAcknowledgeRemovedBatch() {
+        pendingBatches.remove("1");
+
+        assertNull(pendingBatches.acknowledge("1#0"));
+    }
+
+    @Test
+    public void testAcknowledgePhysicalMessage() {
+        assertEquals("2", pendingBatches.acknowledge("2"));
+        assertEquals("ID:2#gugus", pendingBatches.acknowledge("ID:2#gugus"));
+        assertEquals(1, pendingBatches.size());
+    }
+
+}
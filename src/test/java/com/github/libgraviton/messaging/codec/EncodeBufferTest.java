@@ -0,0 +1,45 @@
+package com.github.libgraviton.messaging.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class EncodeBufferTest {
+
+    @Test
+    public void testWrite() {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        byte[] data = new byte[100 * 1024];
+        Arrays.fill(data, (byte) 7);
+
+        buffer.write(1);
+        buffer.write(data, 0, data.length);
+
+        assertEquals(data.length + 1, buffer.size());
+        assertTrue(buffer.getBuffer().length >= buffer.size());
+        byte[] bytes = buffer.toByteArray();
+        assertEquals(1, bytes[0]);
+        assertArrayEquals(data, Arrays.copyOfRange(bytes, 1, bytes.length));
+    }
+
+    @Test
+    public void testReuse() {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        buffer.write(new byte[20000], 0, 20000);
+
+        EncodeBuffer next = EncodeBuffer.acquire();
+        assertEquals(0, next.size());
+        assertSame(buffer.getBuffer(), next.getBuffer());
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws Exception {
+        StringCodec codec = new StringCodec();
+        byte[] encoded = codec.encode("grüezi");
+        assertArrayEquals("grüezi".getBytes("UTF-8"), encoded);
+        assertEquals("grüezi", codec.decode(encoded));
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.github.libgraviton.messaging.compression;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+public class CompressionCodecsTest {
+
+    @Test
+    public void testForEncoding() {
+        assertTrue(CompressionCodecs.forEncoding("gzip") instanceof GzipCodec);
+        assertTrue(CompressionCodecs.forEncoding("GZIP") instanceof GzipCodec);
+        assertTrue(CompressionCodecs.forEncoding("deflate") instanceof DeflateCodec);
+        assertNull(CompressionCodecs.forEncoding("UTF-8"));
+        assertNull(CompressionCodecs.forEncoding(null));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] json = json(1000);
+        byte[] random = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(random);
+        for (CompressionCodec codec : Arrays.asList(new GzipCodec(), new DeflateCodec(Deflater.BEST_SPEED))) {
+            for (byte[] data : Arrays.asList(new byte[0], json, random)) {
+                byte[] compressed = codec.compress(data);
+                assertArrayEquals(data, codec.decompress(compressed));
+            }
+            assertTrue(codec.compress(json).length < json.length / 4);
+        }
+    }
+
+    @Test
+    public void testPartialArray() throws Exception {
+        GzipCodec codec = new GzipCodec();
+        byte[] json = json(10);
+        byte[] compressed = codec.compress(json, 5, 100);
+        assertArrayEquals(Arrays.copyOfRange(json, 5, 105), codec.decompress(compressed));
+
+        byte[] padded = new byte[compressed.length + 6];
+        System.arraycopy(compressed, 0, padded, 3, compressed.length);
+        assertArrayEquals(Arrays.copyOfRange(json, 5, 105), codec.decompress(padded, 3, compressed.length));
+    }
+
+    @Test
+    public void testGzipCompatibility() throws Exception {
+        GzipCodec codec = new GzipCodec();
+        byte[] json = json(100);
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(codec.compress(json)))) {
+            assertArrayEquals(json, readAll(in));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        }
+        assertArrayEquals(json, codec.decompress(out.toByteArray()));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptGzip() throws Exception {
+        GzipCodec codec = new GzipCodec();
+        byte[] compressed = codec.compress(json(100));
+        compressed[compressed.length - 5]++;
+        codec.decompress(compressed);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testTruncatedDeflate() throws Exception {
+        DeflateCodec codec = new DeflateCodec();
+        byte[] compressed = codec.compress(json(100));
+        codec.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    @Test(expected = ZipException.class)
+    public void testNotCompressed() throws Exception {
+        new GzipCodec().decompress(json(1));
+    }
+
+    private static byte[] json(int items) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            json.append(String.format("{\"id\":%d,\"name\":\"item %d\",\"tags\":[\"a\",\"b\"]},", i, i));
+        }
+        return json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
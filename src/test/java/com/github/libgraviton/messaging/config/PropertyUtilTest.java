@@ -50,4 +50,19 @@ public class PropertyUtilTest {
         assertEquals(7.0, PropertyUtil.getDouble(properties, "double-7-inexistent", 7), 0);
     }
 
+    @Test
+    public void testEnumProperty() {
+        properties.setProperty("enum-up", "up");
+        properties.setProperty("enum-down", "DOWN");
+
+        assertEquals(Direction.UP, PropertyUtil.getEnum(properties, "enum-up", Direction.DOWN));
+        assertEquals(Direction.UP, PropertyUtil.getEnum(properties, "enum-up-inexistent", Direction.UP));
+        assertEquals(Direction.DOWN, PropertyUtil.getEnum(properties, "enum-down", Direction.UP));
+    }
+
+    private enum Direction {
+        UP,
+        DOWN
+    }
+
 }
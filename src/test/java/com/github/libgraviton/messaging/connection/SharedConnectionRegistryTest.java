@@ -0,0 +1,78 @@
+package com.github.libgraviton.messaging.connection;
+
+import com.github.libgraviton.messaging.connection.SharedConnectionRegistry.Closer;
+import com.github.libgraviton.messaging.connection.SharedConnectionRegistry.Opener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class SharedConnectionRegistryTest {
+
+    private Set<Object> deadConnections;
+
+    private SharedConnectionRegistry<String, Object> registry;
+
+    private Opener<Object, Exception> opener;
+
+    private Closer<Object, Exception> closer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        deadConnections = new HashSet<>();
+        registry = new SharedConnectionRegistry<>(connection -> !deadConnections.contains(connection));
+        opener = mock(Opener.class);
+        when(opener.open()).thenReturn(new Object(), new Object(), new Object());
+        closer = mock(Closer.class);
+    }
+
+    @Test
+    public void testShareConnection() throws Exception {
+        Object first = registry.acquire("key", opener);
+        Object second = registry.acquire("key", opener);
+        Object other = registry.acquire("other-key", opener);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(2, registry.getReferences(first));
+        verify(opener, times(2)).open();
+    }
+
+    @Test
+    public void testCloseWithLastReference() throws Exception {
+        Object connection = registry.acquire("key", opener);
+        registry.acquire("key", opener);
+
+        registry.release("key", connection, closer);
+        verify(closer, never()).close(connection);
+
+        registry.release("key", connection, closer);
+        verify(closer).close(connection);
+        assertEquals(0, registry.getReferences(connection));
+
+        assertNotSame(connection, registry.acquire("key", opener));
+    }
+
+    @Test
+    public void testReplaceDeadConnection() throws Exception {
+        Object dead = registry.acquire("key", opener);
+        registry.acquire("key", opener);
+        deadConnections.add(dead);
+
+        Object replacement = registry.acquire("key", opener);
+        assertNotSame(dead, replacement);
+
+        // Releasing the dead connection must not affect its replacement
+        registry.release("key", dead, closer);
+        registry.release("key", dead, closer);
+        verify(closer).close(dead);
+        assertSame(replacement, registry.acquire("key", opener));
+        assertEquals(2, registry.getReferences(replacement));
+    }
+
+}
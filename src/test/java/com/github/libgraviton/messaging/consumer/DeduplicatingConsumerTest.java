@@ -0,0 +1,120 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.dedup.DeduplicationKey;
+import com.github.libgraviton.messaging.dedup.LruDeduplicationCache;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DeduplicatingConsumerTest {
+
+    private Consumer consumer;
+
+    private MessageAcknowledger acknowledger;
+
+    private DeduplicatingConsumer deduplicatingConsumer;
+
+    @Before
+    public void setUp() {
+        consumer = mock(Consumer.class);
+        acknowledger = mock(MessageAcknowledger.class);
+        deduplicatingConsumer = new DeduplicatingConsumer(
+                consumer,
+                DeduplicationKey.messageId(),
+                new LruDeduplicationCache(10, 0)
+        );
+        deduplicatingConsumer.setAcknowledger(acknowledger);
+    }
+
+    @Test
+    public void testSkipDuplicate() throws Exception {
+        deduplicatingConsumer.consume("1", "message");
+        deduplicatingConsumer.consume("1", "message");
+
+        verify(consumer, times(1)).consume("1", "message");
+        verify(acknowledger, times(2)).acknowledge("1");
+        assertEquals(1, deduplicatingConsumer.getSkippedCount());
+    }
+
+    @Test
+    public void testSkipDuplicateWithoutDecoding() throws Exception {
+        Message message = spy(new BasicMessage("1", "message"));
+
+        deduplicatingConsumer.consume(message);
+        deduplicatingConsumer.consume(message);
+
+        verify(message, times(1)).getBodyAsString();
+        verify(message, never()).getBody();
+    }
+
+    @Test
+    public void testRetryFailedMessage() throws Exception {
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).doNothing().when(consumer).consume("1", "message");
+
+        try {
+            deduplicatingConsumer.consume("1", "message");
+            fail("Consuming should have failed.");
+        } catch (CannotConsumeMessage e) {
+            // expected
+        }
+        // The failed message is left to the connection, which may still retry or quarantine it.
+        verify(acknowledger, never()).acknowledge("1");
+        deduplicatingConsumer.consume("1", "message");
+
+        verify(consumer, times(2)).consume("1", "message");
+        verify(acknowledger, times(1)).acknowledge("1");
+        assertEquals(0, deduplicatingConsumer.getSkippedCount());
+    }
+
+    @Test
+    public void testRememberAfterAcknowledgment() throws Exception {
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        deduplicatingConsumer = new DeduplicatingConsumer(
+                acknowledgingConsumer,
+                DeduplicationKey.messageId(),
+                new LruDeduplicationCache(10, 0)
+        );
+        deduplicatingConsumer.setAcknowledger(acknowledger);
+        ArgumentCaptor<MessageAcknowledger> wrappedAcknowledger = ArgumentCaptor.forClass(MessageAcknowledger.class);
+        verify(acknowledgingConsumer).setAcknowledger(wrappedAcknowledger.capture());
+
+        deduplicatingConsumer.consume("1", "message");
+        deduplicatingConsumer.consume("1", "message");
+        verify(acknowledgingConsumer, times(2)).consume("1", "message");
+        verify(acknowledger, never()).acknowledge("1");
+
+        wrappedAcknowledger.getValue().acknowledge("1");
+        verify(acknowledger).acknowledge("1");
+
+        deduplicatingConsumer.consume("1", "message");
+        verify(acknowledgingConsumer, times(2)).consume("1", "message");
+        verify(acknowledger, times(2)).acknowledge("1");
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+        Message first = new BasicMessage("1", body, Collections.singletonMap("key", 42), false, null, null);
+        Message second = new BasicMessage("2", body, Collections.emptyMap(), false, null, null);
+
+        assertEquals("1", DeduplicationKey.messageId().of(first));
+        assertEquals("42", DeduplicationKey.header("key").of(first));
+        assertNull(DeduplicationKey.header("key").of(second));
+        assertEquals(DeduplicationKey.contentHash().of(first), DeduplicationKey.contentHash().of(second));
+        assertNotEquals(
+                DeduplicationKey.contentHash().of(first),
+                DeduplicationKey.contentHash().of(new BasicMessage("1", "other"))
+        );
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RetryingConsumerTest {
+
+    private Consumer consumer;
+
+    @Before
+    public void setUp() {
+        consumer = mock(Consumer.class);
+    }
+
+    @Test
+    public void testRetryUntilConsumed() throws Exception {
+        doThrow(new CannotConsumeMessage("1", "message", "gugus"))
+                .doThrow(new CannotConsumeMessage("1", "message", "gugus"))
+                .doNothing()
+                .when(consumer).consume("1", "message");
+
+        RetryingConsumer.of(consumer, 3, 0.001, 0.01).consume("1", "message");
+
+        verify(consumer, times(3)).consume("1", "message");
+    }
+
+    @Test
+    public void testGiveUpAfterLastAttempt() throws Exception {
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).when(consumer).consume("1", "message");
+
+        try {
+            RetryingConsumer.of(consumer, 3, 0.001, 0.01).consume("1", "message");
+            fail("Consuming should have failed.");
+        } catch (CannotConsumeMessage e) {
+            // expected
+        }
+
+        verify(consumer, times(3)).consume("1", "message");
+    }
+
+    @Test
+    public void testDoNotRetryPermanentFailure() throws Exception {
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).when(consumer).consume("1", "message");
+        RetryingConsumer retryingConsumer = RetryingConsumer.of(
+                consumer,
+                3,
+                0.001,
+                0.01,
+                failure -> failure.getCause() instanceof IOException
+        );
+
+        try {
+            retryingConsumer.consume("1", "message");
+            fail("Consuming should have failed.");
+        } catch (CannotConsumeMessage e) {
+            // expected
+        }
+
+        verify(consumer, times(1)).consume("1", "message");
+    }
+
+    @Test
+    public void testPassOnAcknowledger() {
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        MessageAcknowledger acknowledger = mock(MessageAcknowledger.class);
+
+        RetryingConsumer retryingConsumer = RetryingConsumer.of(acknowledgingConsumer, 3, 0.001, 0.01);
+        assertTrue(retryingConsumer instanceof AcknowledgingConsumer);
+        ((AcknowledgingConsumer) retryingConsumer).setAcknowledger(acknowledger);
+
+        verify(acknowledgingConsumer).setAcknowledger(acknowledger);
+        assertFalse(RetryingConsumer.of(consumer, 3, 0.001, 0.01) instanceof AcknowledgingConsumer);
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.github.libgraviton.messaging.consumer;
+
+import com.github.libgraviton.messaging.BasicMessage;
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class WorkerPoolConsumerTest {
+
+    private CountDownLatch release;
+
+    private Consumer consumer;
+
+    private MessageAcknowledger acknowledger;
+
+    private WorkerPoolConsumer workerPoolConsumer;
+
+    @Before
+    public void setUp() throws Exception {
+        release = new CountDownLatch(1);
+        consumer = mock(Consumer.class);
+        doAnswer(invocation -> {
+            release.await(1, TimeUnit.SECONDS);
+            return null;
+        }).when(consumer).consume(anyString(), anyString());
+        acknowledger = mock(MessageAcknowledger.class);
+        workerPoolConsumer = new WorkerPoolConsumer(consumer, 1, 1);
+        workerPoolConsumer.setAcknowledger(acknowledger);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        workerPoolConsumer.close();
+    }
+
+    @Test
+    public void testAcknowledgeAfterConsume() throws Exception {
+        workerPoolConsumer.consume("1", "message");
+        verify(acknowledger, never()).acknowledge("1");
+
+        release.countDown();
+        workerPoolConsumer.close();
+
+        verify(consumer).consume("1", "message");
+        verify(acknowledger).acknowledge("1");
+        assertEquals(0, workerPoolConsumer.getPendingCount());
+    }
+
+    @Test
+    public void testBlockWhenSaturated() throws Exception {
+        workerPoolConsumer.consume("1", "message");
+        workerPoolConsumer.consume("2", "message");
+        assertEquals(2, workerPoolConsumer.getPendingCount());
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                workerPoolConsumer.consume("3", "message");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(blocked.isDone());
+
+        release.countDown();
+        blocked.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testForwardAcknowledger() throws Exception {
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        workerPoolConsumer = new WorkerPoolConsumer(acknowledgingConsumer, 1, 1);
+        workerPoolConsumer.setAcknowledger(acknowledger);
+
+        workerPoolConsumer.consume("1", "message");
+        workerPoolConsumer.close();
+
+        verify(acknowledgingConsumer).setAcknowledger(acknowledger);
+        verify(acknowledgingConsumer).consume("1", "message");
+        verify(acknowledger, never()).acknowledge(anyString());
+    }
+
+    @Test
+    public void testBytesMessage() throws Exception {
+        release.countDown();
+        workerPoolConsumer.consume("1", "message".getBytes(StandardCharsets.UTF_8));
+        workerPoolConsumer.close();
+        verify(consumer).consume("1", "message");
+
+        MessageConsumer messageConsumer = mock(MessageConsumer.class);
+        Message message = new BasicMessage("2", new byte[] {0, 1, 2});
+        workerPoolConsumer = new WorkerPoolConsumer(messageConsumer, 1, 1);
+        workerPoolConsumer.consume(message);
+        workerPoolConsumer.close();
+        verify(messageConsumer).consume(message);
+        verify(messageConsumer, never()).consume(anyString(), anyString());
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        workerPoolConsumer = WorkerPoolConsumer.withVirtualThreads(consumer, 2);
+        workerPoolConsumer.setAcknowledger(acknowledger);
+        release.countDown();
+
+        workerPoolConsumer.consume("1", "message");
+        workerPoolConsumer.close();
+
+        verify(acknowledger).acknowledge("1");
+    }
+
+}
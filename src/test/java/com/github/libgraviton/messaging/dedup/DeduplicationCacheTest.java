@@ -0,0 +1,75 @@
+package com.github.libgraviton.messaging.dedup;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class DeduplicationCacheTest {
+
+    @Test
+    public void testLruEviction() {
+        LruDeduplicationCache cache = new LruDeduplicationCache(2, 0);
+        cache.add("1");
+        cache.add("2");
+        cache.add("1");
+        cache.add("3");
+
+        assertTrue(cache.contains("1"));
+        assertFalse(cache.contains("2"));
+        assertTrue(cache.contains("3"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLruExpiration() {
+        AtomicLong clock = new AtomicLong();
+        LruDeduplicationCache cache = new LruDeduplicationCache(10, 100, clock::get);
+        cache.add("1");
+        clock.set(50);
+        cache.add("2");
+
+        clock.set(100);
+        assertFalse(cache.contains("1"));
+        assertTrue(cache.contains("2"));
+
+        clock.set(150);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBloomRotation() {
+        BloomDeduplicationCache cache = new BloomDeduplicationCache(100, 0.0001);
+        for (int i = 0; i < 300; i++) {
+            cache.add("message-" + i);
+        }
+
+        // The last 100 keys are remembered for sure, the first 100 have been forgotten with the rotated filter.
+        for (int i = 200; i < 300; i++) {
+            assertTrue(cache.contains("message-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.contains("message-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 5);
+    }
+
+    @Test
+    public void testBloomSizing() {
+        BloomDeduplicationCache cache = new BloomDeduplicationCache(1000, 0.01);
+
+        // About 9.6 bits and 7 hash functions per key
+        assertEquals(9586, cache.getBits());
+        assertEquals(7, cache.getHashes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBloomInvalidFalsePositiveRate() {
+        new BloomDeduplicationCache(1000, 1);
+    }
+
+}
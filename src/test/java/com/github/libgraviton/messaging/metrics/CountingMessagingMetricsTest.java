@@ -0,0 +1,89 @@
+package com.github.libgraviton.messaging.metrics;
+
+import com.github.libgraviton.messaging.metrics.MessagingMetrics.Gauge;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CountingMessagingMetricsTest {
+
+    private CountingMessagingMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new CountingMessagingMetrics();
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        metrics.messagesPublished(1, 100);
+        metrics.messagesPublished(3, 200);
+        metrics.publishFailed(2);
+
+        assertEquals(4, metrics.getPublishedCount());
+        assertEquals(300, metrics.getPublishDuration());
+        assertEquals(2, metrics.getPublishFailureCount());
+    }
+
+    @Test
+    public void testConsumeAndAcknowledge() throws Exception {
+        metrics.messageConsumed(100);
+        metrics.consumeFailed(50);
+        metrics.messageAcknowledged(10);
+        metrics.messageAcknowledged(20);
+
+        assertEquals(1, metrics.getConsumedCount());
+        assertEquals(1, metrics.getConsumeFailureCount());
+        assertEquals(150, metrics.getConsumeDuration());
+        assertEquals(2, metrics.getAcknowledgedCount());
+        assertEquals(30, metrics.getAcknowledgeDuration());
+    }
+
+    @Test
+    public void testConnectionAttempts() throws Exception {
+        metrics.connectionAttempt(10, false);
+        metrics.connectionAttempt(20, true);
+        metrics.connectionOpened(2, 1000);
+
+        assertEquals(2, metrics.getConnectionAttemptCount());
+        assertEquals(1, metrics.getFailedConnectionAttemptCount());
+        assertEquals(1, metrics.getConnectionCount());
+        assertEquals(1000, metrics.getConnectDuration());
+    }
+
+    @Test
+    public void testGauges() throws Exception {
+        assertEquals(0, metrics.getGauge(Gauge.IN_FLIGHT));
+
+        long[] unacknowledged = {3};
+        metrics.registerGauge(Gauge.UNACKNOWLEDGED, () -> unacknowledged[0]);
+        assertEquals(3, metrics.getGauge(Gauge.UNACKNOWLEDGED));
+        unacknowledged[0] = 5;
+        assertEquals(5, metrics.getGauge(Gauge.UNACKNOWLEDGED));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    metrics.messagesPublished(1, 1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, metrics.getPublishedCount());
+        assertEquals(40000, metrics.getPublishDuration());
+    }
+
+}
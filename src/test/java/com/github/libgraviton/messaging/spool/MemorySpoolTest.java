@@ -0,0 +1,204 @@
+package com.github.libgraviton.messaging.spool;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class MemorySpoolTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testAppendPeekRemove() throws Exception {
+        MemorySpool spool = new MemorySpool(1024, OverflowPolicy.FAIL_FAST);
+        assertTrue(spool.isEmpty());
+        spool.append(SpooledMessage.text("first"));
+        spool.append(new SpooledMessage(new byte[]{1, 2}, false));
+        spool.append(SpooledMessage.text("third"));
+        assertEquals(3, spool.getMessageCount());
+
+        List<SpooledMessage> messages = spool.peek(2);
+        assertEquals(2, messages.size());
+        assertEquals("first", messages.get(0).getBodyAsString());
+        assertTrue(messages.get(0).isText());
+        assertArrayEquals(new byte[]{1, 2}, messages.get(1).getBody());
+        assertFalse(messages.get(1).isText());
+
+        spool.remove(2);
+        messages = spool.peek(2);
+        assertEquals(1, messages.size());
+        assertEquals("third", messages.get(0).getBodyAsString());
+        spool.remove(1);
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void testWrapAround() throws Exception {
+        assertWrapAround(new MemorySpool(100, OverflowPolicy.FAIL_FAST));
+        assertWrapAround(new MemorySpool(100, OverflowPolicy.FAIL_FAST, true));
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        MemorySpool spool = new MemorySpool(20, OverflowPolicy.FAIL_FAST);
+        spool.append(new SpooledMessage(new byte[10], false));
+        spool.append(new SpooledMessage(new byte[10], false));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        MemorySpool spool = new MemorySpool(20, OverflowPolicy.DROP_OLDEST);
+        spool.append(SpooledMessage.text("first"));
+        spool.append(SpooledMessage.text("second"));
+        assertEquals(1, spool.getDroppedCount());
+
+        List<SpooledMessage> messages = spool.peek(10);
+        assertEquals(1, messages.size());
+        assertEquals("second", messages.get(0).getBodyAsString());
+    }
+
+    @Test
+    public void testDropPeekedMessage() throws Exception {
+        MemorySpool spool = new MemorySpool(20, OverflowPolicy.DROP_OLDEST);
+        spool.append(SpooledMessage.text("first"));
+        assertEquals(1, spool.peek(10).size());
+
+        spool.append(SpooledMessage.text("second"));
+        spool.remove(1);
+
+        // The dropped message has been peeked, so only the dropped one counts as removed.
+        List<SpooledMessage> messages = spool.peek(10);
+        assertEquals(1, messages.size());
+        assertEquals("second", messages.get(0).getBodyAsString());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        MemorySpool spool = new MemorySpool(20, OverflowPolicy.BLOCK);
+        spool.append(SpooledMessage.text("first"));
+
+        CompletableFuture<Void> append = CompletableFuture.runAsync(() -> {
+            try {
+                spool.append(SpooledMessage.text("second"));
+            } catch (CannotPublishMessage e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            append.get(200, TimeUnit.MILLISECONDS);
+            fail("Appending should block as long as the spool is full.");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        spool.peek(1);
+        spool.remove(1);
+        append.get(5, TimeUnit.SECONDS);
+        assertEquals("second", spool.peek(10).get(0).getBodyAsString());
+    }
+
+    @Test
+    public void testDoNotBlockWhileNotDrained() throws Exception {
+        MemorySpool spool = new MemorySpool(20, OverflowPolicy.BLOCK);
+        spool.append(SpooledMessage.text("first"));
+
+        CompletableFuture<Void> append = CompletableFuture.runAsync(() -> {
+            try {
+                spool.append(SpooledMessage.text("second"));
+            } catch (CannotPublishMessage e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            append.get(200, TimeUnit.MILLISECONDS);
+            fail("Appending should block as long as the spool is full.");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        // The blocked thread is woken up, since nobody makes room anymore.
+        spool.setDraining(false);
+        try {
+            append.get(5, TimeUnit.SECONDS);
+            fail("Appending should fail as soon as the spool is not drained anymore.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof CannotPublishMessage);
+        }
+        try {
+            spool.append(SpooledMessage.text("third"));
+            fail("Appending should fail right away while the spool is not drained.");
+        } catch (CannotPublishMessage e) {
+            // expected
+        }
+
+        spool.setDraining(true);
+        spool.peek(1);
+        spool.remove(1);
+        spool.append(SpooledMessage.text("third"));
+        assertEquals("third", spool.peek(10).get(0).getBodyAsString());
+    }
+
+    @Test
+    public void testRemovePeekedMessagesInParts() throws Exception {
+        MemorySpool spool = new MemorySpool(1024, OverflowPolicy.FAIL_FAST);
+        spool.append(SpooledMessage.text("first"));
+        spool.append(SpooledMessage.text("second"));
+        spool.append(SpooledMessage.text("third"));
+
+        assertEquals(3, spool.peek(10).size());
+        spool.remove(1);
+        spool.remove(1);
+
+        List<SpooledMessage> messages = spool.peek(10);
+        assertEquals(1, messages.size());
+        assertEquals("third", messages.get(0).getBodyAsString());
+    }
+
+    @Test
+    public void testMessageTooLarge() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        new MemorySpool(20, OverflowPolicy.DROP_OLDEST).append(new SpooledMessage(new byte[16], false));
+    }
+
+    private static void assertWrapAround(MemorySpool spool) throws Exception {
+        Random random = new Random(42);
+        Deque<String> expected = new ArrayDeque<>();
+        int sequence = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (random.nextBoolean()) {
+                String message = String.format("%d-%s", sequence, new String(new char[random.nextInt(30)]));
+                try {
+                    spool.append(SpooledMessage.text(message));
+                    expected.addLast(message);
+                    sequence++;
+                } catch (CannotPublishMessage e) {
+                    // Spool is full
+                }
+            } else {
+                List<SpooledMessage> messages = spool.peek(random.nextInt(3) + 1);
+                for (SpooledMessage message : messages) {
+                    assertEquals(expected.removeFirst(), message.getBodyAsString());
+                }
+                spool.remove(messages.size());
+            }
+            assertEquals(expected.size(), spool.getMessageCount());
+        }
+    }
+
+}
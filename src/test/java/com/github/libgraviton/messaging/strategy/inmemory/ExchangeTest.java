@@ -0,0 +1,121 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExchangeTest {
+
+    private InMemoryQueue queue;
+
+    private InMemoryEnvelope envelope;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new InMemoryQueue("queue", 100);
+        envelope = new InMemoryEnvelope("1", new byte[0], null, 0);
+    }
+
+    @Test
+    public void testDirect() throws Exception {
+        Exchange exchange = new Exchange("direct");
+        exchange.bind(queue, "key");
+
+        exchange.publish("key", envelope);
+        exchange.publish("other", envelope);
+
+        assertEquals(1, queue.getMessageCount());
+    }
+
+    @Test
+    public void testTopic() throws Exception {
+        assertTrue(routes("orders.*.created", "orders.eu.created"));
+        assertFalse(routes("orders.*.created", "orders.eu.ch.created"));
+        assertTrue(routes("orders.#", "orders"));
+        assertTrue(routes("orders.#", "orders.eu.ch.created"));
+        assertTrue(routes("#.created", "orders.eu.created"));
+        assertTrue(routes("orders.#.created", "orders.created"));
+        assertFalse(routes("orders.*", "orders"));
+        assertFalse(routes("orders", "invoices"));
+        assertTrue(routes("#", ""));
+    }
+
+    @Test
+    public void testFanout() throws Exception {
+        Exchange exchange = new Exchange("fanout");
+        InMemoryQueue otherQueue = new InMemoryQueue("other", 100);
+        exchange.bind(queue, "key");
+        exchange.bind(otherQueue, null);
+
+        exchange.publish("any", envelope);
+
+        assertEquals(1, queue.getMessageCount());
+        assertEquals(1, otherQueue.getMessageCount());
+    }
+
+    @Test
+    public void testBindTwice() throws Exception {
+        Exchange exchange = new Exchange("direct");
+        exchange.bind(queue, "key");
+        exchange.bind(queue, "key");
+
+        exchange.publish("key", envelope);
+        assertEquals(1, queue.getMessageCount());
+
+        exchange.unbind(queue);
+        exchange.publish("key", envelope);
+        assertEquals(1, queue.getMessageCount());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        Exchange exchange = new Exchange("direct");
+        exchange.bind(new InMemoryQueue("full", 0), "key");
+
+        assertFalse(exchange.publish("key", envelope));
+    }
+
+    @Test
+    public void testQueueFullPublishesNowhere() throws Exception {
+        Exchange exchange = new Exchange("fanout");
+        InMemoryQueue full = new InMemoryQueue("full", 1);
+        exchange.bind(queue, "");
+        exchange.bind(full, "");
+        assertTrue(exchange.publish("key", envelope));
+
+        assertFalse(exchange.publish("key", envelope));
+        assertEquals(1, queue.getMessageCount());
+        assertEquals(1, full.getMessageCount());
+
+        // The capacity reserved on the other queue has been released.
+        full.poll();
+        full.release();
+        assertTrue(exchange.publish("key", envelope));
+        assertEquals(2, queue.getMessageCount());
+    }
+
+    @Test
+    public void testRouteToQueueOnce() throws Exception {
+        Exchange exchange = new Exchange("topic");
+        exchange.bind(queue, "a.*");
+        exchange.bind(queue, "*.b");
+
+        assertTrue(exchange.publish("a.b", envelope));
+        assertEquals(1, queue.getMessageCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedType() throws Exception {
+        new Exchange("headers");
+    }
+
+    private boolean routes(String bindingKey, String routingKey) {
+        Exchange exchange = new Exchange("topic");
+        InMemoryQueue queue = new InMemoryQueue("queue", 100);
+        exchange.bind(queue, bindingKey);
+        exchange.publish(routingKey, envelope);
+        return 1 == queue.getMessageCount();
+    }
+
+}
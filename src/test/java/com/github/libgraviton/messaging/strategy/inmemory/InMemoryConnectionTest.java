@@ -0,0 +1,252 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.codec.Codec;
+import com.github.libgraviton.messaging.codec.StringCodec;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.consumer.TypedConsumer;
+import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InMemoryConnectionTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private String brokerName;
+
+    private List<InMemoryConnection> connections;
+
+    @Before
+    public void setUp() throws Exception {
+        brokerName = UUID.randomUUID().toString();
+        connections = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (InMemoryConnection connection : connections) {
+            connection.close();
+        }
+        InMemoryBroker.getBroker(brokerName).reset();
+    }
+
+    @Test
+    public void testPublishAndConsume() throws Exception {
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder().queueName("queue"));
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+        assertEquals(2, InMemoryBroker.getBroker(brokerName).getMessageCount("queue"));
+
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        connection.consume((messageId, message) -> received.add(message));
+
+        assertEquals("first", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("second", received.poll(5, TimeUnit.SECONDS));
+        connection.publish("third");
+        assertEquals("third", received.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, InMemoryBroker.getBroker(brokerName).getMessageCount("queue"));
+        // The message gets acknowledged as soon as the consumer returns.
+        long timeout = System.currentTimeMillis() + 5000;
+        while (0 != connection.getUnacknowledgedCount() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, connection.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testMessageConsumer() throws Exception {
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder().queueName("queue"));
+        connection.open();
+        connection.publish(new byte[]{1, 2, 3});
+
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        connection.consume((MessageConsumer) received::add);
+
+        Message message = received.poll(5, TimeUnit.SECONDS);
+        assertArrayEquals(new byte[]{1, 2, 3}, message.getBody());
+        assertEquals("queue", message.getRoutingKey());
+        assertFalse(message.isRedelivered());
+        assertNotNull(message.getTimestamp());
+    }
+
+    @Test
+    public void testTypedMessages() throws Exception {
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder().queueName("queue"));
+        connection.open();
+        connection.publish("typed", new StringCodec());
+
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+        connection.consume(new TypedConsumer<String>() {
+
+            @Override
+            public Codec<String> getCodec() {
+                return new StringCodec();
+            }
+
+            @Override
+            public void consume(String messageId, String message) {
+                received.add(message);
+            }
+
+            @Override
+            public void consume(Message message) throws CannotConsumeMessage {
+                messages.add(message);
+                TypedConsumer.super.consume(message);
+            }
+
+        });
+
+        assertEquals("typed", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("text/plain; charset=UTF-8", messages.poll(5, TimeUnit.SECONDS).getHeaders().get("contentType"));
+    }
+
+    @Test
+    public void testRedeliverUnacknowledged() throws Exception {
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder().queueName("queue"));
+        connection.open();
+        connection.publish("message");
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        connection.consume(new CollectingConsumer(received));
+        Message message = received.poll(5, TimeUnit.SECONDS);
+        assertFalse(message.isRedelivered());
+        assertEquals(1, connection.getUnacknowledgedCount());
+
+        connection.close();
+
+        InMemoryConnection otherConnection = connect(new InMemoryConnection.Builder().queueName("queue"));
+        CollectingConsumer consumer = new CollectingConsumer(received);
+        otherConnection.consume(consumer);
+        Message redelivered = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(message.getId(), redelivered.getId());
+        assertTrue(redelivered.isRedelivered());
+
+        consumer.acknowledger.acknowledge(redelivered.getId());
+        assertEquals(0, otherConnection.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder().queueName("queue").prefetchCount(1));
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        CollectingConsumer consumer = new CollectingConsumer(received);
+
+        connection.consume(consumer);
+
+        Message first = received.poll(5, TimeUnit.SECONDS);
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        consumer.acknowledger.acknowledge(first.getId());
+        assertEquals("second", received.poll(5, TimeUnit.SECONDS).getBodyAsString());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder().queueName("queue").queueCapacity(2));
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+        connection.publish("third");
+    }
+
+    @Test
+    public void testExchangeRouting() throws Exception {
+        InMemoryConnection created = connect(new InMemoryConnection.Builder()
+                .queueName("created")
+                .exchangeName("orders")
+                .exchangeType("topic")
+                .routingKey("orders.*.created"));
+        InMemoryConnection all = connect(new InMemoryConnection.Builder()
+                .queueName("all")
+                .exchangeName("orders")
+                .exchangeType("topic")
+                .routingKey("orders.#"));
+        InMemoryConnection publisher = connect(new InMemoryConnection.Builder()
+                .exchangeName("orders")
+                .exchangeType("topic")
+                .routingKey("orders.eu.created"));
+        created.open();
+        all.open();
+        publisher.open();
+
+        publisher.publish("order");
+
+        InMemoryBroker broker = InMemoryBroker.getBroker(brokerName);
+        assertEquals(1, broker.getMessageCount("created"));
+        assertEquals(1, broker.getMessageCount("all"));
+    }
+
+    @Test
+    public void testTemporaryQueue() throws Exception {
+        InMemoryConnection connection = connect(new InMemoryConnection.Builder());
+        connection.open();
+        String connectionName = connection.getConnectionName();
+        assertTrue(connectionName.contains("inmemory.gen-"));
+        connection.publish("message");
+
+        connection.close();
+
+        assertEquals("default-exchange - temporary-queue", connection.getConnectionName());
+        assertEquals(0, InMemoryBroker.getBroker(brokerName).getMessageCount(connectionName.split(" - ")[1]));
+    }
+
+    @Test
+    public void testExchangeTypeMismatch() throws Exception {
+        thrown.expect(CannotConnectToQueue.class);
+
+        connect(new InMemoryConnection.Builder().exchangeName("exchange").exchangeType("fanout")).open();
+        connect(new InMemoryConnection.Builder().exchangeName("exchange").exchangeType("direct")).open();
+    }
+
+    private InMemoryConnection connect(InMemoryConnection.Builder builder) {
+        InMemoryConnection connection = builder.brokerName(brokerName).connectionAttempts(1).build();
+        connections.add(connection);
+        return connection;
+    }
+
+    private static class CollectingConsumer implements MessageConsumer, AcknowledgingConsumer {
+
+        private final BlockingQueue<Message> received;
+
+        private MessageAcknowledger acknowledger;
+
+        CollectingConsumer(BlockingQueue<Message> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void setAcknowledger(MessageAcknowledger acknowledger) {
+            this.acknowledger = acknowledger;
+        }
+
+        @Override
+        public void consume(Message message) {
+            received.add(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.github.libgraviton.messaging.strategy.inmemory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Ensures that the examples in the in-memory README are valid.
+ *
+ * IF YOU NEED TO CHANGE ANYTHING HERE, YOU NEED TO UPDATE
+ * /src/main/java/com/github/libgraviton/messaging/strategy/inmemory/README.md ACCORDINGLY.
+ */
+public class ReadmeCorrectnessTest {
+
+    private Properties properties;
+
+    private InMemoryConnection.Builder builder;
+
+    @Before
+    public void setUp() {
+        properties = mock(Properties.class);
+        builder = spy(new InMemoryConnection.Builder());
+        doCallRealMethod().when(properties).getProperty(anyString(), anyString());
+    }
+
+    @Test
+    public void testPropertiesBuilderMethodListComplete() {
+        builder.applyProperties(properties, "context.");
+        builder.build();
+
+        verify(properties, times(14)).getProperty(matches("context\\..*$")); // verify list is complete
+        verify(properties).getProperty("context.host");
+        verify(properties).getProperty("context.port");
+        verify(properties).getProperty("context.user");
+        verify(properties).getProperty("context.password");
+        verify(properties).getProperty("context.queue.name");
+        verify(properties).getProperty("context.connection.attempts");
+        verify(properties).getProperty("context.connection.attempts.wait");
+        verify(properties).getProperty("context.connection.attempts.wait.max");
+        verify(properties).getProperty("context.broker.name");
+        verify(properties).getProperty("context.queue.capacity");
+        verify(properties).getProperty("context.queue.prefetch");
+        verify(properties).getProperty("context.exchange.name");
+        verify(properties).getProperty("context.exchange.type");
+        verify(properties).getProperty("context.routingkey");
+    }
+
+    @Test
+    public void testDefaults() {
+        builder.applyProperties(properties);
+        builder.build();
+
+        verify(properties).getProperty("queue.name", null);
+        verify(properties).getProperty("connection.attempts", "-1");
+        verify(properties).getProperty("connection.attempts.wait", "1.0");
+        verify(properties).getProperty("connection.attempts.wait.max", "0.0");
+        verify(properties).getProperty("broker.name", "default");
+        verify(properties).getProperty("queue.capacity", "10000");
+        verify(properties).getProperty("queue.prefetch", "0");
+        verify(properties).getProperty("exchange.name", null);
+        verify(properties).getProperty("exchange.type", "direct");
+        verify(properties).getProperty("routingkey", null);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+
+public class CommittingReceiverTest {
+
+    private Session session;
+
+    private MessageConsumer consumer;
+
+    private MessageListener listener;
+
+    private AtomicLong now;
+
+    private CommittingReceiver committingReceiver;
+
+    @Before
+    public void setUp() {
+        session = mock(Session.class);
+        consumer = mock(MessageConsumer.class);
+        listener = mock(MessageListener.class);
+        now = new AtomicLong(1000);
+        committingReceiver = new CommittingReceiver(session, consumer, listener, 3, 100, now::get);
+    }
+
+    @Test
+    public void testCommitFullBatch() throws Exception {
+        Message message = mock(Message.class);
+        doReturn(message).when(consumer).receive(anyLong());
+        committingReceiver.receive();
+        committingReceiver.receive();
+        verify(listener, times(2)).onMessage(message);
+        verify(session, never()).commit();
+
+        committingReceiver.receive();
+        verify(session).commit();
+    }
+
+    @Test
+    public void testCommitAfterInterval() throws Exception {
+        doReturn(mock(Message.class)).when(consumer).receive(anyLong());
+        committingReceiver.receive();
+        verify(consumer).receive(1000);
+
+        // No further message arrives within the interval.
+        doReturn(null).when(consumer).receive(anyLong());
+        now.addAndGet(40);
+        committingReceiver.receive();
+        verify(consumer).receive(60);
+        verify(session, never()).commit();
+
+        now.addAndGet(60);
+        committingReceiver.receive();
+        verify(session).commit();
+    }
+
+    @Test
+    public void testCommitOnStop() throws Exception {
+        doReturn(mock(Message.class)).doAnswer(invocation -> {
+            Thread.sleep(10);
+            return null;
+        }).when(consumer).receive(anyLong());
+        committingReceiver.start("gugus");
+        verify(listener, timeout(1000)).onMessage(any(Message.class));
+
+        committingReceiver.stop();
+        verify(consumer).close();
+        verify(session).commit();
+    }
+
+    @Test
+    public void testCommitFailed() throws Exception {
+        doThrow(new JMSException("gugus")).when(session).commit();
+        doReturn(mock(Message.class)).when(consumer).receive(anyLong());
+        committingReceiver.receive();
+        committingReceiver.receive();
+        committingReceiver.receive();
+
+        // The failed messages get redelivered, so they are not committed again.
+        doReturn(null).when(consumer).receive(anyLong());
+        committingReceiver.receive();
+        verify(session, times(1)).commit();
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.jms.Message;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class InFlightMessagesTest {
+
+    private AtomicLong now;
+
+    private InFlightMessages messages;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(1000);
+        messages = new InFlightMessages(3, 100, now::get);
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        Message message = mock(Message.class);
+        messages.put("1", message);
+        assertEquals(1, messages.size());
+
+        assertSame(message, messages.remove("1"));
+        assertNull(messages.remove("1"));
+        assertEquals(0, messages.size());
+    }
+
+    @Test
+    public void testEvictOldest() {
+        for (int i = 1; i <= 4; i++) {
+            now.incrementAndGet();
+            messages.put(String.valueOf(i), mock(Message.class));
+        }
+
+        assertEquals(3, messages.size());
+        assertEquals(1, messages.getEvictedCount());
+        assertNull(messages.remove("1"));
+        assertNotNull(messages.remove("4"));
+    }
+
+    @Test
+    public void testEvictStale() {
+        messages.put("1", mock(Message.class));
+        now.addAndGet(60);
+        messages.put("2", mock(Message.class));
+        now.addAndGet(60);
+        messages.put("3", mock(Message.class));
+
+        assertEquals(1, messages.getEvictedCount());
+        assertNull(messages.remove("1"));
+        assertNotNull(messages.remove("2"));
+        assertNotNull(messages.remove("3"));
+    }
+
+    @Test
+    public void testRedeliveredMessageIsNewest() {
+        messages = new InFlightMessages(2, 0, now::get);
+        messages.put("1", mock(Message.class));
+        messages.put("2", mock(Message.class));
+        messages.put("1", mock(Message.class));
+        messages.put("3", mock(Message.class));
+
+        assertEquals(1, messages.getEvictedCount());
+        assertNull(messages.remove("2"));
+        assertNotNull(messages.remove("1"));
+        assertNotNull(messages.remove("3"));
+    }
+
+    @Test
+    public void testSkipAcknowledgedMessages() {
+        messages.put("1", mock(Message.class));
+        messages.put("2", mock(Message.class));
+        messages.remove("1");
+        messages.put("3", mock(Message.class));
+        messages.put("4", mock(Message.class));
+
+        assertEquals(0, messages.getEvictedCount());
+        assertEquals(3, messages.size());
+
+        messages.put("5", mock(Message.class));
+        assertEquals(1, messages.getEvictedCount());
+        assertNull(messages.remove("2"));
+    }
+
+    @Test
+    public void testTimeoutDisabled() {
+        messages = new InFlightMessages(3, 0, now::get);
+        messages.put("1", mock(Message.class));
+        now.addAndGet(100000);
+        messages.put("2", mock(Message.class));
+
+        assertEquals(0, messages.getEvictedCount());
+        assertEquals(2, messages.size());
+    }
+
+}
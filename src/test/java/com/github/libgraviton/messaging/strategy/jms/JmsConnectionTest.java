@@ -1,5 +1,8 @@
 package com.github.libgraviton.messaging.strategy.jms;
 
+import com.github.libgraviton.messaging.codec.StringCodec;
+import com.github.libgraviton.messaging.compression.GzipCodec;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
 import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
 import com.github.libgraviton.messaging.exception.CannotPublishMessage;
@@ -9,7 +12,11 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+
 import javax.jms.*;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -119,6 +126,116 @@ public class JmsConnectionTest {
         verify(jmsSession).createConsumer(jmsQueue, "selector");
     }
 
+    @Test
+    public void testRegisterConsumerWithSessions() throws Exception {
+        MessageConsumer jmsConsumer = mock(MessageConsumer.class);
+        doReturn(jmsConsumer).when(jmsSession).createConsumer(jmsQueue);
+
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionFactory(jmsFactory)
+                .consumerSessions(3)
+                .connectionAttempts(1)
+                .queueName("queue")
+                .build();
+        AcknowledgingConsumer consumer = mock(AcknowledgingConsumer.class);
+        connection.consume(consumer);
+
+        verify(jmsConnection, times(3)).createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        ArgumentCaptor<MessageListener> listeners = ArgumentCaptor.forClass(MessageListener.class);
+        verify(jmsConsumer, times(3)).setMessageListener(listeners.capture());
+        // All sessions share the same acknowledger
+        for (MessageListener listener : listeners.getAllValues()) {
+            assertSame(listeners.getValue(), listener);
+        }
+        verify(consumer).setAcknowledger((JmsConsumer) listeners.getValue());
+
+        connection.close();
+        verify(jmsSession, times(3)).close();
+    }
+
+    @Test
+    public void testRegisterConsumerDupsOk() throws Exception {
+        Session consumerSession = mock(Session.class);
+        MessageConsumer jmsConsumer = mock(MessageConsumer.class);
+        doReturn(consumerSession).when(jmsConnection).createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+        doReturn(jmsConsumer).when(consumerSession).createConsumer(jmsQueue);
+
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionFactory(jmsFactory)
+                .acknowledgeMode(AcknowledgeMode.DUPS_OK)
+                .connectionAttempts(1)
+                .queueName("queue")
+                .build();
+        connection.consume(mock(Consumer.class));
+
+        verify(jmsSession, never()).createConsumer(any(Destination.class));
+        verify(jmsConsumer).setMessageListener(any(JmsConsumer.class));
+
+        connection.close();
+        verify(consumerSession).close();
+    }
+
+    @Test
+    public void testRegisterConsumerTransacted() throws Exception {
+        Session consumerSession = mock(Session.class);
+        MessageConsumer jmsConsumer = mock(MessageConsumer.class);
+        doReturn(consumerSession).when(jmsConnection).createSession(true, Session.SESSION_TRANSACTED);
+        doReturn(jmsConsumer).when(consumerSession).createConsumer(jmsQueue);
+        TextMessage message = mock(TextMessage.class);
+        doReturn("messageId").when(message).getJMSMessageID();
+        doReturn(message).doReturn(message).doReturn(message).doAnswer(invocation -> {
+            Thread.sleep(10);
+            return null;
+        }).when(jmsConsumer).receive(anyLong());
+
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionFactory(jmsFactory)
+                .acknowledgeMode(AcknowledgeMode.TRANSACTED)
+                .commitBatchSize(2)
+                .commitInterval(60)
+                .connectionAttempts(1)
+                .queueName("queue")
+                .build();
+        Consumer consumer = mock(Consumer.class);
+        connection.consume(consumer);
+
+        verify(jmsConsumer, never()).setMessageListener(any(MessageListener.class));
+        verify(consumer, timeout(1000).times(3)).consume(eq("messageId"), anyString());
+        verify(consumerSession, times(1)).commit();
+
+        connection.close();
+        verify(jmsConsumer).close();
+        verify(consumerSession, times(2)).commit();
+        verify(consumerSession).close();
+    }
+
+    @Test
+    public void testCommitTransactedAfterInterval() throws Exception {
+        Session consumerSession = mock(Session.class);
+        MessageConsumer jmsConsumer = mock(MessageConsumer.class);
+        doReturn(consumerSession).when(jmsConnection).createSession(true, Session.SESSION_TRANSACTED);
+        doReturn(jmsConsumer).when(consumerSession).createConsumer(jmsQueue);
+        TextMessage message = mock(TextMessage.class);
+        doReturn("messageId").when(message).getJMSMessageID();
+        doReturn(message).doAnswer(invocation -> {
+            Thread.sleep(10);
+            return null;
+        }).when(jmsConsumer).receive(anyLong());
+
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionFactory(jmsFactory)
+                .acknowledgeMode(AcknowledgeMode.TRANSACTED)
+                .commitBatchSize(100)
+                .commitInterval(0.05)
+                .connectionAttempts(1)
+                .queueName("queue")
+                .build();
+        connection.consume(mock(Consumer.class));
+
+        // No further message arrives, but the single message gets committed anyway.
+        verify(consumerSession, timeout(1000)).commit();
+    }
+
     @Test
     public void testRegisterConsumerFailed() throws Exception {
         thrown.expect(CannotRegisterConsumer.class);
@@ -137,6 +254,54 @@ public class JmsConnectionTest {
         verify(jmsProducer).send(any(TextMessage.class));
     }
 
+    @Test
+    public void testPublishReusesProducer() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        TextMessage textMessage = mock(TextMessage.class);
+        BytesMessage bytesMessage = mock(BytesMessage.class);
+        doReturn(textMessage).when(jmsSession).createTextMessage("gugus");
+        doReturn(bytesMessage).when(jmsSession).createBytesMessage();
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+
+        connection.open();
+        connection.publish("gugus");
+        connection.publish("gugus");
+        connection.publish(new byte[] {1});
+
+        verify(jmsSession, times(1)).createProducer(jmsQueue);
+        verify(jmsProducer, times(2)).send(textMessage);
+        verify(jmsProducer).send(bytesMessage);
+        verify(jmsProducer).setDisableMessageID(false);
+        verify(jmsProducer).setDisableMessageTimestamp(false);
+        verify(jmsProducer).setDeliveryMode(DeliveryMode.PERSISTENT);
+
+        connection.close();
+        connection.publish("gugus");
+        verify(jmsSession, times(2)).createProducer(jmsQueue);
+    }
+
+    @Test
+    public void testProducerTuning() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        doReturn(mock(TextMessage.class)).when(jmsSession).createTextMessage("gugus");
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionFactory(jmsFactory)
+                .disableMessageId(true)
+                .disableMessageTimestamp(true)
+                .persistent(false)
+                .connectionAttempts(1)
+                .queueName("queue")
+                .build();
+        connection.publish("gugus");
+
+        verify(jmsProducer).setDisableMessageID(true);
+        verify(jmsProducer).setDisableMessageTimestamp(true);
+        verify(jmsProducer).setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        verify(jmsProducer).send(any(TextMessage.class));
+    }
+
     @Test
     public void testPublishTextMessageFailed() throws Exception {
         thrown.expect(CannotPublishMessage.class);
@@ -156,6 +321,51 @@ public class JmsConnectionTest {
         verify(jmsProducer).send(any(BytesMessage.class));
     }
 
+    @Test
+    public void testPublishCompressedMessage() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        BytesMessage bytesMessage = mock(BytesMessage.class);
+        doReturn(bytesMessage).when(jmsSession).createBytesMessage();
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionAttempts(1)
+                .connectionFactory(jmsFactory)
+                .compression("gzip")
+                .compressionThreshold(10)
+                .queueName("queue")
+                .build();
+
+        connection.publish("gugus gugus gugus gugus");
+
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(jmsSession, never()).createTextMessage(anyString());
+        verify(bytesMessage).setStringProperty("contentEncoding", "gzip");
+        verify(bytesMessage).writeBytes(body.capture());
+        verify(jmsProducer).send(bytesMessage);
+        assertArrayEquals(
+                "gugus gugus gugus gugus".getBytes("UTF-8"),
+                new GzipCodec().decompress(body.getValue())
+        );
+
+        connection.publish(new byte[]{1, 2, 3, 4});
+        verify(bytesMessage).writeBytes(new byte[]{1, 2, 3, 4});
+        verify(bytesMessage, times(1)).setStringProperty(anyString(), anyString());
+    }
+
+    @Test
+    public void testPublishWithCodec() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        BytesMessage bytesMessage = mock(BytesMessage.class);
+        doReturn(bytesMessage).when(jmsSession).createBytesMessage();
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+
+        connection.publish("gugus", new StringCodec());
+
+        verify(bytesMessage).writeBytes("gugus".getBytes("UTF-8"));
+        verify(bytesMessage).setStringProperty("contentType", "text/plain; charset=UTF-8");
+        verify(jmsProducer).send(bytesMessage);
+    }
+
     @Test
     public void testPublishBytesMessageFailed() throws Exception {
         byte[] bytesMessage = new byte[]{1,2,3,4};
@@ -165,6 +375,125 @@ public class JmsConnectionTest {
         connection.publish(bytesMessage);
     }
 
+    @Test
+    public void testPublishAsync() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        doReturn(mock(BytesMessage.class)).when(jmsSession).createBytesMessage();
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+
+        connection.open();
+        CompletableFuture<Void> confirmation = connection.publishAsync(new byte[]{1, 2, 3, 4});
+
+        ArgumentCaptor<CompletionListener> listener = ArgumentCaptor.forClass(CompletionListener.class);
+        verify(jmsProducer).send(any(BytesMessage.class), listener.capture());
+        assertFalse(confirmation.isDone());
+
+        listener.getValue().onCompletion(mock(BytesMessage.class));
+        assertTrue(confirmation.isDone());
+        assertFalse(confirmation.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPublishAsyncReusesProducer() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        doReturn(mock(BytesMessage.class)).when(jmsSession).createBytesMessage();
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+
+        connection.open();
+        connection.publishAsync(new byte[]{1});
+        connection.publishAsync(new byte[]{2});
+        connection.publish(new byte[]{3});
+
+        verify(jmsSession, times(1)).createProducer(jmsQueue);
+        verify(jmsProducer, times(2)).send(any(BytesMessage.class), any(CompletionListener.class));
+        verify(jmsProducer, never()).close();
+    }
+
+    @Test
+    public void testPublishAsyncWindowExhausted() throws Exception {
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        doReturn(mock(BytesMessage.class)).when(jmsSession).createBytesMessage();
+        doReturn(jmsProducer).when(jmsSession).createProducer(jmsQueue);
+        connection = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionAttempts(1)
+                .connectionFactory(jmsFactory)
+                .asyncPublishWindow(1)
+                .asyncPublishTimeout(0)
+                .queueName("queue")
+                .build();
+
+        connection.open();
+        CompletableFuture<Void> first = connection.publishAsync(new byte[]{1});
+        CompletableFuture<Void> second = connection.publishAsync(new byte[]{2});
+
+        assertFalse(first.isDone());
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPublishAll() throws Exception {
+        Session transactedSession = mock(Session.class);
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        doReturn(transactedSession).when(jmsConnection).createSession(true, Session.SESSION_TRANSACTED);
+        doReturn(jmsProducer).when(transactedSession).createProducer(jmsQueue);
+        doReturn(mock(BytesMessage.class)).when(transactedSession).createBytesMessage();
+
+        connection.publishAll(Arrays.asList(new byte[]{1, 2}, new byte[]{3, 4}));
+
+        verify(jmsProducer, times(2)).send(any(BytesMessage.class));
+        verify(transactedSession, times(1)).commit();
+        verify(transactedSession, never()).rollback();
+    }
+
+    @Test
+    public void testPublishAllTextFailed() throws Exception {
+        Session transactedSession = mock(Session.class);
+        MessageProducer jmsProducer = mock(MessageProducer.class);
+        doReturn(transactedSession).when(jmsConnection).createSession(true, Session.SESSION_TRANSACTED);
+        doReturn(jmsProducer).when(transactedSession).createProducer(jmsQueue);
+        doReturn(mock(TextMessage.class)).when(transactedSession).createTextMessage(anyString());
+        doThrow(new JMSException("gugus")).when(jmsProducer).send(any(TextMessage.class));
+
+        try {
+            connection.publishAllText(Arrays.asList("gugus", "gaga"));
+            fail("CannotPublishMessage expected.");
+        } catch (CannotPublishMessage e) {
+            verify(transactedSession, never()).commit();
+            verify(transactedSession).rollback();
+        }
+    }
+
+    @Test
+    public void testSharedConnection() throws Exception {
+        doAnswer(invocation -> {
+            doReturn(invocation.getArguments()[0]).when(jmsConnection).getExceptionListener();
+            return null;
+        }).when(jmsConnection).setExceptionListener(any(ExceptionListener.class));
+        JmsConnection first = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionAttempts(1)
+                .connectionFactory(jmsFactory)
+                .sharedConnection(true)
+                .queueName("queue")
+                .build();
+        JmsConnection second = (JmsConnection) new JmsConnection.Builder<>()
+                .connectionAttempts(1)
+                .connectionFactory(jmsFactory)
+                .sharedConnection(true)
+                .queueName("queue")
+                .build();
+
+        first.open();
+        second.open();
+        verify(jmsFactory, times(1)).createConnection();
+        verify(jmsConnection, times(2)).createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        verify(jmsConnection, times(1)).setExceptionListener(any(SharedExceptionListener.class));
+
+        first.close();
+        verify(jmsConnection, never()).close();
+        second.close();
+        verify(jmsConnection).close();
+    }
+
     @Test
     public void testCloseConnection() throws Exception {
         connection.open();
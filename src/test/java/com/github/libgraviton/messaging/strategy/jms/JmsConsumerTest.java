@@ -1,16 +1,37 @@
 package com.github.libgraviton.messaging.strategy.jms;
 
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.batch.MicroBatcher;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.exception.CannotAcknowledgeMessage;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 
 import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.nio.charset.StandardCharsets;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class JmsConsumerTest {
 
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
     private JmsConsumer jmsConsumer;
 
     private Consumer consumer;
@@ -37,6 +58,138 @@ public class JmsConsumerTest {
         verify(jmsConsumer, never()).acknowledge(anyString());
     }
 
+    @Test
+    public void testIgnoreUnsupportedMessage() throws Exception {
+        ObjectMessage objectMessage = mock(ObjectMessage.class);
+        doReturn("messageId").when(objectMessage).getJMSMessageID();
+        jmsConsumer = spy(new JmsConsumer(mock(AcknowledgingConsumer.class)));
+
+        jmsConsumer.onMessage(objectMessage);
+
+        verify(objectMessage).acknowledge();
+        assertEquals(0, jmsConsumer.getInFlightCount());
+    }
+
+    @Test
+    public void testInFlightCount() throws Exception {
+        jmsConsumer = spy(new JmsConsumer(mock(AcknowledgingConsumer.class)));
+        doReturn("message").when(jmsConsumer).extractBody(any(BytesMessage.class));
+
+        jmsConsumer.onMessage(bytesMessage);
+        assertEquals(1, jmsConsumer.getInFlightCount());
+
+        jmsConsumer.acknowledge("messageId");
+        verify(bytesMessage).acknowledge();
+        assertEquals(0, jmsConsumer.getInFlightCount());
+    }
+
+    @Test
+    public void testAcknowledgeEvictedMessage() throws Exception {
+        thrown.expect(CannotAcknowledgeMessage.class);
+
+        jmsConsumer = new JmsConsumer(mock(AcknowledgingConsumer.class), new InFlightMessages(0, 0));
+        jmsConsumer.onMessage(bytesMessage);
+        assertEquals(1, jmsConsumer.getEvictedCount());
+
+        jmsConsumer.acknowledge("messageId");
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        MessagingMetrics metrics = mock(MessagingMetrics.class);
+        jmsConsumer = new JmsConsumer(consumer, new InFlightMessages(10, 0), metrics);
+        TextMessage textMessage = mock(TextMessage.class);
+        doReturn("textId").when(textMessage).getJMSMessageID();
+        doReturn("text").when(textMessage).getText();
+        TextMessage failingMessage = mock(TextMessage.class);
+        doReturn("failingId").when(failingMessage).getJMSMessageID();
+        doReturn("failing").when(failingMessage).getText();
+        doThrow(new CannotConsumeMessage("failingId", "failing", "gugus")).when(consumer).consume("failingId", "failing");
+
+        jmsConsumer.onMessage(textMessage);
+        jmsConsumer.onMessage(failingMessage);
+
+        verify(metrics).messageConsumed(anyLong());
+        verify(metrics).consumeFailed(anyLong());
+        verify(metrics, times(2)).messageAcknowledged(anyLong());
+    }
+
+    @Test
+    public void testRecoverFailedMessage() throws Exception {
+        Session session = mock(Session.class);
+        jmsConsumer = spy(new JmsConsumer(
+                consumer,
+                new InFlightMessages(10, 0),
+                MessagingMetrics.NOOP,
+                3,
+                "queue.quarantine"
+        ));
+        doReturn("message").when(jmsConsumer).extractBody(any(BytesMessage.class));
+        doThrow(new CannotConsumeMessage("messageId", "message", "gugus")).when(consumer).consume(anyString(), anyString());
+        doReturn(true).when(bytesMessage).propertyExists("JMSXDeliveryCount");
+        doReturn(2).when(bytesMessage).getIntProperty("JMSXDeliveryCount");
+
+        jmsConsumer.onMessage(bytesMessage, session);
+
+        verify(session).recover();
+        verify(bytesMessage, never()).acknowledge();
+        assertEquals(0, jmsConsumer.getInFlightCount());
+    }
+
+    @Test
+    public void testQuarantineAfterLastAttempt() throws Exception {
+        Session session = mock(Session.class);
+        Queue quarantineQueue = mock(Queue.class);
+        MessageProducer producer = mock(MessageProducer.class);
+        doReturn(quarantineQueue).when(session).createQueue("queue.quarantine");
+        doReturn(producer).when(session).createProducer(quarantineQueue);
+        jmsConsumer = spy(new JmsConsumer(
+                consumer,
+                new InFlightMessages(10, 0),
+                MessagingMetrics.NOOP,
+                3,
+                "queue.quarantine"
+        ));
+        doReturn("message").when(jmsConsumer).extractBody(any(BytesMessage.class));
+        doThrow(new CannotConsumeMessage("messageId", "message", "gugus")).when(consumer).consume(anyString(), anyString());
+        doReturn(true).when(bytesMessage).propertyExists("JMSXDeliveryCount");
+        doReturn(3).when(bytesMessage).getIntProperty("JMSXDeliveryCount");
+
+        jmsConsumer.onMessage(bytesMessage, session);
+
+        verify(producer).send(bytesMessage);
+        verify(producer).close();
+        verify(bytesMessage).acknowledge();
+        verify(session, never()).recover();
+        assertEquals(0, jmsConsumer.getInFlightCount());
+    }
+
+    @Test
+    public void testDoNotQuarantineForAcknowledgingConsumer() throws Exception {
+        Session session = mock(Session.class);
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        jmsConsumer = spy(new JmsConsumer(
+                acknowledgingConsumer,
+                new InFlightMessages(10, 0),
+                MessagingMetrics.NOOP,
+                3,
+                "queue.quarantine"
+        ));
+        doReturn("message").when(jmsConsumer).extractBody(any(BytesMessage.class));
+        doThrow(new CannotConsumeMessage("messageId", "message", "gugus"))
+                .when(acknowledgingConsumer).consume(anyString(), anyString());
+        doReturn(true).when(bytesMessage).propertyExists("JMSXDeliveryCount");
+        doReturn(3).when(bytesMessage).getIntProperty("JMSXDeliveryCount");
+
+        jmsConsumer.onMessage(bytesMessage, session);
+
+        // Acknowledging the message would acknowledge all other messages of the session as well.
+        verify(session, never()).createProducer(any(Destination.class));
+        verify(session, never()).recover();
+        verify(bytesMessage, never()).acknowledge();
+        assertEquals(1, jmsConsumer.getInFlightCount());
+    }
+
     @Test
     public void testMessageDelegation() throws Exception {
         jmsConsumer.onMessage(bytesMessage);
@@ -44,4 +197,68 @@ public class JmsConsumerTest {
         verify(consumer).consume("messageId", "message");
     }
 
+    @Test
+    public void testMessageConsumerDelegation() throws Exception {
+        MessageConsumer messageConsumer = mock(MessageConsumer.class);
+        jmsConsumer = spy(new JmsConsumer(messageConsumer));
+
+        jmsConsumer.onMessage(bytesMessage);
+
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messageConsumer).consume(message.capture());
+        assertEquals("messageId", message.getValue().getId());
+        verify(jmsConsumer, never()).extractBody(any(BytesMessage.class));
+        verify(bytesMessage, never()).readBytes(any(byte[].class));
+        verify(jmsConsumer).acknowledge("messageId");
+    }
+
+    @Test
+    public void testMicroBatchDelegation() throws Exception {
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        jmsConsumer = new JmsConsumer(acknowledgingConsumer);
+        byte[] batch = microBatch("first", "second");
+        doReturn(true).when(bytesMessage).propertyExists(BatchEnvelope.BATCH_SIZE);
+        doReturn((long) batch.length).when(bytesMessage).getBodyLength();
+        doAnswer(invocation -> {
+            byte[] body = (byte[]) invocation.getArguments()[0];
+            System.arraycopy(batch, 0, body, 0, batch.length);
+            return batch.length;
+        }).when(bytesMessage).readBytes(any(byte[].class));
+
+        jmsConsumer.onMessage(bytesMessage);
+
+        verify(acknowledgingConsumer).consume("messageId#0", "first");
+        verify(acknowledgingConsumer).consume("messageId#1", "second");
+        assertEquals(1, jmsConsumer.getInFlightCount());
+
+        jmsConsumer.acknowledge("messageId#1");
+        jmsConsumer.acknowledge("messageId#1");
+        verify(bytesMessage, never()).acknowledge();
+
+        jmsConsumer.acknowledge("messageId#0");
+        verify(bytesMessage).acknowledge();
+        assertEquals(0, jmsConsumer.getInFlightCount());
+    }
+
+    private static byte[] microBatch(String... messages) throws Exception {
+        byte[][] batch = new byte[1][];
+        MicroBatcher microBatcher = new MicroBatcher(1024, 10000, "queue", (frame, count) -> batch[0] = frame);
+        for (String message : messages) {
+            microBatcher.add(message.getBytes(StandardCharsets.UTF_8));
+        }
+        microBatcher.flush();
+        return batch[0];
+    }
+
+    @Test
+    public void testTextMessageDelegation() throws Exception {
+        TextMessage textMessage = mock(TextMessage.class);
+        doReturn("messageId").when(textMessage).getJMSMessageID();
+        doReturn("message").when(textMessage).getText();
+
+        jmsConsumer.onMessage(textMessage);
+
+        verify(consumer).consume("messageId", "message");
+    }
+
 }
@@ -0,0 +1,80 @@
+package com.github.libgraviton.messaging.strategy.jms;
+
+import com.github.libgraviton.messaging.compression.DeflateCodec;
+import org.junit.Test;
+
+import javax.jms.BytesMessage;
+import javax.jms.Queue;
+import javax.jms.TextMessage;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class JmsMessageTest {
+
+    @Test
+    public void testBytesMessage() throws Exception {
+        BytesMessage bytesMessage = mock(BytesMessage.class);
+        Queue queue = mock(Queue.class);
+        doReturn("messageId").when(bytesMessage).getJMSMessageID();
+        doReturn(true).when(bytesMessage).getJMSRedelivered();
+        doReturn(1000L).when(bytesMessage).getJMSTimestamp();
+        doReturn(queue).when(bytesMessage).getJMSDestination();
+        doReturn("queue").when(queue).getQueueName();
+        doReturn(3L).when(bytesMessage).getBodyLength();
+        doAnswer(invocation -> {
+            byte[] bytes = (byte[]) invocation.getArguments()[0];
+            bytes[0] = 'a';
+            bytes[1] = 'b';
+            bytes[2] = 'c';
+            return 3;
+        }).when(bytesMessage).readBytes(any(byte[].class));
+
+        JmsMessage message = new JmsMessage(bytesMessage);
+        assertEquals("messageId", message.getId());
+        assertTrue(message.isRedelivered());
+        assertEquals(new Date(1000), message.getTimestamp());
+        assertEquals("queue", message.getRoutingKey());
+        verify(bytesMessage, never()).readBytes(any(byte[].class));
+
+        assertEquals("abc", message.getBodyAsString());
+        assertArrayEquals(new byte[] {'a', 'b', 'c'}, message.getBody());
+        verify(bytesMessage, times(1)).readBytes(any(byte[].class));
+    }
+
+    @Test
+    public void testCompressedBytesMessage() throws Exception {
+        BytesMessage bytesMessage = mock(BytesMessage.class);
+        byte[] compressed = new DeflateCodec().compress("message".getBytes("UTF-8"));
+        doReturn("deflate").when(bytesMessage).getStringProperty("contentEncoding");
+        doReturn((long) compressed.length).when(bytesMessage).getBodyLength();
+        doAnswer(invocation -> {
+            System.arraycopy(compressed, 0, invocation.getArguments()[0], 0, compressed.length);
+            return compressed.length;
+        }).when(bytesMessage).readBytes(any(byte[].class), eq(compressed.length));
+
+        JmsMessage message = new JmsMessage(bytesMessage);
+        assertEquals("message", message.getBodyAsString());
+    }
+
+    @Test
+    public void testTextMessage() throws Exception {
+        TextMessage textMessage = mock(TextMessage.class);
+        doReturn("message").when(textMessage).getText();
+        doReturn(Collections.enumeration(Collections.singletonList("type"))).when(textMessage).getPropertyNames();
+        doReturn("order").when(textMessage).getObjectProperty("type");
+
+        JmsMessage message = new JmsMessage(textMessage);
+        verify(textMessage, never()).getText();
+        verify(textMessage, never()).getPropertyNames();
+
+        assertNull(message.getTimestamp());
+        assertNull(message.getRoutingKey());
+        assertEquals("message", message.getBodyAsString());
+        assertArrayEquals("message".getBytes("UTF-8"), message.getBody());
+        assertEquals(Collections.singletonMap("type", "order"), message.getHeaders());
+    }
+
+}
@@ -33,8 +33,7 @@ public class ReadmeCorrectnessTest {
         builder.connectionFactory(null).applyProperties(properties, "context.");
         builder.build();
 
-        // 7 + 1 default port invocation
-        verify(properties, times(8)).getProperty(matches("context\\..*$")); // verify list is complete
+        verify(properties, times(26)).getProperty(matches("context\\..*$")); // verify list is complete
         verify(properties).getProperty("context.host");
         verify(properties).getProperty("context.port");
         verify(properties).getProperty("context.user");
@@ -42,6 +41,25 @@ public class ReadmeCorrectnessTest {
         verify(properties).getProperty("context.queue.name");
         verify(properties).getProperty("context.connection.attempts");
         verify(properties).getProperty("context.connection.attempts.wait");
+        verify(properties).getProperty("context.connection.attempts.wait.max");
+        verify(properties).getProperty("context.message.selector");
+        verify(properties).getProperty("context.publish.async.window");
+        verify(properties).getProperty("context.publish.async.timeout");
+        verify(properties).getProperty("context.connection.shared");
+        verify(properties).getProperty("context.producer.disable.message.id");
+        verify(properties).getProperty("context.producer.disable.message.timestamp");
+        verify(properties).getProperty("context.producer.persistent");
+        verify(properties).getProperty("context.consumer.sessions");
+        verify(properties).getProperty("context.consumer.inflight.max");
+        verify(properties).getProperty("context.consumer.inflight.timeout");
+        verify(properties).getProperty("context.consumer.ack.mode");
+        verify(properties).getProperty("context.consumer.commit.size");
+        verify(properties).getProperty("context.consumer.commit.interval");
+        verify(properties).getProperty("context.compression.codec");
+        verify(properties).getProperty("context.compression.threshold");
+        verify(properties).getProperty("context.microbatch.size");
+        verify(properties).getProperty("context.microbatch.linger");
+        verify(properties).getProperty("context.retry.attempts");
     }
 
     @Test
@@ -56,6 +74,25 @@ public class ReadmeCorrectnessTest {
         verify(properties).getProperty("queue.name", null);
         verify(properties).getProperty("connection.attempts", "-1");
         verify(properties).getProperty("connection.attempts.wait", "1.0");
+        verify(properties).getProperty("connection.attempts.wait.max", "0.0");
+        verify(properties).getProperty("message.selector", null);
+        verify(properties).getProperty("publish.async.window", "1000");
+        verify(properties).getProperty("publish.async.timeout", "10.0");
+        verify(properties).getProperty("connection.shared", "false");
+        verify(properties).getProperty("producer.disable.message.id", "false");
+        verify(properties).getProperty("producer.disable.message.timestamp", "false");
+        verify(properties).getProperty("producer.persistent", "true");
+        verify(properties).getProperty("consumer.sessions", "1");
+        verify(properties).getProperty("consumer.inflight.max", "10000");
+        verify(properties).getProperty("consumer.inflight.timeout", "600.0");
+        verify(properties).getProperty("consumer.ack.mode", "CLIENT");
+        verify(properties).getProperty("consumer.commit.size", "100");
+        verify(properties).getProperty("consumer.commit.interval", "1.0");
+        verify(properties).getProperty("compression.codec");
+        verify(properties).getProperty("compression.threshold", "1024");
+        verify(properties).getProperty("microbatch.size", "0");
+        verify(properties).getProperty("microbatch.linger", "0.005");
+        verify(properties).getProperty("retry.attempts", "0");
     }
 
 }
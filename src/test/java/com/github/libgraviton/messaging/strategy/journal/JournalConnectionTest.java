@@ -0,0 +1,277 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.github.libgraviton.messaging.exception.CannotRegisterConsumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class JournalConnectionTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<JournalConnection> connections;
+
+    @Before
+    public void setUp() throws Exception {
+        connections = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (JournalConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testPublishAndConsume() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder());
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        connection.consume((messageId, message) -> received.add(message));
+
+        assertEquals("first", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("second", received.poll(5, TimeUnit.SECONDS));
+        connection.publish("third");
+        assertEquals("third", received.poll(5, TimeUnit.SECONDS));
+        // The message gets acknowledged as soon as the consumer returns.
+        await(() -> 0 == connection.getUnacknowledgedCount());
+        assertEquals(0, connection.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testMessageConsumer() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder());
+        connection.open();
+        connection.publish(new byte[]{1, 2, 3});
+
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        connection.consume((MessageConsumer) received::add);
+
+        Message message = received.poll(5, TimeUnit.SECONDS);
+        assertArrayEquals(new byte[]{1, 2, 3}, message.getBody());
+        assertEquals("queue", message.getRoutingKey());
+        assertFalse(message.isRedelivered());
+        assertNotNull(message.getTimestamp());
+    }
+
+    @Test
+    public void testRedeliverAfterRestart() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder());
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+        connection.publish("third");
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        CollectingConsumer consumer = new CollectingConsumer(received);
+        connection.consume(consumer);
+        Message first = received.poll(5, TimeUnit.SECONDS);
+        received.poll(5, TimeUnit.SECONDS);
+        Message third = received.poll(5, TimeUnit.SECONDS);
+
+        // The committed offset must not move beyond the unacknowledged second message.
+        consumer.acknowledger.acknowledge(first.getId());
+        consumer.acknowledger.acknowledge(third.getId());
+        assertEquals(1, connection.getUnacknowledgedCount());
+        connection.close();
+
+        JournalConnection restarted = connect(new JournalConnection.Builder());
+        restarted.consume(new CollectingConsumer(received));
+        Message second = received.poll(5, TimeUnit.SECONDS);
+        assertEquals("second", second.getBodyAsString());
+        assertTrue(second.isRedelivered());
+        Message redelivered = received.poll(5, TimeUnit.SECONDS);
+        assertEquals(third.getId(), redelivered.getId());
+        assertTrue(redelivered.isRedelivered());
+
+        restarted.publish("fourth");
+        Message fourth = received.poll(5, TimeUnit.SECONDS);
+        assertEquals("fourth", fourth.getBodyAsString());
+        assertFalse(fourth.isRedelivered());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder().prefetchCount(1));
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+        BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+        CollectingConsumer consumer = new CollectingConsumer(received);
+
+        connection.consume(consumer);
+
+        Message first = received.poll(5, TimeUnit.SECONDS);
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        consumer.acknowledger.acknowledge(first.getId());
+        assertEquals("second", received.poll(5, TimeUnit.SECONDS).getBodyAsString());
+    }
+
+    @Test
+    public void testSegmentRolling() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder().segmentSize(64).retention(3600));
+        connection.open();
+        for (int i = 0; i < 5; i++) {
+            connection.publish(String.format("message-%012d", i));
+        }
+        assertEquals(5, countSegments());
+
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        connection.consume((messageId, message) -> received.add(message));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(String.format("message-%012d", i), received.poll(5, TimeUnit.SECONDS));
+        }
+        connection.publish(String.format("message-%012d", 5));
+        assertEquals(String.format("message-%012d", 5), received.poll(5, TimeUnit.SECONDS));
+
+        // Consumed segments are kept within the retention.
+        assertEquals(6, countSegments());
+    }
+
+    @Test
+    public void testDeleteConsumedSegments() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder().segmentSize(64));
+        connection.open();
+        for (int i = 0; i < 5; i++) {
+            connection.publish(String.format("message-%012d", i));
+        }
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        connection.consume((messageId, message) -> received.add(message));
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        }
+
+        // All segments except the active one get deleted as soon as they have been consumed.
+        await(() -> 1 == countSegments());
+        assertEquals(1, countSegments());
+    }
+
+    @Test
+    public void testDropTornRecord() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder());
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+        connection.close();
+
+        File segment = new File(folder.getRoot(), "queue/00000000000000000000.segment");
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Corrupts the body of the second record.
+            file.seek(2 * 16 + "first".length());
+            file.write('x');
+        }
+
+        JournalConnection restarted = connect(new JournalConnection.Builder());
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        restarted.consume((messageId, message) -> received.add(message));
+        assertEquals("first", received.poll(5, TimeUnit.SECONDS));
+        restarted.publish("third");
+        assertEquals("third", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRecoverEmptyMessage() throws Exception {
+        JournalConnection connection = connect(new JournalConnection.Builder());
+        connection.open();
+        connection.publish("first");
+        connection.publish("");
+        connection.publish("second");
+        connection.close();
+
+        JournalConnection restarted = connect(new JournalConnection.Builder());
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        restarted.consume((messageId, message) -> received.add(message));
+        assertEquals("first", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("second", received.poll(5, TimeUnit.SECONDS));
+        restarted.publish("third");
+        assertEquals("third", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMessageTooLarge() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        JournalConnection connection = connect(new JournalConnection.Builder().segmentSize(32));
+        connection.open();
+        connection.publish(new byte[17]);
+    }
+
+    @Test
+    public void testSingleConsumer() throws Exception {
+        thrown.expect(CannotRegisterConsumer.class);
+
+        connect(new JournalConnection.Builder()).consume((messageId, message) -> {});
+        connect(new JournalConnection.Builder()).consume((messageId, message) -> {});
+    }
+
+    private JournalConnection connect(JournalConnection.Builder builder) throws Exception {
+        JournalConnection connection = builder
+                .directory(folder.getRoot().getPath())
+                .queueName("queue")
+                .connectionAttempts(1)
+                .build();
+        connections.add(connection);
+        return connection;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+
+    private int countSegments() {
+        return new File(folder.getRoot(), "queue").list((dir, name) -> name.endsWith(".segment")).length;
+    }
+
+    private static class CollectingConsumer implements MessageConsumer, AcknowledgingConsumer {
+
+        private final BlockingQueue<Message> received;
+
+        private MessageAcknowledger acknowledger;
+
+        CollectingConsumer(BlockingQueue<Message> received) {
+            this.received = received;
+        }
+
+        @Override
+        public void setAcknowledger(MessageAcknowledger acknowledger) {
+            this.acknowledger = acknowledger;
+        }
+
+        @Override
+        public void consume(Message message) {
+            received.add(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.github.libgraviton.messaging.spool.SpooledMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalSpoolTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendPeekRemove() throws Exception {
+        try (JournalSpool spool = JournalSpool.open(folder.getRoot().toPath())) {
+            assertTrue(spool.isEmpty());
+            spool.append(SpooledMessage.text("first"));
+            spool.append(new SpooledMessage(new byte[]{1, 2}, false));
+            spool.append(SpooledMessage.text("third"));
+            assertFalse(spool.isEmpty());
+
+            List<SpooledMessage> messages = spool.peek(2);
+            assertEquals(2, messages.size());
+            assertEquals("first", messages.get(0).getBodyAsString());
+            assertTrue(messages.get(0).isText());
+            assertArrayEquals(new byte[]{1, 2}, messages.get(1).getBody());
+            assertFalse(messages.get(1).isText());
+            assertEquals(2, spool.peek(2).size());
+
+            spool.remove(2);
+            messages = spool.peek(2);
+            assertEquals(1, messages.size());
+            assertEquals("third", messages.get(0).getBodyAsString());
+
+            spool.remove(1);
+            assertTrue(spool.isEmpty());
+            assertTrue(spool.peek(2).isEmpty());
+        }
+    }
+
+    @Test
+    public void testKeepMessagesAfterReopen() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (JournalSpool spool = JournalSpool.open(directory)) {
+            spool.append(SpooledMessage.text("first"));
+            spool.append(SpooledMessage.text("second"));
+            spool.remove(1);
+        }
+
+        try (JournalSpool spool = JournalSpool.open(directory)) {
+            List<SpooledMessage> messages = spool.peek(10);
+            assertEquals(1, messages.size());
+            assertEquals("second", messages.get(0).getBodyAsString());
+        }
+    }
+
+    @Test
+    public void testLockDirectory() throws Exception {
+        thrown.expect(IOException.class);
+
+        Path directory = folder.getRoot().toPath();
+        try (JournalSpool spool = JournalSpool.open(directory)) {
+            JournalSpool.open(directory);
+        }
+    }
+
+    @Test
+    public void testMessageTooLarge() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        try (JournalSpool spool = JournalSpool.open(folder.getRoot().toPath(), 32, false)) {
+            spool.append(new SpooledMessage(new byte[16], false));
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.github.libgraviton.messaging.strategy.journal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Ensures that the examples in the journal README are valid.
+ *
+ * IF YOU NEED TO CHANGE ANYTHING HERE, YOU NEED TO UPDATE
+ * /src/main/java/com/github/libgraviton/messaging/strategy/journal/README.md ACCORDINGLY.
+ */
+public class ReadmeCorrectnessTest {
+
+    private Properties properties;
+
+    private JournalConnection.Builder builder;
+
+    @Before
+    public void setUp() {
+        properties = mock(Properties.class);
+        builder = spy(new JournalConnection.Builder());
+        doCallRealMethod().when(properties).getProperty(anyString(), anyString());
+    }
+
+    @Test
+    public void testPropertiesBuilderMethodListComplete() throws Exception {
+        builder.applyProperties(properties, "context.").queueName("queue").build();
+
+        verify(properties, times(13)).getProperty(matches("context\\..*$")); // verify list is complete
+        verify(properties).getProperty("context.host");
+        verify(properties).getProperty("context.port");
+        verify(properties).getProperty("context.user");
+        verify(properties).getProperty("context.password");
+        verify(properties).getProperty("context.queue.name");
+        verify(properties).getProperty("context.connection.attempts");
+        verify(properties).getProperty("context.connection.attempts.wait");
+        verify(properties).getProperty("context.connection.attempts.wait.max");
+        verify(properties).getProperty("context.journal.directory");
+        verify(properties).getProperty("context.journal.segment.size");
+        verify(properties).getProperty("context.journal.retention");
+        verify(properties).getProperty("context.journal.sync");
+        verify(properties).getProperty("context.queue.prefetch");
+    }
+
+    @Test
+    public void testDefaults() throws Exception {
+        builder.applyProperties(properties).queueName("queue").build();
+
+        verify(properties).getProperty("queue.name", null);
+        verify(properties).getProperty("connection.attempts", "-1");
+        verify(properties).getProperty("connection.attempts.wait", "1.0");
+        verify(properties).getProperty("connection.attempts.wait.max", "0.0");
+        verify(properties).getProperty("journal.directory", "journal");
+        verify(properties).getProperty("journal.segment.size", "67108864");
+        verify(properties).getProperty("journal.retention", "0.0");
+        verify(properties).getProperty("journal.sync", "false");
+        verify(properties).getProperty("queue.prefetch", "0");
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class AckCoalescerTest {
+
+    private Channel channel;
+
+    private AckCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        channel = mock(Channel.class);
+        doReturn(true).when(channel).isOpen();
+        coalescer = new AckCoalescer(channel, 3, 10000, "queue");
+    }
+
+    @Test
+    public void testAckFullBatch() throws Exception {
+        coalescer.complete(1);
+        coalescer.complete(2);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        coalescer.complete(3);
+        verify(channel).basicAck(3, true);
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void testOutOfOrderCompletion() throws Exception {
+        coalescer.complete(2);
+        coalescer.complete(4);
+        coalescer.complete(3);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertEquals(3, coalescer.getPendingCount());
+
+        coalescer.complete(1);
+        verify(channel).basicAck(4, true);
+        assertEquals(0, coalescer.getPendingCount());
+
+        coalescer.complete(7);
+        coalescer.complete(5);
+        coalescer.complete(6);
+        verify(channel).basicAck(7, true);
+    }
+
+    @Test
+    public void testIgnoreAcknowledgedTags() throws Exception {
+        coalescer.complete(1);
+        coalescer.complete(2);
+        coalescer.complete(3);
+        coalescer.complete(2);
+        assertEquals(0, coalescer.getPendingCount());
+        verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testFlushAfterBatchWait() throws Exception {
+        coalescer = new AckCoalescer(channel, 3, 10, "queue");
+        coalescer.complete(1);
+
+        verify(channel, timeout(1000)).basicAck(1, true);
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void testShiftWindow() throws Exception {
+        for (long tag = 2; tag <= 130; tag++) {
+            coalescer.complete(tag);
+        }
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        assertEquals(129, coalescer.getPendingCount());
+
+        coalescer.complete(1);
+        verify(channel).basicAck(130, true);
+        assertEquals(0, coalescer.getPendingCount());
+
+        coalescer.complete(132);
+        coalescer.complete(131);
+        coalescer.complete(133);
+        verify(channel).basicAck(133, true);
+    }
+
+    @Test
+    public void testAckBeyondWindow() throws Exception {
+        long beyondWindow = AckCoalescer.MAX_WINDOW + 1;
+        coalescer = new AckCoalescer(channel, 2 * AckCoalescer.MAX_WINDOW, 10000, "queue");
+        coalescer.complete(beyondWindow);
+        verify(channel).basicAck(beyondWindow, false);
+        assertEquals(0, coalescer.getPendingCount());
+
+        for (long tag = 1; tag < beyondWindow; tag++) {
+            coalescer.complete(tag);
+        }
+        coalescer.complete(beyondWindow);
+        coalescer.flush();
+        // The tag beyond the window must not be acknowledged twice.
+        verify(channel).basicAck(beyondWindow - 1, true);
+        verify(channel, never()).basicAck(beyondWindow, true);
+        assertEquals(0, coalescer.getPendingCount());
+
+        coalescer.complete(beyondWindow + 1);
+        coalescer.flush();
+        verify(channel).basicAck(beyondWindow + 1, true);
+    }
+
+    @Test
+    public void testFlushAfterBatchWaitDespiteSlowChannel() throws Exception {
+        Channel slowChannel = mock(Channel.class);
+        doAnswer(invocation -> {
+            Thread.sleep(5000);
+            return null;
+        }).when(slowChannel).basicAck(anyLong(), anyBoolean());
+        AckCoalescer slowCoalescer = new AckCoalescer(slowChannel, 3, 10, "slow");
+        coalescer = new AckCoalescer(channel, 3, 10, "queue");
+        slowCoalescer.complete(1);
+        verify(slowChannel, timeout(1000)).basicAck(1, true);
+
+        coalescer.complete(1);
+        verify(channel, timeout(1000)).basicAck(1, true);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        coalescer.complete(1);
+        coalescer.complete(3);
+        coalescer.close();
+        verify(channel).basicAck(1, true);
+
+        doReturn(false).when(channel).isOpen();
+        coalescer.complete(2);
+        coalescer.close();
+        verify(channel, never()).basicAck(3, true);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.strategy.rabbitmq.PublishChannelPool.PublishChannel;
+import com.github.libgraviton.messaging.strategy.rabbitmq.PublishChannelPool.PublishChannelFactory;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PublishChannelPoolTest {
+
+    private PublishChannel first;
+
+    private PublishChannel second;
+
+    @Before
+    public void setUp() {
+        first = new PublishChannel(openChannel(), null);
+        second = new PublishChannel(openChannel(), null);
+    }
+
+    @Test
+    public void testBorrowExclusively() throws Exception {
+        PublishChannelPool pool = new PublishChannelPool(Arrays.asList(first, second), null);
+
+        PublishChannel borrowed = pool.borrow();
+        PublishChannel otherBorrowed = pool.borrow();
+        assertNotSame(borrowed, otherBorrowed);
+
+        CompletableFuture<PublishChannel> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        pool.giveBack(borrowed);
+        assertSame(borrowed, waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReplaceClosedChannel() throws Exception {
+        PublishChannel replacement = new PublishChannel(openChannel(), null);
+        PublishChannelFactory factory = mock(PublishChannelFactory.class);
+        doReturn(replacement).when(factory).create();
+        doReturn(false).when(first.getChannel()).isOpen();
+        PublishChannelPool pool = new PublishChannelPool(Collections.singletonList(first), factory);
+
+        assertSame(replacement, pool.borrow());
+        assertEquals(Collections.singletonList(replacement), pool.getChannels());
+    }
+
+    @Test
+    public void testReplaceClosedChannelFailed() throws Exception {
+        PublishChannelFactory factory = mock(PublishChannelFactory.class);
+        doThrow(new IOException()).when(factory).create();
+        doReturn(false).when(first.getChannel()).isOpen();
+        PublishChannelPool pool = new PublishChannelPool(Collections.singletonList(first), factory);
+
+        try {
+            pool.borrow();
+            fail("IOException expected.");
+        } catch (IOException e) {
+            // The closed channel stays in the pool, so the next publisher may try again.
+            doReturn(true).when(first.getChannel()).isOpen();
+            assertSame(first, pool.borrow());
+        }
+    }
+
+    @Test
+    public void testKeepClosedChannelWithoutFactory() throws Exception {
+        doReturn(false).when(first.getChannel()).isOpen();
+        PublishChannelPool pool = new PublishChannelPool(Collections.singletonList(first), null);
+
+        assertSame(first, pool.borrow());
+    }
+
+    private static Channel openChannel() {
+        Channel channel = mock(Channel.class);
+        doReturn(true).when(channel).isOpen();
+        return channel;
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PublisherConfirmsTest {
+
+    private PublisherConfirms confirms;
+
+    @Before
+    public void setUp() {
+        confirms = new PublisherConfirms("queue", 3, 0);
+    }
+
+    @Test
+    public void testSingleAck() throws Exception {
+        CompletableFuture<Void> first = register(1);
+        CompletableFuture<Void> second = register(2);
+
+        confirms.handleAck(2, false);
+
+        assertFalse(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(1, confirms.getUnconfirmedCount());
+    }
+
+    @Test
+    public void testMultipleAck() throws Exception {
+        CompletableFuture<Void> first = register(1);
+        CompletableFuture<Void> second = register(2);
+        CompletableFuture<Void> third = register(3);
+
+        confirms.handleAck(2, true);
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(1, confirms.getUnconfirmedCount());
+    }
+
+    @Test
+    public void testNack() throws Exception {
+        CompletableFuture<Void> first = register(1);
+        CompletableFuture<Void> second = register(2);
+
+        confirms.handleNack(2, true);
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        try {
+            first.get();
+            fail("Nacked message must not complete normally.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CannotPublishMessage);
+        }
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        register(1);
+        register(2);
+        register(3);
+        assertFalse(confirms.reserve());
+
+        confirms.handleAck(1, false);
+        assertTrue(confirms.reserve());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        register(1);
+        register(2);
+        register(3);
+
+        confirms.cancel(3);
+
+        assertEquals(2, confirms.getUnconfirmedCount());
+        assertTrue(confirms.reserve());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        CompletableFuture<Void> first = register(1);
+        CompletableFuture<Void> second = register(2);
+
+        confirms.shutdownCompleted(mock(ShutdownSignalException.class));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, confirms.getUnconfirmedCount());
+    }
+
+    private CompletableFuture<Void> register(long sequenceNumber) throws InterruptedException {
+        assertTrue(confirms.reserve());
+        return confirms.register(sequenceNumber);
+    }
+
+}
@@ -1,5 +1,9 @@
 package com.github.libgraviton.messaging.strategy.rabbitmq;
 
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.codec.StringCodec;
+import com.github.libgraviton.messaging.compression.CompressionCodec;
+import com.github.libgraviton.messaging.compression.GzipCodec;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
 import com.github.libgraviton.messaging.exception.CannotConnectToQueue;
@@ -11,9 +15,16 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -144,6 +155,114 @@ public class RabbitMqConnectionTest {
         verify(rabbitChannel, never()).queueBind(anyString(), anyString(), anyString());
     }
 
+    @Test
+    public void testDeclareRetryQueues() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .retryAttempts(3)
+                .retryDelay(2.5)
+                .connectionFactory(rabbitFactory)
+                .connectionAttempts(1)
+                .build();
+
+        connection.open();
+        connection.consume(mock(Consumer.class));
+
+        Map<String, Object> queueArguments = new HashMap<>();
+        queueArguments.put("x-dead-letter-exchange", "");
+        queueArguments.put("x-dead-letter-routing-key", "queue.retry");
+        verify(rabbitChannel).queueDeclare("queue", true, false, false, queueArguments);
+        Map<String, Object> retryArguments = new HashMap<>();
+        retryArguments.put("x-message-ttl", 2500L);
+        retryArguments.put("x-dead-letter-exchange", "");
+        retryArguments.put("x-dead-letter-routing-key", "queue");
+        verify(rabbitChannel).queueDeclare("queue.retry", true, false, false, retryArguments);
+        verify(rabbitChannel).queueDeclare("queue.quarantine", true, false, false, null);
+        // Failed messages have to be rejected, so they cannot be acknowledged automatically.
+        verify(rabbitChannel).basicConsume(eq("queue"), eq(false), any(RabbitMqConsumer.class));
+    }
+
+    @Test
+    public void testQuarantine() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .retryAttempts(3)
+                .connectionFactory(rabbitFactory)
+                .connectionAttempts(1)
+                .build();
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType("application/json")
+                .build();
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+
+        connection.open();
+        connection.quarantine(properties, body, "gugus");
+
+        ArgumentCaptor<AMQP.BasicProperties> quarantined = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        verify(rabbitChannel).basicPublish(eq(""), eq("queue.quarantine"), quarantined.capture(), eq(body));
+        assertEquals("application/json", quarantined.getValue().getContentType());
+        assertEquals("gugus", quarantined.getValue().getHeaders().get(RetryQueues.QUARANTINE_REASON));
+    }
+
+    @Test
+    public void testQuarantineWithConfirms() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .retryAttempts(3)
+                .publisherConfirms(true)
+                .connectionFactory(rabbitFactory)
+                .connectionAttempts(1)
+                .build();
+        doReturn(1L).when(rabbitChannel).getNextPublishSeqNo();
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+        connection.open();
+
+        ArgumentCaptor<ConfirmListener> listener = ArgumentCaptor.forClass(ConfirmListener.class);
+        verify(rabbitChannel).addConfirmListener(listener.capture());
+        doAnswer(invocation -> {
+            listener.getValue().handleAck(1, false);
+            return null;
+        }).when(rabbitChannel).basicPublish(
+                eq(""),
+                eq("queue.quarantine"),
+                any(AMQP.BasicProperties.class),
+                eq(body)
+        );
+
+        connection.quarantine(MessageProperties.PERSISTENT_TEXT_PLAIN, body, "gugus");
+        assertEquals(0, connection.getUnconfirmedCount());
+    }
+
+    @Test
+    public void testQuarantineWithConfirmsNacked() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .retryAttempts(3)
+                .publisherConfirms(true)
+                .connectionFactory(rabbitFactory)
+                .connectionAttempts(1)
+                .build();
+        doReturn(1L).when(rabbitChannel).getNextPublishSeqNo();
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+        connection.open();
+
+        ArgumentCaptor<ConfirmListener> listener = ArgumentCaptor.forClass(ConfirmListener.class);
+        verify(rabbitChannel).addConfirmListener(listener.capture());
+        doAnswer(invocation -> {
+            listener.getValue().handleNack(1, false);
+            return null;
+        }).when(rabbitChannel).basicPublish(
+                eq(""),
+                eq("queue.quarantine"),
+                any(AMQP.BasicProperties.class),
+                eq(body)
+        );
+
+        connection.quarantine(MessageProperties.PERSISTENT_TEXT_PLAIN, body, "gugus");
+    }
+
     @Test
     public void testOpenConnectionFailed() throws Exception {
         thrown.expect(CannotConnectToQueue.class);
@@ -156,6 +275,7 @@ public class RabbitMqConnectionTest {
     public void testRegisterConsumer() throws Exception {
         Consumer consumer = mock(Consumer.class);
         connection.consume(consumer);
+        verify(rabbitChannel, never()).basicQos(anyInt(), anyInt(), anyBoolean());
         verify(rabbitChannel).basicConsume(eq("queue"), eq(true), any(RabbitMqConsumer.class));
     }
 
@@ -166,6 +286,54 @@ public class RabbitMqConnectionTest {
         verify(rabbitChannel).basicConsume(eq("queue"), eq(false), any(RabbitMqConsumer.class));
     }
 
+    @Test
+    public void testRegisterConsumerWithPrefetch() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .prefetchCount(10)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+
+        connection.consume(mock(Consumer.class));
+
+        verify(rabbitChannel).basicQos(0, 10, false);
+        verify(rabbitChannel).basicConsume(eq("queue"), eq(false), any(RabbitMqConsumer.class));
+    }
+
+    @Test
+    public void testRegisterConsumerWithAckBatch() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .prefetchCount(10)
+                .ackBatchSize(100)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+
+        connection.consume(mock(Consumer.class));
+
+        ArgumentCaptor<RabbitMqConsumer> captor = ArgumentCaptor.forClass(RabbitMqConsumer.class);
+        verify(rabbitChannel).basicConsume(eq("queue"), eq(false), captor.capture());
+        for (long deliveryTag = 1; deliveryTag <= 6; deliveryTag++) {
+            Envelope envelope = mock(Envelope.class);
+            doReturn(deliveryTag).when(envelope).getDeliveryTag();
+            captor.getValue().handleDelivery(
+                    "consumerTag",
+                    envelope,
+                    mock(AMQP.BasicProperties.class),
+                    "message".getBytes(StandardCharsets.UTF_8)
+            );
+        }
+
+        // batch size is capped at half of the prefetch count
+        verify(rabbitChannel).basicAck(5L, true);
+        verify(rabbitChannel, never()).basicAck(anyLong(), eq(false));
+
+        connection.close();
+        verify(rabbitChannel).basicAck(6L, true);
+    }
+
     @Test
     public void testRegisterConsumerFailed() throws Exception {
         thrown.expect(CannotRegisterConsumer.class);
@@ -186,6 +354,124 @@ public class RabbitMqConnectionTest {
         );
     }
 
+    @Test
+    public void testPublishCompressedMessage() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .exchangeName("exchange")
+                .routingKey("routingKey")
+                .queueName("queue")
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .compression("gzip")
+                .compressionThreshold(10)
+                .build();
+        byte[] message = "gugus gugus gugus gugus".getBytes(StandardCharsets.UTF_8);
+
+        connection.publish(message);
+        connection.publish("gugus");
+
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(rabbitChannel, times(2)).basicPublish(
+                eq("exchange"),
+                eq("routingKey"),
+                properties.capture(),
+                body.capture()
+        );
+        assertEquals("gzip", properties.getAllValues().get(0).getContentEncoding());
+        assertEquals(2, properties.getAllValues().get(0).getDeliveryMode().intValue());
+        assertArrayEquals(message, new GzipCodec().decompress(body.getAllValues().get(0)));
+        assertSame(MessageProperties.PERSISTENT_TEXT_PLAIN, properties.getAllValues().get(1));
+        assertArrayEquals("gugus".getBytes(StandardCharsets.UTF_8), body.getAllValues().get(1));
+    }
+
+    @Test
+    public void testPublishWithCodec() throws Exception {
+        connection.publish("gugus", new StringCodec());
+
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        verify(rabbitChannel).basicPublish(
+                eq("exchange"),
+                eq("routingKey"),
+                properties.capture(),
+                eq("gugus".getBytes(StandardCharsets.UTF_8))
+        );
+        assertEquals("text/plain; charset=UTF-8", properties.getValue().getContentType());
+        assertEquals(2, properties.getValue().getDeliveryMode().intValue());
+    }
+
+    @Test
+    public void testPublishMicroBatch() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .exchangeName("exchange")
+                .routingKey("routingKey")
+                .queueName("queue")
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .microBatchSize(64)
+                .microBatchLinger(10)
+                .build();
+        byte[] large = new byte[100];
+        connection.open();
+
+        connection.publish("first");
+        connection.publish("second");
+        verify(rabbitChannel, never()).basicPublish(anyString(), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+        connection.publish(large);
+
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(rabbitChannel, times(2)).basicPublish(
+                eq("exchange"),
+                eq("routingKey"),
+                properties.capture(),
+                body.capture()
+        );
+        assertEquals(2, properties.getAllValues().get(0).getHeaders().get(BatchEnvelope.BATCH_SIZE));
+        List<byte[]> parts = BatchEnvelope.unpack(body.getAllValues().get(0));
+        assertEquals(2, parts.size());
+        assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), parts.get(0));
+        assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), parts.get(1));
+        assertSame(MessageProperties.PERSISTENT_TEXT_PLAIN, properties.getAllValues().get(1));
+        assertSame(large, body.getAllValues().get(1));
+
+        connection.publish("third");
+        connection.close();
+
+        verify(rabbitChannel, times(3)).basicPublish(
+                eq("exchange"),
+                eq("routingKey"),
+                properties.capture(),
+                body.capture()
+        );
+        assertArrayEquals("third".getBytes(StandardCharsets.UTF_8), BatchEnvelope.unpack(body.getValue()).get(0));
+    }
+
+    @Test
+    public void testKeepCompressionCodecWithoutProperty() throws Exception {
+        CompressionCodec codec = mock(CompressionCodec.class);
+        doReturn("custom").when(codec).getEncoding();
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .compressionCodec(codec)
+                .compressionThreshold(1)
+                .applyProperties(new Properties())
+                .build();
+
+        connection.publish("gugus");
+
+        verify(codec).compress("gugus".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testUnknownCompression() {
+        thrown.expect(IllegalArgumentException.class);
+
+        new RabbitMqConnection.Builder().compression("gugus");
+    }
+
     @Test
     public void testPublishTextMessageFailed() throws Exception {
         thrown.expect(CannotPublishMessage.class);
@@ -225,6 +511,215 @@ public class RabbitMqConnectionTest {
         connection.publish(bytesMessage);
     }
 
+    @Test
+    public void testPublishWithConfirms() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .exchangeName("exchange")
+                .routingKey("routingKey")
+                .queueName("queue")
+                .publisherConfirms(true)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+        doReturn(1L).when(rabbitChannel).getNextPublishSeqNo();
+
+        connection.open();
+        connection.publish("gugus");
+
+        verify(rabbitChannel).confirmSelect();
+        verify(rabbitChannel).addConfirmListener(any(PublisherConfirms.class));
+        verify(rabbitChannel).basicPublish(
+                "exchange",
+                "routingKey",
+                MessageProperties.PERSISTENT_TEXT_PLAIN,
+                "gugus".getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    public void testPublishWithConfirmsWindowExhausted() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .publisherConfirms(true)
+                .publisherConfirmsWindow(1)
+                .publisherConfirmsTimeout(0)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+
+        connection.open();
+        connection.publish("first");
+        connection.publish("second");
+    }
+
+    @Test
+    public void testPublishWithConfirmsOnClosedChannel() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .publisherConfirms(true)
+                .publisherConfirmsWindow(1)
+                .publisherConfirmsTimeout(0)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+        doReturn(1L).doReturn(2L).when(rabbitChannel).getNextPublishSeqNo();
+        doThrow(new AlreadyClosedException(new ShutdownSignalException(false, false, null, rabbitChannel)))
+                .doNothing()
+                .when(rabbitChannel)
+                .basicPublish(anyString(), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+        connection.open();
+
+        CompletableFuture<Void> failed = connection.publishAsync(new byte[]{1});
+        assertTrue(failed.isCompletedExceptionally());
+
+        ArgumentCaptor<PublisherConfirms> confirms = ArgumentCaptor.forClass(PublisherConfirms.class);
+        verify(rabbitChannel).addConfirmListener(confirms.capture());
+        assertEquals(0, confirms.getValue().getUnconfirmedCount());
+
+        // The window has been freed, so the next message does not wait for the confirm of the failed one.
+        CompletableFuture<Void> confirmation = connection.publishAsync(new byte[]{2});
+        assertFalse(confirmation.isDone());
+        assertEquals(1, confirms.getValue().getUnconfirmedCount());
+    }
+
+    @Test
+    public void testPublishAsyncWithConfirms() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .publisherConfirms(true)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+        doReturn(1L).when(rabbitChannel).getNextPublishSeqNo();
+        connection.open();
+
+        CompletableFuture<Void> confirmation = connection.publishAsync(new byte[]{1, 2, 3, 4});
+        assertFalse(confirmation.isDone());
+
+        ArgumentCaptor<ConfirmListener> listener = ArgumentCaptor.forClass(ConfirmListener.class);
+        verify(rabbitChannel).addConfirmListener(listener.capture());
+        listener.getValue().handleAck(1, false);
+        assertTrue(confirmation.isDone());
+        assertFalse(confirmation.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPublishAllWithConfirms() throws Exception {
+        connection = new RabbitMqConnection.Builder()
+                .exchangeName("exchange")
+                .routingKey("routingKey")
+                .queueName("queue")
+                .publisherConfirms(true)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+        when(rabbitChannel.getNextPublishSeqNo()).thenReturn(1L, 2L);
+        connection.open();
+
+        ArgumentCaptor<ConfirmListener> listener = ArgumentCaptor.forClass(ConfirmListener.class);
+        verify(rabbitChannel).addConfirmListener(listener.capture());
+        doAnswer(invocation -> {
+            listener.getValue().handleAck(2, true);
+            return null;
+        }).when(rabbitChannel).basicPublish(
+                "exchange",
+                "routingKey",
+                MessageProperties.PERSISTENT_TEXT_PLAIN,
+                "gaga".getBytes(StandardCharsets.UTF_8)
+        );
+
+        connection.publishAllText(Arrays.asList("gugus", "gaga"));
+
+        verify(rabbitChannel, times(2)).basicPublish(
+                eq("exchange"),
+                eq("routingKey"),
+                eq(MessageProperties.PERSISTENT_TEXT_PLAIN),
+                any(byte[].class)
+        );
+    }
+
+    @Test
+    public void testPublishAllWithConfirmsNacked() throws Exception {
+        thrown.expect(CannotPublishMessage.class);
+
+        connection = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .publisherConfirms(true)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+        when(rabbitChannel.getNextPublishSeqNo()).thenReturn(1L, 2L);
+        connection.open();
+
+        ArgumentCaptor<ConfirmListener> listener = ArgumentCaptor.forClass(ConfirmListener.class);
+        verify(rabbitChannel).addConfirmListener(listener.capture());
+        doAnswer(invocation -> {
+            listener.getValue().handleNack(1, false);
+            return null;
+        }).when(rabbitChannel).basicPublish(
+                isNull(String.class),
+                isNull(String.class),
+                eq(MessageProperties.PERSISTENT_TEXT_PLAIN),
+                any(byte[].class)
+        );
+
+        connection.publishAll(Arrays.asList(new byte[]{1}, new byte[]{2}));
+    }
+
+    @Test
+    public void testPublishChannels() throws Exception {
+        Channel publishChannel = mock(Channel.class);
+        doReturn(true).when(publishChannel).isOpen();
+        doReturn(rabbitChannel).doReturn(publishChannel).when(rabbitConnection).createChannel();
+        connection = new RabbitMqConnection.Builder()
+                .exchangeName("exchange")
+                .routingKey("routingKey")
+                .queueName("queue")
+                .publishChannels(2)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory)
+                .build();
+
+        connection.open();
+        connection.publish("gugus");
+        connection.close();
+
+        verify(rabbitConnection, times(3)).createChannel();
+        verify(rabbitChannel, never()).basicPublish(anyString(), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+        verify(publishChannel).basicPublish(
+                "exchange",
+                "routingKey",
+                MessageProperties.PERSISTENT_TEXT_PLAIN,
+                "gugus".getBytes(StandardCharsets.UTF_8)
+        );
+        verify(publishChannel, times(2)).close();
+        verify(rabbitChannel).close();
+    }
+
+    @Test
+    public void testSharedConnection() throws Exception {
+        RabbitMqConnection.Builder builder = new RabbitMqConnection.Builder()
+                .queueName("queue")
+                .virtualHost("shared-connection-test")
+                .sharedConnection(true)
+                .connectionAttempts(1)
+                .connectionFactory(rabbitFactory);
+        RabbitMqConnection first = builder.build();
+        RabbitMqConnection second = builder.queueName("other-queue").build();
+
+        first.open();
+        second.open();
+        verify(rabbitFactory, times(1)).newConnection();
+        verify(rabbitConnection, times(2)).createChannel();
+
+        first.close();
+        verify(rabbitConnection, never()).close();
+        second.close();
+        verify(rabbitConnection).close();
+    }
+
     @Test
     public void testCloseConnection() throws Exception {
         connection.open();
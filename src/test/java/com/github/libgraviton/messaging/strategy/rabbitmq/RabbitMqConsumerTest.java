@@ -1,20 +1,42 @@
 package com.github.libgraviton.messaging.strategy.rabbitmq;
 
+import com.github.libgraviton.messaging.Message;
+import com.github.libgraviton.messaging.MessageAcknowledger;
+import com.github.libgraviton.messaging.batch.BatchEnvelope;
+import com.github.libgraviton.messaging.batch.MicroBatcher;
+import com.github.libgraviton.messaging.compression.GzipCodec;
 import com.github.libgraviton.messaging.consumer.AcknowledgingConsumer;
 import com.github.libgraviton.messaging.consumer.Consumer;
+import com.github.libgraviton.messaging.consumer.DeduplicatingConsumer;
+import com.github.libgraviton.messaging.consumer.MessageConsumer;
+import com.github.libgraviton.messaging.dedup.DeduplicationKey;
+import com.github.libgraviton.messaging.dedup.LruDeduplicationCache;
+import com.github.libgraviton.messaging.exception.CannotConsumeMessage;
+import com.github.libgraviton.messaging.exception.CannotPublishMessage;
+import com.github.libgraviton.messaging.metrics.MessagingMetrics;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.ShutdownSignalException;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class RabbitMqConsumerTest {
 
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
     private RabbitMqConsumer rabbitConsumer;
 
     private Consumer consumer;
@@ -47,6 +69,23 @@ public class RabbitMqConsumerTest {
         verify(acknowledgingConsumer).setAcknowledger(rabbitConsumer);
     }
 
+    @Test
+    public void testAckAfterConsume() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        rabbitConsumer = new RabbitMqConsumer(connection, consumer, true);
+
+        rabbitConsumer.handleDelivery(
+                "consumerTag",
+                envelope,
+                mock(AMQP.BasicProperties.class),
+                "message".getBytes(StandardCharsets.UTF_8)
+        );
+
+        verify(consumer).consume("1", "message");
+        verify(channel).basicAck(1L, false);
+    }
+
     @Test
     public void testMessageDelegation() throws Exception {
         rabbitConsumer.handleDelivery(
@@ -59,6 +98,266 @@ public class RabbitMqConsumerTest {
         verify(consumer).consume("1", "message");
     }
 
+    @Test
+    public void testMessageConsumerDelegation() throws Exception {
+        MessageConsumer messageConsumer = mock(MessageConsumer.class);
+        rabbitConsumer = new RabbitMqConsumer(connection, messageConsumer);
+        byte[] body = {0, 1, 2};
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, mock(AMQP.BasicProperties.class), body);
+
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messageConsumer).consume(message.capture());
+        verify(messageConsumer, never()).consume(anyString(), anyString());
+        assertEquals("1", message.getValue().getId());
+        assertSame(body, message.getValue().getBody());
+    }
+
+    @Test
+    public void testDecompression() throws Exception {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().contentEncoding("gzip").build();
+        byte[] compressed = new GzipCodec().compress("message".getBytes(StandardCharsets.UTF_8));
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, properties, compressed);
+
+        verify(consumer).consume("1", "message");
+    }
+
+    @Test
+    public void testMicroBatchDelegation() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        rabbitConsumer = new RabbitMqConsumer(connection, acknowledgingConsumer, false, null, MessagingMetrics.NOOP);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .headers(Collections.singletonMap(BatchEnvelope.BATCH_SIZE, 2))
+                .build();
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, properties, microBatch("first", "second"));
+
+        verify(acknowledgingConsumer).consume("1#0", "first");
+        verify(acknowledgingConsumer).consume("1#1", "second");
+        rabbitConsumer.acknowledge("1#1");
+        rabbitConsumer.acknowledge("1#1");
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        rabbitConsumer.acknowledge("1#0");
+        verify(channel).basicAck(1L, false);
+        assertEquals(0, rabbitConsumer.getUnacknowledgedCount());
+
+        // The micro-batch is no longer tracked, so acknowledging a part again has no effect.
+        rabbitConsumer.acknowledge("1#0");
+        verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testMicroBatchAckAfterConsume() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        rabbitConsumer = new RabbitMqConsumer(connection, consumer, true);
+        doThrow(new CannotConsumeMessage("1#0", "first", "gugus")).when(consumer).consume("1#0", "first");
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .headers(Collections.singletonMap(BatchEnvelope.BATCH_SIZE, 2))
+                .build();
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, properties, microBatch("first", "second"));
+
+        verify(consumer).consume("1#1", "second");
+        verify(channel).basicAck(1L, false);
+    }
+
+    private static byte[] microBatch(String... messages) throws Exception {
+        byte[][] batch = new byte[1][];
+        MicroBatcher microBatcher = new MicroBatcher(1024, 10000, "queue", (frame, count) -> batch[0] = frame);
+        for (String message : messages) {
+            microBatcher.add(message.getBytes(StandardCharsets.UTF_8));
+        }
+        microBatcher.flush();
+        return batch[0];
+    }
+
+    @Test
+    public void testDropCorruptCompressedMessage() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        MessagingMetrics metrics = mock(MessagingMetrics.class);
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        rabbitConsumer = new RabbitMqConsumer(connection, acknowledgingConsumer, false, null, metrics);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().contentEncoding("gzip").build();
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, properties, "message".getBytes(StandardCharsets.UTF_8));
+
+        verify(acknowledgingConsumer, never()).consume(anyString(), anyString());
+        verify(channel).basicAck(1L, false);
+        verify(metrics).consumeFailed(anyLong());
+        assertEquals(0, rabbitConsumer.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testRetryFailedMessage() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        doReturn(new RetryQueues("queue", 3, 5000)).when(connection).getRetryQueues();
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).when(consumer).consume("1", "message");
+        rabbitConsumer = new RabbitMqConsumer(connection, consumer, true);
+
+        rabbitConsumer.handleDelivery(
+                "consumerTag",
+                envelope,
+                new AMQP.BasicProperties(),
+                "message".getBytes(StandardCharsets.UTF_8)
+        );
+
+        verify(channel).basicReject(1L, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(connection, never()).quarantine(any(AMQP.BasicProperties.class), any(byte[].class), anyString());
+        assertEquals(0, rabbitConsumer.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testQuarantineAfterLastAttempt() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        doReturn(new RetryQueues("queue", 3, 5000)).when(connection).getRetryQueues();
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).when(consumer).consume("1", "message");
+        rabbitConsumer = new RabbitMqConsumer(connection, consumer, true);
+        Map<String, Object> rejected = new HashMap<>();
+        rejected.put("queue", "queue");
+        rejected.put("reason", "rejected");
+        rejected.put("count", 2L);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .headers(Collections.singletonMap("x-death", Collections.singletonList(rejected)))
+                .build();
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, properties, body);
+
+        verify(connection).quarantine(eq(properties), eq(body), contains("gugus"));
+        verify(channel).basicAck(1L, false);
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void testDoNotAcknowledgeUnconfirmedQuarantine() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        doReturn(new RetryQueues("queue", 1, 5000)).when(connection).getRetryQueues();
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).when(consumer).consume("1", "message");
+        doThrow(new CannotPublishMessage("message", "not confirmed"))
+                .when(connection).quarantine(any(AMQP.BasicProperties.class), any(byte[].class), anyString());
+        rabbitConsumer = new RabbitMqConsumer(connection, consumer, true);
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+
+        try {
+            rabbitConsumer.handleDelivery("consumerTag", envelope, new AMQP.BasicProperties(), body);
+            fail("The failed quarantine should be passed on.");
+        } catch (CannotPublishMessage e) {
+            // expected
+        }
+
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+        assertEquals(1, rabbitConsumer.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testRetryFailedDeduplicatedMessage() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        doReturn(new RetryQueues("queue", 3, 5000)).when(connection).getRetryQueues();
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).doNothing().when(consumer).consume("1", "message");
+        DeduplicatingConsumer deduplicatingConsumer = new DeduplicatingConsumer(
+                consumer,
+                DeduplicationKey.contentHash(),
+                new LruDeduplicationCache(10, 0)
+        );
+        rabbitConsumer = new RabbitMqConsumer(connection, deduplicatingConsumer);
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, new AMQP.BasicProperties(), body);
+        verify(channel).basicReject(1L, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        // The retried message has not been remembered, so it is processed again.
+        rabbitConsumer.handleDelivery("consumerTag", envelope, new AMQP.BasicProperties(), body);
+        verify(consumer, times(2)).consume("1", "message");
+        verify(channel).basicAck(1L, false);
+        verify(channel, times(1)).basicReject(anyLong(), anyBoolean());
+        assertEquals(0, rabbitConsumer.getUnacknowledgedCount());
+    }
+
+    @Test
+    public void testDoNotRetryAcknowledgedMessage() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        doReturn(new RetryQueues("queue", 3, 5000)).when(connection).getRetryQueues();
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        ArgumentCaptor<MessageAcknowledger> acknowledger = ArgumentCaptor.forClass(MessageAcknowledger.class);
+        rabbitConsumer = new RabbitMqConsumer(connection, acknowledgingConsumer);
+        verify(acknowledgingConsumer).setAcknowledger(acknowledger.capture());
+        doAnswer(invocation -> {
+            acknowledger.getValue().acknowledge("1");
+            throw new CannotConsumeMessage("1", "message", "gugus");
+        }).when(acknowledgingConsumer).consume("1", "message");
+
+        rabbitConsumer.handleDelivery(
+                "consumerTag",
+                envelope,
+                new AMQP.BasicProperties(),
+                "message".getBytes(StandardCharsets.UTF_8)
+        );
+
+        verify(channel).basicAck(1L, false);
+        verify(channel, never()).basicReject(anyLong(), anyBoolean());
+        verify(connection, never()).quarantine(any(AMQP.BasicProperties.class), any(byte[].class), anyString());
+    }
+
+    @Test
+    public void testFailureWithoutRetries() throws Exception {
+        thrown.expect(CannotConsumeMessage.class);
+
+        doThrow(new CannotConsumeMessage("1", "message", "gugus")).when(consumer).consume("1", "message");
+
+        rabbitConsumer.handleDelivery(
+                "consumerTag",
+                envelope,
+                new AMQP.BasicProperties(),
+                "message".getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        Channel channel = mock(Channel.class);
+        doReturn(channel).when(connection).getChannel();
+        MessagingMetrics metrics = mock(MessagingMetrics.class);
+        AcknowledgingConsumer acknowledgingConsumer = mock(AcknowledgingConsumer.class);
+        rabbitConsumer = new RabbitMqConsumer(connection, acknowledgingConsumer, false, null, metrics);
+        doThrow(new CannotConsumeMessage("2", "failing", "gugus")).when(acknowledgingConsumer).consume("2", "failing");
+        Envelope failingEnvelope = mock(Envelope.class);
+        doReturn(2L).when(failingEnvelope).getDeliveryTag();
+
+        rabbitConsumer.handleDelivery("consumerTag", envelope, mock(AMQP.BasicProperties.class), "message".getBytes());
+        try {
+            rabbitConsumer.handleDelivery(
+                    "consumerTag",
+                    failingEnvelope,
+                    mock(AMQP.BasicProperties.class),
+                    "failing".getBytes()
+            );
+            fail("Consuming should have failed.");
+        } catch (CannotConsumeMessage e) {
+            // expected
+        }
+        assertEquals(2, rabbitConsumer.getUnacknowledgedCount());
+
+        rabbitConsumer.acknowledge("1");
+
+        assertEquals(1, rabbitConsumer.getUnacknowledgedCount());
+        verify(metrics).messageConsumed(anyLong());
+        verify(metrics).consumeFailed(anyLong());
+        verify(metrics).messageAcknowledged(anyLong());
+    }
+
     @Test
     public void testConnectionRecovery() throws Exception {
         ShutdownSignalException sig = mock(ShutdownSignalException.class);
@@ -0,0 +1,93 @@
+package com.github.libgraviton.messaging.strategy.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.impl.LongStringHelper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RabbitMqMessageTest {
+
+    @Test
+    public void testMessage() throws Exception {
+        Date timestamp = new Date();
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().timestamp(timestamp).build();
+        Envelope envelope = new Envelope(5, true, "exchange", "routingKey");
+        byte[] body = "message".getBytes(StandardCharsets.UTF_8);
+
+        RabbitMqMessage message = new RabbitMqMessage(envelope, properties, body);
+
+        assertEquals("5", message.getId());
+        assertSame(body, message.getBody());
+        assertEquals("message", message.getBodyAsString());
+        assertEquals('m', message.getBodyAsStream().read());
+        assertTrue(message.isRedelivered());
+        assertEquals(timestamp, message.getTimestamp());
+        assertEquals("routingKey", message.getRoutingKey());
+        assertTrue(message.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void testContentTypeCharset() throws Exception {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType("text/plain; Charset=\"ISO-8859-1\"")
+                .build();
+        byte[] body = "grüezi".getBytes(StandardCharsets.ISO_8859_1);
+
+        RabbitMqMessage message = new RabbitMqMessage(new Envelope(1, false, "", "queue"), properties, body);
+
+        assertEquals("grüezi", message.getBodyAsString());
+    }
+
+    @Test
+    public void testDefaultCharset() throws Exception {
+        byte[] body = "grüezi".getBytes(StandardCharsets.UTF_8);
+        // A transfer encoding, an illegal and an unknown charset name
+        AMQP.BasicProperties[] properties = new AMQP.BasicProperties[]{
+                new AMQP.BasicProperties.Builder().contentEncoding("ISO-8859-1").build(),
+                new AMQP.BasicProperties.Builder().contentType("text/plain; charset=gug us").build(),
+                new AMQP.BasicProperties.Builder().contentType("text/plain; charset=gugus").build(),
+                new AMQP.BasicProperties.Builder().contentType("application/json").build()
+        };
+
+        for (AMQP.BasicProperties messageProperties : properties) {
+            RabbitMqMessage message = new RabbitMqMessage(
+                    new Envelope(1, false, "", "queue"),
+                    messageProperties,
+                    body
+            );
+            assertEquals("grüezi", message.getBodyAsString());
+        }
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("type", LongStringHelper.asLongString("order"));
+        headers.put("retries", 3);
+        headers.put("tags", Arrays.asList(LongStringHelper.asLongString("a"), LongStringHelper.asLongString("b")));
+        headers.put(
+                "nested",
+                Collections.singletonMap("key", LongStringHelper.asLongString("value"))
+        );
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().headers(headers).build();
+
+        RabbitMqMessage message = new RabbitMqMessage(new Envelope(1, false, "", "queue"), properties, new byte[0]);
+
+        assertEquals("order", message.getHeaders().get("type"));
+        assertEquals(3, message.getHeaders().get("retries"));
+        assertEquals(Arrays.asList("a", "b"), message.getHeaders().get("tags"));
+        assertEquals(Collections.singletonMap("key", "value"), message.getHeaders().get("nested"));
+        assertSame(message.getHeaders(), message.getHeaders());
+    }
+
+}
@@ -31,7 +31,7 @@ public class ReadmeCorrectnessTest {
         builder.applyProperties(properties, "context.");
         builder.build();
         
-        verify(properties, times(16)).getProperty(matches("context\\..*$")); // verify list is complete
+        verify(properties, times(32)).getProperty(matches("context\\..*$")); // verify list is complete
         verify(properties).getProperty("context.host");
         verify(properties).getProperty("context.port");
         verify(properties).getProperty("context.user");
@@ -39,6 +39,7 @@ public class ReadmeCorrectnessTest {
         verify(properties).getProperty("context.queue.name");
         verify(properties).getProperty("context.connection.attempts");
         verify(properties).getProperty("context.connection.attempts.wait");
+        verify(properties).getProperty("context.connection.attempts.wait.max");
         verify(properties).getProperty("context.queue.durable");
         verify(properties).getProperty("context.queue.exclusive");
         verify(properties).getProperty("context.queue.autodelete");
@@ -48,6 +49,21 @@ public class ReadmeCorrectnessTest {
         verify(properties).getProperty("context.routingkey");
         verify(properties).getProperty("context.virtualhost");
         verify(properties).getProperty("context.queue.autorecovery");
+        verify(properties).getProperty("context.publisher.confirms");
+        verify(properties).getProperty("context.publisher.confirms.window");
+        verify(properties).getProperty("context.publisher.confirms.timeout");
+        verify(properties).getProperty("context.publish.channels");
+        verify(properties).getProperty("context.connection.shared");
+        verify(properties).getProperty("context.queue.prefetch");
+        verify(properties).getProperty("context.queue.prefetch.size");
+        verify(properties).getProperty("context.ack.batch.size");
+        verify(properties).getProperty("context.ack.batch.wait");
+        verify(properties).getProperty("context.compression.codec");
+        verify(properties).getProperty("context.compression.threshold");
+        verify(properties).getProperty("context.microbatch.size");
+        verify(properties).getProperty("context.microbatch.linger");
+        verify(properties).getProperty("context.retry.attempts");
+        verify(properties).getProperty("context.retry.delay");
     }
 
     @Test
@@ -62,6 +78,7 @@ public class ReadmeCorrectnessTest {
         verify(properties).getProperty("queue.name", null);
         verify(properties).getProperty("connection.attempts", "-1");
         verify(properties).getProperty("connection.attempts.wait", "1.0");
+        verify(properties).getProperty("connection.attempts.wait.max", "0.0");
         verify(properties).getProperty("queue.durable", "true");
         verify(properties).getProperty("queue.exclusive", "false");
         verify(properties).getProperty("queue.autodelete", "false");
@@ -71,6 +88,21 @@ public class ReadmeCorrectnessTest {
         verify(properties).getProperty("routingkey", null);
         verify(properties).getProperty("virtualhost", "/");
         verify(properties).getProperty("queue.autorecovery", "true");
+        verify(properties).getProperty("publisher.confirms", "false");
+        verify(properties).getProperty("publisher.confirms.window", "1000");
+        verify(properties).getProperty("publisher.confirms.timeout", "10.0");
+        verify(properties).getProperty("publish.channels", "1");
+        verify(properties).getProperty("connection.shared", "false");
+        verify(properties).getProperty("queue.prefetch", "0");
+        verify(properties).getProperty("queue.prefetch.size", "0");
+        verify(properties).getProperty("ack.batch.size", "1");
+        verify(properties).getProperty("ack.batch.wait", "0.1");
+        verify(properties).getProperty("compression.codec");
+        verify(properties).getProperty("compression.threshold", "1024");
+        verify(properties).getProperty("microbatch.size", "0");
+        verify(properties).getProperty("microbatch.linger", "0.005");
+        verify(properties).getProperty("retry.attempts", "0");
+        verify(properties).getProperty("retry.delay", "5.0");
     }
 
 }